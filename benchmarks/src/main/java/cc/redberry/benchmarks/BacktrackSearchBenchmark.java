@@ -0,0 +1,90 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.groups.permutations.*;
+import cc.redberry.core.utils.Indicator;
+import org.apache.commons.math3.random.Well44497b;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of sequential and parallel backtrack search (see {@link AlgorithmsBacktrack#subgroupSearch(List,
+ * ArrayList, BacktrackSearchTestFunction, Indicator)} and {@link AlgorithmsBacktrack#parallelSubgroupSearch(List,
+ * ArrayList, BacktrackSearchTestFunction, Indicator)}): setwise stabilizer of a random half of points in a group
+ * generated by two random permutations.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BacktrackSearchBenchmark {
+    @Param({"1", "2"})
+    public long seed;
+    @Param({"10", "14", "18"})
+    public int degree;
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private List<BSGSElement> group;
+    private Indicator<Permutation> property;
+
+    @Setup
+    public void setup() {
+        Well44497b random = new Well44497b(seed);
+        group = PermutationGroup.createPermutationGroup(
+                Permutations.createPermutation(Permutations.randomPermutation(degree, random)),
+                Permutations.createPermutation(Permutations.randomPermutation(degree, random))).getBSGS();
+        final boolean[] set = new boolean[degree];
+        int[] points = Permutations.randomPermutation(degree, random);
+        for (int i = 0; i < degree / 2; ++i)
+            set[points[i]] = true;
+        property = new Indicator<Permutation>() {
+            @Override
+            public boolean is(Permutation p) {
+                for (int i = 0; i < set.length; ++i)
+                    if (set[i] != set[p.newIndexOf(i)])
+                        return false;
+                return true;
+            }
+        };
+    }
+
+    @Benchmark
+    public ArrayList<BSGSCandidateElement> setwiseStabilizer() {
+        ArrayList<BSGSCandidateElement> subgroup = new ArrayList<>();
+        if (parallel)
+            AlgorithmsBacktrack.parallelSubgroupSearch(group, subgroup, BacktrackSearchTestFunction.TRUE, property);
+        else
+            AlgorithmsBacktrack.subgroupSearch(group, subgroup, BacktrackSearchTestFunction.TRUE, property);
+        return subgroup;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.random.RandomTensor;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * Common routines for benchmarks. All benchmark inputs are produced by seeded {@link RandomTensor}, so they are
+ * reproducible across runs and releases.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public final class BenchmarkUtils {
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Resets tensor names with the specified seed and creates a seeded random tensor generator over a fixed namespace
+     * of tensors: k_a, metric g_ab, f_abc, r_abc, symmetric h_ab, antisymmetric F_ab and tensors f_abcd, r_abcd with
+     * Riemann-like symmetries.
+     *
+     * @param seed random seed
+     * @return seeded random tensor generator
+     */
+    public static RandomTensor newRandomTensor(long seed) {
+        CC.resetTensorNames(seed);
+        RandomTensor random = new RandomTensor(0, 0, new int[]{1, 0, 0, 0}, new int[]{4, 0, 0, 0}, true, false, seed);
+        Tensors.setSymmetric("h_ab");
+        Tensors.setAntiSymmetric("F_ab");
+        for (String riemann : new String[]{"f_abcd", "r_abcd"}) {
+            Tensors.addSymmetry(riemann, IndexType.LatinLower, true, 1, 0, 2, 3);
+            Tensors.addSymmetry(riemann, IndexType.LatinLower, false, 2, 3, 0, 1);
+        }
+        random.addToNamespace(parse("k_a"), parse("g_ab"), parse("f_abc"), parse("r_abc"), parse("h_ab"),
+                parse("F_ab"), parse("f_abcd"), parse("r_abcd"));
+        return random;
+    }
+
+    /**
+     * Parses free indices (e.g. "_ab").
+     *
+     * @param indices string representation of indices
+     * @return indices
+     */
+    public static Indices indices(String indices) {
+        return ParserIndices.parseSimple(indices);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.groups.permutations.Permutations;
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.SumBuilder;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.transformations.CanonicalizeTransformation;
+import cc.redberry.core.utils.TensorUtils;
+import org.apache.commons.math3.random.Well1024a;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.core.tensor.Tensors.*;
+
+/**
+ * Benchmark of simplification of polynomials in Riemann tensor: elimination of zero monomials and collection of like
+ * terms either with pairwise mapping searches or with double coset canonicalization of each monomial.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CanonicalizeBenchmark {
+    @Param({"3", "4", "5"})
+    public int degree;
+    @Param({"32"})
+    public int summands;
+
+    private Tensor[] terms;
+
+    @Setup
+    public void setup() {
+        addSymmetry("R_abcd", IndexType.LatinLower, true, 1, 0, 2, 3);
+        addSymmetry("R_abcd", IndexType.LatinLower, false, 2, 3, 0, 1);
+        Well1024a random = new Well1024a(degree);
+        terms = new Tensor[summands];
+        //each monomial occurs four times with different arrangements of indices
+        for (int i = 0; i < summands; i += 4) {
+            Tensor monomial = randomMonomial(random);
+            for (int j = 0; j < 4 && i + j < summands; ++j)
+                terms[i + j] = applyRandomSymmetries(monomial, random);
+        }
+    }
+
+    private Tensor randomMonomial(Well1024a random) {
+        int size = 4 * degree;
+        int[] slots = Permutations.randomPermutation(size, random);
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i += 2) {
+            indices[slots[i]] = IndicesUtils.createIndex(i / 2, IndexType.LatinLower, true);
+            indices[slots[i + 1]] = IndicesUtils.createIndex(i / 2, IndexType.LatinLower, false);
+        }
+        Tensor[] data = new Tensor[degree];
+        int name = parseSimple("R_abcd").getName();
+        for (int i = 0; i < degree; ++i)
+            data[i] = simpleTensor(name, IndicesFactory.createSimple(null,
+                    indices[4 * i], indices[4 * i + 1], indices[4 * i + 2], indices[4 * i + 3]));
+        return multiply(data);
+    }
+
+    private static Tensor applyRandomSymmetries(Tensor monomial, Well1024a random) {
+        Tensor[] data = new Tensor[monomial.size()];
+        boolean sign = false;
+        for (int i = 0; i < data.length; ++i) {
+            SimpleTensor st = (SimpleTensor) monomial.get(i);
+            Permutation symmetry = st.getIndices().getSymmetries().getPermutationGroup().randomElement(random);
+            sign ^= symmetry.antisymmetry();
+            int[] indices = new int[4];
+            for (int j = 0; j < 4; ++j)
+                indices[j] = st.getIndices().get(symmetry.newIndexOf(j));
+            data[i] = simpleTensor(st.getName(), IndicesFactory.createSimple(null, indices));
+        }
+        Tensor result = multiply(data);
+        return sign ? negate(result) : result;
+    }
+
+    @Benchmark
+    public Tensor mappings() {
+        SumBuilder sb = new SumBuilder();
+        for (Tensor term : terms)
+            if (!TensorUtils.isZeroDueToSymmetry(term))
+                sb.put(term);
+        return sb.build();
+    }
+
+    @Benchmark
+    public Tensor canonicalize() {
+        SumBuilder sb = new SumBuilder();
+        for (Tensor term : terms)
+            sb.put(CanonicalizeTransformation.canonicalize(term));
+        return sb.build();
+    }
+
+    @Benchmark
+    public int zeroCheckMappings() {
+        int zeros = 0;
+        for (Tensor term : terms)
+            if (TensorUtils.isZeroDueToSymmetry(term))
+                ++zeros;
+        return zeros;
+    }
+
+    @Benchmark
+    public int zeroCheckCanonicalize() {
+        int zeros = 0;
+        for (Tensor term : terms)
+            if (CanonicalizeTransformation.canonicalize(term) == Complex.ZERO)
+                ++zeros;
+        return zeros;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.transformations.EliminateMetricsTransformation;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+
+/**
+ * Benchmark of {@link EliminateMetricsTransformation} applied to a random sum with all free indices raised by
+ * metric tensors.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EliminateMetricsBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"16", "64"})
+    public int sumSize;
+
+    private Tensor tensor;
+
+    @Setup
+    public void setup() {
+        Tensor sum = newRandomTensor(seed).nextSum(sumSize, 4, indices("_abcd"));
+        tensor = ExpandTransformation.expand(
+                Tensors.multiplyAndRenameConflictingDummies(Tensors.parse("g^ae*g^bf*g^cg*d^d_h"), sum));
+    }
+
+    @Benchmark
+    public Tensor eliminate() {
+        return EliminateMetricsTransformation.eliminate(tensor);
+    }
+}
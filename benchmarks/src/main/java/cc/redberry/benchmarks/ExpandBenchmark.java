@@ -0,0 +1,65 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+
+/**
+ * Benchmark of {@link ExpandTransformation} applied to random products of sums.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpandBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"4", "8"})
+    public int sumSize;
+
+    private Tensor tensor;
+
+    @Setup
+    public void setup() {
+        tensor = newRandomTensor(seed).nextTensorTree(RandomTensor.TensorType.Product, 2,
+                new RandomTensor.Parameters(sumSize, sumSize, 3, 3), indices("_ab"));
+    }
+
+    @Benchmark
+    public Tensor expand() {
+        return ExpandTransformation.expand(tensor);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.transformations.Transformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+import static cc.redberry.core.tensor.Tensors.parseExpression;
+
+/**
+ * Benchmark of {@link cc.redberry.core.transformations.FixpointTransformation} against plain repeated application of
+ * transformations ({@link Transformation.Util#applyUntilUnchanged(Tensor, Transformation...)}) in the case when each
+ * round changes only a small part of a large tree: a chain of substitutions {@code x_k = x_{k+1}} (in reversed order,
+ * so each round makes a single step) is applied to a balanced tree of sums and products with {@code 2^depth} leaves,
+ * one of which is {@code x_0}. After the first round, fixpoint should cost in proportion to the depth of tree (the
+ * changed path) rather than to its size.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FixpointTransformationBenchmark {
+    @Param({"8", "12"})
+    public int depth;
+    @Param({"1", "16"})
+    public int rounds;
+    @Param({"false", "true"})
+    public boolean fixpoint;
+
+    private Tensor tensor;
+    private Transformation[] chain;
+
+    @Setup
+    public void setup() {
+        tensor = tree(depth, 1, true);
+        chain = new Transformation[rounds];
+        for (int k = 0; k < rounds; ++k)
+            chain[rounds - 1 - k] = parseExpression("x" + k + " = x" + (k + 1));
+    }
+
+    //a_id*(left subtree) + b_id*(right subtree); the leftmost leaf is x0
+    private static Tensor tree(int depth, int id, boolean leftmost) {
+        if (depth == 0)
+            return parse(leftmost ? "x0" : "l" + id);
+        return Tensors.sum(Tensors.multiply(parse("a" + id), tree(depth - 1, 2 * id, leftmost)),
+                Tensors.multiply(parse("b" + id), tree(depth - 1, 2 * id + 1, false)));
+    }
+
+    @Benchmark
+    public Tensor applyUntilStable() {
+        return fixpoint
+                ? Transformation.Util.applyUntilStable(tensor, chain)
+                : Transformation.Util.applyUntilUnchanged(tensor, chain);
+    }
+}
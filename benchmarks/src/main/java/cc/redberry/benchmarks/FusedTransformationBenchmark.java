@@ -0,0 +1,84 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.transformations.EliminateMetricsTransformation;
+import cc.redberry.core.transformations.Transformation;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+import static cc.redberry.core.tensor.Tensors.parseExpression;
+
+/**
+ * Comparison of sequential and fused (see {@link cc.redberry.core.transformations.FusedTransformation}) application of
+ * a pipeline of substitutions, elimination of metrics and expand to a random tensor tree.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FusedTransformationBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"false", "true"})
+    public boolean fused;
+
+    private Tensor tensor;
+    private Transformation[] pipeline;
+
+    @Setup
+    public void setup() {
+        tensor = newRandomTensor(seed).nextTensorTree(3, 4, 4, indices("_ab"));
+        pipeline = new Transformation[]{
+                parseExpression("k_a = r_abc*g^bc"),
+                EliminateMetricsTransformation.ELIMINATE_METRICS,
+                parseExpression("h_ab = F_ab + g_ab"),
+                EliminateMetricsTransformation.ELIMINATE_METRICS,
+                parseExpression("f_abc = r_bca")};
+    }
+
+    @Benchmark
+    public Tensor pipeline() {
+        return fused
+                ? Transformation.Util.applyFused(tensor, pipeline)
+                : Transformation.Util.applySequentially(tensor, pipeline);
+    }
+
+    @Benchmark
+    public Tensor expandPipeline() {
+        Transformation[] transformations = {ExpandTransformation.EXPAND, pipeline[0], pipeline[1]};
+        return fused
+                ? Transformation.Util.applyFused(tensor, transformations)
+                : Transformation.Util.applySequentially(tensor, transformations);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.indexmapping.IndexMappings;
+import cc.redberry.core.indexmapping.Mapping;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.tensor.ApplyIndexMapping;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.utils.ArraysUtils;
+import cc.redberry.core.utils.TensorUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+
+/**
+ * Benchmark of {@link IndexMappings#getFirst(Tensor, Tensor)} between a random product and the same product with
+ * renamed dummy indices.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexMappingsBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"4", "8", "16"})
+    public int productSize;
+
+    private Tensor from, to;
+
+    @Setup
+    public void setup() {
+        from = newRandomTensor(seed).nextProduct(productSize, indices("_ab"));
+        int[] forbidden = ArraysUtils.addAll(TensorUtils.getAllDummyIndicesT(from).toArray(),
+                IndicesUtils.getIndicesNames(from.getIndices().getFree()));
+        to = ApplyIndexMapping.renameDummy(from, forbidden);
+        if (IndexMappings.getFirst(from, to) == null)
+            throw new IllegalStateException("No mapping from " + from + " to " + to);
+    }
+
+    @Benchmark
+    public Mapping getFirst() {
+        return IndexMappings.getFirst(from, to);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.indexmapping.IndexMappings;
+import cc.redberry.core.indexmapping.Mapping;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.tensor.ApplyIndexMapping;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.transformations.EliminateDueSymmetriesTransformation;
+import cc.redberry.core.utils.ArraysUtils;
+import cc.redberry.core.utils.TensorUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+
+/**
+ * Comparison of engines used for searching of index mappings (see {@link
+ * cc.redberry.core.context.Context#setBacktrackingIndexMappings(boolean)}) on mapping-heavy workloads: {@link
+ * EliminateDueSymmetriesTransformation} applied to a random sum of products and {@link IndexMappings#getFirst(Tensor,
+ * Tensor)} between a random product and the same product with renamed dummy indices. Run with {@code -prof gc} to
+ * compare allocation rates ({@code gc.alloc.rate.norm}).
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexMappingsEngineBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"false", "true"})
+    public boolean backtracking;
+
+    private Tensor sum, from, to;
+
+    @Setup
+    public void setup() {
+        sum = newRandomTensor(seed).nextSum(32, 6, indices("_ab"));
+        from = newRandomTensor(seed).nextProduct(8, indices("_ab"));
+        int[] forbidden = ArraysUtils.addAll(TensorUtils.getAllDummyIndicesT(from).toArray(),
+                IndicesUtils.getIndicesNames(from.getIndices().getFree()));
+        to = ApplyIndexMapping.renameDummy(from, forbidden);
+        CC.current().setBacktrackingIndexMappings(backtracking);
+        if (IndexMappings.getFirst(from, to) == null)
+            throw new IllegalStateException("No mapping from " + from + " to " + to);
+    }
+
+    @Benchmark
+    public Tensor eliminateDueSymmetries() {
+        return EliminateDueSymmetriesTransformation.ELIMINATE_DUE_SYMMETRIES.transform(sum);
+    }
+
+    @Benchmark
+    public Mapping getFirst() {
+        return IndexMappings.getFirst(from, to);
+    }
+}
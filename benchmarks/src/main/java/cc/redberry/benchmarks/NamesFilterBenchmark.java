@@ -0,0 +1,86 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.tensor.SumBuilder;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.transformations.substitutions.SubstitutionTransformation;
+import cc.redberry.core.utils.TensorUtils;
+import gnu.trove.set.hash.TIntHashSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+import static cc.redberry.core.tensor.Tensors.parseExpression;
+import static cc.redberry.core.tensor.Tensors.parseSimple;
+
+/**
+ * Benchmark of substitution of a symbol which occurs in a single summand of a large sum (all other summands are
+ * skipped using names filters, see {@link cc.redberry.core.tensor.NamesFilter}) and of search of a symbol which does
+ * not occur in a tensor.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NamesFilterBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"16", "64"})
+    public int summands;
+
+    private Tensor tensor;
+    private SubstitutionTransformation substitution;
+    private TIntHashSet names;
+
+    @Setup
+    public void setup() {
+        RandomTensor random = newRandomTensor(seed);
+        SumBuilder sb = new SumBuilder();
+        for (int i = 0; i < summands; ++i)
+            sb.put(Tensors.multiply(parseSimple("x" + i), random.nextTensorTree(2, 4, 4, indices("_ab"))));
+        tensor = sb.build();
+        substitution = new SubstitutionTransformation(parseExpression("x" + (summands / 2) + " = y + z"));
+        names = new TIntHashSet();
+        names.add(parseSimple("w").getName());
+    }
+
+    @Benchmark
+    public Tensor substitute() {
+        return substitution.transform(tensor);
+    }
+
+    @Benchmark
+    public boolean containsSimpleTensors() {
+        return TensorUtils.containsSimpleTensors(tensor, names);
+    }
+}
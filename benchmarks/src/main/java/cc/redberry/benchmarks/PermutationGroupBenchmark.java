@@ -0,0 +1,69 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.groups.permutations.PermutationGroup;
+import cc.redberry.core.groups.permutations.Permutations;
+import org.apache.commons.math3.random.Well44497b;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link PermutationGroup} construction (Schreier-Sims algorithm) from random generators.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PermutationGroupBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"16", "64", "256"})
+    public int degree;
+    @Param({"2", "4"})
+    public int generatorsCount;
+
+    private Permutation[] generators;
+
+    @Setup
+    public void setup() {
+        Well44497b random = new Well44497b(seed);
+        generators = new Permutation[generatorsCount];
+        for (int i = 0; i < generatorsCount; ++i)
+            generators[i] = Permutations.createPermutation(Permutations.randomPermutation(degree, random));
+    }
+
+    @Benchmark
+    public BigInteger createGroup() {
+        //order() forces calculation of BSGS
+        return PermutationGroup.createPermutationGroup(generators).order();
+    }
+}
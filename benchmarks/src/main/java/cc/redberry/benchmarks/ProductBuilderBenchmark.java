@@ -0,0 +1,74 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.tensor.ProductBuilder;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.random.RandomTensor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+
+/**
+ * Benchmark of {@link ProductBuilder}: factors of 64 random products are put into builder one by one.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductBuilderBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"4", "8", "16"})
+    public int productSize;
+
+    private Tensor[][] factors;
+
+    @Setup
+    public void setup() {
+        RandomTensor random = newRandomTensor(seed);
+        factors = new Tensor[64][];
+        for (int i = 0; i < factors.length; ++i)
+            factors[i] = random.nextProduct(productSize, indices("_ab")).toArray();
+    }
+
+    @Benchmark
+    public Tensor productBuilder() {
+        Tensor result = null;
+        for (Tensor[] data : factors) {
+            ProductBuilder builder = new ProductBuilder();
+            for (Tensor factor : data)
+                builder.put(factor);
+            result = builder.build();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.number.Rational;
+import cc.redberry.core.number.Real;
+import cc.redberry.core.tensor.SumBuilder;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well1024a;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link Rational} arithmetic on coefficients typical for physical calculations (small numerators and
+ * denominators) compared to plain {@link BigFraction}, and of coefficient-heavy sums.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RationalBenchmark {
+    private static final int[] DENOMINATORS = {1, 2, 3, 4, 6, 8, 12, 24};
+
+    @Param({"123"})
+    public long seed;
+    @Param({"200000"})
+    public int size;
+
+    private Rational[] numbers;
+    private BigFraction[] fractions;
+    private Tensor[] terms;
+
+    @Setup
+    public void setup() {
+        RandomGenerator random = new Well1024a(seed);
+        numbers = new Rational[size];
+        fractions = new BigFraction[size];
+        for (int i = 0; i < size; ++i) {
+            numbers[i] = new Rational(random.nextInt(1000) - 500, DENOMINATORS[random.nextInt(DENOMINATORS.length)]);
+            fractions[i] = numbers[i].getBigFraction();
+        }
+
+        //sum of c_i*x_j with random rational coefficients
+        Tensor[] variables = new Tensor[100];
+        for (int i = 0; i < variables.length; ++i)
+            variables[i] = Tensors.parse("x" + i);
+        terms = new Tensor[size];
+        for (int i = 0; i < size; ++i)
+            terms[i] = Tensors.multiply(new Complex(numbers[random.nextInt(size)]),
+                    variables[random.nextInt(variables.length)]);
+    }
+
+    @Benchmark
+    public Real rationalSumOfSquares() {
+        Real r = Rational.ZERO;
+        for (Rational number : numbers)
+            r = r.add(number.multiply(number));
+        return r;
+    }
+
+    @Benchmark
+    public BigFraction bigFractionSumOfSquares() {
+        BigFraction f = BigFraction.ZERO;
+        for (BigFraction fraction : fractions)
+            f = f.add(fraction.multiply(fraction));
+        return f;
+    }
+
+    @Benchmark
+    public Tensor coefficientHeavySum() {
+        SumBuilder builder = new SumBuilder(terms.length);
+        for (Tensor term : terms)
+            builder.put(term);
+        return builder.build();
+    }
+}
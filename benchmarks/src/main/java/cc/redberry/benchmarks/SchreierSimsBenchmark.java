@@ -0,0 +1,102 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.groups.permutations.AlgorithmsBase;
+import cc.redberry.core.groups.permutations.BSGSCandidateElement;
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.groups.permutations.Permutations;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of sequential and parallel deterministic Schreier-Sims algorithm (see
+ * {@link AlgorithmsBase#SchreierSimsAlgorithm(java.util.ArrayList)} and
+ * {@link AlgorithmsBase#ParallelSchreierSimsAlgorithm(java.util.ArrayList)}) on symmetric and alternating groups and
+ * direct product of two symmetric groups, generated by a transposition (3-cycle for alternating group) and a long cycle.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchreierSimsBenchmark {
+    @Param({"sym", "alt", "product"})
+    public String group;
+    @Param({"50", "80", "120"})
+    public int degree;
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private List<Permutation> generators;
+
+    @Setup
+    public void setup() {
+        generators = new ArrayList<>();
+        switch (group) {
+            case "sym":
+                addSymmetricGroupGenerators(generators, 0, degree);
+                break;
+            case "alt":
+                generators.add(Permutations.createPermutation(new int[][]{{0, 1, 2}}));
+                generators.add(Permutations.createPermutation(new int[][]{cycle(degree % 2 == 0 ? 1 : 0, degree)}));
+                break;
+            case "product":
+                addSymmetricGroupGenerators(generators, 0, degree / 2);
+                addSymmetricGroupGenerators(generators, degree / 2, degree);
+                break;
+            default:
+                throw new IllegalArgumentException(group);
+        }
+    }
+
+    private static void addSymmetricGroupGenerators(List<Permutation> generators, int from, int to) {
+        generators.add(Permutations.createPermutation(new int[][]{{from, from + 1}}));
+        generators.add(Permutations.createPermutation(new int[][]{cycle(from, to)}));
+    }
+
+    private static int[] cycle(int from, int to) {
+        int[] cycle = new int[to - from];
+        for (int i = 0; i < cycle.length; ++i)
+            cycle[i] = from + i;
+        return cycle;
+    }
+
+    @Benchmark
+    public ArrayList<BSGSCandidateElement> schreierSims() {
+        ArrayList<BSGSCandidateElement> candidate =
+                (ArrayList<BSGSCandidateElement>) AlgorithmsBase.createRawBSGSCandidate(generators);
+        if (parallel)
+            AlgorithmsBase.ParallelSchreierSimsAlgorithm(candidate);
+        else
+            AlgorithmsBase.SchreierSimsAlgorithm(candidate);
+        return candidate;
+    }
+}
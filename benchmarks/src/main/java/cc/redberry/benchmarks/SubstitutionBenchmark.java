@@ -0,0 +1,84 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.tensor.Expression;
+import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.tensor.iterator.FromChildToParentIterator;
+import cc.redberry.core.transformations.substitutions.SubstitutionTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+
+/**
+ * Benchmark of {@link SubstitutionTransformation}: a random simple tensor occurring in a random tensor tree is
+ * substituted with a random sum.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubstitutionBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"2", "3"})
+    public int depth;
+
+    private Tensor tensor;
+    private SubstitutionTransformation substitution;
+
+    @Setup
+    public void setup() {
+        RandomTensor random = newRandomTensor(seed);
+        tensor = random.nextTensorTree(depth, 4, 4, indices("_ab"));
+
+        SimpleTensor from = null;
+        FromChildToParentIterator iterator = new FromChildToParentIterator(tensor);
+        Tensor current;
+        while ((current = iterator.next()) != null)
+            if (current instanceof SimpleTensor && current.getIndices().size() != 0) {
+                from = (SimpleTensor) current;
+                break;
+            }
+        if (from == null)
+            throw new IllegalStateException("No simple tensors in " + tensor);
+        Expression expression = Tensors.expression(from, random.nextSum(3, 3, from.getIndices().getFree()));
+        substitution = new SubstitutionTransformation(expression);
+    }
+
+    @Benchmark
+    public Tensor substitute() {
+        return substitution.transform(tensor);
+    }
+}
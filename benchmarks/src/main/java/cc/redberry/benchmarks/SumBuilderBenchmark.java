@@ -0,0 +1,109 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.tensor.ConcurrentSumBuilder;
+import cc.redberry.core.tensor.SumBuilder;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.random.RandomTensor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+
+/**
+ * Benchmark of {@link SumBuilder} and {@link ConcurrentSumBuilder} (filled concurrently by specified number of
+ * threads) on random sums with many similar terms.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SumBuilderBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"256", "4096"})
+    public int sumSize;
+    @Param({"1", "4"})
+    public int threads;
+
+    private Tensor[] summands;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        RandomTensor random = newRandomTensor(seed);
+        //each distinct term is repeated 8 times with different coefficients, so there are many similar terms
+        Tensor[] distinct = new Tensor[sumSize / 8];
+        for (int i = 0; i < distinct.length; ++i)
+            distinct[i] = random.nextProduct(4, indices("_ab"));
+        summands = new Tensor[sumSize];
+        for (int i = 0; i < sumSize; ++i)
+            summands[i] = Tensors.multiply(new Complex(1 + random.nextInt(16)),
+                    distinct[random.nextInt(distinct.length)]);
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Tensor sumBuilder() {
+        SumBuilder builder = new SumBuilder(summands.length);
+        for (Tensor summand : summands)
+            builder.put(summand);
+        return builder.build();
+    }
+
+    @Benchmark
+    public Tensor concurrentSumBuilder() throws Exception {
+        final ConcurrentSumBuilder builder = new ConcurrentSumBuilder(threads);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; ++t) {
+            final int from = t * summands.length / threads, to = (t + 1) * summands.length / threads;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = from; i < to; ++i)
+                        builder.put(summands[i]);
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        return builder.build();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.benchmarks;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.iterator.TraverseState;
+import cc.redberry.core.tensor.iterator.TreeTraverseIterator;
+import cc.redberry.core.transformations.substitutions.SubstitutionTransformation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * Benchmark of {@link TreeTraverseIterator} on deep (nested sums and products {@code x*(y+x*(y+...))} of the specified
+ * depth) and wide (random sum of the specified number of products) trees: plain traversal and substitution of a scalar
+ * which modifies all leaves. Run with {@code -prof gc} to compare allocation rates.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeTraverseIteratorBenchmark {
+    @Param({"deep", "wide"})
+    public String shape;
+    @Param({"200"})
+    public int size;
+
+    private Tensor tensor;
+    private SubstitutionTransformation substitution;
+
+    @Setup
+    public void setup() {
+        if (shape.equals("deep")) {
+            newRandomTensor(1);
+            Tensor x = parse("x"), y = parse("y");
+            tensor = x;
+            for (int i = 0; i < size; ++i)
+                tensor = Tensors.multiply(x, Tensors.sum(y, tensor));
+            substitution = new SubstitutionTransformation(Tensors.parseExpression("x = z"));
+        } else {
+            tensor = newRandomTensor(1).nextSum(size, 4, indices("_ab"));
+            substitution = new SubstitutionTransformation(Tensors.parseExpression("k_a = r_a"));
+        }
+    }
+
+    @Benchmark
+    public int traverse() {
+        TreeTraverseIterator iterator = new TreeTraverseIterator(tensor);
+        TraverseState state;
+        int count = 0;
+        while ((state = iterator.next()) != null)
+            if (state == TraverseState.Entering)
+                ++count;
+        return count;
+    }
+
+    @Benchmark
+    public Tensor substitute() {
+        return substitution.transform(tensor);
+    }
+}
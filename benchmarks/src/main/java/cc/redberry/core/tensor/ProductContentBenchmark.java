@@ -0,0 +1,69 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.number.Complex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static cc.redberry.benchmarks.BenchmarkUtils.indices;
+import static cc.redberry.benchmarks.BenchmarkUtils.newRandomTensor;
+
+/**
+ * Benchmark of calculation of {@link ProductContent} (graph structure, contractions and hash codes) of random
+ * products. This class is placed in the same package as {@link Product} to access its internals.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductContentBenchmark {
+    @Param({"1", "2", "3"})
+    public long seed;
+    @Param({"4", "8", "16"})
+    public int productSize;
+
+    private Indices indices;
+    private Tensor[] indexless, data;
+
+    @Setup
+    public void setup() {
+        Product product = (Product) newRandomTensor(seed).nextProduct(productSize, indices("_ab"));
+        indices = product.indices;
+        indexless = product.indexlessData;
+        data = product.data;
+    }
+
+    @Benchmark
+    public Product calculateContent() {
+        //constructor sorts data and calculates content and hash codes
+        return new Product(indices, Complex.ONE, indexless.clone(), data.clone());
+    }
+}
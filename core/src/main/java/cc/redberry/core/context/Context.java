@@ -22,11 +22,14 @@
  */
 package cc.redberry.core.context;
 
+import cc.redberry.core.indexmapping.IndexMappingsCache;
 import cc.redberry.core.indices.*;
 import cc.redberry.core.parser.ParseManager;
+import cc.redberry.core.tensor.ProductContentCache;
 import cc.redberry.core.tensor.SimpleTensor;
 import cc.redberry.core.tensor.Tensor;
 import cc.redberry.core.tensor.TensorField;
+import cc.redberry.core.tensor.TensorInternTable;
 import cc.redberry.core.tensor.Tensors;
 import cc.redberry.core.utils.OutputPort;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -40,12 +43,12 @@ import java.util.concurrent.ConcurrentHashMap;
  * This class represents Redberry context. It stores all Redberry session data (in some sense it stores static data).
  * <p/>
  * <p>Management of current Redberry context is made through {@link ContextManager} class.
- * Context of Redberry is attached to the current thread, so that any thread created from the outside of Redebrry
- * will hold a unique instance of {@link Context} object. In such a way tensors created in one thread can not
- * be used in the other thread because they are in some sense "attached" to the initial thread. However, if thread is
- * created through the executor service which is obtained from {@link ContextManager#getExecutorService()}, it will
- * share the same context as initial thread (such threads could hold concurrent computations regarding single context,
- * the appropriate synchronization is assumed). In order to create a new session of Redberry with a particular context,
+ * By default all threads share a single global context. A thread can be bound to its own context via
+ * {@link ContextManager#bindCurrentThread(Context)}; in this case tensors created in this thread can not
+ * be used in the other threads because they are in some sense "attached" to the initial thread. However, tasks
+ * submitted to the executor service which is obtained from {@link ContextManager#getExecutorService()}, will
+ * share the same context as the submitting thread (such threads could hold concurrent computations regarding single
+ * context, the appropriate synchronization is assumed). In order to create a new session of Redberry with a particular context,
  * an instance of this class should be set as a current context via {@link ContextManager#setCurrentContext(Context)}.</p>
  *
  * @author Dmitry Bolotin
@@ -89,6 +92,23 @@ public final class Context {
      */
     private final Set<ContextListener> listeners = Collections.newSetFromMap(new ConcurrentHashMap<ContextListener, Boolean>());
 
+    /**
+     * Intern table of tensors (null if interning is disabled)
+     */
+    private volatile TensorInternTable internTable = null;
+    /**
+     * Retention policy of products content
+     */
+    private volatile ProductContentCache productContentCache = ProductContentCache.soft();
+    /**
+     * Cache of index mappings (null if caching is disabled)
+     */
+    private volatile IndexMappingsCache indexMappingsCache = null;
+    /**
+     * Whether to use backtracking engine for searching of index mappings
+     */
+    private volatile boolean backtrackingIndexMappings = false;
+
     /**
      * Creates context from the settings
      *
@@ -140,6 +160,7 @@ public final class Context {
      */
     public synchronized void resetTensorNames() {
         nameManager.reset();
+        clearCaches();
         resetEvent();
     }
 
@@ -165,9 +186,108 @@ public final class Context {
      */
     public synchronized void resetTensorNames(long seed) {
         nameManager.reset(seed);
+        clearCaches();
         resetEvent();
     }
 
+    private void clearCaches() {
+        TensorInternTable internTable = this.internTable;
+        if (internTable != null)
+            internTable.clear();
+        IndexMappingsCache indexMappingsCache = this.indexMappingsCache;
+        if (indexMappingsCache != null)
+            indexMappingsCache.clear();
+    }
+
+    /**
+     * Returns intern table of tensors used by tensor factories or null if interning is disabled (default).
+     *
+     * @return intern table of tensors or null if interning is disabled
+     * @see TensorInternTable
+     */
+    public TensorInternTable getInternTable() {
+        return internTable;
+    }
+
+    /**
+     * Sets intern table of tensors which will be used by tensor factories (null disables interning).
+     *
+     * @param internTable intern table of tensors or null to disable interning
+     * @see TensorInternTable
+     */
+    public void setInternTable(TensorInternTable internTable) {
+        this.internTable = internTable;
+    }
+
+    /**
+     * Returns retention policy of cached content of products (soft references by default).
+     *
+     * @return retention policy of cached content of products
+     * @see ProductContentCache
+     */
+    public ProductContentCache getProductContentCache() {
+        return productContentCache;
+    }
+
+    /**
+     * Sets retention policy of cached content of products. The policy affects only products created after this call.
+     *
+     * @param productContentCache retention policy of cached content of products
+     * @throws NullPointerException if specified policy is null
+     * @see ProductContentCache
+     */
+    public void setProductContentCache(ProductContentCache productContentCache) {
+        if (productContentCache == null)
+            throw new NullPointerException();
+        this.productContentCache = productContentCache;
+    }
+
+    /**
+     * Returns cache of index mappings used by {@link cc.redberry.core.indexmapping.IndexMappings} or null if caching
+     * is disabled (default).
+     *
+     * @return cache of index mappings or null if caching is disabled
+     * @see IndexMappingsCache
+     */
+    public IndexMappingsCache getIndexMappingsCache() {
+        return indexMappingsCache;
+    }
+
+    /**
+     * Sets cache of index mappings which will be used by {@link cc.redberry.core.indexmapping.IndexMappings} (null
+     * disables caching).
+     *
+     * @param indexMappingsCache cache of index mappings or null to disable caching
+     * @see IndexMappingsCache
+     */
+    public void setIndexMappingsCache(IndexMappingsCache indexMappingsCache) {
+        this.indexMappingsCache = indexMappingsCache;
+    }
+
+    /**
+     * Returns whether mappings of indices of simple tensors and products of simple tensors are searched by the
+     * allocation-free backtracking engine instead of the default chain of mapping providers (false by default).
+     *
+     * @return true if backtracking engine is used for searching of index mappings
+     * @see cc.redberry.core.indexmapping.IndexMappings
+     */
+    public boolean isBacktrackingIndexMappings() {
+        return backtrackingIndexMappings;
+    }
+
+    /**
+     * Sets whether mappings of indices of simple tensors and products of simple tensors should be searched by the
+     * allocation-free backtracking engine, which keeps the state of search in preallocated primitive arrays instead
+     * of cloning mapping buffers for each candidate. Both engines produce the same sets of mappings (possibly in a
+     * different order); all other tensors are always processed by the default engine.
+     *
+     * @param backtrackingIndexMappings true to use backtracking engine for searching of index mappings
+     * @see cc.redberry.core.indexmapping.IndexMappings
+     */
+    public void setBacktrackingIndexMappings(boolean backtrackingIndexMappings) {
+        this.backtrackingIndexMappings = backtrackingIndexMappings;
+    }
+
     /**
      * Sets the default output format. After this step, all expressions
      * will be printed according to the specified output format.
@@ -24,54 +24,57 @@ package cc.redberry.core.context;
 
 import cc.redberry.core.context.defaults.DefaultContextFactory;
 
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class implements context management logic.
  *
- * <p>It holds current thread-local context of Redberry session (see description for {@link Context} class).
- * It is possible to set context explicitly using {@link #setCurrentContext(Context)} method.
- * Each thread is linked to its own context. All child threads created via {@code ExecutorService}
- * from {@link #getExecutorService()} have same context.</p>
+ * <p>It holds current context of Redberry session (see description for {@link Context} class). By default
+ * all threads share a single global context. Any thread can be bound to its own context using
+ * {@link #bindCurrentThread(Context)} method; after this all operations with context performed in this thread
+ * (including {@link #initializeNew()} and {@link #setCurrentContext(Context)}) will affect only the context of this
+ * thread, so several independent Redberry sessions can be run in parallel inside a single JVM.
+ * All threads created via {@code ExecutorService} from {@link #getExecutorService()} have the same context as the
+ * thread which submitted the task.</p>
  *
  * @author Dmitriy Bolotin
  * @author Stanislav Poslavsky
  * @since 1.0
  */
 public final class ContextManager {
-//    /**
-//     * Thread-local container for the current context
-//     */
-//    private final static ThreadLocal<ContextContainer> threadLocalContainer = new ThreadLocal<ContextContainer>() {
-//        @Override
-//        protected ContextContainer initialValue() {
-//            return new ContextContainer();
-//        }
-//    };
-//    /**
-//     * Thread-local {@code ExecutorService}
-//     */
-//    private static final ThreadLocal<ExecutorService> executorService = new ThreadLocal<ExecutorService>() {
-//        @Override
-//        protected ExecutorService initialValue() {
-//            return Executors.newCachedThreadPool(new CThreadFactory(threadLocalContainer.get()));
-//        }
-//    };
-
-    private static volatile Context context = DefaultContextFactory.INSTANCE.createContext();
+    /**
+     * Global container of the current context (used by all threads which are not bound to their own contexts)
+     */
+    private static final ContextContainer globalContainer
+            = new ContextContainer(DefaultContextFactory.INSTANCE.createContext());
+    /**
+     * Thread-local container for the current context (null if thread uses global context)
+     */
+    private static final ThreadLocal<ContextContainer> threadLocalContainer = new ThreadLocal<>();
 
     private ContextManager() {
     }
 
+    private static ContextContainer currentContainer() {
+        ContextContainer container = threadLocalContainer.get();
+        return container == null ? globalContainer : container;
+    }
+
     /**
      * Returns the current context of Redberry session.
      *
      * @return the current context of Redberry session.
      */
     public static Context getCurrentContext() {
-        return context;
+        return currentContainer().context;
     }
 
     /**
@@ -83,7 +86,7 @@ public final class ContextManager {
      */
     public static Context initializeNew() {
         Context context = DefaultContextFactory.INSTANCE.createContext();
-        ContextManager.context = context;
+        currentContainer().context = context;
         return context;
     }
 
@@ -97,60 +100,298 @@ public final class ContextManager {
      */
     public static Context initializeNew(ContextSettings contextSettings) {
         Context context = new Context(contextSettings);
-        ContextManager.context = context;
+        currentContainer().context = context;
         return context;
     }
 
     /**
-     * Sets current thread-local context to the specified one. After this step, all the
-     * tensors that exist in the thread will be invalidated.
+     * Sets current context to the specified one (if current thread is bound to its own context, then
+     * only the context of this thread will be changed). After this step, all the tensors that exist in the thread
+     * will be invalidated.
      *
      * @param context context
      */
     public static void setCurrentContext(Context context) {
-        ContextManager.context = context;
-    }
-
-//    /**
-//     * Returns thread-local {@code ExecutorService} with fixed context. All threads linked
-//     * to this {@code ExecutorService} will have same context.
-//     *
-//     * @return thread-local {@code ExecutorService} with fixed context
-//     */
-//    public static ExecutorService getExecutorService() {
-//        return executorService.get();
-//    }
-
-//    private static class ContextContainer {
-//        volatile Context context = DefaultContextFactory.INSTANCE.createContext();
-//    }
-
-//    private static class CThreadFactory implements ThreadFactory {
-//        private final ContextContainer container;
-//
-//        public CThreadFactory(ContextContainer container) {
-//            this.container = container;
-//        }
-//
-//        @Override
-//        public Thread newThread(Runnable r) {
-//            return new Thread(new RunnableWrapper(container, r));
-//        }
-//    }
-//
-//    private static class RunnableWrapper implements Runnable {
-//        private final ContextContainer container;
-//        private final Runnable innerRunnable;
-//
-//        public RunnableWrapper(ContextContainer container, Runnable innerRunnable) {
-//            this.container = container;
-//            this.innerRunnable = innerRunnable;
-//        }
-//
-//        @Override
-//        public void run() {
-//            threadLocalContainer.set(container);
-//            innerRunnable.run();
-//        }
-//    }
+        if (context == null)
+            throw new NullPointerException();
+        currentContainer().context = context;
+    }
+
+    /**
+     * Binds current thread to its own context. After this step all operations with context performed in the current
+     * thread will not affect other threads (except threads which execute tasks submitted from the current thread via
+     * {@link #getExecutorService()}).
+     *
+     * @param context context
+     */
+    public static void bindCurrentThread(Context context) {
+        if (context == null)
+            throw new NullPointerException();
+        threadLocalContainer.set(new ContextContainer(context));
+    }
+
+    /**
+     * Binds current thread to a new context initialized by the default value defined in
+     * {@link DefaultContextFactory}.
+     *
+     * @return created context
+     * @see #bindCurrentThread(Context)
+     */
+    public static Context bindCurrentThread() {
+        Context context = DefaultContextFactory.INSTANCE.createContext();
+        bindCurrentThread(context);
+        return context;
+    }
+
+    /**
+     * Unbinds current thread from its own context, so that it will use global context.
+     */
+    public static void unbindCurrentThread() {
+        threadLocalContainer.remove();
+    }
+
+    /**
+     * Returns whether current thread is bound to its own context.
+     *
+     * @return true if current thread is bound to its own context and false if it uses global context
+     */
+    public static boolean isCurrentThreadBound() {
+        return threadLocalContainer.get() != null;
+    }
+
+    /**
+     * Returns a snapshot of the context binding of the current thread, which can be used to run tasks in other
+     * threads within the same context.
+     *
+     * @return a snapshot of the context binding of the current thread
+     */
+    public static ContextBinding currentBinding() {
+        return new ContextBinding(threadLocalContainer.get());
+    }
+
+    /**
+     * Wraps the specified runnable, so that it will be executed within the context of the current thread in
+     * any other thread.
+     *
+     * @param runnable runnable
+     * @return runnable which will be executed within the context of the current thread
+     */
+    public static Runnable propagateContext(Runnable runnable) {
+        return currentBinding().wrap(runnable);
+    }
+
+    /**
+     * Wraps the specified callable, so that it will be executed within the context of the current thread in
+     * any other thread.
+     *
+     * @param callable callable
+     * @return callable which will be executed within the context of the current thread
+     */
+    public static <T> Callable<T> propagateContext(Callable<T> callable) {
+        return currentBinding().wrap(callable);
+    }
+
+    /**
+     * Returns shared {@code ExecutorService}, which executes each submitted task within the context of the thread
+     * which submitted the task. If virtual threads are supported by JVM, each task will be executed in a new virtual
+     * thread; otherwise a cached pool of daemon threads is used. The returned executor should not be shut down.
+     *
+     * @return shared {@code ExecutorService} which propagates context of the submitting thread to workers
+     */
+    public static ExecutorService getExecutorService() {
+        return ExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Returns shared {@code ForkJoinPool} used by all parallel algorithms of Redberry. Unlike
+     * {@link #getExecutorService()}, this pool does not propagate context by itself: tasks which depend on the context
+     * should capture {@link #currentBinding()} on submission. The returned pool should not be shut down.
+     *
+     * @return shared {@code ForkJoinPool}
+     */
+    public static ForkJoinPool getForkJoinPool() {
+        return ForkJoinPoolHolder.POOL;
+    }
+
+    /**
+     * Wraps the specified {@code ExecutorService}, so that each submitted task will be executed within the context of
+     * the thread which submitted the task.
+     *
+     * @param executorService executor service
+     * @return {@code ExecutorService} which propagates context of the submitting thread to workers
+     */
+    public static ExecutorService propagateContext(ExecutorService executorService) {
+        return new ContextPropagatingExecutorService(executorService);
+    }
+
+    private static final class ContextContainer {
+        volatile Context context;
+
+        ContextContainer(Context context) {
+            this.context = context;
+        }
+    }
+
+    /**
+     * Snapshot of the context binding of some thread. Allows to run tasks in other threads within the same context.
+     *
+     * @see #currentBinding()
+     */
+    public static final class ContextBinding {
+        /**
+         * Container of the thread from which the snapshot was taken (null if it uses global context)
+         */
+        private final ContextContainer container;
+
+        private ContextBinding(ContextContainer container) {
+            this.container = container;
+        }
+
+        /**
+         * Returns the context of this binding.
+         *
+         * @return the context of this binding
+         */
+        public Context getContext() {
+            return container == null ? globalContainer.context : container.context;
+        }
+
+        /**
+         * Binds current thread to this binding and returns the previous binding of the current thread.
+         *
+         * @return the previous binding of the current thread
+         */
+        public ContextBinding enter() {
+            ContextContainer previous = threadLocalContainer.get();
+            set(container);
+            return new ContextBinding(previous);
+        }
+
+        /**
+         * Restores the specified binding of the current thread (see {@link #enter()}).
+         *
+         * @param previous binding returned by {@link #enter()}
+         */
+        public static void exit(ContextBinding previous) {
+            set(previous.container);
+        }
+
+        private static void set(ContextContainer container) {
+            if (container == null)
+                threadLocalContainer.remove();
+            else
+                threadLocalContainer.set(container);
+        }
+
+        /**
+         * Wraps the specified runnable, so that it will be executed within this binding.
+         *
+         * @param runnable runnable
+         * @return runnable which will be executed within this binding
+         */
+        public Runnable wrap(final Runnable runnable) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    ContextBinding previous = enter();
+                    try {
+                        runnable.run();
+                    } finally {
+                        exit(previous);
+                    }
+                }
+            };
+        }
+
+        /**
+         * Wraps the specified callable, so that it will be executed within this binding.
+         *
+         * @param callable callable
+         * @return callable which will be executed within this binding
+         */
+        public <T> Callable<T> wrap(final Callable<T> callable) {
+            return new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    ContextBinding previous = enter();
+                    try {
+                        return callable.call();
+                    } finally {
+                        exit(previous);
+                    }
+                }
+            };
+        }
+    }
+
+    private static final class ContextPropagatingExecutorService extends AbstractExecutorService {
+        private final ExecutorService innerService;
+
+        ContextPropagatingExecutorService(ExecutorService innerService) {
+            this.innerService = innerService;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            //execute is invoked in the submitting thread
+            innerService.execute(propagateContext(command));
+        }
+
+        @Override
+        public void shutdown() {
+            innerService.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return innerService.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return innerService.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return innerService.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return innerService.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * Lazy holder of the shared executor
+     */
+    private static final class ExecutorHolder {
+        static final ExecutorService EXECUTOR = new ContextPropagatingExecutorService(createExecutor());
+
+        private static ExecutorService createExecutor() {
+            //virtual threads (Java 21+)
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) method.invoke(null);
+            } catch (Exception e) {
+                return Executors.newCachedThreadPool(new DaemonThreadFactory());
+            }
+        }
+    }
+
+    private static final class ForkJoinPoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = defaultFactory.newThread(r);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -22,12 +22,14 @@
  */
 package cc.redberry.core.groups.permutations;
 
+import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.utils.ArraysUtils;
 import cc.redberry.core.utils.Indicator;
 import cc.redberry.core.utils.IntArrayList;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Algorithms which uses backtrack search in permutation groups including searching for subgroups, setwise stabilizers,
@@ -125,10 +127,162 @@ public final class AlgorithmsBacktrack {
                                                  final Indicator<Permutation> property,
                                                  final int[] base,
                                                  final InducedOrdering ordering) {
+        subgroupSearchWithPayload(group, subgroup, payload, property, base, ordering, -1, ____VISITED_NODES___);
+    }
+
+    /**
+     * Factory of payloads used in parallel backtrack search (each concurrent task uses its own payload).
+     */
+    public interface PayloadFactory {
+        /**
+         * Creates a new payload
+         *
+         * @return new payload
+         */
+        BacktrackSearchPayload create();
+    }
+
+    /**
+     * Parallel version of {@link #subgroupSearch(java.util.List, java.util.ArrayList, BacktrackSearchTestFunction,
+     * cc.redberry.core.utils.Indicator)}. Specified test function and property will be invoked concurrently, so they
+     * should be thread-safe.
+     *
+     * @param group        base and strong generating set of group
+     * @param subgroup     initial base and strong generating set of subgroup for which we perform search
+     * @param testFunction thread-safe test function that applies at each level of search tree
+     * @param property     thread-safe property of subgroup elements
+     * @see #parallelSubgroupSearchWithPayload(java.util.List, java.util.ArrayList, PayloadFactory,
+     * cc.redberry.core.utils.Indicator, int[], InducedOrdering)
+     */
+    public static void parallelSubgroupSearch(final List<? extends BSGSElement> group,
+                                              final ArrayList<BSGSCandidateElement> subgroup,
+                                              final BacktrackSearchTestFunction testFunction,
+                                              final Indicator<Permutation> property) {
+        final int[] base = AlgorithmsBase.getBaseAsArray(group);
+        parallelSubgroupSearchWithPayload(group, subgroup, new PayloadFactory() {
+            @Override
+            public BacktrackSearchPayload create() {
+                return BacktrackSearchPayload.createDefaultPayload(testFunction);
+            }
+        }, property, base, new InducedOrdering(base));
+    }
+
+    /**
+     * Parallel version of {@link #subgroupSearchWithPayload(java.util.List, java.util.ArrayList, BacktrackSearchPayload,
+     * cc.redberry.core.utils.Indicator, int[], InducedOrdering)}.
+     * <p>
+     * At the first stage, the subtree of identity vertex at the first level of search tree is scanned sequentially;
+     * as result, the subgroup contains all elements stabilizing the first base point. Then subtrees of all other
+     * vertices at the first level are scanned concurrently (in fork-join pool): each task uses its own copy of
+     * the subgroup obtained at the first stage (so pruning conditions are not affected by other tasks) and its own
+     * payload, and terminates as soon as it finds an element with specified property (the rest of such subtree
+     * lies in the same coset of the stabilizer of the first base point and can be skipped, exactly as in the
+     * sequential algorithm). Finally, found elements are added to the subgroup in the order of vertices, so the result
+     * does not depend on scheduling. Specified property should be thread-safe.
+     * </p>
+     *
+     * @param group    base and strong generating set of group
+     * @param subgroup initial base and strong generating set of subgroup for which we perform search
+     * @param payloads factory of payloads (each concurrent task uses its own payload)
+     * @param property thread-safe property of subgroup elements
+     * @param base     precomputed base
+     * @param ordering precomputed induced ordering
+     */
+    public static void parallelSubgroupSearchWithPayload(final List<? extends BSGSElement> group,
+                                                         final ArrayList<BSGSCandidateElement> subgroup,
+                                                         final PayloadFactory payloads,
+                                                         final Indicator<Permutation> property,
+                                                         final int[] base,
+                                                         final InducedOrdering ordering) {
+        //stabilizer of the first base point
+        subgroupSearchWithPayload(group, subgroup, payloads.create(), property, base, ordering, 0,
+                ____VISITED_NODES___);
+        final int orbitSize = group.get(0).orbitList.size();
+        if (orbitSize <= 1)
+            return;
+        final Permutation[] found = new Permutation[orbitSize];
+        //numbers of nodes visited by each task (summed after all tasks are completed)
+        final long[] visited = new long[orbitSize];
+        ContextManager.getForkJoinPool().invoke(new SearchTask(group, AlgorithmsBase.clone(subgroup), payloads,
+                property, base, ordering, found, visited, 1, orbitSize));
+        for (long v : visited)
+            ____VISITED_NODES___[0] += v;
+        for (Permutation p : found)
+            if (p != null && !AlgorithmsBase.membershipTest(subgroup, p)) {
+                subgroup.get(0).addStabilizer(p);
+                AlgorithmsBase.SchreierSimsAlgorithm(subgroup);
+            }
+    }
+
+    /**
+     * Scans subtrees of vertices with positions from {@code from} (inclusive) to {@code to} (exclusive) at the first
+     * level of search tree and puts found elements (and numbers of visited nodes) into {@code found} (and
+     * {@code visited}) at the same positions.
+     */
+    private static final class SearchTask extends RecursiveAction {
+        private final List<? extends BSGSElement> group;
+        private final ArrayList<BSGSCandidateElement> subgroup;
+        private final PayloadFactory payloads;
+        private final Indicator<Permutation> property;
+        private final int[] base;
+        private final InducedOrdering ordering;
+        private final Permutation[] found;
+        private final long[] visited;
+        private final int from, to;
+
+        SearchTask(List<? extends BSGSElement> group, ArrayList<BSGSCandidateElement> subgroup,
+                   PayloadFactory payloads, Indicator<Permutation> property, int[] base, InducedOrdering ordering,
+                   Permutation[] found, long[] visited, int from, int to) {
+            this.group = group;
+            this.subgroup = subgroup;
+            this.payloads = payloads;
+            this.property = property;
+            this.base = base;
+            this.ordering = ordering;
+            this.found = found;
+            this.visited = visited;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                        new SearchTask(group, subgroup, payloads, property, base, ordering, found, visited, from, mid),
+                        new SearchTask(group, subgroup, payloads, property, base, ordering, found, visited, mid, to));
+                return;
+            }
+            //subgroup is modified (rebased) during search, so each vertex uses its own copy
+            final long[] counter = {0};
+            found[from] = subgroupSearchWithPayload(group, AlgorithmsBase.clone(subgroup), payloads.create(),
+                    property, base, ordering, from, counter);
+            visited[from] = counter[0];
+        }
+    }
+
+    /**
+     * Performs subgroup search. If {@code vertex} is negative, then the whole search tree is scanned. If
+     * {@code vertex == 0}, then only the subtree of identity vertex at the first level is scanned (so the resulting
+     * subgroup will contain all elements which stabilize the first base point). If {@code vertex > 0}, then the
+     * subtree of vertex at the first level with specified position is scanned until the first element with
+     * specified property is found; this element is returned and not added to the subgroup. Visited nodes are counted
+     * in {@code visited[0]} (concurrent searches use their own counters).
+     */
+    private static Permutation subgroupSearchWithPayload(final List<? extends BSGSElement> group,
+                                                         final ArrayList<BSGSCandidateElement> subgroup,
+                                                         final BacktrackSearchPayload payload,
+                                                         final Indicator<Permutation> property,
+                                                         final int[] base,
+                                                         final InducedOrdering ordering,
+                                                         final int vertex,
+                                                         final long[] visited) {
         if (group.size() == 0 || group.get(0).stabilizerGenerators.isEmpty())
             throw new IllegalArgumentException("Empty group.");
 
-        ____VISITED_NODES___[0] = 0;//just for performance debugging
+        if (vertex <= 0)
+            visited[0] = 0;//just for performance debugging
 
 
         /* The algorithm SUBGROUPSEARCH described in Sec. 4.6.3 in [Holt05] */
@@ -208,6 +362,18 @@ public final class AlgorithmsBacktrack {
                 subgroup.get(level).orbitSize() <= 1 ? Integer.MAX_VALUE :
                         sortedOrbits[level][sortedOrbits[level].length - subgroup.get(level).orbitSize() + 1];
 
+        //the search is performed in the subtrees of first level vertices only
+        final int stopLevel = vertex < 0 ? 0 : 1;
+        if (vertex > 0) {
+            //setting up the state just as in the sequential search at the specified vertex
+            level = subgroupLevel = 0;
+            tuple[0] = vertex;
+            word[0] = group.get(0).getTransversalOf(sortedOrbits[0][vertex]);
+            maxImages[0] = ordering.minElement();
+            maxRepresentative[0] = subgroup.get(0).orbitSize() <= 1 ? Integer.MAX_VALUE :
+                    sortedOrbits[0][sortedOrbits[0].length - subgroup.get(0).orbitSize() + 1];
+        }
+
         //<= initialized
 
         int image;
@@ -283,7 +449,7 @@ public final class AlgorithmsBacktrack {
                 // order to fix it, we calculate this representatives after we've found next u_l.
             }
 
-            ++____VISITED_NODES___[0];
+            ++visited[0];
             //<= here we obtained next permutation in group
             //we need to test whether it belongs to subgroup
             if (level == size - 1
@@ -300,6 +466,8 @@ public final class AlgorithmsBacktrack {
                     && property.is(word[level])) {
 
                 //<= here we obtained next permutation in group that is a new generator in the subgroup we search for
+                if (vertex > 0)
+                    return word[level];
                 //extend group with a new generator
                 if (!AlgorithmsBase.membershipTest(subgroup, word[level])) {
                     subgroup.get(0).addStabilizer(word[level]);
@@ -318,8 +486,8 @@ public final class AlgorithmsBacktrack {
             while (level >= 0 && tuple[level] == group.get(level).orbitList.size() - 1)
                 --level;
 
-            if (level == -1)
-                return; //all elements scanned
+            if (level < stopLevel)
+                return null; //all elements scanned
 
             if (level < subgroupLevel) {
                 //setup new subgroupLevel
@@ -566,10 +734,28 @@ public final class AlgorithmsBacktrack {
     public static void intersection(final List<? extends BSGSElement> group1,
                                     final List<? extends BSGSElement> group2,
                                     final ArrayList<BSGSCandidateElement> intersection) {
+        intersection(group1, group2, intersection, false);
+    }
+
+    /**
+     * Calculates intersection of given subgroups using {@link #subgroupSearch(java.util.List, java.util.ArrayList, BacktrackSearchTestFunction, cc.redberry.core.utils.Indicator)}
+     * or its parallel version.
+     *
+     * @param group1       permutation group
+     * @param group2       permutation group
+     * @param intersection initial intersection of given groups
+     * @param parallel     whether to use parallel backtrack search
+     * @see #parallelSubgroupSearchWithPayload(java.util.List, java.util.ArrayList, PayloadFactory,
+     * cc.redberry.core.utils.Indicator, int[], InducedOrdering)
+     */
+    public static void intersection(final List<? extends BSGSElement> group1,
+                                    final List<? extends BSGSElement> group2,
+                                    final ArrayList<BSGSCandidateElement> intersection,
+                                    final boolean parallel) {
         //TODO implement special cases?
 
         if (AlgorithmsBase.calculateOrder(group2).compareTo(AlgorithmsBase.calculateOrder(group1)) < 0) {
-            intersection(group2, group1, intersection);
+            intersection(group2, group1, intersection, parallel);
             return;
         }
 
@@ -587,41 +773,6 @@ public final class AlgorithmsBacktrack {
 
         assert smaller.size() == larger.size();
 
-        final Permutation identity = smaller.get(0).stabilizerGenerators.get(0).getIdentity();
-        final Permutation[] intersectionWord = new Permutation[smaller.size()];
-        for (int i = 0; i < intersectionWord.length; ++i)
-            intersectionWord[i] = identity;
-
-        //testing conditions described in Sec. 4.6.6 o [Holt05]
-        final BacktrackSearchPayload payload = new BacktrackSearchPayload() {
-            @Override
-            public void beforeLevelIncrement(int level) {
-                int image = wordReference[level].newIndexOf(base[level]);
-
-                if (level == 0)
-                    intersectionWord[level] = larger.get(level).getTransversalOf(image);
-                else
-                    intersectionWord[level] = larger.get(level).getTransversalOf(intersectionWord[level - 1]
-                            .newIndexOfUnderInverse(image)).composition(intersectionWord[level - 1]);
-            }
-
-            @Override
-            public void afterLevelIncrement(int level) {
-            }
-
-            @Override
-            public boolean test(Permutation permutation, int level) {
-                return level == 0 ?
-                        larger.get(level).belongsToOrbit(
-                                wordReference[level].newIndexOf(base[level]))
-                        :
-                        larger.get(level).belongsToOrbit(
-                                intersectionWord[level - 1].newIndexOfUnderInverse(
-                                        wordReference[level].newIndexOf(base[level])));
-            }
-
-        };
-
         //final test for intersection
         final Indicator<Permutation> intersectionProperty = new Indicator<Permutation>() {
             @Override
@@ -630,7 +781,61 @@ public final class AlgorithmsBacktrack {
             }
         };
 
-        subgroupSearchWithPayload(smaller, intersection, payload, intersectionProperty);
+        if (parallel)
+            parallelSubgroupSearchWithPayload(smaller, intersection, new PayloadFactory() {
+                @Override
+                public BacktrackSearchPayload create() {
+                    return new IntersectionPayload(smaller, larger, base);
+                }
+            }, intersectionProperty, base, new InducedOrdering(base));
+        else
+            subgroupSearchWithPayload(smaller, intersection,
+                    new IntersectionPayload(smaller, larger, base), intersectionProperty);
+    }
+
+    /**
+     * Testing conditions described in Sec. 4.6.6 of [Holt05]
+     */
+    private static final class IntersectionPayload extends BacktrackSearchPayload {
+        private final ArrayList<BSGSCandidateElement> larger;
+        private final int[] base;
+        private final Permutation[] intersectionWord;
+
+        IntersectionPayload(ArrayList<BSGSCandidateElement> smaller, ArrayList<BSGSCandidateElement> larger,
+                            int[] base) {
+            this.larger = larger;
+            this.base = base;
+            final Permutation identity = smaller.get(0).stabilizerGenerators.get(0).getIdentity();
+            this.intersectionWord = new Permutation[smaller.size()];
+            for (int i = 0; i < intersectionWord.length; ++i)
+                intersectionWord[i] = identity;
+        }
+
+        @Override
+        public void beforeLevelIncrement(int level) {
+            int image = wordReference[level].newIndexOf(base[level]);
+
+            if (level == 0)
+                intersectionWord[level] = larger.get(level).getTransversalOf(image);
+            else
+                intersectionWord[level] = larger.get(level).getTransversalOf(intersectionWord[level - 1]
+                        .newIndexOfUnderInverse(image)).composition(intersectionWord[level - 1]);
+        }
+
+        @Override
+        public void afterLevelIncrement(int level) {
+        }
+
+        @Override
+        public boolean test(Permutation permutation, int level) {
+            return level == 0 ?
+                    larger.get(level).belongsToOrbit(
+                            wordReference[level].newIndexOf(base[level]))
+                    :
+                    larger.get(level).belongsToOrbit(
+                            intersectionWord[level - 1].newIndexOfUnderInverse(
+                                    wordReference[level].newIndexOf(base[level])));
+        }
     }
 
 //    /**
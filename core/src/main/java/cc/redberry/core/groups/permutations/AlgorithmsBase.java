@@ -23,6 +23,7 @@
 package cc.redberry.core.groups.permutations;
 
 import cc.redberry.core.context.CC;
+import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.utils.ArraysUtils;
 import cc.redberry.core.utils.BitArray;
 import cc.redberry.core.utils.IntArrayList;
@@ -32,6 +33,7 @@ import org.apache.commons.math3.util.FastMath;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.RecursiveAction;
 
 import static cc.redberry.core.groups.permutations.RandomPermutation.*;
 
@@ -108,19 +110,38 @@ public final class AlgorithmsBase {
      * @return terminationLevel and remainder
      */
     public static StripContainer strip(final List<? extends BSGSElement> BSGS, Permutation permutation) {
+        //one-line notation of the current remainder and buffer for inverses of generators (allocated only when the
+        //first nontrivial strip occurs)
+        int[] remainder = null, buffer = null;
+        boolean antisymmetry = permutation.antisymmetry();
         //loop over all base points
         for (int i = 0, size = BSGS.size(); i < size; ++i) {
+            final BSGSElement element = BSGS.get(i);
             //image of current base point under the permutation
-            int beta = permutation.newIndexOf(BSGS.get(i).basePoint);
+            int beta = remainder == null ? permutation.newIndexOf(element.basePoint)
+                    : element.basePoint < remainder.length ? remainder[element.basePoint] : element.basePoint;
             //test whether this image belongs to the orbit
-            if (!BSGS.get(i).belongsToOrbit(beta)) {
+            if (!element.belongsToOrbit(beta)) {
                 //if not, then permutation cannot be represented in terms of specified BSGS
-                return new StripContainer(i, permutation);
+                return new StripContainer(i, remainder == null ? permutation
+                        : Permutations.createPermutationFromBuffer(antisymmetry, remainder));
             }
-            //strip
-            permutation = permutation.composition(BSGS.get(i).getInverseTransversalOf(beta));
+            if (beta == element.basePoint)
+                continue;
+            //strip in place
+            if (remainder == null) {
+                int degree = permutation.degree();
+                for (BSGSElement e : BSGS)
+                    degree = Math.max(degree, e.internalDegree());
+                remainder = new int[degree];
+                for (int j = 0; j < degree; ++j)
+                    remainder[j] = permutation.newIndexOf(j);
+                buffer = new int[degree];
+            }
+            antisymmetry ^= element.compositionWithInverseTransversalInPlace(beta, remainder, buffer);
         }
-        return new StripContainer(BSGS.size(), permutation);
+        return new StripContainer(BSGS.size(), remainder == null ? permutation
+                : Permutations.createPermutationFromBuffer(antisymmetry, remainder));
     }
 
     /**
@@ -536,6 +557,125 @@ public final class AlgorithmsBase {
     }
 
 
+    /**
+     * Number of Schreier generators sifted concurrently in a single batch by
+     * {@link #ParallelSchreierSimsAlgorithm(java.util.ArrayList)}
+     */
+    static final int PARALLEL_SIFT_BATCH_SIZE = 512;
+    /**
+     * Maximal number of Schreier generators sifted by a single fork-join task
+     */
+    private static final int PARALLEL_SIFT_LEAF_SIZE = 16;
+
+    /**
+     * Parallel version of {@link #SchreierSimsAlgorithm(java.util.ArrayList)}. Schreier generators of the current
+     * basic stabilizer are enumerated in the same order as in the sequential algorithm and sifted through the current
+     * BSGS candidate concurrently in batches; then results of sifting are processed in the order of enumeration, and
+     * the first generator which does not sift through is used to extend BSGS candidate (the remaining results of
+     * batch are discarded). Since BSGS candidate is not modified while sifting a batch, the resulting BSGS is
+     * exactly the same as produced by the sequential algorithm. This version is advantageous for groups of large
+     * degree, where sifting of Schreier generators dominates.
+     *
+     * @param BSGSCandidate BSGS candidate
+     * @throws cc.redberry.core.groups.permutations.InconsistentGeneratorsException if algorithm detects that specified
+     *                                                                              generators are inconsistent (due to antisymmetries)
+     * @see #SchreierSimsAlgorithm(java.util.ArrayList)
+     */
+    public static void ParallelSchreierSimsAlgorithm(ArrayList<BSGSCandidateElement> BSGSCandidate) {
+        if (BSGSCandidate.isEmpty())
+            return;
+        final int degree = BSGSCandidate.get(0).internalDegree();
+        if (degree == 0)
+            return;
+        //main loop
+        BSGSCandidateElement currentElement;
+        int index = BSGSCandidate.size() - 1;
+        elements:
+        while (index >= 0) {
+            currentElement = BSGSCandidate.get(index);
+            //all Schreier generators are enumerated by pairs (point in orbit, stabilizer generator)
+            final int total = currentElement.orbitList.size() * currentElement.stabilizerGenerators.size();
+            for (int from = 0; from < total; from += PARALLEL_SIFT_BATCH_SIZE) {
+                StripContainer[] strips = new StripContainer[Math.min(PARALLEL_SIFT_BATCH_SIZE, total - from)];
+                ContextManager.getForkJoinPool().invoke(
+                        new SiftTask(BSGSCandidate, currentElement, strips, from, 0, strips.length));
+                for (StripContainer strip : strips) {
+                    //generator is trivial or sifted through
+                    if (strip == null)
+                        continue;
+
+                    if (strip.terminationLevel == BSGSCandidate.size()) {
+                        //nontrivial remainder fixes all base points, so we need to extend base with a new point
+                        for (int i = 0; i < degree; ++i)
+                            if (strip.remainder.newIndexOf(i) != i) {
+                                BSGSCandidate.add(new BSGSCandidateElement(i, new ArrayList<Permutation>(), degree));
+                                break;
+                            }
+                    }
+
+                    for (int i = index + 1; i <= strip.terminationLevel; ++i)
+                        BSGSCandidate.get(i).addStabilizer(strip.remainder);
+
+                    //revert
+                    index = strip.terminationLevel;
+                    continue elements;
+                }
+            }
+            --index;
+        }
+    }
+
+    /**
+     * Sifts Schreier generators with numbers from {@code offset + from} (inclusive) to {@code offset + to}
+     * (exclusive) through BSGS candidate and puts results at positions from {@code from} to {@code to}; trivial
+     * generators and generators which sift through are represented by nulls.
+     */
+    private static final class SiftTask extends RecursiveAction {
+        private final List<BSGSCandidateElement> BSGSCandidate;
+        private final BSGSCandidateElement element;
+        private final StripContainer[] strips;
+        private final int offset, from, to;
+
+        SiftTask(List<BSGSCandidateElement> BSGSCandidate, BSGSCandidateElement element,
+                 StripContainer[] strips, int offset, int from, int to) {
+            this.BSGSCandidate = BSGSCandidate;
+            this.element = element;
+            this.strips = strips;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_SIFT_LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SiftTask(BSGSCandidate, element, strips, offset, from, mid),
+                        new SiftTask(BSGSCandidate, element, strips, offset, mid, to));
+                return;
+            }
+            final List<Permutation> stabilizers = element.stabilizerGenerators;
+            final int size = stabilizers.size();
+            int previousBeta = -1, beta;
+            Permutation transversalOfBeta = null;
+            for (int i = from; i < to; ++i) {
+                beta = element.orbitList.get((offset + i) / size);
+                if (beta != previousBeta) {
+                    transversalOfBeta = element.getTransversalOf(beta);
+                    previousBeta = beta;
+                }
+                Permutation stabilizer = stabilizers.get((offset + i) % size);
+                Permutation transversalOfBetaX = element.getTransversalOf(stabilizer.newIndexOf(beta));
+                if (transversalOfBeta.composition(stabilizer).equals(transversalOfBetaX))
+                    continue;
+                StripContainer strip = strip(BSGSCandidate,
+                        transversalOfBeta.composition(stabilizer, transversalOfBetaX.inverse()));
+                if (strip.terminationLevel < BSGSCandidate.size() || !strip.remainder.isIdentity())
+                    strips[i] = strip;
+            }
+        }
+    }
+
     /**
      * Applies randomized version of Schreier-Sims algorithm to specified BSGS candidate and complete it if necessary.
      * The probability that after applying this algorithm the BSGS candidate will be guaranteed BSGS is equal to
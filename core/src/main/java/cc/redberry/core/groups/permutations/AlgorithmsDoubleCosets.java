@@ -0,0 +1,274 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.groups.permutations;
+
+import cc.redberry.core.utils.ArraysUtils;
+import cc.redberry.core.utils.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Algorithms for canonicalization of tensor monomials with respect to double cosets D·g·S, where S is a group of
+ * slot symmetries (permutations of positions of indices) and D is a group of dummy symmetries (renaming of dummy
+ * indices and, in metric spaces, swapping of upper and lower indices of contracted pairs).
+ *
+ * <p>Tensor monomial is represented by a permutation g which maps slots to indices; indices are enumerated by their
+ * positions in some fixed list, where each contracted pair of dummy indices occupies two positions (upper index
+ * first). Two monomials with the same free indices are equal up to a sign if and only if the corresponding
+ * permutations belong to the same double coset, so the canonical representative of a double coset gives a canonical
+ * form of monomial. The implementation follows the Butler-Portugal algorithm: slots are processed one by one and the
+ * minimal admissible index is assigned to each slot, using the stabilizers chain of S (BSGS with base 0, 1, ...)
+ * and explicitly constructed transversals of D.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class AlgorithmsDoubleCosets {
+    private AlgorithmsDoubleCosets() {
+    }
+
+    /**
+     * Returns the lexicographically minimal element of double coset D·g·S, where S is specified group of slot
+     * symmetries and D is the group of dummy symmetries described by specified dummy pairs. The returned
+     * representative is {@code d*g*s} in one-line notation (i.e. {@code d(g(s(i)))}), and its sign is the sign of
+     * {@code g} times the sign of {@code s} (elements of D are always symmetries). If the double coset contains both
+     * g and -g (i.e. corresponding monomial is identically zero), then null is returned.
+     *
+     * @param g              one-line notation of the permutation which maps slots to indices
+     * @param sign           sign of g
+     * @param slotSymmetries group of slot symmetries S
+     * @param dummies        for each index type: positions of dummy indices, where {@code dummies[t][2*k]} and
+     *                       {@code dummies[t][2*k + 1]} are upper and lower indices of the k-th contracted pair
+     * @param metric         for each index type: true if upper and lower indices of contracted pairs of this type
+     *                       can be swapped
+     * @return canonical representative of double coset D·g·S or null if the double coset contains both g and -g
+     * @throws IllegalArgumentException if slot symmetries act on points greater than degree of g
+     */
+    public static Representative canonicalRepresentative(final int[] g, final boolean sign,
+                                                         final PermutationGroup slotSymmetries,
+                                                         final int[][] dummies, final boolean[] metric) {
+        final int degree = g.length;
+        if (slotSymmetries.degree() > degree)
+            throw new IllegalArgumentException("Slot symmetries degree is greater than degree of g.");
+
+        //stabilizers chain of S with base 0, 1, ...
+        List<BSGSElement> stabilizers = slotSymmetries.getBSGSWithNaturalBase();
+        Permutation[][] transversals = slotSymmetries.getTransversalsWithNaturalBase();
+
+        //structure of the dummies group: type of index or -1 if index is fixed by D (free or already placed)
+        final int[] types = new int[degree], partners = new int[degree];
+        final boolean[] upper = new boolean[degree];
+        Arrays.fill(types, -1);
+        for (int t = 0; t < dummies.length; ++t)
+            for (int k = 0; k < dummies[t].length; k += 2) {
+                types[dummies[t][k]] = types[dummies[t][k + 1]] = t;
+                partners[dummies[t][k]] = dummies[t][k + 1];
+                partners[dummies[t][k + 1]] = dummies[t][k];
+                upper[dummies[t][k]] = true;
+            }
+        final DummiesOrbits orbits = new DummiesOrbits(types, upper, metric, dummies.length);
+
+        ArrayList<Entry> table = new ArrayList<>();
+        table.add(new Entry(ArraysUtils.getSeriesFrom0(degree), false,
+                ArraysUtils.getSeriesFrom0(degree), g.clone(), sign));
+        LinkedHashMap<IntArrayList, Entry> next = new LinkedHashMap<>();
+        int[] orbit;
+        for (int b = 0; b < degree; ++b) {
+            orbit = b < stabilizers.size() ? stabilizers.get(b).orbitList.toArray() : new int[]{b};
+            orbits.update();
+
+            //minimal index which can be placed in slot b
+            int min = Integer.MAX_VALUE;
+            for (Entry entry : table)
+                for (int x : orbit)
+                    min = Math.min(min, orbits.min(entry.h[x]));
+
+            next.clear();
+            for (Entry entry : table)
+                for (int x : orbit) {
+                    final int q = entry.h[x];
+                    if (orbits.min(q) != min)
+                        continue;
+                    //s1 = s * u, where u(b) = x, so s1(b) = s(x)
+                    int[] s = entry.s;
+                    boolean sSign = entry.sSign;
+                    if (x != b) {
+                        Permutation u = transversals[b][x];
+                        s = new int[degree];
+                        for (int i = 0; i < degree; ++i)
+                            s[i] = entry.s[u.newIndexOf(i)];
+                        sSign ^= u.antisymmetry();
+                    }
+                    //d1 = t * d, where t is an element of D that maps q to min
+                    int[] d = entry.d;
+                    if (q != min) {
+                        d = d.clone();
+                        final int qPartner = partners[q], minPartner = partners[min];
+                        for (int i = 0; i < degree; ++i)
+                            d[i] = transpose(d[i], q, min, qPartner, minPartner);
+                    }
+                    int[] h = new int[degree];
+                    for (int i = 0; i < degree; ++i)
+                        h[i] = d[g[s[i]]];
+                    Entry newEntry = new Entry(s, sSign, d, h, sign ^ sSign);
+                    IntArrayList key = new IntArrayList(h);
+                    Entry previous = next.get(key);
+                    if (previous == null)
+                        next.put(key, newEntry);
+                    else if (previous.hSign != newEntry.hSign)
+                        return null;
+                }
+            table.clear();
+            table.addAll(next.values());
+
+            //stabilize placed index in D
+            if (types[min] != -1) {
+                types[partners[min]] = -1;
+                types[min] = -1;
+            }
+        }
+        Entry result = table.get(0);
+        return new Representative(result.h, result.hSign);
+    }
+
+    /**
+     * Canonical representative of double coset together with its sign. Since representative is a product of
+     * permutations from different groups, it is represented by a plain one-line notation rather than by {@link
+     * Permutation} (signed permutations are required to be consistent with their orders).
+     */
+    public static final class Representative {
+        private final int[] oneLine;
+        private final boolean sign;
+
+        Representative(int[] oneLine, boolean sign) {
+            this.oneLine = oneLine;
+            this.sign = sign;
+        }
+
+        /**
+         * Returns the image of specified point.
+         *
+         * @param point point
+         * @return image of specified point
+         */
+        public int newIndexOf(int point) {
+            return oneLine[point];
+        }
+
+        /**
+         * Returns one-line notation of representative.
+         *
+         * @return one-line notation of representative
+         */
+        public int[] oneLine() {
+            return oneLine.clone();
+        }
+
+        /**
+         * Returns the sign of representative.
+         *
+         * @return true if representative is antisymmetric
+         */
+        public boolean getSign() {
+            return sign;
+        }
+
+        @Override
+        public String toString() {
+            return (sign ? "-" : "+") + Arrays.toString(oneLine);
+        }
+    }
+
+    /**
+     * Applies (q min)(qPartner minPartner) or (q min) if q and min are partners
+     */
+    private static int transpose(int point, int q, int min, int qPartner, int minPartner) {
+        if (point == q)
+            return min;
+        if (point == min)
+            return q;
+        if (qPartner == min)
+            return point;
+        if (point == qPartner)
+            return minPartner;
+        if (point == minPartner)
+            return qPartner;
+        return point;
+    }
+
+    /**
+     * Minimal points of orbits of current stabilizer of D
+     */
+    private static final class DummiesOrbits {
+        final int[] types;
+        final boolean[] upper, metric;
+        final int[] minUpper, minLower;
+
+        DummiesOrbits(int[] types, boolean[] upper, boolean[] metric, int typesCount) {
+            this.types = types;
+            this.upper = upper;
+            this.metric = metric;
+            this.minUpper = new int[typesCount];
+            this.minLower = new int[typesCount];
+        }
+
+        void update() {
+            Arrays.fill(minUpper, Integer.MAX_VALUE);
+            Arrays.fill(minLower, Integer.MAX_VALUE);
+            for (int i = 0; i < types.length; ++i) {
+                if (types[i] == -1)
+                    continue;
+                if (upper[i])
+                    minUpper[types[i]] = Math.min(minUpper[types[i]], i);
+                else
+                    minLower[types[i]] = Math.min(minLower[types[i]], i);
+            }
+        }
+
+        int min(int point) {
+            int type = types[point];
+            if (type == -1)
+                return point;
+            if (metric[type])
+                return Math.min(minUpper[type], minLower[type]);
+            return upper[point] ? minUpper[type] : minLower[type];
+        }
+    }
+
+    private static final class Entry {
+        final int[] s, d, h;
+        final boolean sSign, hSign;
+
+        Entry(int[] s, boolean sSign, int[] d, int[] h, boolean hSign) {
+            this.s = s;
+            this.sSign = sSign;
+            this.d = d;
+            this.h = h;
+            this.hSign = hSign;
+        }
+    }
+}
@@ -98,9 +98,15 @@ public class BSGSElement {
      * @see #getInverseTransversalOf(int)
      */
     public Permutation getTransversalOf(int point) {
-        Permutation transversal = getInverseTransversalOf(point).inverse();
-        assert transversal.newIndexOf(basePoint) == point;
-        return transversal;
+        final int[] inverse = Permutations.createIdentityArray(SchreierVector.length()),
+                transversal = new int[inverse.length];
+        //transversal array is used as a buffer for inverses of stabilizer generators
+        final boolean antisymmetry = compositionWithInverseTransversalInPlace(point, inverse, transversal);
+        for (int i = inverse.length - 1; i >= 0; --i)
+            transversal[inverse[i]] = i;
+        Permutation result = Permutations.createPermutationFromBuffer(antisymmetry, transversal);
+        assert result.newIndexOf(basePoint) == point;
+        return result;
     }
 
     /**
@@ -111,13 +117,34 @@ public class BSGSElement {
      * @return inverse of the element that maps this base point to the specified point.
      */
     public Permutation getInverseTransversalOf(int point) {
+        final int[] inverse = Permutations.createIdentityArray(SchreierVector.length());
+        final boolean antisymmetry = compositionWithInverseTransversalInPlace(point, inverse,
+                new int[SchreierVector.length()]);
+        return Permutations.createPermutationFromBuffer(antisymmetry, inverse);
+    }
+
+    /**
+     * Composes permutation given by its one-line notation with the inverse transversal corresponding to the specified
+     * point in place, i.e. replaces specified one-line notation of p with one-line notation of
+     * p * u<sub>&beta;</sub><sup>(-1)</sup> by walking the Schreier vector; no intermediate permutations are created.
+     *
+     * @param point   point
+     * @param oneLine one-line notation of permutation
+     * @param buffer  buffer for inverses of stabilizer generators (its length should be not less than internal degree)
+     * @return antisymmetry of the inverse transversal
+     */
+    boolean compositionWithInverseTransversalInPlace(int point, final int[] oneLine, final int[] buffer) {
         if (SchreierVector.get(point) == -2)
             throw new IllegalArgumentException("Specified point does not belong to orbit of this base element.");
-        Permutation temp = Permutations.createIdentityPermutation(SchreierVector.length());
-        while (SchreierVector.get(temp.newIndexOf(point)) != -1)
-            temp = temp.compositionWithInverse(
-                    stabilizerGenerators.get(SchreierVector.get(temp.newIndexOf(point))));
-        return temp;
+        boolean antisymmetry = false;
+        Permutation generator;
+        while (SchreierVector.get(point) != -1) {
+            generator = stabilizerGenerators.get(SchreierVector.get(point));
+            Permutations.compositionWithInverseInPlace(generator, oneLine, buffer);
+            point = generator.newIndexOfUnderInverse(point);
+            antisymmetry ^= generator.antisymmetry();
+        }
+        return antisymmetry;
     }
 
     /**
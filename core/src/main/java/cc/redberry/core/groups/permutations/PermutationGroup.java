@@ -137,21 +137,24 @@ public final class PermutationGroup
     /*   lazy fields   */
 
     /**
-     * Base and strong generating set
+     * Base and strong generating set, base, order and induced ordering; volatile, since it may be initialized
+     * concurrently (all four values are published together)
      */
-    private List<BSGSElement> bsgs = null;
+    private volatile BSGSData bsgsData = null;
     /**
-     * Cached base array
+     * Base points which should be used first when BSGS will be calculated (set only before the group is published)
      */
-    private int[] base = null;
+    private int[] preferredBase = null;
     /**
-     * Group order
+     * BSGS with base 0, 1, ..., degree - 1 (including redundant points); volatile, since it may be initialized
+     * concurrently
      */
-    private BigInteger order = null;
+    private volatile List<BSGSElement> naturalBaseBSGS = null;
     /**
-     * Ordering induced by base
+     * Transversals of BSGS with natural base: naturalBaseTransversals[i][point] maps i to point; volatile, since it
+     * may be initialized concurrently
      */
-    private InducedOrdering ordering = null;
+    private volatile Permutation[][] naturalBaseTransversals = null;
 
     private PermutationGroup(List<Permutation> generators, int internalDegree, int b) {
         if (generators.isEmpty())
@@ -165,26 +168,20 @@ public final class PermutationGroup
     private PermutationGroup(List<BSGSElement> bsgs, int internalDegree) {
         if (bsgs.isEmpty())
             throw new IllegalArgumentException("Empty BSGS specified.");
-        this.bsgs = Collections.unmodifiableList(bsgs);
-        this.base = getBaseAsArray(bsgs);
+        this.bsgsData = new BSGSData(Collections.unmodifiableList(bsgs));
         this.internalDegree = internalDegree;
-        this.order = calculateOrder(bsgs);
         this.positionsInOrbits = new int[internalDegree];
         this.generators = bsgs.get(0).stabilizerGenerators;
         this.orbits = Permutations.orbits(bsgs.get(0).stabilizerGenerators, this.positionsInOrbits);
-        this.ordering = new InducedOrdering(base);
     }
 
     //trivial group
     private PermutationGroup() {
-        this.bsgs = AlgorithmsBase.TRIVIAL_BSGS;
-        this.base = new int[0];
+        this.bsgsData = new BSGSData(AlgorithmsBase.TRIVIAL_BSGS);
         this.internalDegree = 1;
-        this.order = BigInteger.ONE;
         this.positionsInOrbits = new int[0];
         this.generators = Collections.singletonList(Permutations.getIdentityPermutation());
         this.orbits = new int[0][0];
-        this.ordering = new InducedOrdering(base);
     }
 
     public static PermutationGroup trivialGroup() {
@@ -259,16 +256,71 @@ public final class PermutationGroup
     }
 
     /**
-     * Initializes lazy fields
+     * Returns true if base and strong generating set of this group is already calculated
      */
-    private void ensureBSGSIsInitialized() {
+    boolean isBSGSInitialized() {
+        return bsgsData != null;
+    }
+
+    /**
+     * Returns BSGS with base 0, 1, ..., degree - 1 (redundant points are kept), so that i-th element of the
+     * returned list corresponds to the pointwise stabilizer of points 0, ..., i - 1.
+     *
+     * @return BSGS with base 0, 1, ..., degree - 1
+     */
+    List<BSGSElement> getBSGSWithNaturalBase() {
+        List<BSGSElement> bsgs = naturalBaseBSGS;
         if (bsgs == null) {
+            if (isTrivial())
+                bsgs = TRIVIAL_BSGS;
+            else {
+                ArrayList<BSGSCandidateElement> candidate = getBSGSCandidate();
+                AlgorithmsBacktrack.rebaseWithRedundancy(candidate,
+                        ArraysUtils.getSeriesFrom0(internalDegree), internalDegree);
+                bsgs = Collections.<BSGSElement>unmodifiableList(asBSGSList(candidate));
+            }
+            naturalBaseBSGS = bsgs;
+        }
+        return bsgs;
+    }
+
+    /**
+     * Returns transversals of BSGS with base 0, 1, ..., degree - 1, i.e. i-th element of the returned array contains
+     * at position {@code point} an element of the pointwise stabilizer of points 0, ..., i - 1 which maps i to
+     * {@code point} (or null if there is no such element).
+     *
+     * @return transversals of BSGS with base 0, 1, ..., degree - 1
+     * @see #getBSGSWithNaturalBase()
+     */
+    Permutation[][] getTransversalsWithNaturalBase() {
+        Permutation[][] transversals = naturalBaseTransversals;
+        if (transversals == null) {
+            List<BSGSElement> bsgs = getBSGSWithNaturalBase();
+            transversals = new Permutation[bsgs.size()][];
+            for (int i = 0; i < transversals.length; ++i) {
+                BSGSElement element = bsgs.get(i);
+                transversals[i] = new Permutation[internalDegree];
+                for (int j = element.orbitSize() - 1; j >= 0; --j)
+                    transversals[i][element.getOrbitPoint(j)] = element.getTransversalOf(element.getOrbitPoint(j));
+            }
+            naturalBaseTransversals = transversals;
+        }
+        return transversals;
+    }
+
+    /**
+     * Initializes lazy fields (BSGS, base, order and ordering) and returns them
+     */
+    private BSGSData bsgsData() {
+        BSGSData data = bsgsData;
+        if (data == null) {
+            List<BSGSElement> bsgs;
             if (isSym0()) //if known Sym
                 bsgs = AlgorithmsBase.createSymmetricGroupBSGS(internalDegree);
             else if (isAlt0()) //if known Alt
                 bsgs = AlgorithmsBase.createAlternatingGroupBSGS(internalDegree);
-            else if (base != null)
-                bsgs = AlgorithmsBase.createBSGSList(base, generators, internalDegree);
+            else if (preferredBase != null)
+                bsgs = AlgorithmsBase.createBSGSList(preferredBase, generators, internalDegree);
             else
                 bsgs = AlgorithmsBase.createBSGSList(generators, internalDegree);
 
@@ -276,10 +328,26 @@ public final class PermutationGroup
                 bsgs = TRIVIAL_BSGS;
             else
                 bsgs = Collections.unmodifiableList(bsgs);
+            //concurrent initializers calculate equal data, so any of them can be published
+            bsgsData = data = new BSGSData(bsgs);
+        }
+        return data;
+    }
 
-            base = getBaseAsArray(bsgs);
-            order = calculateOrder(bsgs);
-            ordering = new InducedOrdering(base);
+    /**
+     * Immutable holder of lazily calculated BSGS and related data
+     */
+    private static final class BSGSData {
+        final List<BSGSElement> bsgs;
+        final int[] base;
+        final BigInteger order;
+        final InducedOrdering ordering;
+
+        BSGSData(List<BSGSElement> bsgs) {
+            this.bsgs = bsgs;
+            this.base = getBaseAsArray(bsgs);
+            this.order = calculateOrder(bsgs);
+            this.ordering = new InducedOrdering(base);
         }
     }
 
@@ -497,13 +565,14 @@ public final class PermutationGroup
     public PermutationGroup union(List<Permutation> generators) {
         if (isTrivial())
             return createPermutationGroup(generators);
-        if (bsgs != null)
+        BSGSData data = bsgsData;
+        if (data != null)
             if (membershipTest(generators))
                 return this;
         List<Permutation> all_generators = new ArrayList<>(generators());
         all_generators.addAll(generators);
         PermutationGroup r = createPermutationGroup(all_generators);
-        r.base = base;
+        r.preferredBase = data == null ? preferredBase : data.base;
         return r;
     }
 
@@ -515,8 +584,7 @@ public final class PermutationGroup
      * @return base and strong generating set of this group
      */
     public List<BSGSElement> getBSGS() {
-        ensureBSGSIsInitialized();
-        return bsgs;
+        return bsgsData().bsgs;
     }
 
     /**
@@ -525,8 +593,7 @@ public final class PermutationGroup
      * @return base of this group
      */
     public int[] getBase() {
-        ensureBSGSIsInitialized();
-        return base.clone();
+        return bsgsData().base.clone();
     }
 
     /**
@@ -535,8 +602,7 @@ public final class PermutationGroup
      * @return reference to base array
      */
     private int[] base() {
-        ensureBSGSIsInitialized();
-        return base;
+        return bsgsData().base;
     }
 
     /**
@@ -545,8 +611,7 @@ public final class PermutationGroup
      * @return the order of this group
      */
     public BigInteger order() {
-        ensureBSGSIsInitialized();
-        return order;
+        return bsgsData().order;
     }
 
     /**
@@ -555,8 +620,7 @@ public final class PermutationGroup
      * @return ordering on &Omega;(degree) induced by a base of this group
      */
     public InducedOrdering ordering() {
-        ensureBSGSIsInitialized();
-        return ordering;
+        return bsgsData().ordering;
     }
 
     /**
@@ -1081,9 +1145,9 @@ public final class PermutationGroup
         if (group.isTrivial())
             return this;
 
-        if (bsgs == null && group.bsgs != null)
+        if (bsgsData == null && group.bsgsData != null)
             return group.union(generators());
-        if (group.bsgs == null)
+        if (group.bsgsData == null)
             return union(group.generators());
 
         if (containsSubgroup(group))
@@ -1101,7 +1165,7 @@ public final class PermutationGroup
         generators.addAll(generators());
         generators.addAll(group.generators());
         PermutationGroup r = createPermutationGroup(generators);
-        r.base = base;
+        r.preferredBase = base;
         return r;
     }
 
@@ -1243,7 +1307,6 @@ public final class PermutationGroup
      */
     @Override
     public Iterator<Permutation> iterator() {
-        ensureBSGSIsInitialized();
         if (internalDegree == 1)
             return new SingleIterator<>(Permutations.getIdentityPermutation());
         return new PermIterator(); //new OutputPort.PortIterator<>(new BacktrackSearch(bsgs));
@@ -1253,11 +1316,12 @@ public final class PermutationGroup
      * An iterator over all permutations in group
      */
     private final class PermIterator implements Iterator<Permutation> {
+        private final List<BSGSElement> bsgs = getBSGS();
         private final IntTuplesPort tuplesPort;
         int[] tuple;
 
         public PermIterator() {
-            final int[] orbitSizes = new int[base.length];
+            final int[] orbitSizes = new int[bsgs.size()];
             for (int i = 0; i < orbitSizes.length; ++i)
                 orbitSizes[i] = bsgs.get(i).orbitSize();
             tuplesPort = new IntTuplesPort(orbitSizes);
@@ -1422,7 +1486,7 @@ public final class PermutationGroup
     public PermutationGroup conjugate(Permutation permutation) {
         if (this.isTrivial())
             return this;
-        if (bsgs == null) {
+        if (bsgsData == null) {
             ArrayList<Permutation> newGens = new ArrayList<>(generators().size());
             for (Permutation p : generators())
                 newGens.add(permutation.conjugate(p));
@@ -1478,14 +1542,14 @@ public final class PermutationGroup
      */
     @Override
     public int hashCode() {
-        int hash = order.hashCode();
+        int hash = order().hashCode();
         for (int[] orbit : orbits)
             hash += HashFunctions.JenkinWang32shift(orbit.length);
         return hash;
     }
 
     public int hashCodeIncludeOrbitPoints() {
-        int hash = order.hashCode();
+        int hash = order().hashCode();
         for (int[] orbit : orbits)
             for (int p : orbit)
                 hash += HashFunctions.JenkinWang32shift(p);
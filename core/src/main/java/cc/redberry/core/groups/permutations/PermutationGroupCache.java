@@ -0,0 +1,253 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.groups.permutations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide bounded cache of permutation groups keyed by the set of generators. Groups with the same set of
+ * generators (to within the order and repetitions of generators, identity generators are ignored) are represented by
+ * a single instance, so their base and strong generating set (and all other lazily calculated data like order, orbits
+ * etc.) is calculated only once. The cache is used by {@link cc.redberry.core.indices.IndicesSymmetries},
+ * {@link cc.redberry.core.transformations.symmetrization.SymmetrizeTransformation} (and hence by
+ * {@link cc.redberry.core.tensorgenerator.TensorGenerator}), so that many simple tensors with the same structure of
+ * indices and symmetries share the same group. When the cache overflows, the least recently used group is evicted.
+ * This class is thread-safe.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class PermutationGroupCache {
+    /**
+     * Default maximal number of retained groups
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    private static final PermutationGroupCache INSTANCE = new PermutationGroupCache(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, PermutationGroup> map;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), avoided = new AtomicLong();
+    private long evictions = 0;
+
+    private PermutationGroupCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<Key, PermutationGroup>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PermutationGroup> eldest) {
+                if (size() > PermutationGroupCache.this.maxSize) {
+                    ++evictions;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns process-wide cache of permutation groups.
+     *
+     * @return process-wide cache of permutation groups
+     */
+    public static PermutationGroupCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns permutation group with a given generating set; if there is a cached group with the same set of
+     * generators, it will be returned.
+     *
+     * @param generators generating set
+     * @return permutation group with a given generating set
+     * @see PermutationGroup#createPermutationGroup(java.util.List)
+     */
+    public PermutationGroup get(List<Permutation> generators) {
+        int degree = Permutations.internalDegree(generators);
+        if (degree == 0)
+            return PermutationGroup.trivialGroup();
+        Key key = new Key(generators, degree);
+        PermutationGroup group;
+        synchronized (this) {
+            group = map.get(key);
+        }
+        if (group != null) {
+            hits.incrementAndGet();
+            if (group.isBSGSInitialized())
+                avoided.incrementAndGet();
+            return group;
+        }
+        misses.incrementAndGet();
+        group = PermutationGroup.createPermutationGroup(Arrays.asList(key.generators));
+        synchronized (this) {
+            PermutationGroup existing = map.get(key);
+            if (existing != null)
+                return existing;
+            map.put(key, group);
+        }
+        return group;
+    }
+
+    /**
+     * Returns permutation group with a given generating set; if there is a cached group with the same set of
+     * generators, it will be returned.
+     *
+     * @param generators generating set
+     * @return permutation group with a given generating set
+     * @see PermutationGroup#createPermutationGroup(Permutation...)
+     */
+    public PermutationGroup get(Permutation... generators) {
+        return get(Arrays.asList(generators));
+    }
+
+    /**
+     * Returns the maximal number of retained groups.
+     *
+     * @return maximal number of retained groups
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the current number of retained groups.
+     *
+     * @return current number of retained groups
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns the number of groups evicted from this cache due to size limit.
+     *
+     * @return number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of queries answered from cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of queries that were not found in cache and thus required creation of a new group.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of cache hits which returned a group with already calculated base and strong generating
+     * set, i.e. the number of avoided runs of Schreier-Sims algorithm (this is a lower bound, since BSGS of groups
+     * returned before its calculation will be shared as well).
+     *
+     * @return number of avoided runs of Schreier-Sims algorithm
+     */
+    public long getAvoidedSchreierSimsRuns() {
+        return avoided.get();
+    }
+
+    /**
+     * Returns the ratio of hits to the total number of queries (or 0 if there were no queries).
+     *
+     * @return hit rate
+     */
+    public double getHitRate() {
+        long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? 0 : ((double) hits) / total;
+    }
+
+    /**
+     * Resets hits, misses and avoided runs counters.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        avoided.set(0);
+    }
+
+    /**
+     * Removes all cached groups.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "PermutationGroupCache{size=" + size() + ", maxSize=" + maxSize + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", avoidedSchreierSimsRuns=" + getAvoidedSchreierSimsRuns()
+                + ", evictions=" + getEvictions() + "}";
+    }
+
+    private static final class Key {
+        /**
+         * Sorted distinct non-identity generators
+         */
+        final Permutation[] generators;
+        final int degree;
+        final int hash;
+
+        Key(List<Permutation> generators, int degree) {
+            List<Permutation> list = new ArrayList<>(generators.size());
+            for (Permutation p : generators)
+                if (!p.isIdentity() || p.antisymmetry())
+                    list.add(p);
+            Collections.sort(list);
+            int size = 0;
+            for (int i = 0; i < list.size(); ++i)
+                if (size == 0 || !list.get(i).equals(list.get(size - 1)))
+                    list.set(size++, list.get(i));
+            this.generators = list.subList(0, size).toArray(new Permutation[size]);
+            this.degree = degree;
+            this.hash = 31 * Arrays.hashCode(this.generators) + degree;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return degree == key.degree && Arrays.equals(generators, key.generators);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1030,6 +1030,108 @@ public final class Permutations {
         return new PermutationOneLineInt(antisymmetry, oneLine);
     }
 
+    /**
+     * Creates permutation from specified buffer which contains a correct one-line notation (e.g. filled with
+     * {@link #compositionInPlace(Permutation, int[])} and {@link #composition(java.util.List, int[])}); the correctness
+     * of one-line notation is not checked and buffer is copied, so it can be safely reused.
+     *
+     * @param antisymmetry if true, then antisymmetry will be created
+     * @param buffer       array that represents permutation in one line notation
+     * @return an instance of {@code Permutation}
+     * @throws InconsistentGeneratorsException if antisymmetry is true and permutation order is odd
+     */
+    static Permutation createPermutationFromBuffer(boolean antisymmetry, int[] buffer) {
+        final int internalDegree = internalDegree(buffer);
+        if (internalDegree == 0 && !antisymmetry)
+            return createIdentityPermutation(buffer.length);
+        if (buffer.length <= Byte.MAX_VALUE)
+            return new PermutationOneLineByte(internalDegree == 0, antisymmetry,
+                    (byte) internalDegree, ArraysUtils.int2byte(buffer));
+        if (buffer.length <= Short.MAX_VALUE)
+            return new PermutationOneLineShort(internalDegree == 0, antisymmetry,
+                    (short) internalDegree, ArraysUtils.int2short(buffer));
+        return new PermutationOneLineInt(internalDegree == 0, antisymmetry, internalDegree, buffer.clone());
+    }
+
+    /**
+     * Calculates composition {@code p_0 * p_1 * ... * p_n} of specified permutations (i.e. {@code p_0} is applied
+     * first) and writes its one-line notation into specified preallocated buffer without creating intermediate
+     * permutations. The resulting permutation can be created with {@link #createPermutation(boolean, int...)}.
+     *
+     * @param permutations permutations
+     * @param result       buffer for one-line notation of composition
+     * @return antisymmetry of composition
+     * @throws IllegalArgumentException if length of buffer is less than degree of some permutation
+     */
+    public static boolean composition(final List<? extends Permutation> permutations, final int[] result) {
+        if (internalDegree(permutations) > result.length)
+            throw new IllegalArgumentException("Buffer is too small.");
+        for (int i = 0; i < result.length; ++i)
+            result[i] = i;
+        boolean antisymmetry = false;
+        for (Permutation permutation : permutations) {
+            compositionInPlace(permutation, result);
+            antisymmetry ^= permutation.antisymmetry();
+        }
+        return antisymmetry;
+    }
+
+    /**
+     * Applies specified permutation to each element of specified array in place, i.e. replaces each {@code oneLine[i]}
+     * with {@code permutation.newIndexOf(oneLine[i])}. If specified array is a one-line notation of some permutation
+     * {@code p}, then after invocation it will contain one-line notation of {@code p * permutation} (the sign of the
+     * result should be tracked by the caller). This method does not allocate any memory.
+     *
+     * @param permutation permutation
+     * @param oneLine     array of points (e.g. one-line notation of some permutation)
+     */
+    static void compositionInPlace(final Permutation permutation, final int[] oneLine) {
+        if (permutation.isIdentity())
+            return;
+        if (permutation instanceof PermutationOneLineByte) {
+            final byte[] p = ((PermutationOneLineByte) permutation).permutation;
+            for (int i = oneLine.length - 1; i >= 0; --i)
+                if (oneLine[i] < p.length)
+                    oneLine[i] = p[oneLine[i]];
+        } else if (permutation instanceof PermutationOneLineShort) {
+            final short[] p = ((PermutationOneLineShort) permutation).permutation;
+            for (int i = oneLine.length - 1; i >= 0; --i)
+                if (oneLine[i] < p.length)
+                    oneLine[i] = p[oneLine[i]];
+        } else if (permutation instanceof PermutationOneLineInt) {
+            final int[] p = ((PermutationOneLineInt) permutation).permutation;
+            for (int i = oneLine.length - 1; i >= 0; --i)
+                if (oneLine[i] < p.length)
+                    oneLine[i] = p[oneLine[i]];
+        } else
+            for (int i = oneLine.length - 1; i >= 0; --i)
+                oneLine[i] = permutation.newIndexOf(oneLine[i]);
+    }
+
+    /**
+     * Applies the inverse of specified permutation to each element of specified array in place, i.e. replaces each
+     * {@code oneLine[i]} with {@code permutation.newIndexOfUnderInverse(oneLine[i])}. If specified array is a one-line
+     * notation of some permutation {@code p}, then after invocation it will contain one-line notation of
+     * {@code p * permutation.inverse()}. The inverse is written into specified preallocated buffer, so this method
+     * does not allocate any memory.
+     *
+     * @param permutation permutation
+     * @param oneLine     array of points (e.g. one-line notation of some permutation)
+     * @param inverse     buffer for one-line notation of the inverse (its length should be not less than
+     *                    {@code permutation.degree()})
+     */
+    static void compositionWithInverseInPlace(final Permutation permutation, final int[] oneLine,
+                                              final int[] inverse) {
+        if (permutation.isIdentity())
+            return;
+        final int degree = permutation.degree();
+        for (int i = degree - 1; i >= 0; --i)
+            inverse[permutation.newIndexOf(i)] = i;
+        for (int i = oneLine.length - 1; i >= 0; --i)
+            if (oneLine[i] < degree)
+                oneLine[i] = inverse[oneLine[i]];
+    }
+
     /**
      * Permutes specified array according to specified permutation and returns the result.
      *
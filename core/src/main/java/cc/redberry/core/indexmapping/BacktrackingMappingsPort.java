@@ -0,0 +1,420 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.indexmapping;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.indices.InconsistentIndicesException;
+import cc.redberry.core.indices.IndicesSymmetries;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.indices.SimpleIndices;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.tensor.Product;
+import cc.redberry.core.tensor.ProductContent;
+import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.utils.OutputPort;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * Alternative engine for searching of mappings of indices of simple tensors and products of simple tensors. In
+ * contrast to the chain of providers (see {@link ProviderProduct}, {@link PermutatorProvider}), which clones mapping
+ * buffers for each candidate, this port keeps the whole state of search in primitive arrays allocated once per search
+ * and performs backtracking explicitly, by undoing changes recorded in a trail. Mapping buffers are allocated only
+ * for the resulting mappings.
+ *
+ * <p>The port produces the same set of mappings as {@link IndexMappings#createPortOfBuffers(IndexMappingBuffer,
+ * Tensor, Tensor)}, but possibly in a different order. It is used if enabled via {@link
+ * cc.redberry.core.context.Context#setBacktrackingIndexMappings(boolean)}.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+final class BacktrackingMappingsPort implements OutputPort<IndexMappingBuffer> {
+    /**
+     * Maximal order of indices symmetry group which elements are enumerated
+     */
+    private static final int MAX_GROUP_ORDER = 1024;
+
+    private final IndexMappingBuffer initial;
+    private final boolean factorSign;
+    private final SimpleTensor[] from, to;
+    /**
+     * Mapping of vertices: i-th vertex is matched at level {@code order[i]}; vertex can be mapped on vertices from
+     * {@code stretchFrom[i]} (inclusive) to {@code stretchTo[i]} (exclusive)
+     */
+    private final int[] order, stretchFrom, stretchTo;
+    /**
+     * Symmetries of vertices ({@code null} for trivial symmetries) and their signs
+     */
+    private final int[][][] permutations;
+    private final boolean[][] antisymmetries;
+
+    //state of indices
+    /**
+     * Sorted names (with types) of indices of {@code from}
+     */
+    private final int[] names;
+    /**
+     * Index name mapped to the corresponding name (or -1) and states (see {@link IndexMappingBufferRecord})
+     */
+    private final int[] toNames;
+    private final byte[] states;
+    /**
+     * Names fixed by the initial buffer (or -1)
+     */
+    private final int[] fixed;
+    /**
+     * Trail of changes: slots and previous states
+     */
+    private final int[] trailSlots, trailNames;
+    private final byte[] trailStates;
+    private int trailSize = 0;
+
+    //state of search
+    private final boolean[] used;
+    private final int[] candidate, permutation, chosen, marks;
+    private final boolean[] signs;
+    private int level = 0;
+    private boolean finished = false;
+
+    private BacktrackingMappingsPort(IndexMappingBuffer initial, boolean factorSign,
+                                     SimpleTensor[] from, SimpleTensor[] to, int[] vertexHashes) {
+        this.initial = initial;
+        this.factorSign = factorSign;
+        this.from = from;
+        this.to = to;
+        final int size = from.length;
+
+        //matching singletons first, then stretches of equal vertices in the order of increasing length
+        stretchFrom = new int[size];
+        stretchTo = new int[size];
+        int i, j, begin = 0, totalIndices = 0;
+        for (i = 1; i <= size; ++i)
+            if (i == size || vertexHashes[i] != vertexHashes[i - 1]) {
+                for (j = begin; j < i; ++j) {
+                    stretchFrom[j] = begin;
+                    stretchTo[j] = i;
+                }
+                begin = i;
+            }
+        order = new int[size];
+        for (i = 0, j = 0; j < size; ++i)
+            for (int k = 0; k < size; ++k)
+                if (stretchTo[k] - stretchFrom[k] == i + 1)
+                    order[j++] = k;
+
+        //symmetries
+        permutations = new int[size][][];
+        antisymmetries = new boolean[size][];
+        final IdentityHashMap<IndicesSymmetries, Object[]> cache = new IdentityHashMap<>();
+        for (i = 0; i < size; ++i) {
+            SimpleIndices indices = from[i].getIndices();
+            totalIndices += indices.size();
+            if (indices.size() <= 1 || indices.getSymmetries().isTrivial())
+                continue;
+            Object[] symmetries = cache.get(indices.getSymmetries());
+            if (symmetries == null) {
+                symmetries = enumerate(indices.getSymmetries(), indices.size());
+                cache.put(indices.getSymmetries(), symmetries);
+            }
+            permutations[i] = (int[][]) symmetries[0];
+            antisymmetries[i] = (boolean[]) symmetries[1];
+        }
+
+        //slots of index names
+        int[] allNames = new int[totalIndices];
+        int pointer = 0;
+        for (SimpleTensor t : from)
+            for (i = 0; i < t.getIndices().size(); ++i)
+                allNames[pointer++] = IndicesUtils.getNameWithType(t.getIndices().get(i));
+        Arrays.sort(allNames);
+        pointer = 0;
+        for (i = 0; i < allNames.length; ++i)
+            if (i == 0 || allNames[i] != allNames[i - 1])
+                allNames[pointer++] = allNames[i];
+        names = Arrays.copyOf(allNames, pointer);
+        toNames = new int[names.length];
+        Arrays.fill(toNames, -1);
+        states = new byte[names.length];
+        fixed = new int[names.length];
+        Arrays.fill(fixed, -1);
+        if (initial instanceof IndexMappingBufferTester)
+            for (i = 0; i < names.length; ++i)
+                fixed[i] = ((IndexMappingBufferTester) initial).fixedMapping(names[i]);
+        trailSlots = new int[totalIndices];
+        trailNames = new int[totalIndices];
+        trailStates = new byte[totalIndices];
+
+        used = new boolean[size];
+        candidate = new int[size];
+        permutation = new int[size];
+        chosen = new int[size];
+        Arrays.fill(chosen, -1);
+        marks = new int[size];
+        signs = new boolean[size];
+    }
+
+    private BacktrackingMappingsPort() {
+        this.initial = null;
+        this.factorSign = false;
+        this.from = this.to = null;
+        this.order = this.stretchFrom = this.stretchTo = null;
+        this.permutations = null;
+        this.antisymmetries = null;
+        this.names = this.toNames = this.fixed = null;
+        this.states = null;
+        this.trailSlots = this.trailNames = null;
+        this.trailStates = null;
+        this.used = null;
+        this.candidate = this.permutation = this.chosen = this.marks = null;
+        this.signs = null;
+        this.finished = true;
+    }
+
+    private static Object[] enumerate(IndicesSymmetries symmetries, int size) {
+        final int order = symmetries.getPermutationGroup().order().intValue();
+        final int[][] permutations = new int[order][];
+        final boolean[] antisymmetries = new boolean[order];
+        int i = 0;
+        Iterator<Permutation> iterator = symmetries.getPermutationGroup().iterator();
+        while (iterator.hasNext()) {
+            Permutation p = iterator.next();
+            permutations[i] = new int[size];
+            for (int j = 0; j < permutations[i].length; ++j)
+                permutations[i][j] = p.newIndexOf(j);
+            antisymmetries[i++] = p.antisymmetry();
+        }
+        return new Object[]{permutations, antisymmetries};
+    }
+
+    /**
+     * Returns true if specified tensor is supported by this engine.
+     */
+    private static boolean isSupported(Tensor t) {
+        if (t.getClass() == SimpleTensor.class)
+            return isSupported((SimpleTensor) t);
+        if (!(t instanceof Product))
+            return false;
+        Product p = (Product) t;
+        if (p.sizeWithoutFactor() != p.sizeOfDataPart())
+            return false;
+        for (int i = p.sizeOfDataPart() - 1; i >= 0; --i) {
+            Tensor d = p.getWithoutFactor(i);
+            if (d.getClass() != SimpleTensor.class || !isSupported((SimpleTensor) d))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isSupported(SimpleTensor t) {
+        SimpleIndices indices = t.getIndices();
+        return indices.size() <= 1 || indices.getSymmetries().isTrivial()
+                || indices.getSymmetries().getPermutationGroup().order().compareTo(BigInteger.valueOf(MAX_GROUP_ORDER)) <= 0;
+    }
+
+    /**
+     * Creates port of mappings or returns null if specified tensors or buffer are not supported by this engine.
+     *
+     * @param buffer initial buffer (should be empty)
+     * @param from   from tensor
+     * @param to     to tensor
+     * @return port of mappings or null if specified tensors or buffer are not supported by this engine
+     */
+    static OutputPort<IndexMappingBuffer> create(IndexMappingBuffer buffer, Tensor from, Tensor to) {
+        if (!(buffer instanceof IndexMappingBufferImpl || buffer instanceof IndexMappingBufferTester)
+                || !buffer.isEmpty())
+            return null;
+        if (from.getClass() != to.getClass() || !isSupported(from) || !isSupported(to))
+            return null;
+        if (from.hashCode() != to.hashCode())
+            return new BacktrackingMappingsPort();
+
+        if (from instanceof SimpleTensor) {
+            if (((SimpleTensor) from).getName() != ((SimpleTensor) to).getName())
+                return new BacktrackingMappingsPort();
+            return new BacktrackingMappingsPort(buffer, false,
+                    new SimpleTensor[]{(SimpleTensor) from}, new SimpleTensor[]{(SimpleTensor) to}, new int[1]);
+        }
+
+        Product pFrom = (Product) from, pTo = (Product) to;
+        if (pFrom.sizeWithoutFactor() != pTo.sizeWithoutFactor())
+            return new BacktrackingMappingsPort();
+        Complex fFrom = pFrom.getFactor(), fTo = pTo.getFactor();
+        boolean factorSign;
+        if (fFrom.equals(fTo))
+            factorSign = false;
+        else if (fFrom.equals(fTo.negate()))
+            factorSign = true;
+        else
+            return new BacktrackingMappingsPort();
+        ProductContent fromContent = pFrom.getContent(), toContent = pTo.getContent();
+        if (!fromContent.compatibleWithGraph(toContent))
+            return new BacktrackingMappingsPort();
+
+        final int size = fromContent.size();
+        final SimpleTensor[] fromData = new SimpleTensor[size], toData = new SimpleTensor[size];
+        final int[] vertexHashes = new int[size];
+        for (int i = 0; i < size; ++i) {
+            fromData[i] = (SimpleTensor) fromContent.get(i);
+            toData[i] = (SimpleTensor) toContent.get(i);
+            vertexHashes[i] = fromContent.getVertexHash(i);
+        }
+        return new BacktrackingMappingsPort(buffer, factorSign, fromData, toData, vertexHashes);
+    }
+
+    @Override
+    public IndexMappingBuffer take() {
+        if (finished)
+            return null;
+        if (!advance()) {
+            finished = true;
+            return null;
+        }
+        return export();
+    }
+
+    /**
+     * Finds next complete mapping of vertices.
+     */
+    private boolean advance() {
+        while (level >= 0) {
+            if (tryNext(level)) {
+                if (level == order.length - 1)
+                    return true;
+                ++level;
+                candidate[level] = 0;
+                permutation[level] = 0;
+                marks[level] = trailSize;
+            } else
+                --level;
+        }
+        return false;
+    }
+
+    /**
+     * Tries next alternative (pair of vertex and symmetry) at specified level.
+     */
+    private boolean tryNext(int level) {
+        undo(marks[level]);
+        if (chosen[level] != -1) {
+            used[chosen[level]] = false;
+            chosen[level] = -1;
+        }
+        final int vertex = order[level];
+        final int[][] perms = permutations[vertex];
+        final int permsCount = perms == null ? 1 : perms.length;
+        int target;
+        while ((target = stretchFrom[vertex] + candidate[level]) < stretchTo[vertex]) {
+            if (!used[target] && from[vertex].getName() == to[target].getName())
+                while (permutation[level] < permsCount) {
+                    int p = permutation[level]++;
+                    if (mapVertex(from[vertex].getIndices(), to[target].getIndices(),
+                            perms == null ? null : perms[p])) {
+                        used[target] = true;
+                        chosen[level] = target;
+                        signs[level] = perms != null && antisymmetries[vertex][p];
+                        return true;
+                    }
+                    undo(marks[level]);
+                }
+            ++candidate[level];
+            permutation[level] = 0;
+        }
+        return false;
+    }
+
+    private boolean mapVertex(SimpleIndices fromIndices, SimpleIndices toIndices, int[] permutation) {
+        if (fromIndices.size() != toIndices.size())
+            return false;
+        for (int i = 0; i < fromIndices.size(); ++i)
+            if (!tryMap(fromIndices.get(i), toIndices.get(permutation == null ? i : permutation[i])))
+                return false;
+        return true;
+    }
+
+    /**
+     * Same as {@link IndexMappingBufferImpl#tryMap(int, int)} (or {@link IndexMappingBufferTester#tryMap(int, int)}
+     * for fixed indices), but with recording of changes in the trail.
+     */
+    private boolean tryMap(int from, int to) {
+        final int slot = Arrays.binarySearch(names, IndicesUtils.getNameWithType(from));
+        if (fixed[slot] != -1)
+            return fixed[slot] == IndicesUtils.getNameWithType(to);
+
+        final int fromState = IndicesUtils.getStateInt(from), toState = IndicesUtils.getStateInt(to);
+        if (fromState != toState && !CC.isMetric(IndicesUtils.getType(from)))
+            return false;
+        final int toName = IndicesUtils.getNameWithType(to);
+        trailSlots[trailSize] = slot;
+        trailNames[trailSize] = toNames[slot];
+        trailStates[trailSize++] = states[slot];
+        if (toNames[slot] == -1) {
+            toNames[slot] = toName;
+            states[slot] = (byte) ((1 << toState) | ((fromState ^ toState) << 2));
+            return true;
+        }
+        if (toNames[slot] != toName)
+            return false;
+        if ((fromState != toState) != ((states[slot] & 0x4) == 0x4))
+            throw new InconsistentIndicesException(from);
+        if ((states[slot] & (1 << toState)) != 0)
+            throw new InconsistentIndicesException(to);
+        states[slot] |= 1 << toState;
+        return true;
+    }
+
+    private void undo(int mark) {
+        while (trailSize > mark) {
+            --trailSize;
+            toNames[trailSlots[trailSize]] = trailNames[trailSize];
+            states[trailSlots[trailSize]] = trailStates[trailSize];
+        }
+    }
+
+    /**
+     * Creates resulting buffer (without contracted indices) from the current state.
+     */
+    private IndexMappingBuffer export() {
+        IndexMappingBuffer buffer = initial.clone();
+        boolean sign = factorSign;
+        for (boolean s : signs)
+            sign ^= s;
+        buffer.addSign(sign);
+        int toRawState, fromRawState;
+        for (int i = 0; i < names.length; ++i)
+            if (toNames[i] != -1 && (states[i] & 3) != 3) {
+                //see IndexMappingBufferRecord
+                toRawState = (states[i] & 1) == 0 ? 0x80000000 : 0;
+                fromRawState = (states[i] & 4) == 0 ? toRawState : 0x80000000 ^ toRawState;
+                buffer.tryMap(IndicesUtils.setRawState(fromRawState, names[i]),
+                        IndicesUtils.setRawState(toRawState, toNames[i]));
+            }
+        return buffer;
+    }
+}
@@ -160,6 +160,18 @@ final class IndexMappingBufferTester implements IndexMappingBuffer {
         return false;
     }
 
+    /**
+     * Returns name of index on which specified index name is mapped by the fixed part of this tester or -1 if
+     * specified index is not fixed.
+     *
+     * @param fromName index name (with type)
+     * @return name of index on which specified index name is mapped or -1 if specified index is not fixed
+     */
+    int fixedMapping(int fromName) {
+        int position = Arrays.binarySearch(from, fromName);
+        return position < 0 ? -1 : to[position];
+    }
+
     @Override
     public boolean tryMap(int from, int to) {
         int fromName = IndicesUtils.getNameWithType(from),
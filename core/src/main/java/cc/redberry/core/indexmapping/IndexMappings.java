@@ -22,6 +22,7 @@
  */
 package cc.redberry.core.indexmapping;
 
+import cc.redberry.core.context.CC;
 import cc.redberry.core.indices.Indices;
 import cc.redberry.core.indices.IndicesUtils;
 import cc.redberry.core.number.Complex;
@@ -102,9 +103,23 @@ public final class IndexMappings {
      * @return mapping of indices of tensor {@code from} on tensor {@code to}
      */
     public static Mapping getFirst(Tensor from, Tensor to) {
-        IndexMappingBuffer buffer = createPortOfBuffers(from, to).take();
-        if (buffer == null) return null;
-        return new Mapping(buffer);
+        IndexMappingsCache cache;
+        if (from.hashCode() != to.hashCode() || (cache = CC.current().getIndexMappingsCache()) == null) {
+            IndexMappingBuffer buffer = createPortOfBuffers(from, to).take();
+            if (buffer == null) return null;
+            return new Mapping(buffer);
+        }
+        return getFirstCached(cache, from, to);
+    }
+
+    private static Mapping getFirstCached(IndexMappingsCache cache, Tensor from, Tensor to) {
+        Object cached = cache.get(from, to, IndexMappingsCache.GET_FIRST);
+        if (cached == null) {
+            IndexMappingBuffer buffer = createPortOfBuffers(from, to).take();
+            cached = buffer == null ? IndexMappingsCache.NO_MAPPING : new Mapping(buffer);
+            cache.put(from, to, IndexMappingsCache.GET_FIRST, cached);
+        }
+        return cached == IndexMappingsCache.NO_MAPPING ? null : (Mapping) cached;
     }
 
     /**
@@ -140,7 +155,10 @@ public final class IndexMappings {
      * @return {@code true} if there is mapping of tensor {@code from} on tensor {@code to}
      */
     public static boolean mappingExists(Tensor from, Tensor to) {
-        return getFirstBuffer(from, to) != null;
+        IndexMappingsCache cache;
+        if (from.hashCode() != to.hashCode() || (cache = CC.current().getIndexMappingsCache()) == null)
+            return getFirstBuffer(from, to) != null;
+        return getFirstCached(cache, from, to) != null;
     }
 
     /**
@@ -208,15 +226,27 @@ public final class IndexMappings {
         if (u instanceof Product && v instanceof Product)
             if (!((Product) u).getContent().iCompatibleWithGraph(((Product) v).getContent()))
                 return null;
-        int[] free = freeIndices.getAllIndices().copy();
-        IndexMappingBuffer tester = new IndexMappingBufferTester(free, false);
-        IndexMappingBuffer buffer = IndexMappings.createPortOfBuffers(tester, u, v).take();
-        if (buffer == null)
-            return null;
-        return buffer.getSign();
+        return compare1Cached(u, v, IndexMappingsCache.COMPARE1);
     }
 
     public static Boolean compare1_withoutCheck(Tensor u, Tensor v) {
+        return compare1Cached(u, v, IndexMappingsCache.COMPARE1_WITHOUT_CHECK);
+    }
+
+    private static Boolean compare1Cached(Tensor u, Tensor v, byte query) {
+        IndexMappingsCache cache;
+        if (u.hashCode() != v.hashCode() || (cache = CC.current().getIndexMappingsCache()) == null)
+            return compare10(u, v);
+        Object cached = cache.get(u, v, query);
+        if (cached == null) {
+            Boolean result = compare10(u, v);
+            cache.put(u, v, query, result == null ? IndexMappingsCache.NO_MAPPING : result);
+            return result;
+        }
+        return cached == IndexMappingsCache.NO_MAPPING ? null : (Boolean) cached;
+    }
+
+    private static Boolean compare10(Tensor u, Tensor v) {
         Indices freeIndices = u.getIndices().getFree();
         int[] free = freeIndices.getAllIndices().copy();
         IndexMappingBuffer tester = new IndexMappingBufferTester(free, false);
@@ -291,6 +321,11 @@ public final class IndexMappings {
      */
     static OutputPort<IndexMappingBuffer> createPortOfBuffers(final IndexMappingBuffer buffer,
                                                               final Tensor from, final Tensor to) {
+        if (CC.current().isBacktrackingIndexMappings()) {
+            OutputPort<IndexMappingBuffer> port = BacktrackingMappingsPort.create(buffer, from, to);
+            if (port != null)
+                return port;
+        }
         final IndexMappingProvider provider = createPort(IndexMappingProvider.Util.singleton(buffer), from, to);
         provider.tick();
         return new MappingsPortRemovingContracted(provider);
@@ -0,0 +1,222 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.indexmapping;
+
+import cc.redberry.core.tensor.Tensor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded memoizing cache of results of {@link IndexMappings#getFirst(Tensor, Tensor)},
+ * {@link IndexMappings#mappingExists(Tensor, Tensor)}, {@link IndexMappings#compare1(Tensor, Tensor)} and
+ * {@link IndexMappings#compare1_withoutCheck(Tensor, Tensor)}. Results (including "no mapping" results) are keyed by
+ * the identities of the pair of tensors, so the cache is effective when the same tensor instances are compared
+ * repeatedly (e.g. while collecting like terms in sums or when interning of tensors is enabled).
+ * <p/>
+ * <p>The cache is disabled by default; it can be enabled per context via
+ * {@link cc.redberry.core.context.Context#setIndexMappingsCache(IndexMappingsCache)}. When the cache overflows, the
+ * eldest entry is evicted: either least recently used ({@link #lru(int)}) or least recently inserted
+ * ({@link #fifo(int)}). Since entries hold strong references to the tensors, the maximal size also bounds memory
+ * retained by the cache. This class is thread-safe.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class IndexMappingsCache {
+    static final byte GET_FIRST = 0, COMPARE1 = 1, COMPARE1_WITHOUT_CHECK = 2;
+    /**
+     * Cached "no mapping" result
+     */
+    static final Object NO_MAPPING = new Object();
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, Object> map;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private long evictions = 0;
+
+    private IndexMappingsCache(final int maxSize, boolean accessOrder) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Non positive size: " + maxSize);
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<Key, Object>(16, 0.75f, accessOrder) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() > IndexMappingsCache.this.maxSize) {
+                    ++evictions;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Creates cache which retains at most specified number of results and evicts least recently used ones.
+     *
+     * @param maxSize maximal number of retained results
+     * @return cache with least-recently-used eviction
+     * @throws IllegalArgumentException if {@code maxSize <= 0}
+     */
+    public static IndexMappingsCache lru(int maxSize) {
+        return new IndexMappingsCache(maxSize, true);
+    }
+
+    /**
+     * Creates cache which retains at most specified number of results and evicts the eldest ones (in order of
+     * insertion).
+     *
+     * @param maxSize maximal number of retained results
+     * @return cache with first-in-first-out eviction
+     * @throws IllegalArgumentException if {@code maxSize <= 0}
+     */
+    public static IndexMappingsCache fifo(int maxSize) {
+        return new IndexMappingsCache(maxSize, false);
+    }
+
+    /**
+     * Returns cached result or null if there is no cached result for specified query.
+     */
+    Object get(Tensor from, Tensor to, byte query) {
+        Object result;
+        synchronized (this) {
+            result = map.get(new Key(from, to, query));
+        }
+        if (result == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Puts result of specified query (null results should be passed as {@link #NO_MAPPING}).
+     */
+    synchronized void put(Tensor from, Tensor to, byte query, Object result) {
+        map.put(new Key(from, to, query), result);
+    }
+
+    /**
+     * Returns the maximal number of retained results.
+     *
+     * @return maximal number of retained results
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the current number of retained results.
+     *
+     * @return current number of retained results
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns the number of results evicted from this cache due to size limit.
+     *
+     * @return number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of queries answered from cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of queries that were not found in cache and thus required mapping search.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the ratio of hits to the total number of queries (or 0 if there were no queries).
+     *
+     * @return hit rate
+     */
+    public double getHitRate() {
+        long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? 0 : ((double) hits) / total;
+    }
+
+    /**
+     * Resets hits and misses counters.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "IndexMappingsCache{size=" + size() + ", maxSize=" + maxSize + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "}";
+    }
+
+    private static final class Key {
+        final Tensor from, to;
+        final byte query;
+        final int hash;
+
+        Key(Tensor from, Tensor to, byte query) {
+            this.from = from;
+            this.to = to;
+            this.query = query;
+            this.hash = (31 * System.identityHashCode(from) + System.identityHashCode(to)) * 3 + query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return from == key.from && to == key.to && query == key.query;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
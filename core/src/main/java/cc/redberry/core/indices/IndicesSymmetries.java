@@ -24,6 +24,7 @@ package cc.redberry.core.indices;
 
 import cc.redberry.core.groups.permutations.Permutation;
 import cc.redberry.core.groups.permutations.PermutationGroup;
+import cc.redberry.core.groups.permutations.PermutationGroupCache;
 import cc.redberry.core.groups.permutations.Permutations;
 
 import java.util.ArrayList;
@@ -152,7 +153,7 @@ public final class IndicesSymmetries {
             if (generators.isEmpty())
                 permutationGroup = PermutationGroup.trivialGroup();
             else
-                permutationGroup = PermutationGroup.createPermutationGroup(generators);
+                permutationGroup = PermutationGroupCache.getInstance().get(generators);
         }
         return permutationGroup;
     }
@@ -64,12 +64,7 @@ public final class NumberUtils {
     }
 
     public static Rational createRational(BigFraction fraction) {
-        //FUTURE investigate performance
-        if (fraction.getNumerator().equals(BigInteger.ZERO))
-            return Rational.ZERO;
-        if (BigFraction.ONE.equals(fraction))
-            return Rational.ONE;
-        return new Rational(fraction);
+        return Rational.valueOf(fraction);
     }
 
     private final static BigInteger TWO = new BigInteger("2");
@@ -40,6 +40,13 @@ import static cc.redberry.core.number.NumberUtils.*;
  * way. If argument is {@link Numeric}, the result will be {@code Numeric} too.
  * For example, 2 &#47 3 +1.0 will give 1.666666 and so on. If argument is {@code Rational}
  * number, the result will be {@code Rational} too.
+ * <p/>
+ * <p>Internally, each rational number which numerator and denominator fit into {@code long}
+ * is stored as a pair of reduced {@code long}s and all arithmetic is performed with
+ * primitive values; {@link BigFraction} is used only if some intermediate result
+ * overflows {@code long}. The representation is always canonical, i.e. any number
+ * which fits into {@code long} numerator and denominator is never stored as
+ * {@code BigFraction}.
  *
  * @author Stanislav Poslavsky
  * @see Number
@@ -124,13 +131,39 @@ public final class Rational extends Real implements Serializable {
      */
     private static final long serialVersionUID = -5630213147331578515L;
     /*
-     * rational value
+     * Marks an overflow in primitive arithmetic; Long.MIN_VALUE is never used as
+     * numerator or denominator of a small rational, so it can be safely used as a flag.
+     */
+    private static final long OVERFLOW = Long.MIN_VALUE;
+    /*
+     * rational value (if numerator and denominator do not fit into long), otherwise null
      */
     private final BigFraction fraction;
+    /*
+     * reduced numerator and positive denominator (valid only if fraction == null)
+     */
+    private final long numerator, denominator;
+
+    /*
+     * Raw constructor: numerator and denominator should be already reduced and denominator positive.
+     */
+    private Rational(long numerator, long denominator, BigFraction fraction) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+        this.fraction = fraction;
+    }
 
     public Rational(BigFraction fraction) {
         checkNotNull(fraction);
-        this.fraction = fraction;
+        if (fitsLong(fraction)) {
+            this.numerator = fraction.getNumerator().longValue();
+            this.denominator = fraction.getDenominator().longValue();
+            this.fraction = null;
+        } else {
+            this.numerator = 0;
+            this.denominator = 0;
+            this.fraction = fraction;
+        }
     }
 
     /**
@@ -138,73 +171,163 @@ public final class Rational extends Real implements Serializable {
      */
     public Rational(BigInteger num) {
         checkNotNull(num);
-        fraction = new BigFraction(num);
+        if (fitsLong(num)) {
+            this.numerator = num.longValue();
+            this.denominator = 1;
+            this.fraction = null;
+        } else {
+            this.numerator = 0;
+            this.denominator = 0;
+            this.fraction = new BigFraction(num);
+        }
     }
 
     /**
      * @see BigFraction#BigFraction(java.math.BigInteger, java.math.BigInteger)
      */
     public Rational(BigInteger num, BigInteger den) {
-        checkNotNull(num);
-        checkNotNull(den);
-        fraction = new BigFraction(num, den);
+        this(new BigFraction(checkNotNullAndGet(num), checkNotNullAndGet(den)));
     }
 
     /**
      * @see BigFraction#BigFraction(double)
      */
     public Rational(double value) throws MathIllegalArgumentException {
-        fraction = new BigFraction(value);
+        this(new BigFraction(value));
     }
 
     /**
      * @see BigFraction#BigFraction(double, double, int)
      */
     public Rational(double value, double epsilon, int maxIterations) throws FractionConversionException {
-        fraction = new BigFraction(value, epsilon, maxIterations);
+        this(new BigFraction(value, epsilon, maxIterations));
     }
 
     /**
      * @see BigFraction#BigFraction(double, int)
      */
     public Rational(double value, int maxDenominator) throws FractionConversionException {
-        fraction = new BigFraction(value, maxDenominator);
+        this(new BigFraction(value, maxDenominator));
     }
 
     /**
      * @see BigFraction#BigFraction(int)
      */
     public Rational(int num) {
-        fraction = new BigFraction(num);
+        this(num, 1, null);
     }
 
     /**
      * @see BigFraction#BigFraction(int, int)
      */
     public Rational(int num, int den) {
-        fraction = new BigFraction(num, den);
+        this((long) num, (long) den);
     }
 
     /**
      * @see BigFraction#BigFraction(long)
      */
     public Rational(long num) {
-        fraction = new BigFraction(num);
+        this.numerator = num;
+        this.denominator = 1;
+        this.fraction = num == OVERFLOW ? new BigFraction(num) : null;
     }
 
     /**
      * @see BigFraction#BigFraction(long, long)
      */
     public Rational(long num, long den) {
-        fraction = new BigFraction(num, den);
+        if (den == 0 || num == OVERFLOW || den == OVERFLOW) {
+            //BigFraction will throw exception in case of zero denominator
+            BigFraction f = new BigFraction(num, den);
+            if (fitsLong(f)) {
+                this.numerator = f.getNumerator().longValue();
+                this.denominator = f.getDenominator().longValue();
+                this.fraction = null;
+            } else {
+                this.numerator = 0;
+                this.denominator = 0;
+                this.fraction = f;
+            }
+        } else {
+            if (den < 0) {
+                num = -num;
+                den = -den;
+            }
+            long gcd = gcd(Math.abs(num), den);
+            this.numerator = num / gcd;
+            this.denominator = den / gcd;
+            this.fraction = null;
+        }
+    }
+
+    /**
+     * Returns a rational number equal to the specified {@code BigFraction} (same as {@link #Rational(BigFraction)},
+     * but returns cached instances for zero and one).
+     *
+     * @param fraction fraction
+     * @return rational number
+     */
+    static Rational valueOf(BigFraction fraction) {
+        if (fitsLong(fraction))
+            return valueOfReduced(fraction.getNumerator().longValue(), fraction.getDenominator().longValue());
+        return new Rational(0, 0, fraction);
+    }
+
+    /*
+     * Numerator and denominator should be reduced and denominator should be positive.
+     */
+    private static Rational valueOfReduced(long num, long den) {
+        if (den == 1) {
+            if (num == 0)
+                return ZERO;
+            if (num == 1)
+                return ONE;
+            if (num == -1)
+                return MINUS_ONE;
+        }
+        return new Rational(num, den, null);
+    }
+
+    private static boolean fitsLong(BigInteger bi) {
+        return bi.bitLength() < 64 && bi.longValue() != OVERFLOW;
+    }
+
+    private static boolean fitsLong(BigFraction fraction) {
+        return fitsLong(fraction.getNumerator()) && fitsLong(fraction.getDenominator());
+    }
+
+    private static <T> T checkNotNullAndGet(T o) {
+        checkNotNull(o);
+        return o;
+    }
+
+    /**
+     * Returns whether this number is stored as a pair of {@code long}s (i.e. is not a "big" rational).
+     *
+     * @return true if this number is stored as a pair of {@code long}s
+     */
+    boolean isSmall() {
+        return fraction == null;
     }
 
     public BigFraction getBigFraction() {
-        return fraction;
+        if (fraction != null)
+            return fraction;
+        return new BigFraction(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+    }
+
+    /*
+     * Replaces legacy serialized instances (which always hold BigFraction) with the canonical ones.
+     */
+    private Object readResolve() {
+        return fraction == null ? this : valueOf(fraction);
     }
 
     @Override
     public long longValue() {
+        if (fraction == null)
+            return numerator / denominator;
         if (fraction.compareTo(BIG_FRACTION_MAX_LONG) > 0
                 || fraction.compareTo(BIG_FRACTION_MIN_LONG) < 0)
             throw new RuntimeException("Long overflow.");
@@ -213,6 +336,13 @@ public final class Rational extends Real implements Serializable {
 
     @Override
     public int intValue() {
+        if (fraction == null) {
+            long q = numerator / denominator, r = numerator % denominator;
+            if (q > Integer.MAX_VALUE || (q == Integer.MAX_VALUE && r > 0)
+                    || q < Integer.MIN_VALUE || (q == Integer.MIN_VALUE && r < 0))
+                throw new RuntimeException("Integer overflow.");
+            return (int) q;
+        }
         if (fraction.compareTo(BIG_FRACTION_MAX_INTEGER) > 0
                 || fraction.compareTo(BIG_FRACTION_MIN_INTEGER) < 0)
             throw new RuntimeException("Integer overflow.");
@@ -221,16 +351,22 @@ public final class Rational extends Real implements Serializable {
 
     @Override
     public BigInteger bigIntValue() {
+        if (fraction == null)
+            return BigInteger.valueOf(numerator / denominator);
         return fraction.getNumerator().divide(fraction.getDenominator());
     }
 
     @Override
     public float floatValue() {
+        if (fraction == null)
+            return ((float) numerator) / ((float) denominator);
         return fraction.floatValue();
     }
 
     @Override
     public double doubleValue() {
+        if (fraction == null)
+            return ((double) numerator) / ((double) denominator);
         if (fraction.compareTo(BIG_FRACTION_MAX_DOUBLE) > 0
                 || fraction.compareTo(BIG_FRACTION_MIN_DOUBLE) < 0)
             throw new RuntimeException("Double overflow.");
@@ -239,24 +375,41 @@ public final class Rational extends Real implements Serializable {
 
     @Override
     public int hashCode() {
+        if (fraction == null)
+            return hashCode(numerator) * hashCode(denominator);
         return fraction.getNumerator().hashCode() * fraction.getDenominator().hashCode();
     }
 
+    /*
+     * Same as BigInteger.valueOf(value).hashCode()
+     */
+    private static int hashCode(long value) {
+        long abs = Math.abs(value);
+        int hi = (int) (abs >>> 32), lo = (int) abs;
+        int hash = hi == 0 ? lo : 31 * hi + lo;
+        return Long.signum(value) * hash;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null)
             return false;
         if (!(obj instanceof Number))
             return false;
-        if (obj instanceof Rational)
-            return fraction.equals(((Rational) obj).fraction);
-        else
+        if (obj instanceof Rational) {
+            Rational r = (Rational) obj;
+            if (fraction == null)
+                return r.fraction == null && numerator == r.numerator && denominator == r.denominator;
+            return fraction.equals(r.fraction);
+        } else
             return ((Numeric) obj).doubleValue() == doubleValue();
 
     }
 
     @Override
     public String toString() {
+        if (fraction == null)
+            return Long.toString(numerator) + (denominator == 1 ? "" : ("/" + Long.toString(denominator)));
         return fraction.getNumerator().toString() + (fraction.getDenominator().equals(BigInteger.ONE) ? "" : ("/" + fraction.getDenominator().toString()));
     }
 
@@ -270,30 +423,186 @@ public final class Rational extends Real implements Serializable {
         return false;
     }
 
+    /* ******************************* Primitive arithmetic ******************************* */
+
+    /*
+     * Greatest common divisor of two non negative numbers
+     */
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a == 0 ? 1 : a;
+    }
+
+    /*
+     * Returns a + b or OVERFLOW
+     */
+    private static long addExact(long a, long b) {
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0)
+            return OVERFLOW;
+        return r;
+    }
+
+    /*
+     * Returns a * b or OVERFLOW (a and b are never OVERFLOW)
+     */
+    private static long multiplyExact(long a, long b) {
+        long r = a * b;
+        if (((Math.abs(a) | Math.abs(b)) >>> 31) != 0 && b != 0 && r / b != a)
+            return OVERFLOW;
+        return r;
+    }
+
+    /*
+     * Returns a/b + c/d or null in case of overflow
+     */
+    private static Rational add(long a, long b, long c, long d) {
+        if (b == d) {
+            long num = addExact(a, c);
+            if (num == OVERFLOW)
+                return null;
+            if (b == 1)
+                return valueOfReduced(num, 1);
+            long gcd = gcd(Math.abs(num), b);
+            return valueOfReduced(num / gcd, b / gcd);
+        }
+        long gcd = gcd(b, d);
+        long bg = b / gcd, dg = d / gcd;
+        long ad = multiplyExact(a, dg), cb = multiplyExact(c, bg);
+        if (ad == OVERFLOW || cb == OVERFLOW)
+            return null;
+        long num = addExact(ad, cb);
+        if (num == OVERFLOW)
+            return null;
+        if (num == 0)
+            return ZERO;
+        long gcd2 = gcd(Math.abs(num), gcd);
+        long den = multiplyExact(bg, d / gcd2);
+        if (den == OVERFLOW)
+            return null;
+        return valueOfReduced(num / gcd2, den);
+    }
+
+    /*
+     * Returns (a/b) * (c/d) or null in case of overflow
+     */
+    private static Rational multiply(long a, long b, long c, long d) {
+        if (a == 0 || c == 0)
+            return ZERO;
+        long g1 = gcd(Math.abs(a), d), g2 = gcd(Math.abs(c), b);
+        long num = multiplyExact(a / g1, c / g2);
+        if (num == OVERFLOW)
+            return null;
+        long den = multiplyExact(b / g2, d / g1);
+        if (den == OVERFLOW)
+            return null;
+        return valueOfReduced(num, den);
+    }
+
+    /*
+     * Returns (a/b) / (c/d) or null in case of overflow (c should be non zero)
+     */
+    private static Rational divide(long a, long b, long c, long d) {
+        if (c < 0) {
+            c = -c;
+            d = -d;
+        }
+        return multiply(a, b, d, c);
+    }
+
+    /* ******************************* Arithmetic ******************************* */
+
+    private Rational add(Rational r) {
+        if (fraction == null && r.fraction == null) {
+            Rational result = add(numerator, denominator, r.numerator, r.denominator);
+            if (result != null)
+                return result;
+        }
+        return valueOf(getBigFraction().add(r.getBigFraction()));
+    }
+
+    private Rational subtract(Rational r) {
+        if (fraction == null && r.fraction == null) {
+            Rational result = add(numerator, denominator, -r.numerator, r.denominator);
+            if (result != null)
+                return result;
+        }
+        return valueOf(getBigFraction().subtract(r.getBigFraction()));
+    }
+
+    private Rational multiplyRational(Rational r) {
+        if (fraction == null && r.fraction == null) {
+            Rational result = multiply(numerator, denominator, r.numerator, r.denominator);
+            if (result != null)
+                return result;
+        }
+        return valueOf(getBigFraction().multiply(r.getBigFraction()));
+    }
+
+    private Rational divide(Rational r) {
+        if (fraction == null && r.fraction == null && r.numerator != 0) {
+            Rational result = divide(numerator, denominator, r.numerator, r.denominator);
+            if (result != null)
+                return result;
+        }
+        return valueOf(getBigFraction().divide(r.getBigFraction()));
+    }
+
+    private Rational addLong(long l) {
+        if (fraction == null && l != OVERFLOW) {
+            Rational result = add(numerator, denominator, l, 1);
+            if (result != null)
+                return result;
+        }
+        return valueOf(getBigFraction().add(l));
+    }
+
+    private Rational multiplyLong(long l) {
+        if (fraction == null && l != OVERFLOW) {
+            Rational result = multiply(numerator, denominator, l, 1);
+            if (result != null)
+                return result;
+        }
+        return valueOf(getBigFraction().multiply(l));
+    }
+
+    private Rational divideLong(long l) {
+        if (fraction == null && l != OVERFLOW && l != 0) {
+            Rational result = divide(numerator, denominator, l, 1);
+            if (result != null)
+                return result;
+        }
+        return valueOf(getBigFraction().divide(l));
+    }
+
     @Override
     public Real add(Real arg0) {
         checkNotNull(arg0);
         if (arg0 instanceof Numeric)
             return arg0.add(this);
-        return createRational(fraction.add(((Rational) arg0).fraction));
+        return add((Rational) arg0);
     }
 
     @Override
     public Real divide(Real arg0) {
         checkNotNull(arg0);
         if (arg0 instanceof Numeric || arg0.isZero())
-            return createNumeric(fraction.doubleValue() / arg0.doubleValue());
-        return createRational(fraction.divide(((Rational) arg0).fraction));
+            return createNumeric(doubleValue() / arg0.doubleValue());
+        return divide((Rational) arg0);
     }
 
     @Override
     public Real multiply(double d) {
-        return createNumeric(d * fraction.doubleValue());
+        return createNumeric(d * doubleValue());
     }
 
     @Override
     public Rational multiply(int arg0) {
-        return arg0 == 1 ? this : arg0 == 0 ? ZERO : new Rational(fraction.multiply(arg0));
+        return arg0 == 1 ? this : arg0 == 0 ? ZERO : multiplyLong(arg0);
     }
 
     @Override
@@ -301,166 +610,184 @@ public final class Rational extends Real implements Serializable {
         checkNotNull(arg0);
         if (arg0 instanceof Numeric)
             return arg0.multiply(this);
-        return arg0.isOne() ? this : arg0.isZero() ? ZERO : createRational(fraction.multiply(((Rational) arg0).fraction));
+        return arg0.isOne() ? this : arg0.isZero() ? ZERO : multiplyRational((Rational) arg0);
     }
 
     public Rational multiply(Rational arg0) {
         checkNotNull(arg0);
-        return arg0.isOne() ? this : arg0.isZero() ? ZERO : createRational(fraction.multiply((arg0).fraction));
+        return arg0.isOne() ? this : arg0.isZero() ? ZERO : multiplyRational(arg0);
     }
 
     @Override
     public Rational negate() {
-        return createRational(fraction.negate());
+        if (fraction == null)
+            return valueOfReduced(-numerator, denominator);
+        return valueOf(fraction.negate());
     }
 
     @Override
     public Rational reciprocal() {
-        return createRational(fraction.reciprocal());
+        if (fraction == null && numerator != 0)
+            return numerator > 0 ? valueOfReduced(denominator, numerator) : valueOfReduced(-denominator, -numerator);
+        //BigFraction will throw exception in case of zero
+        return valueOf(getBigFraction().reciprocal());
     }
 
     @Override
     public Real subtract(Real arg0) {
         checkNotNull(arg0);
         if (arg0 instanceof Numeric)
-            return new Numeric(fraction.doubleValue() - arg0.doubleValue());
-        return createRational(fraction.subtract(((Rational) arg0).fraction));
+            return new Numeric(doubleValue() - arg0.doubleValue());
+        return subtract((Rational) arg0);
     }
 
     @Override
     public Rational subtract(BigFraction fraction) {
         checkNotNull(fraction);
-        return createRational(this.fraction.subtract(fraction));
+        return valueOf(getBigFraction().subtract(fraction));
     }
 
     @Override
     public Rational subtract(long l) {
-        return l == 0 ? this : createRational(fraction.subtract(l));
+        return l == 0 ? this : l == OVERFLOW ? valueOf(getBigFraction().subtract(l)) : addLong(-l);
     }
 
     @Override
     public Rational subtract(int i) {
-        return new Rational(fraction.subtract(i));
+        return subtract((long) i);
     }
 
     @Override
     public Rational subtract(BigInteger bg) {
         NumberUtils.checkNotNull(bg);
-        return new Rational(fraction.subtract(bg));
+        return valueOf(getBigFraction().subtract(bg));
     }
 
     public Rational reduce() {
-        return new Rational(fraction.reduce());
+        //always reduced
+        return this;
     }
 
     @Override
     public Numeric pow(double exponent) {
-        return new Numeric(fraction.pow(exponent));
+        return new Numeric(getBigFraction().pow(exponent));
     }
 
     @Override
     public Rational pow(BigInteger exponent) {
         NumberUtils.checkNotNull(exponent);
-        return new Rational(fraction.pow(exponent));
+        return valueOf(getBigFraction().pow(exponent));
     }
 
     @Override
     public Rational pow(long exponent) {
-        return new Rational(fraction.pow(exponent));
+        return valueOf(getBigFraction().pow(exponent));
     }
 
     @Override
     public Rational pow(int exponent) {
-        return new Rational(fraction.pow(exponent));
+        return valueOf(getBigFraction().pow(exponent));
     }
 
     public double percentageValue() {
-        return fraction.percentageValue();
+        return multiply(100).doubleValue();
     }
 
     @Override
     public Rational multiply(BigFraction fraction) {
         NumberUtils.checkNotNull(fraction);
-        return new Rational(fraction.multiply(fraction));
+        return valueOf(getBigFraction().multiply(fraction));
     }
 
     @Override
     public Rational multiply(long l) {
-        return new Rational(fraction.multiply(l));
+        return multiplyLong(l);
     }
 
     @Override
     public Rational multiply(BigInteger bg) {
         NumberUtils.checkNotNull(bg);
-        return new Rational(fraction.multiply(bg));
+        return valueOf(getBigFraction().multiply(bg));
     }
 
     public long getNumeratorAsLong() {
+        if (fraction == null)
+            return numerator;
         return fraction.getNumeratorAsLong();
     }
 
     public int getNumeratorAsInt() {
+        if (fraction == null)
+            return (int) numerator;
         return fraction.getNumeratorAsInt();
     }
 
     public BigInteger getNumerator() {
+        if (fraction == null)
+            return BigInteger.valueOf(numerator);
         return fraction.getNumerator();
     }
 
     public long getDenominatorAsLong() {
+        if (fraction == null)
+            return denominator;
         return fraction.getDenominatorAsLong();
     }
 
     public int getDenominatorAsInt() {
+        if (fraction == null)
+            return (int) denominator;
         return fraction.getDenominatorAsInt();
     }
 
     public BigInteger getDenominator() {
+        if (fraction == null)
+            return BigInteger.valueOf(denominator);
         return fraction.getDenominator();
     }
 
     @Override
     public Rational divide(BigFraction fraction) {
         NumberUtils.checkNotNull(fraction);
-        return new Rational(fraction.divide(fraction));
+        return valueOf(getBigFraction().divide(fraction));
     }
 
     @Override
     public Rational divide(long l) {
-        return new Rational(fraction.divide(l));
+        return divideLong(l);
     }
 
     @Override
     public Rational divide(int i) {
-        return new Rational(fraction.divide(i));
+        return divideLong(i);
     }
 
     @Override
     public Rational divide(BigInteger bg) {
         NumberUtils.checkNotNull(bg);
-        return new Rational(fraction.divide(bg));
+        return valueOf(getBigFraction().divide(bg));
     }
 
     @Override
     public Real divide(double d) {
-        return new Numeric(fraction.doubleValue() / d);
+        return new Numeric(doubleValue() / d);
     }
 
     @Override
     public Rational add(BigFraction fraction) {
         NumberUtils.checkNotNull(fraction);
-        return new Rational(fraction.add(fraction));
+        return valueOf(getBigFraction().add(fraction));
     }
 
     @Override
     public Rational add(long l) {
-        return new Rational(fraction.add(l));
+        return addLong(l);
     }
 
     @Override
     public Rational add(BigInteger bg) {
         NumberUtils.checkNotNull(bg);
-        return new Rational(fraction.add(bg));
+        return valueOf(getBigFraction().add(bg));
     }
 
     @Override
@@ -470,7 +797,7 @@ public final class Rational extends Real implements Serializable {
 
     @Override
     public Rational add(int i) {
-        return new Rational(fraction.add(i));
+        return addLong(i);
     }
 
     @Override
@@ -480,7 +807,9 @@ public final class Rational extends Real implements Serializable {
 
     @Override
     public Rational abs() {
-        return new Rational(fraction.abs());
+        if (fraction == null)
+            return numerator >= 0 ? this : valueOfReduced(-numerator, denominator);
+        return valueOf(fraction.abs());
     }
 
     @Override
@@ -493,7 +822,16 @@ public final class Rational extends Real implements Serializable {
         NumberUtils.checkNotNull(o);
         if (o instanceof Numeric)
             return Double.compare(doubleValue(), o.doubleValue());
-        return fraction.compareTo(((Rational) o).fraction);
+        Rational r = (Rational) o;
+        if (fraction == null && r.fraction == null) {
+            if (denominator == r.denominator)
+                return numerator < r.numerator ? -1 : (numerator == r.numerator ? 0 : 1);
+            long ad = multiplyExact(numerator, r.denominator),
+                    cb = multiplyExact(r.numerator, denominator);
+            if (ad != OVERFLOW && cb != OVERFLOW)
+                return ad < cb ? -1 : (ad == cb ? 0 : 1);
+        }
+        return getBigFraction().compareTo(r.getBigFraction());
     }
 
     @Override
@@ -503,39 +841,44 @@ public final class Rational extends Real implements Serializable {
 
     @Override
     public boolean isZero() {
-        //Here we do not use fraction.equals() because it has low performence
-        return fraction.getNumerator().equals(BigInteger.ZERO);//.equals(BigFraction.ZERO);
+        if (fraction == null)
+            return numerator == 0;
+        //big fractions are never zero
+        return false;
     }
 
     @Override
     public boolean isOne() {
-        //Here we do not use fraction.equals() because it has low performence
-        return fraction.getNumerator().equals(BigInteger.ONE) && fraction.getDenominator().equals(BigInteger.ONE);//equals(BigFraction.ONE);
+        if (fraction == null)
+            return numerator == 1 && denominator == 1;
+        //big fractions are never one
+        return false;
     }
 
-    /*
-     * Chached instenance for comparing with it (for performance)
-     */
-    private static final BigInteger BI_MINUS_ONE = new BigInteger("-1");
-
     @Override
     public boolean isMinusOne() {
-        //Here we do not use fraction.equals() because it has low performence
-        return fraction.getNumerator().equals(BI_MINUS_ONE) && fraction.getDenominator().equals(BigInteger.ONE);//equals(BigFraction.ONE);
+        if (fraction == null)
+            return numerator == -1 && denominator == 1;
+        //big fractions are never minus one
+        return false;
     }
 
     @Override
     public int signum() {
+        if (fraction == null)
+            return Long.signum(numerator);
         return fraction.getNumerator().signum();
     }
 
     @Override
     public boolean isInteger() {
+        if (fraction == null)
+            return denominator == 1;
         return fraction.getDenominator().compareTo(BigInteger.ONE) == 0;
     }
 
     @Override
     public boolean isNatural() {
-        return fraction.getNumerator().signum() >= 0 && isInteger();
+        return signum() >= 0 && isInteger();
     }
 }
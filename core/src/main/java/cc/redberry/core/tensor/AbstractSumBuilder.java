@@ -79,7 +79,20 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
             return complex;
 
         List<Tensor> sum = new ArrayList<>();
+        complex = buildSummands(summands, complex, sum);
+        return buildSum(sum, complex, indices);
+    }
 
+    /**
+     * Builds all collected summands and puts them into the specified list; numerical summands are added to
+     * the specified complex.
+     *
+     * @param summands collected summands
+     * @param complex  numerical part of sum
+     * @param sum      list of resulting summands
+     * @return numerical part of sum
+     */
+    static Complex buildSummands(TIntObjectHashMap<List<FactorNode>> summands, Complex complex, List<Tensor> sum) {
         final boolean isNumeric = complex.isNumeric();
         for (List<FactorNode> nodes : summands.valueCollection())
             for (FactorNode node : nodes) {
@@ -95,7 +108,18 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
                         sum.add(summand);
                 }
             }
+        return complex;
+    }
 
+    /**
+     * Creates sum from the specified list of built summands and numerical part.
+     *
+     * @param sum     list of built summands
+     * @param complex numerical part of sum
+     * @param indices free indices of sum
+     * @return resulting sum
+     */
+    static Tensor buildSum(List<Tensor> sum, Complex complex, Indices indices) {
         if (sum.isEmpty())
             return complex;
 
@@ -105,7 +129,7 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
         if (sum.size() == 1)
             return sum.get(0);
 
-        return new Sum(sum.toArray(new Tensor[sum.size()]), indices);
+        return Tensors.intern(new Sum(sum.toArray(new Tensor[sum.size()]), indices));
     }
 
     protected abstract Split split(Tensor tensor);
@@ -146,8 +170,16 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
         }
 
         final Split split = split(tensor);
+        putSplit(split, iHash(split.factor, sortedNames));
+    }
 
-        final int hash = iHash(split.factor, sortedNames);
+    /**
+     * Puts split summand with specified hash of its indexed factor.
+     *
+     * @param split split summand
+     * @param hash  hash of indexed factor of split (see {@link #iHash(Tensor, int[])})
+     */
+    final void putSplit(final Split split, final int hash) {
         final List<FactorNode> factorNodes = summands.get(hash);
         if (factorNodes == null) {
             List<FactorNode> fns = new ArrayList<>(1);
@@ -155,15 +187,24 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
             summands.put(hash, fns);
             ++size;
         } else {
+            //like terms have equal canonical forms, so the expensive search of mappings is needed only for
+            //factors not supported by CanonicalForm
+            final CanonicalForm form = CanonicalForm.of(split.factor);
+            CanonicalForm nodeForm;
             Boolean b = null;
-            for (FactorNode node : factorNodes)
-                if ((b = compareFactors(split.factor, node.factor)) != null) {
+            for (FactorNode node : factorNodes) {
+                if (form != null && (nodeForm = node.getCanonicalForm()) != null)
+                    b = form.equals(nodeForm) ? form.getSign() ^ nodeForm.getSign() : null;
+                else
+                    b = compareFactors(split.factor, node.factor);
+                if (b != null) {
                     if (b)
                         node.put(Tensors.negate(split.summand), split.factor);
                     else
                         node.put(split.summand, split.factor);
                     break;
                 }
+            }
             if (b == null) {
                 factorNodes.add(new FactorNode(split.factor, split.getBuilder()));
                 if (DEBUG_PRINT_SAME_FLAG) {
@@ -176,7 +217,7 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
         }
     }
 
-    private static int iHash(final Tensor t, final int[] sortedNames) {
+    static int iHash(final Tensor t, final int[] sortedNames) {
         if (t instanceof Product)
             return ((Product) t).iHashCode();
         else if (t instanceof SimpleTensor)
@@ -194,6 +235,15 @@ public abstract class AbstractSumBuilder implements TensorBuilder {
         return size + (complex.isZero() ? 0 : 1);
     }
 
+    /**
+     * Returns the number of collected non numerical summands.
+     *
+     * @return number of collected non numerical summands
+     */
+    final int sizeOfSummands() {
+        return size;
+    }
+
     public int sizeOfMap() {
         return summands.size();
     }
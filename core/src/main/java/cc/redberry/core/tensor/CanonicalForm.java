@@ -0,0 +1,308 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.indices.IndicesSymmetries;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.indices.SimpleIndices;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.utils.MathUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Canonical form of simple tensors and products of simple tensors with respect to renaming of dummy indices,
+ * permutations of multipliers and symmetries of indices. Two tensors with the same free indices have equal canonical
+ * forms if and only if there is a mapping of dummy indices that maps one tensor onto another, i.e. iff {@link
+ * cc.redberry.core.indexmapping.IndexMappings#compare1(Tensor, Tensor)} returns not null; in this case the sign of
+ * such mapping is {@code form1.getSign() ^ form2.getSign()}.
+ *
+ * <p>Canonical form is encoded as a lexicographically minimal sequence of tensor names and indices over all
+ * admissible orderings of multipliers (permutations inside stretches of multipliers with equal graph hashes) and all
+ * elements of indices symmetry groups; dummy indices are encoded by the order of their first occurrence in this
+ * sequence. The search is performed only if the number of admissible orderings does not exceed {@link
+ * #MAX_SEARCH_SPACE}; this bound depends only on names of multipliers, so like terms are either both supported or
+ * both not supported.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class CanonicalForm {
+    /**
+     * Maximal number of admissible orderings of multipliers and symmetries
+     */
+    public static final int MAX_SEARCH_SPACE = 4096;
+    /**
+     * Enumerated elements of symmetry groups
+     */
+    private static final Map<IndicesSymmetries, Object[]> SYMMETRIES_CACHE
+            = Collections.synchronizedMap(new WeakHashMap<IndicesSymmetries, Object[]>());
+
+    private final int[] code;
+    private final boolean sign;
+    private final int hash;
+
+    private CanonicalForm(int[] code, boolean sign) {
+        this.code = code;
+        this.sign = sign;
+        this.hash = Arrays.hashCode(code);
+    }
+
+    /**
+     * Returns the sign of symmetry that maps tensor onto its canonical form.
+     *
+     * @return true if tensor is equal to minus its canonical form
+     */
+    public boolean getSign() {
+        return sign;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CanonicalForm that = (CanonicalForm) o;
+        return hash == that.hash && Arrays.equals(code, that.code);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return (sign ? "-" : "") + Arrays.toString(code);
+    }
+
+    /**
+     * Calculates canonical form of specified tensor. Returns null if tensor is neither simple tensor nor product of
+     * simple tensors (with numerical factor equal to 1 or -1) or if the search space is too large.
+     *
+     * @param tensor tensor
+     * @return canonical form of tensor or null if tensor is not supported
+     */
+    public static CanonicalForm of(Tensor tensor) {
+        boolean sign = false;
+        Tensor[] data;
+        if (tensor.getClass() == SimpleTensor.class) {
+            data = new Tensor[]{tensor};
+        } else if (tensor instanceof Product) {
+            Product product = (Product) tensor;
+            if (product.indexlessData.length != 0 || product.data.length == 0)
+                return null;
+            if (product.factor.isMinusOne())
+                sign = true;
+            else if (product.factor != Complex.ONE)
+                return null;
+            data = product.data;
+        } else
+            return null;
+
+        final int size = data.length;
+        int i, totalLength = 0;
+        for (i = 0; i < size; ++i) {
+            if (data[i].getClass() != SimpleTensor.class)
+                return null;
+            totalLength += 1 + data[i].getIndices().size();
+        }
+
+        //stretches of multipliers with equal graph hashes
+        final int[] stretchEnd = new int[size];
+        if (size == 1)
+            stretchEnd[0] = 1;
+        else {
+            ProductContent content = ((Product) tensor).getContent();
+            int begin = 0;
+            for (i = 1; i <= size; ++i)
+                if (i == size || content.getVertexHash(i) != content.getVertexHash(i - 1)) {
+                    for (int j = begin; j < i; ++j)
+                        stretchEnd[j] = i;
+                    begin = i;
+                }
+        }
+
+        //estimating search space
+        long space = 1;
+        final int[][][] permutations = new int[size][][];
+        final boolean[][] antisymmetries = new boolean[size][];
+        for (i = 0; i < size; ++i) {
+            if (i == 0 || stretchEnd[i - 1] == i)
+                for (int k = stretchEnd[i] - i; k > 1; --k)
+                    if ((space *= k) > MAX_SEARCH_SPACE)
+                        return null;
+            SimpleIndices indices = ((SimpleTensor) data[i]).getIndices();
+            if (indices.size() > 1 && !indices.getSymmetries().isTrivial()) {
+                Object[] symmetries = enumerate(indices.getSymmetries(), indices.size());
+                if (symmetries == null || (space *= ((int[][]) symmetries[0]).length) > MAX_SEARCH_SPACE)
+                    return null;
+                permutations[i] = (int[][]) symmetries[0];
+                antisymmetries[i] = (boolean[]) symmetries[1];
+            }
+        }
+
+        int[] freeNames = IndicesUtils.getIndicesNames(tensor.getIndices().getFree());
+        Arrays.sort(freeNames);
+        int[] dummyNames = MathUtils.getSortedDistinct(IndicesUtils.getIndicesNames(tensor.getIndices()));
+        Searcher searcher = new Searcher((SimpleTensor[]) Arrays.copyOf(data, size, SimpleTensor[].class),
+                stretchEnd, permutations, antisymmetries, freeNames, dummyNames, totalLength);
+        searcher.search(0, 0, 0, sign);
+        return new CanonicalForm(searcher.best, searcher.bestSign);
+    }
+
+    private static Object[] enumerate(IndicesSymmetries symmetries, int size) {
+        Object[] result = SYMMETRIES_CACHE.get(symmetries);
+        if (result != null)
+            return result;
+        if (symmetries.getPermutationGroup().order().bitLength() > 31)
+            return null;
+        final int order = symmetries.getPermutationGroup().order().intValue();
+        if (order > MAX_SEARCH_SPACE)
+            return null;
+        final int[][] permutations = new int[order][];
+        final boolean[] antisymmetries = new boolean[order];
+        int i = 0;
+        Iterator<Permutation> iterator = symmetries.getPermutationGroup().iterator();
+        while (iterator.hasNext()) {
+            Permutation p = iterator.next();
+            permutations[i] = new int[size];
+            for (int j = 0; j < size; ++j)
+                permutations[i][j] = p.newIndexOf(j);
+            antisymmetries[i++] = p.antisymmetry();
+        }
+        result = new Object[]{permutations, antisymmetries};
+        SYMMETRIES_CACHE.put(symmetries, result);
+        return result;
+    }
+
+    /**
+     * Branch and bound search of lexicographically minimal code.
+     */
+    private static final class Searcher {
+        final SimpleTensor[] data;
+        final int[] stretchEnd;
+        final int[][][] permutations;
+        final boolean[][] antisymmetries;
+        final int[] freeNames, dummyNames;
+        final boolean[] used;
+        //ordinals of dummy indices (positions in dummyNames), -1 if not yet encountered
+        final int[] ordinals;
+        final int[] code;
+        int[] best = null;
+        boolean bestSign;
+        int dummiesCount = 0;
+
+        Searcher(SimpleTensor[] data, int[] stretchEnd, int[][][] permutations, boolean[][] antisymmetries,
+                 int[] freeNames, int[] dummyNames, int totalLength) {
+            this.data = data;
+            this.stretchEnd = stretchEnd;
+            this.permutations = permutations;
+            this.antisymmetries = antisymmetries;
+            this.freeNames = freeNames;
+            this.dummyNames = dummyNames;
+            this.used = new boolean[data.length];
+            this.ordinals = new int[dummyNames.length];
+            Arrays.fill(ordinals, -1);
+            this.code = new int[totalLength];
+        }
+
+        /**
+         * @param position position of the next multiplier
+         * @param pointer  current length of code
+         * @param cmp      -1 if code is already less than the best one, 0 if they are equal up to pointer
+         * @param sign     sign accumulated so far
+         */
+        void search(int position, int pointer, int cmp, boolean sign) {
+            if (position == data.length) {
+                if (best == null || cmp < 0) {
+                    best = code.clone();
+                    bestSign = sign;
+                }
+                return;
+            }
+            //all multipliers of the current stretch are candidates
+            int begin = position;
+            while (begin > 0 && stretchEnd[begin - 1] == stretchEnd[position])
+                --begin;
+            for (int c = begin; c < stretchEnd[position]; ++c) {
+                if (used[c])
+                    continue;
+                used[c] = true;
+                if (permutations[c] == null)
+                    cmp = tryMultiplier(position, pointer, cmp, sign, c, null);
+                else
+                    for (int s = 0; s < permutations[c].length; ++s)
+                        cmp = tryMultiplier(position, pointer, cmp, sign ^ antisymmetries[c][s], c, permutations[c][s]);
+                used[c] = false;
+            }
+        }
+
+        /**
+         * Appends specified multiplier to the code and continues the search; returns the new value of cmp for the
+         * current prefix (it becomes 0 if the best code was updated, since new best code has the same prefix).
+         */
+        private int tryMultiplier(int position, int pointer, final int cmp0, boolean sign,
+                                  int c, int[] permutation) {
+            final int dummiesBefore = dummiesCount;
+            final int[] bestBefore = best;
+            int cmp = cmp0;
+            SimpleIndices indices = data[c].getIndices();
+            int token = data[c].getName(), j = -1, index, k;
+            while (true) {
+                if (best != null && cmp == 0) {
+                    if (token > best[pointer])
+                        break;
+                    if (token < best[pointer])
+                        cmp = -1;
+                }
+                code[pointer++] = token;
+                if (++j == indices.size()) {
+                    search(position + 1, pointer, cmp, sign);
+                    break;
+                }
+                index = IndicesUtils.getNameWithType(indices.get(permutation == null ? j : permutation[j]));
+                if (Arrays.binarySearch(freeNames, index) >= 0)
+                    token = -1 - index;
+                else {
+                    k = Arrays.binarySearch(dummyNames, index);
+                    if (ordinals[k] == -1)
+                        ordinals[k] = dummiesCount++;
+                    token = ordinals[k];
+                }
+            }
+            //rollback dummies encountered by this multiplier
+            if (dummiesCount != dummiesBefore)
+                for (k = 0; k < ordinals.length; ++k)
+                    if (ordinals[k] >= dummiesBefore)
+                        ordinals[k] = -1;
+            dummiesCount = dummiesBefore;
+            return best != bestBefore ? 0 : cmp0;
+        }
+    }
+}
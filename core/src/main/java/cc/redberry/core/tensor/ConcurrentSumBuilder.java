@@ -0,0 +1,204 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.utils.TensorUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static cc.redberry.core.transformations.ToNumericTransformation.toNumeric;
+
+/**
+ * Thread-safe builder for sums, which allows to put summands concurrently from many threads. Summands are
+ * collected in the same way as in {@link SumBuilder}: the same hash-bucketing of indexed factors and the same
+ * comparison of factors (via mappings of indices) is used. The buckets are distributed over several stripes,
+ * each guarded by its own lock, so threads putting summands with different indexed factors do not block each
+ * other. All expensive operations (splitting of summands and calculation of their hashes) are performed
+ * without any locking.
+ * <p/>
+ * <p>The result of {@link #build()} is equal (up to renaming of dummy indices) to the result of
+ * {@link SumBuilder} applied to the same summands in any order. Method {@link #build()} should be invoked only
+ * after all producer threads finished their work.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @see SumBuilder
+ * @since 1.1.11
+ */
+public final class ConcurrentSumBuilder implements TensorBuilder {
+    /**
+     * Stripes; each stripe is guarded by its own monitor
+     */
+    private final SumBuilder[] stripes;
+    private final Object lock = new Object();
+    /**
+     * Numerical part of sum (guarded by lock)
+     */
+    private volatile Complex complex = Complex.ZERO;
+    /**
+     * Free indices of sum (guarded by lock)
+     */
+    private volatile Indices indices = null;
+    private volatile int[] sortedNames;
+
+    /**
+     * Creates builder with the number of stripes proportional to the number of available processors.
+     */
+    public ConcurrentSumBuilder() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates builder with specified concurrency level (number of stripes).
+     *
+     * @param concurrencyLevel estimated number of concurrently putting threads
+     */
+    public ConcurrentSumBuilder(int concurrencyLevel) {
+        if (concurrencyLevel <= 0)
+            throw new IllegalArgumentException("Concurrency level should be positive.");
+        int size = Integer.highestOneBit(concurrencyLevel);
+        if (size < concurrencyLevel)
+            size <<= 1;
+        stripes = new SumBuilder[size];
+        for (int i = 0; i < size; ++i)
+            stripes[i] = new SumBuilder();
+    }
+
+    private ConcurrentSumBuilder(SumBuilder[] stripes, Complex complex, Indices indices, int[] sortedNames) {
+        this.stripes = stripes;
+        this.complex = complex;
+        this.indices = indices;
+        this.sortedNames = sortedNames;
+    }
+
+    private SumBuilder stripe(int hash) {
+        hash ^= (hash >>> 16);
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    private void addComplex(Complex c) {
+        synchronized (lock) {
+            complex = complex.add(c);
+        }
+    }
+
+    private void checkIndices(Tensor tensor) {
+        if (indices == null)
+            synchronized (lock) {
+                if (indices == null) {
+                    int[] sortedNames = IndicesUtils.getIndicesNames(tensor.getIndices().getFree());
+                    Arrays.sort(sortedNames);
+                    this.sortedNames = sortedNames;
+                    indices = IndicesFactory.create(tensor.getIndices().getFree());
+                    return;
+                }
+            }
+        if (!indices.equalsRegardlessOrder(tensor.getIndices().getFree()))
+            throw new TensorException("Inconsistent indices in sum. " +
+                    "Expected: " + indices + " Actual: " + tensor.getIndices().getFree(), tensor);
+    }
+
+    @Override
+    public void put(Tensor tensor) {
+        Complex complex = this.complex;
+        if (complex.isNaN())
+            return;
+        if (complex.isNumeric())
+            tensor = toNumeric(tensor);
+        if (TensorUtils.isZero(tensor))
+            return;
+        if (TensorUtils.isIndeterminate(tensor)) {
+            addComplex((Complex) tensor);
+            return;
+        }
+        if (complex.isInfinite())
+            return;
+        checkIndices(tensor);
+        if (tensor instanceof Sum) {
+            for (Tensor s : tensor)
+                put(s);
+            return;
+        }
+        if (tensor instanceof Complex) {
+            addComplex((Complex) tensor);
+            return;
+        }
+
+        final Split split = Split.splitIndexless(tensor);
+        final int hash = AbstractSumBuilder.iHash(split.factor, sortedNames);
+        final SumBuilder stripe = stripe(hash);
+        synchronized (stripe) {
+            stripe.putSplit(split, hash);
+        }
+    }
+
+    @Override
+    public Tensor build() {
+        Complex complex;
+        synchronized (lock) {
+            complex = this.complex;
+        }
+        if (complex.isNaN() || complex.isInfinite())
+            return complex;
+
+        List<Tensor> sum = new ArrayList<>();
+        for (SumBuilder stripe : stripes)
+            synchronized (stripe) {
+                complex = AbstractSumBuilder.buildSummands(stripe.summands, complex, sum);
+            }
+        return AbstractSumBuilder.buildSum(sum, complex, indices);
+    }
+
+    /**
+     * Returns the number of collected summands.
+     *
+     * @return number of collected summands
+     */
+    public int size() {
+        int size = 0;
+        for (SumBuilder stripe : stripes)
+            synchronized (stripe) {
+                size += stripe.sizeOfSummands();
+            }
+        return size + (complex.isZero() ? 0 : 1);
+    }
+
+    @Override
+    public TensorBuilder clone() {
+        SumBuilder[] stripes = new SumBuilder[this.stripes.length];
+        for (int i = 0; i < stripes.length; ++i)
+            synchronized (this.stripes[i]) {
+                stripes[i] = (SumBuilder) this.stripes[i].clone();
+            }
+        synchronized (lock) {
+            return new ConcurrentSumBuilder(stripes, complex, indices,
+                    sortedNames == null ? null : sortedNames.clone());
+        }
+    }
+}
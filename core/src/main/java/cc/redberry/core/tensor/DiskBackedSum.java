@@ -0,0 +1,611 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.number.NumberUtils;
+import cc.redberry.core.transformations.Transformation;
+import cc.redberry.core.utils.OutputPort;
+import cc.redberry.core.utils.TensorUtils;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static cc.redberry.core.transformations.ToNumericTransformation.toNumeric;
+
+/**
+ * Disk-backed accumulator of large sums. Summands are stored on disk in compact binary form (see
+ * {@link TensorOutputStream}) and read back through memory-mapped files, so the size of sum is limited by the disk space
+ * rather than by the heap.
+ *
+ * <p>Put summands are collected in an in-memory {@link SumBuilder} of bounded size; when it overflows, collected terms
+ * are spilled to disk. On disk summands are distributed over partitions by the hash of their indexed part (the same
+ * hash that {@link SumBuilder} uses to find like terms), so like terms always fall into the same partition and can be
+ * merged partition by partition. Partitions which are larger than the buffer are merged without loading them into
+ * memory: they are streamed into smaller sub-partitions (again by hash, so like terms stay together), which are
+ * merged recursively. Thus, at any moment at most buffer size terms (plus in-memory buffer) are held in memory, except
+ * for the case of a huge number of different terms with colliding hashes.</p>
+ *
+ * <p>Numerical summands are treated in the same way as by {@link SumBuilder}: if the numerical part of sum becomes
+ * NaN or infinite, it is the result; if it becomes floating-point, all summands are converted to numerical form.</p>
+ *
+ * <p>Example:
+ * <pre>
+ *     try (DiskBackedSum sum = new DiskBackedSum()) {
+ *         OutputPort&lt;Tensor&gt; port = ExpandPort.createPort(hugeProduct, true);
+ *         Tensor t;
+ *         while ((t = port.take()) != null)
+ *             sum.put(t);
+ *         try (DiskBackedSum result = sum.transform(EliminateMetricsTransformation.ELIMINATE_METRICS)) {
+ *             ...
+ *         }
+ *     }
+ * </pre>
+ * </p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @see TensorOutputStream
+ * @see TensorInputStream
+ * @since 1.1.11
+ */
+public final class DiskBackedSum implements Closeable {
+    /**
+     * Default maximal number of distinct terms kept in memory before spilling to disk
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 14;
+    /**
+     * Default number of partitions
+     */
+    public static final int DEFAULT_PARTITIONS = 64;
+    //maximal size of mapped region
+    private static final long MAX_MAPPED_REGION = 1L << 30;
+    //maximal number of sub-partitions of partition while merging
+    private static final int MAX_MERGE_FANOUT = 64;
+    //maximal depth of recursive splitting of partition while merging
+    private static final int MAX_MERGE_DEPTH = 4;
+
+    private final File directory;
+    private final int bufferSize;
+    private final Partition[] partitions;
+    private SumBuilder buffer = new SumBuilder();
+    private Complex complex = Complex.ZERO;
+    private Indices indices = null;
+    private int[] sortedNames;
+    private int filesCounter = 0;
+    private boolean closed = false;
+    //streams which were opened and not yet closed (e.g. by abandoned ports)
+    private final Set<MappedInputStream> openStreams = new LinkedHashSet<>();
+
+    /**
+     * Creates disk-backed sum with default buffer size and number of partitions which stores its data in a new
+     * directory inside the default temporary-file directory.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public DiskBackedSum() throws IOException {
+        this(null, DEFAULT_BUFFER_SIZE, DEFAULT_PARTITIONS);
+    }
+
+    /**
+     * Creates disk-backed sum which stores its data in a new directory inside the specified directory.
+     *
+     * @param directory  parent directory for data files (if null, the default temporary-file directory will be used)
+     * @param bufferSize maximal number of distinct terms kept in memory before spilling to disk
+     * @param partitions number of partitions
+     * @throws IOException if an I/O error occurs
+     */
+    public DiskBackedSum(File directory, int bufferSize, int partitions) throws IOException {
+        if (bufferSize <= 0 || partitions <= 0)
+            throw new IllegalArgumentException();
+        this.directory = (directory == null
+                ? Files.createTempDirectory("redberry-sum")
+                : Files.createTempDirectory(directory.toPath(), "redberry-sum")).toFile();
+        this.bufferSize = bufferSize;
+        this.partitions = new Partition[partitions];
+    }
+
+    /**
+     * Adds specified tensor to this sum.
+     *
+     * @param tensor summand
+     * @throws IOException                                if an I/O error occurs
+     * @throws cc.redberry.core.tensor.TensorException    if free indices of tensor are inconsistent with this sum
+     */
+    public void put(Tensor tensor) throws IOException {
+        ensureOpen();
+        if (complex.isNaN())
+            return;
+        if (complex.isNumeric())
+            tensor = toNumeric(tensor);
+        if (TensorUtils.isZero(tensor))
+            return;
+        if (tensor instanceof Complex) {
+            complex = complex.add((Complex) tensor);
+            return;
+        }
+        if (complex.isInfinite())
+            return;
+        if (indices == null) {
+            indices = IndicesFactory.create(tensor.getIndices().getFree());
+            sortedNames = IndicesUtils.getIndicesNames(indices);
+            Arrays.sort(sortedNames);
+        } else if (!indices.equalsRegardlessOrder(tensor.getIndices().getFree()))
+            throw new TensorException("Inconsistent indices in sum. " +
+                    "Expected: " + indices + " Actual: " + tensor.getIndices().getFree(), tensor);
+        if (tensor instanceof Sum) {
+            for (Tensor summand : tensor)
+                put(summand);
+            return;
+        }
+        buffer.put(tensor);
+        if (buffer.size() >= bufferSize)
+            spill();
+    }
+
+    /**
+     * Adds all tensors taken from the specified output port to this sum.
+     *
+     * @param port output port
+     * @throws IOException if an I/O error occurs
+     */
+    public void putAll(OutputPort<? extends Tensor> port) throws IOException {
+        Tensor tensor;
+        while ((tensor = port.take()) != null)
+            put(tensor);
+    }
+
+    /**
+     * Returns output port of (merged) summands of this sum. Like terms in all partitions are merged before
+     * iteration starts. Adding new summands to this sum while iterating leads to undefined behaviour.
+     *
+     * @return output port of summands of this sum
+     * @throws IOException if an I/O error occurs
+     */
+    public OutputPort<Tensor> port() throws IOException {
+        ensureOpen();
+        if (NumberUtils.isIndeterminate(complex))
+            return new SummandsPort(true);
+        spill();
+        for (Partition partition : partitions)
+            if (partition != null)
+                partition.compact();
+        return new SummandsPort(false);
+    }
+
+    /**
+     * Applies specified transformations to each summand of this sum and returns the result as a new disk-backed sum
+     * (with same settings). This sum remains unchanged.
+     *
+     * @param transformations transformations
+     * @return new disk-backed sum
+     * @throws IOException if an I/O error occurs
+     */
+    public DiskBackedSum transform(Transformation... transformations) throws IOException {
+        DiskBackedSum result = new DiskBackedSum(directory.getParentFile(), bufferSize, partitions.length);
+        try {
+            OutputPort<Tensor> port = port();
+            Tensor summand;
+            while ((summand = port.take()) != null)
+                result.put(Transformation.Util.applySequentially(summand, transformations));
+        } catch (IOException | RuntimeException e) {
+            result.close();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Loads the whole sum into memory.
+     *
+     * @return resulting sum
+     * @throws IOException if an I/O error occurs
+     */
+    public Tensor build() throws IOException {
+        SumBuilder builder = new SumBuilder();
+        OutputPort<Tensor> port = port();
+        Tensor summand;
+        while ((summand = port.take()) != null)
+            builder.put(summand);
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of summands stored on disk and in memory (like terms from different spills are counted
+     * separately until merged by {@link #port()}).
+     *
+     * @return number of stored summands
+     */
+    public long size() {
+        long size = buffer.size() + (complex.isZero() ? 0 : 1);
+        for (Partition partition : partitions)
+            if (partition != null)
+                size += partition.count;
+        return size;
+    }
+
+    /**
+     * Closes this sum and deletes all its data files.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        buffer = null;
+        IOException exception = null;
+        for (MappedInputStream stream : new ArrayList<>(openStreams))
+            try {
+                stream.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        for (Partition partition : partitions)
+            if (partition != null)
+                try {
+                    partition.delete();
+                } catch (IOException e) {
+                    exception = e;
+                }
+        if (!directory.delete() && exception == null)
+            exception = new IOException("Can't delete " + directory);
+        if (exception != null)
+            throw exception;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Sum closed.");
+    }
+
+    private void spill() throws IOException {
+        if (buffer.size() == 0)
+            return;
+        Tensor collected = buffer.build();
+        buffer = new SumBuilder();
+        if (collected instanceof Sum)
+            for (Tensor summand : collected)
+                spill(summand);
+        else
+            spill(collected);
+    }
+
+    private void spill(Tensor summand) throws IOException {
+        if (summand instanceof Complex) {
+            complex = complex.add((Complex) summand);
+            return;
+        }
+        int i = (hash(summand) & Integer.MAX_VALUE) % partitions.length;
+        if (partitions[i] == null)
+            partitions[i] = new Partition(i);
+        partitions[i].append(summand);
+    }
+
+    /*
+     * Hash of the indexed part of summand, which is equal for like terms
+     */
+    private int hash(Tensor summand) {
+        return AbstractSumBuilder.iHash(Split.splitIndexless(summand).factor, sortedNames);
+    }
+
+    /*
+     * Hash used to split partitions while merging: hashes of summands in a single partition are congruent modulo
+     * number of partitions, so they should be mixed
+     */
+    private static int mix(int hash, int depth) {
+        hash ^= depth * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private File newFile(int partition) {
+        return new File(directory, "p" + partition + "_" + (filesCounter++) + ".bin");
+    }
+
+    private final class Partition {
+        final int index;
+        File file;
+        TensorOutputStream out;
+        long count = 0;
+        //whether partition may contain like terms
+        boolean dirty = false;
+
+        Partition(int index) throws IOException {
+            this.index = index;
+            this.file = newFile(index);
+            this.out = new TensorOutputStream(new FileOutputStream(file));
+        }
+
+        void append(Tensor summand) throws IOException {
+            out.writeTensor(summand);
+            if (count != 0)
+                dirty = true;
+            ++count;
+        }
+
+        TensorInputStream open() throws IOException {
+            out.flush();
+            return new TensorInputStream(new MappedInputStream(file, openStreams));
+        }
+
+        void compact() throws IOException {
+            if (!dirty)
+                return;
+            Partition merged = new Partition(index);
+            try (TensorInputStream in = open()) {
+                merge(in, count, merged, 0);
+            } catch (IOException | RuntimeException e) {
+                merged.delete();
+                throw e;
+            }
+            delete();
+            file = merged.file;
+            out = merged.out;
+            count = merged.count;
+            dirty = false;
+        }
+
+        /*
+         * Merges like terms among count summands taken from the specified stream and appends results to target
+         */
+        private void merge(TensorInputStream in, long count, Partition target, int depth) throws IOException {
+            if (count <= bufferSize || depth >= MAX_MERGE_DEPTH) {
+                mergeInMemory(in, count, target);
+                return;
+            }
+            //stream summands into sub-partitions, like terms fall into the same sub-partition
+            final Partition[] subPartitions = new Partition[(int) Math.max(2,
+                    Math.min(MAX_MERGE_FANOUT, (count + bufferSize - 1) / bufferSize))];
+            try {
+                Tensor summand;
+                int i;
+                for (long k = 0; k < count; ++k) {
+                    summand = in.readTensor();
+                    i = (mix(hash(summand), depth) & Integer.MAX_VALUE) % subPartitions.length;
+                    if (subPartitions[i] == null)
+                        subPartitions[i] = new Partition(index);
+                    subPartitions[i].append(summand);
+                }
+                for (Partition sub : subPartitions)
+                    if (sub != null)
+                        try (TensorInputStream subIn = sub.open()) {
+                            //if splitting gives nothing, further splitting is useless (all hashes are equal)
+                            merge(subIn, sub.count, target, sub.count == count ? MAX_MERGE_DEPTH : depth + 1);
+                        }
+            } finally {
+                for (Partition sub : subPartitions)
+                    if (sub != null)
+                        sub.delete();
+            }
+        }
+
+        private void mergeInMemory(TensorInputStream in, long count, Partition target) throws IOException {
+            SumBuilder builder = new SumBuilder();
+            for (long i = 0; i < count; ++i)
+                builder.put(in.readTensor());
+            Tensor merged = builder.build();
+            if (merged instanceof Sum)
+                for (Tensor summand : merged)
+                    appendMerged(summand, target);
+            else
+                appendMerged(merged, target);
+        }
+
+        private void appendMerged(Tensor summand, Partition target) throws IOException {
+            if (summand instanceof Complex)
+                complex = complex.add((Complex) summand);
+            else
+                target.append(summand);
+        }
+
+        void delete() throws IOException {
+            out.close();
+            if (!file.delete())
+                throw new IOException("Can't delete " + file);
+        }
+    }
+
+    private final class SummandsPort implements OutputPort<Tensor> {
+        //whether summands should be converted to numerical form
+        private final boolean toNumeric = complex.isNumeric();
+        private Complex numericPart = complex;
+        private int partition;
+        private TensorInputStream in = null;
+        private long remaining = 0;
+        private boolean complexTaken = false;
+
+        SummandsPort(boolean onlyComplex) {
+            this.partition = onlyComplex ? partitions.length : -1;
+        }
+
+        @Override
+        public Tensor take() {
+            try {
+                Tensor summand;
+                while (true) {
+                    while (remaining == 0) {
+                        if (in != null) {
+                            in.close();
+                            in = null;
+                        }
+                        if (++partition >= partitions.length) {
+                            if (!complexTaken && !numericPart.isZero()) {
+                                complexTaken = true;
+                                return numericPart;
+                            }
+                            return null;
+                        }
+                        if (partitions[partition] != null && partitions[partition].count != 0) {
+                            in = partitions[partition].open();
+                            remaining = partitions[partition].count;
+                        }
+                    }
+                    --remaining;
+                    summand = in.readTensor();
+                    if (!toNumeric)
+                        return summand;
+                    //summands which were put before numerical part became floating-point
+                    summand = toNumeric(summand);
+                    if (!(summand instanceof Complex))
+                        return summand;
+                    numericPart = numericPart.add((Complex) summand);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Input stream over memory-mapped file; file is mapped by regions of at most {@link #MAX_MAPPED_REGION} bytes.
+     */
+    private static final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private final Set<MappedInputStream> openStreams;
+        private long position = 0;
+        private MappedByteBuffer buffer;
+
+        MappedInputStream(File file, Set<MappedInputStream> openStreams) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = channel.size();
+            this.openStreams = openStreams;
+            try {
+                map();
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            openStreams.add(this);
+        }
+
+        private void map() throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPED_REGION, size - position));
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            if (buffer == null)
+                throw new IOException("Stream closed.");
+            if (buffer.hasRemaining())
+                return true;
+            position += buffer.capacity();
+            if (position >= size)
+                return false;
+            unmap(buffer);
+            map();
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable())
+                return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!ensureAvailable())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer == null)
+                return;
+            unmap(buffer);
+            buffer = null;
+            openStreams.remove(this);
+            channel.close();
+        }
+    }
+
+    /*
+     * There is no public API to release mapped region before it is garbage collected (which may take arbitrarily long
+     * and, e.g. on Windows, prevents deletion of file), so the cleaner of buffer is invoked reflectively: via
+     * Unsafe.invokeCleaner(...) in Java 9+ or via DirectBuffer.cleaner() in Java 7-8. If neither is available, the
+     * region is released by GC.
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null)
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            //will be released by GC
+        }
+    }
+}
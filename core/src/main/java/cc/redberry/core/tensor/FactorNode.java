@@ -33,6 +33,8 @@ final class FactorNode {
     final Tensor factor;
     private final TensorBuilder builder;
     int[] factorForbiddenIndices;
+    private CanonicalForm canonicalForm;
+    private boolean canonicalFormCalculated = false;
 
     FactorNode(Tensor factor, TensorBuilder builder) {
         this.factor = ApplyIndexMapping.optimizeDummies(factor);
@@ -55,6 +57,18 @@ final class FactorNode {
         builder.put(summand);
     }
 
+    /**
+     * Returns canonical form of factor (lazily calculated) or null if factor is not supported by {@link
+     * CanonicalForm}.
+     */
+    CanonicalForm getCanonicalForm() {
+        if (!canonicalFormCalculated) {
+            canonicalForm = CanonicalForm.of(factor);
+            canonicalFormCalculated = true;
+        }
+        return canonicalForm;
+    }
+
     Tensor build() {
         return builder.build();
     }
@@ -62,6 +76,9 @@ final class FactorNode {
     @Override
     public FactorNode clone() {
         //factorForbiddenIndices are immutable
-        return new FactorNode(factor, builder.clone(), factorForbiddenIndices);
+        FactorNode clone = new FactorNode(factor, builder.clone(), factorForbiddenIndices);
+        clone.canonicalForm = canonicalForm;
+        clone.canonicalFormCalculated = canonicalFormCalculated;
+        return clone;
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.utils.HashFunctions;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.set.TIntSet;
+
+/**
+ * Compact (64-bit Bloom) filters of names of simple tensors contained in tensors. Each name of simple tensor is mapped
+ * to a single bit of a {@code long}; filter of a tensor is a bitwise or of filters of all simple tensors contained in
+ * it (for tensor fields both the name of field and the name of its parent field, i.e. field from which the derivative
+ * is taken, are taken into account). If {@code (of(tensor) & ofName(name)) == 0}, then tensor definitely does not
+ * contain simple tensors with specified name; the converse is not true in general. Filters of sums, products and
+ * tensor fields are calculated lazily and cached in the corresponding tensors, so subsequent invocations take
+ * constant time.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class NamesFilter {
+    /**
+     * Marks cached value as calculated (names never occupy this bit)
+     */
+    static final long CALCULATED = 0x8000000000000000L;
+
+    private NamesFilter() {
+    }
+
+    /**
+     * Returns filter of a single name.
+     *
+     * @param name name of simple tensor
+     * @return filter of a single name
+     */
+    public static long ofName(int name) {
+        return 1L << ((HashFunctions.JenkinWang32shift(name) & 0x7FFFFFFF) % 63);
+    }
+
+    /**
+     * Returns filter of specified set of names.
+     *
+     * @param names set of names of simple tensors
+     * @return filter of specified set of names
+     */
+    public static long ofNames(TIntSet names) {
+        long filter = 0;
+        TIntIterator iterator = names.iterator();
+        while (iterator.hasNext())
+            filter |= ofName(iterator.next());
+        return filter;
+    }
+
+    /**
+     * Returns filter of names of all simple tensors contained in specified tensor.
+     *
+     * @param tensor tensor
+     * @return filter of names of all simple tensors contained in specified tensor
+     */
+    public static long of(Tensor tensor) {
+        if (tensor instanceof TensorField) {
+            TensorField field = (TensorField) tensor;
+            long filter = field.namesFilter;
+            if (filter == 0)
+                field.namesFilter = filter = calculate(field) | CALCULATED;
+            return filter & ~CALCULATED;
+        }
+        if (tensor instanceof SimpleTensor)
+            return ofName(((SimpleTensor) tensor).name);
+        if (tensor instanceof Sum) {
+            Sum sum = (Sum) tensor;
+            long filter = sum.namesFilter;
+            if (filter == 0)
+                sum.namesFilter = filter = calculate(sum) | CALCULATED;
+            return filter & ~CALCULATED;
+        }
+        if (tensor instanceof Product) {
+            Product product = (Product) tensor;
+            long filter = product.namesFilter;
+            if (filter == 0)
+                product.namesFilter = filter = calculate(product) | CALCULATED;
+            return filter & ~CALCULATED;
+        }
+        return calculate(tensor);
+    }
+
+    /**
+     * Returns true if tensor with specified filter may contain all names from {@code names} filter; false means that
+     * tensor definitely does not contain at least one of names.
+     *
+     * @param filter filter of tensor
+     * @param names  filter of names
+     * @return false if tensor definitely does not contain at least one of names
+     */
+    public static boolean mayContainAll(long filter, long names) {
+        return (filter & names) == names;
+    }
+
+    /**
+     * Returns true if tensor with specified filter may contain at least one name from {@code names} filter; false
+     * means that tensor definitely does not contain any of names.
+     *
+     * @param filter filter of tensor
+     * @param names  filter of names
+     * @return false if tensor definitely does not contain any of names
+     */
+    public static boolean mayContainAny(long filter, long names) {
+        return (filter & names) != 0;
+    }
+
+    private static long calculate(Tensor tensor) {
+        long filter = 0;
+        if (tensor instanceof TensorField) {
+            TensorField field = (TensorField) tensor;
+            filter = ofName(field.name);
+            if (field.isDerivative())
+                filter |= ofName(field.getNameDescriptor().getParent().getId());
+        }
+        for (int i = tensor.size() - 1; i >= 0; --i)
+            filter |= of(tensor.get(i));
+        return filter;
+    }
+}
@@ -22,6 +22,7 @@
  */
 package cc.redberry.core.tensor;
 
+import cc.redberry.core.context.CC;
 import cc.redberry.core.context.OutputFormat;
 import cc.redberry.core.graph.GraphType;
 import cc.redberry.core.graph.GraphUtils;
@@ -30,6 +31,7 @@ import cc.redberry.core.graph.PrimitiveSubgraphPartition;
 import cc.redberry.core.indices.*;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.number.NumberUtils;
+import cc.redberry.core.tensor.ProductContentCache.ContentReference;
 import cc.redberry.core.transformations.fractions.NumeratorDenominator;
 import cc.redberry.core.utils.*;
 import gnu.trove.set.hash.TIntHashSet;
@@ -37,11 +39,13 @@ import gnu.trove.set.hash.TIntHashSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import static cc.redberry.core.indices.IndicesUtils.getNameWithType;
 import static cc.redberry.core.indices.IndicesUtils.getStateInt;
 import static cc.redberry.core.tensor.StructureOfContractions.*;
+import static cc.redberry.core.transformations.ToNumericTransformation.toNumeric;
 import static cc.redberry.core.utils.HashFunctions.JenkinWang32shift;
 
 /**
@@ -72,9 +76,9 @@ public final class Product extends MultiTensor {
      */
     final Tensor[] data;
     /**
-     * Reference to cached ProductContent object.
+     * Reference to cached ProductContent object (retention is determined by context's {@link ProductContentCache}).
      */
-    final SoftReferenceWrapper<ProductContent> contentReference;
+    final ContentReference contentReference;
     /**
      * Hash code of this product.
      */
@@ -83,6 +87,10 @@ public final class Product extends MultiTensor {
      * Hash code of this product sensitive to particular free indices configuration (to within equality).
      */
     int iHash;
+    /**
+     * Lazily calculated filter of names of contained simple tensors (see {@link NamesFilter}).
+     */
+    volatile long namesFilter;
 
     Product(Indices indices, Complex factor, Tensor[] indexless, Tensor[] data) {
         super(indices);
@@ -93,7 +101,7 @@ public final class Product extends MultiTensor {
         Arrays.sort(data);
         Arrays.sort(indexless);
 
-        this.contentReference = new SoftReferenceWrapper<>();
+        this.contentReference = newContentReference();
         calculateContent();
         calculateHash();
     }
@@ -103,16 +111,16 @@ public final class Product extends MultiTensor {
         this.factor = getDefaultReference(factor);
         this.indexlessData = indexlessData;
         this.data = data;
-        this.contentReference = new SoftReferenceWrapper<>();
+        this.contentReference = newContentReference();
         if (content == null)
             calculateContent();
         else
-            this.contentReference.resetReferent(content);
+            this.contentReference.set(content);
         calculateHash();
     }
 
     //very unsafe
-    Product(Indices indices, Complex factor, Tensor[] indexlessData, Tensor[] data, SoftReferenceWrapper<ProductContent> contentReference, int hash, int iHash) {
+    Product(Indices indices, Complex factor, Tensor[] indexlessData, Tensor[] data, ContentReference contentReference, int hash, int iHash) {
         super(indices);
         this.factor = factor;
         this.indexlessData = indexlessData;
@@ -123,7 +131,7 @@ public final class Product extends MultiTensor {
     }
 
     //very unsafe
-    Product(Indices indices, Complex factor, Tensor[] indexlessData, Tensor[] data, SoftReferenceWrapper<ProductContent> contentReference) {
+    Product(Indices indices, Complex factor, Tensor[] indexlessData, Tensor[] data, ContentReference contentReference) {
         super(indices);
         this.factor = factor;
         this.indexlessData = indexlessData;
@@ -132,6 +140,25 @@ public final class Product extends MultiTensor {
         calculateHash();
     }
 
+    //product obtained from source by replacement of a single data element (at specified position) with a tensor
+    //with the same indices; content is updated incrementally if possible
+    private Product(Product source, Complex factor, Tensor[] data, int position) {
+        super(source.indices);
+        this.factor = factor;
+        this.indexlessData = source.indexlessData;
+        this.data = data;
+        this.contentReference = newContentReference();
+        if (!updateContent(source, position)) {
+            Arrays.sort(data);
+            calculateContent();
+        }
+        calculateHash();
+    }
+
+    private static ContentReference newContentReference() {
+        return CC.current().getProductContentCache().newReference();
+    }
+
     private static Complex getDefaultReference(Complex factor) {
         return factor.isOne() ? Complex.ONE : factor.isMinusOne() ? Complex.MINUS_ONE : factor;
     }
@@ -244,8 +271,21 @@ public final class Product extends MultiTensor {
         }
 
         Boolean compare = TensorUtils.compare1(old, tensor);
-        if (compare == null)
+        if (compare == null) {
+            int position = i - (factor == Complex.ONE ? 0 : 1) - indexlessData.length;
+            if (position >= 0 && data.length >= 2) {
+                //if factor is floating-point, product builder converts all multipliers to numerical form (see
+                //ProductBuilder.put), so the same should be done here, since builder is bypassed
+                Tensor newTensor = factor.isNumeric() ? toNumeric(tensor) : tensor;
+                if (!(newTensor instanceof Product) && sameIndices(old, newTensor)) {
+                    //replacement of data element which does not change the structure of contractions
+                    Tensor[] newData = data.clone();
+                    newData[position] = newTensor;
+                    return Tensors.intern(new Product(this, factor, newData, position));
+                }
+            }
             return super.set(i, tensor);
+        }
 
         Complex newFactor = factor;
         if (compare) {
@@ -264,13 +304,30 @@ public final class Product extends MultiTensor {
             newIndexless[i] = tensor;
             return new Product(indices, newFactor, newIndexless, data, contentReference);
         } else {
+            i -= indexlessData.length;
             Tensor[] newData = data.clone();
-            newData[i - indexlessData.length] = tensor;
+            newData[i] = tensor;
+            if (data.length >= 2 && sameIndices(data[i], tensor))
+                return Tensors.intern(new Product(this, newFactor, newData, i));
             return new Product(new IndicesBuilder().append(newData).getIndices(),
                     newFactor, indexlessData, newData);
         }
     }
 
+    /**
+     * Returns true if indices of specified tensors are the same (including order and positions in orbits), so
+     * replacement of one with another does not change the structure of contractions of product.
+     */
+    private static boolean sameIndices(Tensor a, Tensor b) {
+        Indices aIndices = a.getIndices(), bIndices = b.getIndices();
+        if (aIndices.size() != bIndices.size())
+            return false;
+        for (int i = aIndices.size() - 1; i >= 0; --i)
+            if (aIndices.get(i) != bIndices.get(i))
+                return false;
+        return Arrays.equals(aIndices.getPositionsInOrbits(), bIndices.getPositionsInOrbits());
+    }
+
     @Override
     public Tensor remove(int position) {
         return setComplex(position, Complex.ONE);
@@ -340,6 +397,12 @@ public final class Product extends MultiTensor {
             dataPositions[i] -= indexlessData.length;
 
         Tensor[] newIndexless = ArraysUtils.remove(indexlessData, indexlessPositions);
+        if (dataPositions.length == 0 && data.length != 0) {
+            //data part is unchanged, so content can be reused
+            if (newFactor == Complex.ONE && newIndexless.length == 0 && data.length == 1)
+                return data[0];
+            return new Product(indices, newFactor, newIndexless, data, contentReference);
+        }
         Tensor[] newData = ArraysUtils.remove(data, dataPositions);
 
         return createProduct(new IndicesBuilder().append(newData).getIndices(),
@@ -365,6 +428,10 @@ public final class Product extends MultiTensor {
             else
                 newData.add(data[position - indexlessData.length]);
         }
+        if (newData.size() == data.length && data.length != 0)
+            //data part is unchanged, so content can be reused
+            return new Product(indices, newFactor, newIndexless.toArray(new Tensor[newIndexless.size()]),
+                    data, contentReference);
         return new Product(new IndicesBuilder().append(newData).getIndices(), newFactor,
                 newIndexless.toArray(new Tensor[newIndexless.size()]),
                 newData.toArray(new Tensor[newData.size()]));
@@ -436,7 +503,7 @@ public final class Product extends MultiTensor {
      * @return product content
      */
     public ProductContent getContent() {
-        ProductContent content = contentReference.getReference().get();
+        ProductContent content = contentReference.get();
         if (content == null)
             content = calculateContent();
         return content;
@@ -856,7 +923,7 @@ public final class Product extends MultiTensor {
 
     private ProductContent calculateContent() {
         if (data.length == 0) {
-            contentReference.resetReferent(ProductContent.EMPTY_INSTANCE);
+            contentReference.set(ProductContent.EMPTY_INSTANCE);
             return ProductContent.EMPTY_INSTANCE;
         }
 
@@ -914,7 +981,7 @@ public final class Product extends MultiTensor {
             }
 
             final ProductContent pc = new ProductContent(new StructureOfContractions(contractions, new int[1], 1), data, hashCodes, iHashCodes, nonScalar, scalars);
-            contentReference.resetReferent(pc);
+            contentReference.set(pc);
             return pc;
         }
 
@@ -990,7 +1057,7 @@ public final class Product extends MultiTensor {
         }
 
         ProductContent pc = new ProductContent(new StructureOfContractions(contractions), data, hashCodes, iHashCodes, nonScalar, scalars);
-        contentReference.resetReferent(pc);
+        contentReference.set(pc);
 
         if (componentCount == 1 && nonScalar instanceof Product)
             ((Product) nonScalar).calculateHash();
@@ -998,13 +1065,203 @@ public final class Product extends MultiTensor {
         return pc;
     }
 
+    /**
+     * Incrementally calculates content of this product, which is obtained from the source product by replacement of
+     * data element at specified position with a tensor with exactly the same indices. Since the structure of
+     * contractions is unchanged, only graph hashes of vertices lying within {@link #REFINEMENT_LEVEL} edges from the
+     * replaced vertex are recalculated; if the new hashes change the order of data, vertices in contractions are
+     * renumbered. Returns false (leaving content uncalculated) if the order of data is not determined unambiguously by
+     * the new hashes, so full recalculation is required to obtain exactly the same content.
+     *
+     * @param source   source product
+     * @param position position of replaced element in data
+     * @return true if content was successfully calculated
+     */
+    private boolean updateContent(Product source, int position) {
+        final ProductContent old = source.contentReference.get();
+        if (old == null || old.data != source.data || data.length < 2)
+            return false;
+        final Indices freeIndices = indices.getFree();
+        if (freeIndices.size() == indices.size())
+            return false; //no contractions
+
+        final long[][] contractions = old.getStructureOfContractions().contractions;
+
+        //distances from replaced vertex (up to 2 * REFINEMENT_LEVEL)
+        final int[] distances = new int[data.length];
+        Arrays.fill(distances, -1);
+        final IntArrayList queue = new IntArrayList();
+        distances[position] = 0;
+        queue.add(position);
+        int i, j, vertex;
+        for (i = 0; i < queue.size(); ++i) {
+            vertex = queue.get(i);
+            if (distances[vertex] == 2 * REFINEMENT_LEVEL)
+                continue;
+            for (long contraction : contractions[vertex]) {
+                j = toPosition(contraction);
+                if (j != -1 && distances[j] == -1) {
+                    distances[j] = distances[vertex] + 1;
+                    queue.add(j);
+                }
+            }
+        }
+
+        final int[] sortedIndices = IndicesUtils.getIndicesNames(freeIndices);
+        Arrays.sort(sortedIndices);
+
+        //initial hashes of vertices involved in refinement
+        final int[] hashCodes = new int[data.length],
+                iHashCodes = sortedIndices.length == 0 ? hashCodes : new int[data.length];
+        for (i = queue.size() - 1; i >= 0; --i) {
+            vertex = queue.get(i);
+            hashCodes[vertex] = data[vertex].hashCode();
+            if (sortedIndices.length != 0)
+                iHashCodes[vertex] = HashingStrategy.iHash(data[vertex], sortedIndices);
+        }
+
+        //refined hashes
+        final int[] newHashCodes = old.hashCodes.clone(),
+                newIHashCodes = sortedIndices.length == 0 ? newHashCodes : old.iHashCodes.clone();
+        final int[] temp = new int[data.length], iTemp = new int[data.length];
+        for (i = queue.size() - 1; i >= 0; --i) {
+            vertex = queue.get(i);
+            if (distances[vertex] > REFINEMENT_LEVEL)
+                continue;
+            Arrays.fill(temp, 0);
+            if (sortedIndices.length == 0)
+                newHashCodes[vertex] = refine(temp, REFINEMENT_LEVEL, data, vertex, contractions, hashCodes, true);
+            else {
+                Arrays.fill(iTemp, 0);
+                final int[] r = iRefine(temp, iTemp, REFINEMENT_LEVEL, data, vertex, contractions,
+                        hashCodes, iHashCodes, true);
+                newHashCodes[vertex] = r[0];
+                newIHashCodes[vertex] = r[1];
+            }
+        }
+
+        //order of data should be strictly determined by hashes
+        final Wrapper[] wrappers = new Wrapper[data.length];
+        for (i = 0; i < data.length; ++i)
+            wrappers[i] = new Wrapper(data[i].hashCode(), newHashCodes[i], newIHashCodes[i], i);
+        Arrays.sort(wrappers);
+        boolean reordered = false;
+        for (i = 0; i < data.length; ++i) {
+            if (wrappers[i].component != i)
+                reordered = true;
+            if (i != 0 && wrappers[i - 1].tensorHash == wrappers[i].tensorHash
+                    && wrappers[i - 1].graphHash == wrappers[i].graphHash
+                    && wrappers[i - 1].iGraphHash == wrappers[i].iGraphHash)
+                return false;
+        }
+
+        StructureOfContractions structure = old.getStructureOfContractions();
+        if (reordered) {
+            //permuting data and renumbering vertices in contractions
+            final int[] newPositions = new int[data.length];
+            for (i = 0; i < data.length; ++i)
+                newPositions[wrappers[i].component] = i;
+            final Tensor[] oldData = data.clone();
+            final long[][] newContractions = new long[data.length][];
+            for (i = 0; i < data.length; ++i) {
+                vertex = wrappers[i].component;
+                data[i] = oldData[vertex];
+                newHashCodes[i] = wrappers[i].graphHash;
+                newIHashCodes[i] = wrappers[i].iGraphHash;
+                newContractions[i] = contractions[vertex].clone();
+                for (j = newContractions[i].length - 1; j >= 0; --j)
+                    if (toPosition(newContractions[i][j]) != -1)
+                        newContractions[i][j] = (((long) newPositions[toPosition(newContractions[i][j])]) << 32)
+                                | (newContractions[i][j] & 0xFFFFFFFFL);
+            }
+            structure = new StructureOfContractions(newContractions);
+            position = newPositions[position];
+        }
+
+        //components containing free indices form non scalar part
+        final int[] components = structure.components;
+        final boolean[] nonScalarComponent = new boolean[structure.componentCount];
+        for (i = 0; i < data.length; ++i)
+            for (long contraction : structure.contractions[i])
+                if (toPosition(contraction) == -1) {
+                    nonScalarComponent[components[i]] = true;
+                    break;
+                }
+        int scalarsCount = 0;
+        for (boolean b : nonScalarComponent)
+            if (!b) ++scalarsCount;
+
+        Tensor nonScalar = null;
+        final Tensor[] scalars = new Tensor[scalarsCount];
+        if (scalarsCount == 0)
+            nonScalar = new Product(this.indices, Complex.ONE, new Tensor[0], data, this.contentReference, 0, 0);
+        else {
+            final int changed = components[position];
+            final List<Tensor> nonScalarData = new ArrayList<>();
+            final Tensor[][] sData = new Tensor[structure.componentCount][];
+            final int[] sizes = new int[structure.componentCount];
+            for (i = 0; i < data.length; ++i)
+                if (nonScalarComponent[components[i]])
+                    nonScalarData.add(data[i]);
+                else
+                    ++sizes[components[i]];
+            for (i = 0; i < sizes.length; ++i)
+                sData[i] = new Tensor[sizes[i]];
+            Arrays.fill(sizes, 0);
+            for (i = 0; i < data.length; ++i)
+                if (!nonScalarComponent[components[i]])
+                    sData[components[i]][sizes[components[i]]++] = data[i];
+
+            if (!nonScalarData.isEmpty())
+                nonScalar = nonScalarComponent[changed] || old.nonScalar == null
+                        ? Tensors.multiply(nonScalarData.toArray(new Tensor[nonScalarData.size()]))
+                        : old.nonScalar;
+
+            if (nonScalar == null && scalarsCount == 1 && factor == Complex.ONE && indexlessData.length == 0)
+                scalars[0] = this;
+            else {
+                //scalar sub products of unchanged components are taken from the source content
+                final IdentityHashMap<Tensor, Tensor> oldScalars = new IdentityHashMap<>();
+                for (Tensor scalar : old.scalars)
+                    if (scalar instanceof Product && scalar != source)
+                        for (Tensor t : ((Product) scalar).data)
+                            oldScalars.put(t, scalar);
+                    else if (!(scalar instanceof Product))
+                        oldScalars.put(scalar, scalar);
+
+                Tensor scalar;
+                for (i = 0, j = 0; i < sData.length; ++i) {
+                    if (nonScalarComponent[i])
+                        continue;
+                    scalar = null;
+                    if (i != changed) {
+                        scalar = oldScalars.get(sData[i][0]);
+                        if (scalar != null && (scalar instanceof Product ? ((Product) scalar).data.length : 1) != sData[i].length)
+                            scalar = null;
+                    }
+                    scalars[j++] = scalar == null ? Tensors.multiply(sData[i]) : scalar;
+                }
+                Arrays.sort(scalars);
+                for (i = 1; i < scalars.length; ++i)
+                    if (scalars[i - 1].hashCode() == scalars[i].hashCode())
+                        return false; //order of scalars is ambiguous
+            }
+        }
+
+        ProductContent pc = new ProductContent(structure, data, newHashCodes, newIHashCodes, nonScalar, scalars);
+        contentReference.set(pc);
+        if (scalarsCount == 0)
+            ((Product) nonScalar).calculateHash();
+        return true;
+    }
+
     //when all indices are free
     private ProductContent calculateContentWithNoContractions() {
         if (data.length == 1) {
             final ProductContent pc = new ProductContent(getFreeStructure(indices.size()),
                     data, new int[]{data[0].hashCode()}, new int[]{HashingStrategy.iHash(data[0])},
                     data[0], new Tensor[0]);
-            this.contentReference.resetReferent(pc);
+            this.contentReference.set(pc);
             return pc;
         }
 
@@ -1039,7 +1296,7 @@ public final class Product extends MultiTensor {
 
         final Product nonScalar = new Product(this.indices, Complex.ONE, new Tensor[0], data, this.contentReference, 0, 0);
         ProductContent pc = new ProductContent(new StructureOfContractions(contractions, components, data.length), data, hashCodes, iHashCodes, nonScalar, new Tensor[0]);
-        this.contentReference.resetReferent(pc);
+        this.contentReference.set(pc);
 
         nonScalar.calculateHash();
         return pc;
@@ -175,9 +175,9 @@ public final class ProductBuilder implements TensorBuilder {
         IndicesBuilder ibs = new IndicesBuilder();
         for (Tensor m : elements)
             ibs.append(m);
-        return new Product(ibs.getIndices(), factor,
+        return Tensors.intern(new Product(ibs.getIndices(), factor,
                 indexLess.toArray(new Tensor[indexLess.size()]),
-                elements.toArray(new Tensor[elements.size()]));
+                elements.toArray(new Tensor[elements.size()])));
     }
 
     @Override
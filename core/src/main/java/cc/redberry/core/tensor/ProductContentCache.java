@@ -0,0 +1,349 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retention policy for cached {@link ProductContent} of products. Calculation of product content (graph structure,
+ * contractions, scalar subproducts etc.) is expensive, so each product caches it. This class determines how long the
+ * cached content will be retained:
+ * <ul>
+ * <li>{@link #strong()} &mdash; content is retained as long as product itself (no recalculations, maximal memory
+ * footprint);</li>
+ * <li>{@link #soft()} &mdash; content is held by soft reference and can be dropped by GC under memory pressure
+ * (default);</li>
+ * <li>{@link #lru(int)} &mdash; contents of at most specified number of products are retained in a shared
+ * (segmented) least-recently-used cache (bounded memory footprint, predictable recalculations).</li>
+ * </ul>
+ * <p/>
+ * <p>The policy is set per context via
+ * {@link cc.redberry.core.context.Context#setProductContentCache(ProductContentCache)} and affects only products
+ * created after it was set. Each policy collects statistics of hits (content was taken from cache) and misses (content
+ * was dropped and thus recalculated). This class is thread-safe.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @see Product#getContent()
+ * @since 1.1.11
+ */
+public abstract class ProductContentCache {
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    ProductContentCache() {
+    }
+
+    /**
+     * Creates a new reference to content of a newly created product.
+     *
+     * @return reference to content
+     */
+    abstract ContentReference newReference();
+
+    /**
+     * Returns the number of times when content was taken from cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times when content was not found in cache and thus was recalculated.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the ratio of hits to the total number of requests (or 0 if there were no requests).
+     *
+     * @return hit rate
+     */
+    public double getHitRate() {
+        long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? 0 : ((double) hits) / total;
+    }
+
+    /**
+     * Resets hits and misses counters.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Returns policy which retains content as long as product itself.
+     *
+     * @return strong retention policy
+     */
+    public static ProductContentCache strong() {
+        return new StrongCache();
+    }
+
+    /**
+     * Returns policy which holds content by soft references, so it can be dropped by GC under memory pressure.
+     *
+     * @return soft retention policy
+     */
+    public static ProductContentCache soft() {
+        return new SoftCache();
+    }
+
+    /**
+     * Returns policy which retains contents of at most {@code maxSize} most recently used products.
+     *
+     * @param maxSize maximal number of retained contents
+     * @return shared LRU cache
+     * @throws IllegalArgumentException if maxSize is not positive
+     */
+    public static LruCache lru(int maxSize) {
+        return new LruCache(maxSize);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{hits=" + getHits() + ", misses=" + getMisses() + "}";
+    }
+
+    /**
+     * Reference to the content of product. Single reference can be shared by several products with same data (e.g.
+     * products which differ only in numerical factor).
+     */
+    abstract static class ContentReference {
+        final ProductContentCache cache;
+
+        ContentReference(ProductContentCache cache) {
+            this.cache = cache;
+        }
+
+        /**
+         * Returns the referent or null if it was dropped and updates statistics.
+         */
+        final ProductContent get() {
+            ProductContent content = peek();
+            if (content == null)
+                cache.misses.incrementAndGet();
+            else
+                cache.hits.incrementAndGet();
+            return content;
+        }
+
+        /**
+         * Returns the referent or null if it was dropped without updating statistics.
+         */
+        abstract ProductContent peek();
+
+        abstract void set(ProductContent content);
+    }
+
+    private static final class StrongCache extends ProductContentCache {
+        @Override
+        ContentReference newReference() {
+            return new StrongReference(this);
+        }
+    }
+
+    private static final class StrongReference extends ContentReference {
+        private volatile ProductContent content;
+
+        StrongReference(ProductContentCache cache) {
+            super(cache);
+        }
+
+        @Override
+        ProductContent peek() {
+            return content;
+        }
+
+        @Override
+        void set(ProductContent content) {
+            this.content = content;
+        }
+    }
+
+    private static final class SoftCache extends ProductContentCache {
+        @Override
+        ContentReference newReference() {
+            return new SoftContentReference(this);
+        }
+    }
+
+    private static final class SoftContentReference extends ContentReference {
+        private volatile SoftReference<ProductContent> reference;
+
+        SoftContentReference(ProductContentCache cache) {
+            super(cache);
+        }
+
+        @Override
+        ProductContent peek() {
+            SoftReference<ProductContent> reference = this.reference;
+            return reference == null ? null : reference.get();
+        }
+
+        @Override
+        void set(ProductContent content) {
+            this.reference = new SoftReference<>(content);
+        }
+    }
+
+    /**
+     * Shared cache which retains contents of at most specified number of most recently used products. In order to
+     * avoid contention between threads, the cache is split into a number of independently locked segments, each of
+     * which is an LRU cache of its own; each reference is bound to a randomly chosen segment, so eviction order is
+     * least-recently-used only approximately.
+     */
+    public static final class LruCache extends ProductContentCache {
+        private static final int MAX_SEGMENTS_COUNT = 16;
+        private final int maxSize;
+        private final Segment[] segments;
+
+        private LruCache(final int maxSize) {
+            if (maxSize <= 0)
+                throw new IllegalArgumentException("Non positive size: " + maxSize);
+            this.maxSize = maxSize;
+            this.segments = new Segment[Math.min(MAX_SEGMENTS_COUNT, maxSize)];
+            //total capacity of segments is exactly maxSize
+            for (int i = 0; i < segments.length; ++i)
+                segments[i] = new Segment(maxSize / segments.length + (i < maxSize % segments.length ? 1 : 0));
+        }
+
+        @Override
+        ContentReference newReference() {
+            return new LruReference(this, segments[ThreadLocalRandom.current().nextInt(segments.length)]);
+        }
+
+        /**
+         * Returns the maximal number of retained contents.
+         *
+         * @return maximal number of retained contents
+         */
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        /**
+         * Returns the current number of retained contents.
+         *
+         * @return current number of retained contents
+         */
+        public int size() {
+            int size = 0;
+            for (Segment segment : segments)
+                size += segment.size();
+            return size;
+        }
+
+        /**
+         * Returns the number of contents evicted from this cache due to size limit.
+         *
+         * @return number of evictions
+         */
+        public long getEvictions() {
+            long evictions = 0;
+            for (Segment segment : segments)
+                evictions += segment.getEvictions();
+            return evictions;
+        }
+
+        /**
+         * Drops all retained contents.
+         */
+        public void clear() {
+            for (Segment segment : segments)
+                segment.clear();
+        }
+
+        @Override
+        public String toString() {
+            return "LruCache{hits=" + getHits() + ", misses=" + getMisses() + ", size=" + size()
+                    + ", maxSize=" + maxSize + ", evictions=" + getEvictions() + "}";
+        }
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<ContentReference, ProductContent> map;
+        private long evictions = 0;
+
+        Segment(final int maxSize) {
+            this.map = new LinkedHashMap<ContentReference, ProductContent>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ContentReference, ProductContent> eldest) {
+                    if (size() > maxSize) {
+                        ++evictions;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized ProductContent get(ContentReference reference) {
+            return map.get(reference);
+        }
+
+        synchronized void put(ContentReference reference, ProductContent content) {
+            map.put(reference, content);
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized long getEvictions() {
+            return evictions;
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+    }
+
+    private static final class LruReference extends ContentReference {
+        private final Segment segment;
+
+        LruReference(LruCache cache, Segment segment) {
+            super(cache);
+            this.segment = segment;
+        }
+
+        @Override
+        ProductContent peek() {
+            return segment.get(this);
+        }
+
+        @Override
+        void set(ProductContent content) {
+            segment.put(this, content);
+        }
+    }
+}
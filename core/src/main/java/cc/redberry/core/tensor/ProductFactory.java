@@ -68,7 +68,7 @@ public final class ProductFactory implements TensorFactory {
             else if (current instanceof Product) {
                 p = (Product) current;
                 indexlessContainer.add(p.indexlessData);
-                dataContainer.add(p.data, p.contentReference.getReferent(), p.indices);
+                dataContainer.add(p.data, p.contentReference.peek(), p.indices);
                 factor = factor.multiply(p.factor);
             } else if (current.getIndices().size() == 0)
                 indexlessContainer.add(current);
@@ -98,7 +98,7 @@ public final class ProductFactory implements TensorFactory {
                 if (current instanceof Product) {
                     p = (Product) current;
                     indexlessContainer.add(p.indexlessData);
-                    dataContainer.add(p.data, p.contentReference.getReferent(), p.indices);
+                    dataContainer.add(p.data, p.contentReference.peek(), p.indices);
                     factor = factor.multiply(p.factor);
                 } else if (current.getIndices().size() == 0)
                     indexlessContainer.add(current);
@@ -190,10 +190,10 @@ public final class ProductFactory implements TensorFactory {
                 Tensor sumData[] = s.data.clone();
                 for (i = sumData.length - 1; i >= 0; --i)
                     sumData[i] = Tensors.negate(sumData[i]);
-                return new Sum(s.indices, sumData, s.hashCode());
+                return Tensors.intern(new Sum(s.indices, sumData, s.hashCode()));
             }
         }
-        return new Product(factor, indexless, data, content, indices);
+        return Tensors.intern(new Product(factor, indexless, data, content, indices));
     }
 
     private static class ListWrapper {
@@ -41,6 +41,10 @@ public final class Sum extends MultiTensor {
 
     final Tensor[] data;
     final int hash;
+    /**
+     * Lazily calculated filter of names of contained simple tensors (see {@link NamesFilter}).
+     */
+    volatile long namesFilter;
 
     Sum(final Tensor[] data, Indices indices) {
         super(indices);
@@ -59,6 +59,6 @@ public final class SumBuilder extends AbstractSumBuilder {
         for (List<FactorNode> vals : summands.valueCollection())
             for (int i = vals.size() - 1; i >= 0; --i)
                 vals.set(i, vals.get(i).clone());
-        return new SumBuilder(summands, complex, indices, sortedNames.clone());
+        return new SumBuilder(summands, complex, indices, sortedNames == null ? null : sortedNames.clone());
     }
 }
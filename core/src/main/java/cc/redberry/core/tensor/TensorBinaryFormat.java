@@ -0,0 +1,132 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Constants and low-level primitives of the binary tensor format used by {@link TensorOutputStream} and
+ * {@link TensorInputStream}.
+ *
+ * <p>Stream layout: {@link #MAGIC} (int), {@link #VERSION} (short), then a sequence of tensor records terminated
+ * by {@link #END}. Each tensor node starts with a single tag byte followed by tag-specific payload. Names of
+ * simple tensors and fields are written as stream-local ids; the definition of each name (string name, structures
+ * of indices, symmetries or derivative orders) is written inline right after its first reference, so the name
+ * table is built incrementally while reading.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+final class TensorBinaryFormat {
+    private TensorBinaryFormat() {
+    }
+
+    /**
+     * Stream signature ("RBTS")
+     */
+    static final int MAGIC = 0x52425453;
+    /**
+     * Current format version
+     */
+    static final short VERSION = 1;
+
+    //records
+    static final byte END = 0;
+
+    //tensor tags
+    static final byte COMPLEX = 1,
+            SIMPLE_TENSOR = 2,
+            METRIC_OR_KRONECKER = 3,
+            TENSOR_FIELD = 4,
+            SUM = 5,
+            PRODUCT = 6,
+            POWER = 7,
+            EXPRESSION = 8,
+            SIN = 9,
+            COS = 10,
+            TAN = 11,
+            COT = 12,
+            ARCSIN = 13,
+            ARCCOS = 14,
+            ARCTAN = 15,
+            ARCCOT = 16,
+            LOG = 17,
+            EXP = 18;
+
+    //real number tags
+    static final byte RATIONAL_SMALL = 0,
+            RATIONAL_BIG = 1,
+            NUMERIC = 2;
+
+    //name definition kinds
+    static final byte NAME_SIMPLE = 0,
+            NAME_DERIVATIVE = 1;
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0, shift = 0;
+        byte b;
+        do {
+            if (shift > 28)
+                throw new IOException("Malformed variable-length integer.");
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        //zig-zag encoding
+        value = (value << 1) ^ (value >> 63);
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63)
+                throw new IOException("Malformed variable-length integer.");
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
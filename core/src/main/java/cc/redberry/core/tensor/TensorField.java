@@ -41,6 +41,10 @@ import java.util.Iterator;
 public final class TensorField extends SimpleTensor {
     protected Tensor[] args;
     protected SimpleIndices[] argIndices;
+    /**
+     * Lazily calculated filter of names of contained simple tensors (see {@link NamesFilter}).
+     */
+    volatile long namesFilter;
 
     TensorField(int name, SimpleIndices indices, Tensor[] args, SimpleIndices[] argIndices) {
         super(name, indices);
@@ -0,0 +1,281 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.context.NameDescriptor;
+import cc.redberry.core.context.NameDescriptorForTensorField;
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.groups.permutations.Permutations;
+import cc.redberry.core.indices.*;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.number.Numeric;
+import cc.redberry.core.number.Rational;
+import cc.redberry.core.number.Real;
+import cc.redberry.core.utils.BitArray;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.*;
+import java.math.BigInteger;
+
+import static cc.redberry.core.tensor.TensorBinaryFormat.*;
+
+/**
+ * Reads tensors written by {@link TensorOutputStream}. Names of tensors stored in the stream are mapped to the name
+ * manager of the current context (new names are registered, symmetries are set up if the corresponding tensor was not
+ * used before), so the stream can be read in a context different from the one it was written in.
+ * <pre>
+ *     try (TensorInputStream in = new TensorInputStream(new FileInputStream(file))) {
+ *         Tensor t;
+ *         while ((t = in.readTensor()) != null)
+ *             ...
+ *     }
+ * </pre>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @see TensorOutputStream
+ * @since 1.1.11
+ */
+public final class TensorInputStream implements Closeable {
+    private final DataInputStream in;
+    //stream-local id -> name descriptor id
+    private final TIntArrayList names = new TIntArrayList();
+    private boolean finished = false;
+
+    /**
+     * Creates tensor input stream that reads from the specified underlying input stream. Stream header is read and
+     * checked immediately.
+     *
+     * @param in underlying input stream
+     * @throws IOException if an I/O error occurs, if stream is not a tensor stream or if its version is not supported
+     */
+    public TensorInputStream(InputStream in) throws IOException {
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        if (this.in.readInt() != MAGIC)
+            throw new IOException("Not a tensor stream.");
+        short version = this.in.readShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported tensor stream version: " + version);
+    }
+
+    /**
+     * Reads next tensor from the stream.
+     *
+     * @return next tensor or {@code null} if end of stream reached
+     * @throws IOException if an I/O error occurs or if stream is corrupted
+     */
+    public Tensor readTensor() throws IOException {
+        if (finished)
+            return null;
+        byte tag = in.readByte();
+        if (tag == END) {
+            finished = true;
+            return null;
+        }
+        return read(tag);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Tensor read(byte tag) throws IOException {
+        int i;
+        Tensor[] data;
+        switch (tag) {
+            case COMPLEX:
+                return readComplex();
+            case METRIC_OR_KRONECKER:
+                return Tensors.createMetricOrKronecker(readVarInt(in), readVarInt(in));
+            case SIMPLE_TENSOR:
+                return Tensors.simpleTensor(readName(), readSimpleIndices());
+            case TENSOR_FIELD:
+                int name = readName();
+                SimpleIndices indices = readSimpleIndices();
+                int argsCount = CC.getNameDescriptor(name).getStructuresOfIndices().length - 1;
+                SimpleIndices[] argIndices = new SimpleIndices[argsCount];
+                Tensor[] args = new Tensor[argsCount];
+                for (i = 0; i < argsCount; ++i) {
+                    argIndices[i] = readSimpleIndices();
+                    args[i] = read(in.readByte());
+                }
+                return Tensors.field(name, indices, argIndices, args);
+            case SUM:
+                data = readArray();
+                if (data.length < 2)
+                    throw new IOException("Corrupted stream: sum with " + data.length + " summands.");
+                return Tensors.intern(new Sum(data, IndicesFactory.create(data[0].getIndices().getFree())));
+            case PRODUCT:
+                Complex factor = readComplex();
+                Tensor[] indexless = readArray();
+                data = readArray();
+                IndicesBuilder builder = new IndicesBuilder();
+                for (Tensor t : data)
+                    builder.append(t);
+                return Tensors.intern(new Product(builder.getIndices(), factor, indexless, data));
+            case POWER:
+                return new Power(read(in.readByte()), read(in.readByte()));
+            case EXPRESSION:
+                Tensor left = read(in.readByte()), right = read(in.readByte());
+                return new Expression(IndicesFactory.create(left.getIndices().getFree()), left, right);
+            case SIN:
+                return Tensors.sin(read(in.readByte()));
+            case COS:
+                return Tensors.cos(read(in.readByte()));
+            case TAN:
+                return Tensors.tan(read(in.readByte()));
+            case COT:
+                return Tensors.cot(read(in.readByte()));
+            case ARCSIN:
+                return Tensors.arcsin(read(in.readByte()));
+            case ARCCOS:
+                return Tensors.arccos(read(in.readByte()));
+            case ARCTAN:
+                return Tensors.arctan(read(in.readByte()));
+            case ARCCOT:
+                return Tensors.arccot(read(in.readByte()));
+            case LOG:
+                return Tensors.log(read(in.readByte()));
+            case EXP:
+                return Tensors.exp(read(in.readByte()));
+            default:
+                throw new IOException("Corrupted stream: unknown tag " + tag);
+        }
+    }
+
+    private Tensor[] readArray() throws IOException {
+        Tensor[] data = new Tensor[readVarInt(in)];
+        for (int i = 0; i < data.length; ++i)
+            data[i] = read(in.readByte());
+        return data;
+    }
+
+    private Complex readComplex() throws IOException {
+        Real real = readReal(), imaginary = readReal();
+        Complex complex = new Complex(real, imaginary);
+        if (complex.isOne())
+            return Complex.ONE;
+        if (complex.isZero())
+            return Complex.ZERO;
+        if (complex.isMinusOne())
+            return Complex.MINUS_ONE;
+        return complex;
+    }
+
+    private Real readReal() throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case RATIONAL_SMALL:
+                return new Rational(BigInteger.valueOf(readVarLong(in)), BigInteger.valueOf(readVarLong(in)));
+            case RATIONAL_BIG:
+                return new Rational(new BigInteger(readBytes()), new BigInteger(readBytes()));
+            case NUMERIC:
+                return new Numeric(in.readDouble());
+            default:
+                throw new IOException("Corrupted stream: unknown number tag " + tag);
+        }
+    }
+
+    private byte[] readBytes() throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private SimpleIndices readSimpleIndices() throws IOException {
+        int[] indices = new int[readVarInt(in)];
+        if (indices.length == 0)
+            return IndicesFactory.EMPTY_SIMPLE_INDICES;
+        for (int i = 0; i < indices.length; ++i)
+            indices[i] = readVarInt(in);
+        return IndicesFactory.createSimple(null, indices);
+    }
+
+    private int readName() throws IOException {
+        int localId = readVarInt(in);
+        if (localId < names.size())
+            return names.get(localId);
+        if (localId != names.size())
+            throw new IOException("Corrupted stream: undefined name " + localId);
+        //reserve slot: definition of the parent field (if any) takes next local ids
+        names.add(-1);
+
+        NameDescriptor descriptor;
+        byte kind = in.readByte();
+        if (kind == NAME_DERIVATIVE) {
+            NameDescriptor parent = CC.getNameDescriptor(readName());
+            if (!(parent instanceof NameDescriptorForTensorField))
+                throw new IOException("Corrupted stream: derivative of not a field.");
+            int[] orders = new int[readVarInt(in)];
+            for (int i = 0; i < orders.length; ++i)
+                orders[i] = readVarInt(in);
+            descriptor = ((NameDescriptorForTensorField) parent).getDerivative(orders);
+        } else if (kind == NAME_SIMPLE) {
+            String name = in.readUTF();
+            StructureOfIndices[] structures = new StructureOfIndices[readVarInt(in)];
+            for (int i = 0; i < structures.length; ++i)
+                structures[i] = readStructure();
+            descriptor = CC.getNameManager().mapNameDescriptor(name, structures);
+
+            Permutation[] generators = new Permutation[readVarInt(in)];
+            for (int i = 0; i < generators.length; ++i) {
+                boolean antisymmetry = in.readBoolean();
+                int[] oneLine = new int[readVarInt(in)];
+                for (int j = 0; j < oneLine.length; ++j)
+                    oneLine[j] = readVarInt(in);
+                generators[i] = Permutations.createPermutation(antisymmetry, oneLine);
+            }
+            //symmetries already defined in current context take precedence
+            IndicesSymmetries symmetries = descriptor.getSymmetries();
+            if (generators.length != 0 && symmetries.isTrivial() && symmetries.availableForModification())
+                symmetries.addSymmetries(generators);
+        } else
+            throw new IOException("Corrupted stream: unknown name kind " + kind);
+
+        names.set(localId, descriptor.getId());
+        return descriptor.getId();
+    }
+
+    private StructureOfIndices readStructure() throws IOException {
+        int[] counts = new int[IndexType.TYPES_COUNT];
+        BitArray[] states = new BitArray[IndexType.TYPES_COUNT];
+        for (int type = 0; type < IndexType.TYPES_COUNT; ++type) {
+            counts[type] = readVarInt(in);
+            if (in.readBoolean()) {
+                if (counts[type] == 0)
+                    states[type] = BitArray.EMPTY;
+                else {
+                    states[type] = new BitArray(counts[type]);
+                    for (int i = 0; i < counts[type]; ++i)
+                        if (in.readBoolean())
+                            states[type].set(i);
+                }
+            }
+        }
+        return StructureOfIndices.create(counts, states);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.utils.TensorUtils;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Weak intern table (hash-consing table) of tensors. Since tensors are immutable, structurally identical tensors
+ * can be safely replaced by a single canonical instance. This table holds weak references to canonical instances, so
+ * it does not prevent them from being garbage collected. Two tensors are considered identical if they are
+ * {@link TensorUtils#equalsExactly(Tensor, Tensor)} and have same numerical types of all numbers.
+ * <p/>
+ * <p>Interning is disabled by default. To enable it for the current context, an instance of this class should be
+ * set via {@link cc.redberry.core.context.Context#setInternTable(TensorInternTable)}; after this factory methods
+ * {@link Tensors#simpleTensor(String, cc.redberry.core.indices.SimpleIndices)},
+ * {@link Tensors#simpleTensor(int, cc.redberry.core.indices.SimpleIndices)}, {@link ProductBuilder#build()} and
+ * {@link SumBuilder#build()} (and hence
+ * {@link Tensors#multiply(Tensor...)}, {@link Tensors#sum(Tensor...)} and the parser) will return canonical instances.</p>
+ * <p/>
+ * <p>The table collects statistics of hits (i.e. number of duplicates replaced with canonical instances) and
+ * misses. This class is thread-safe: the table is split into a number of segments (selected by hash code, which
+ * takes into account both the tensor and its indices) with independent locks, so concurrent factory calls for
+ * different tensors rarely contend.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class TensorInternTable {
+    private static final int SEGMENTS_COUNT = 16;
+    private final Segment[] segments;
+
+    /**
+     * Creates empty intern table.
+     */
+    public TensorInternTable() {
+        segments = new Segment[SEGMENTS_COUNT];
+        for (int i = 0; i < SEGMENTS_COUNT; ++i)
+            segments[i] = new Segment();
+    }
+
+    /**
+     * Returns canonical instance of the specified tensor. If there is no tensor identical to the specified one in the
+     * table, then the specified tensor will be put in the table and returned.
+     *
+     * @param tensor tensor
+     * @param <T>    type of tensor
+     * @return canonical instance of the specified tensor
+     */
+    public <T extends Tensor> T intern(T tensor) {
+        //Tensor.hashCode() does not take into account indices, so all index variants of e.g. R_abcd would
+        //fall into the same chain
+        final int hash = 31 * tensor.hashCode() + tensor.getIndices().hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS_COUNT - 1)].intern(tensor, hash);
+    }
+
+    /*
+     * Same as TensorUtils.equalsExactly(...), but additionally distinguishes numerical and exact numbers
+     * (Complex.equals(...) does not distinguish e.g. 2 and 2.0)
+     */
+    private static boolean identical(Tensor a, Tensor b) {
+        if (a == b)
+            return true;
+        if (a.getClass() != b.getClass())
+            return false;
+        if (a instanceof Complex)
+            return a.equals(b)
+                    && ((Complex) a).getReal().isNumeric() == ((Complex) b).getReal().isNumeric()
+                    && ((Complex) a).getImaginary().isNumeric() == ((Complex) b).getImaginary().isNumeric();
+        if (a.hashCode() != b.hashCode())
+            return false;
+        if (a.getClass() == SimpleTensor.class)
+            return a.getIndices().equals(b.getIndices());
+        if (a.size() != b.size())
+            return false;
+        final int size = a.size();
+        if (a instanceof MultiTensor) {
+            //elements with equal hash codes may be arranged differently, so each element of a should be matched
+            //with some element of b with the same hash code
+            int begin = 0, i, j, n;
+            for (i = 0; i < size; ++i)
+                if (a.get(i).hashCode() != b.get(i).hashCode())
+                    return false;
+            for (i = 1; i <= size; ++i)
+                if (i == size || a.get(i).hashCode() != a.get(i - 1).hashCode()) {
+                    if (i - 1 != begin) {
+                        boolean[] used = new boolean[i - begin];
+                        OUT:
+                        for (n = begin; n < i; ++n) {
+                            for (j = begin; j < i; ++j)
+                                if (!used[j - begin] && identical(a.get(n), b.get(j))) {
+                                    used[j - begin] = true;
+                                    continue OUT;
+                                }
+                            return false;
+                        }
+                    } else if (!identical(a.get(i - 1), b.get(i - 1)))
+                        return false;
+                    begin = i;
+                }
+            return true;
+        }
+        if (a.getClass() == TensorField.class
+                && (((SimpleTensor) a).getName() != ((SimpleTensor) b).getName()
+                || !a.getIndices().equals(b.getIndices())))
+            return false;
+        for (int i = 0; i < size; ++i)
+            if (!identical(a.get(i), b.get(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Removes all entries from the table and resets statistics.
+     */
+    public void clear() {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    /**
+     * Returns the number of tensors in the table (including those which are already collected, but not yet removed).
+     *
+     * @return the number of tensors in the table
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * Returns the number of successful lookups, i.e. the number of duplicates which were replaced by canonical
+     * instances.
+     *
+     * @return the number of successful lookups
+     */
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments)
+            hits += segment.getHits();
+        return hits;
+    }
+
+    /**
+     * Returns the number of unsuccessful lookups, i.e. the number of new canonical instances.
+     *
+     * @return the number of unsuccessful lookups
+     */
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments)
+            misses += segment.getMisses();
+        return misses;
+    }
+
+    /**
+     * Returns the ratio of successful lookups to all lookups.
+     *
+     * @return the ratio of successful lookups to all lookups
+     */
+    public double getHitRate() {
+        long hits = getHits(), misses = getMisses();
+        return hits + misses == 0 ? 0 : ((double) hits) / (hits + misses);
+    }
+
+    @Override
+    public String toString() {
+        return "TensorInternTable{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "}";
+    }
+
+    private static final class Segment {
+        private final TIntObjectHashMap<Entry> table = new TIntObjectHashMap<>();
+        private final ReferenceQueue<Tensor> queue = new ReferenceQueue<>();
+        private int size = 0;
+        private long hits = 0, misses = 0;
+
+        @SuppressWarnings("unchecked")
+        synchronized <T extends Tensor> T intern(T tensor, int hash) {
+            expungeStaleEntries();
+            final Entry head = table.get(hash);
+            Tensor candidate;
+            for (Entry e = head; e != null; e = e.next)
+                if ((candidate = e.get()) != null && identical(candidate, tensor)) {
+                    ++hits;
+                    return (T) candidate;
+                }
+            ++misses;
+            ++size;
+            table.put(hash, new Entry(tensor, hash, head, queue));
+            return tensor;
+        }
+
+        private void expungeStaleEntries() {
+            Entry stale;
+            while ((stale = (Entry) queue.poll()) != null) {
+                Entry head = table.get(stale.hash), prev = null;
+                for (Entry e = head; e != null; prev = e, e = e.next)
+                    if (e == stale) {
+                        if (prev == null) {
+                            if (e.next == null)
+                                table.remove(stale.hash);
+                            else
+                                table.put(stale.hash, e.next);
+                        } else
+                            prev.next = e.next;
+                        --size;
+                        break;
+                    }
+            }
+        }
+
+        synchronized void clear() {
+            while (queue.poll() != null) ;
+            table.clear();
+            size = 0;
+            hits = 0;
+            misses = 0;
+        }
+
+        synchronized int size() {
+            expungeStaleEntries();
+            return size;
+        }
+
+        synchronized long getHits() {
+            return hits;
+        }
+
+        synchronized long getMisses() {
+            return misses;
+        }
+    }
+
+    private static final class Entry extends WeakReference<Tensor> {
+        final int hash;
+        Entry next;
+
+        Entry(Tensor referent, int hash, Entry next, ReferenceQueue<Tensor> queue) {
+            super(referent, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.context.NameAndStructureOfIndices;
+import cc.redberry.core.context.NameDescriptor;
+import cc.redberry.core.context.NameDescriptorForTensorField;
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.StructureOfIndices;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.number.Numeric;
+import cc.redberry.core.number.Rational;
+import cc.redberry.core.number.Real;
+import cc.redberry.core.tensor.functions.*;
+import cc.redberry.core.utils.BitArray;
+import cc.redberry.core.utils.OutputPort;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static cc.redberry.core.tensor.TensorBinaryFormat.*;
+
+/**
+ * Writes tensors in compact versioned binary format, which can be read back by {@link TensorInputStream}. Tensors are
+ * written one by one, so that large results can be streamed directly from output ports (e.g. terms of expanded sum)
+ * without materializing the whole expression:
+ * <pre>
+ *     try (TensorOutputStream out = new TensorOutputStream(new FileOutputStream(file))) {
+ *         out.writeTensor(expression);
+ *     }
+ * </pre>
+ * Names of tensors are stored by their string names and structures of indices (with symmetries), so the stream can be
+ * read in any context; on reading names are mapped to the name manager of the current context.
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @see TensorInputStream
+ * @since 1.1.11
+ */
+public final class TensorOutputStream implements Closeable, Flushable {
+    private final DataOutputStream out;
+    //name descriptor id -> stream-local id
+    private final TIntIntHashMap names = new TIntIntHashMap(32, 0.5f, -1, -1);
+    private boolean closed = false;
+
+    /**
+     * Creates tensor output stream that writes to the specified underlying output stream. Stream header is written
+     * immediately.
+     *
+     * @param out underlying output stream
+     * @throws IOException if an I/O error occurs
+     */
+    public TensorOutputStream(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeShort(VERSION);
+    }
+
+    /**
+     * Writes specified tensor.
+     *
+     * @param tensor tensor
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTensor(Tensor tensor) throws IOException {
+        ensureOpen();
+        write(tensor);
+    }
+
+    /**
+     * Writes all tensors taken from the specified output port.
+     *
+     * @param port output port
+     * @return number of written tensors
+     * @throws IOException if an I/O error occurs
+     */
+    public long writeAll(OutputPort<? extends Tensor> port) throws IOException {
+        ensureOpen();
+        long count = 0;
+        Tensor tensor;
+        while ((tensor = port.take()) != null) {
+            write(tensor);
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        out.flush();
+    }
+
+    /**
+     * Writes end-of-stream marker and closes underlying stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            out.writeByte(END);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+    }
+
+    private void write(Tensor tensor) throws IOException {
+        if (tensor instanceof Complex) {
+            out.writeByte(COMPLEX);
+            writeComplex((Complex) tensor);
+        } else if (tensor instanceof SimpleTensor) {
+            int name = ((SimpleTensor) tensor).getName();
+            if (CC.getNameManager().isKroneckerOrMetric(name)) {
+                out.writeByte(METRIC_OR_KRONECKER);
+                writeVarInt(out, tensor.getIndices().get(0));
+                writeVarInt(out, tensor.getIndices().get(1));
+            } else if (tensor instanceof TensorField) {
+                TensorField field = (TensorField) tensor;
+                out.writeByte(TENSOR_FIELD);
+                writeName(field.getNameDescriptor());
+                writeIndices(field.getIndices());
+                for (int i = 0; i < field.size(); ++i) {
+                    writeIndices(field.getArgIndices(i));
+                    write(field.get(i));
+                }
+            } else {
+                out.writeByte(SIMPLE_TENSOR);
+                writeName(CC.getNameDescriptor(name));
+                writeIndices(tensor.getIndices());
+            }
+        } else if (tensor instanceof Sum) {
+            out.writeByte(SUM);
+            Tensor[] data = ((Sum) tensor).data;
+            writeVarInt(out, data.length);
+            for (Tensor t : data)
+                write(t);
+        } else if (tensor instanceof Product) {
+            Product product = (Product) tensor;
+            out.writeByte(PRODUCT);
+            writeComplex(product.factor);
+            writeVarInt(out, product.indexlessData.length);
+            for (Tensor t : product.indexlessData)
+                write(t);
+            writeVarInt(out, product.data.length);
+            for (Tensor t : product.data)
+                write(t);
+        } else if (tensor instanceof Power) {
+            out.writeByte(POWER);
+            write(tensor.get(0));
+            write(tensor.get(1));
+        } else if (tensor instanceof Expression) {
+            out.writeByte(EXPRESSION);
+            write(tensor.get(0));
+            write(tensor.get(1));
+        } else if (tensor instanceof ScalarFunction) {
+            out.writeByte(scalarFunctionTag(tensor));
+            write(tensor.get(0));
+        } else
+            throw new IllegalArgumentException("Unsupported tensor type: " + tensor.getClass());
+    }
+
+    private static byte scalarFunctionTag(Tensor function) {
+        if (function instanceof Sin)
+            return SIN;
+        if (function instanceof Cos)
+            return COS;
+        if (function instanceof Tan)
+            return TAN;
+        if (function instanceof Cot)
+            return COT;
+        if (function instanceof ArcSin)
+            return ARCSIN;
+        if (function instanceof ArcCos)
+            return ARCCOS;
+        if (function instanceof ArcTan)
+            return ARCTAN;
+        if (function instanceof ArcCot)
+            return ARCCOT;
+        if (function instanceof Log)
+            return LOG;
+        if (function instanceof Exp)
+            return EXP;
+        throw new IllegalArgumentException("Unsupported scalar function: " + function.getClass());
+    }
+
+    private void writeComplex(Complex complex) throws IOException {
+        writeReal(complex.getReal());
+        writeReal(complex.getImaginary());
+    }
+
+    private void writeReal(Real real) throws IOException {
+        if (real instanceof Numeric) {
+            out.writeByte(NUMERIC);
+            out.writeDouble(real.doubleValue());
+            return;
+        }
+        Rational rational = (Rational) real;
+        BigInteger numerator = rational.getNumerator(), denominator = rational.getDenominator();
+        if (numerator.bitLength() < 64 && denominator.bitLength() < 64) {
+            out.writeByte(RATIONAL_SMALL);
+            writeVarLong(out, numerator.longValue());
+            writeVarLong(out, denominator.longValue());
+        } else {
+            out.writeByte(RATIONAL_BIG);
+            writeBytes(numerator.toByteArray());
+            writeBytes(denominator.toByteArray());
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeIndices(Indices indices) throws IOException {
+        writeVarInt(out, indices.size());
+        for (int i = 0; i < indices.size(); ++i)
+            writeVarInt(out, indices.get(i));
+    }
+
+    private void writeName(NameDescriptor descriptor) throws IOException {
+        int localId = names.get(descriptor.getId());
+        if (localId != -1) {
+            writeVarInt(out, localId);
+            return;
+        }
+        //first occurrence: allocate next local id and write definition inline
+        localId = names.size();
+        names.put(descriptor.getId(), localId);
+        writeVarInt(out, localId);
+
+        if (descriptor instanceof NameDescriptorForTensorField
+                && ((NameDescriptorForTensorField) descriptor).isDerivative()) {
+            NameDescriptorForTensorField derivative = (NameDescriptorForTensorField) descriptor;
+            out.writeByte(NAME_DERIVATIVE);
+            writeName(derivative.getParent());
+            int[] orders = derivative.getDerivativeOrders();
+            writeVarInt(out, orders.length);
+            for (int order : orders)
+                writeVarInt(out, order);
+            return;
+        }
+
+        out.writeByte(NAME_SIMPLE);
+        NameAndStructureOfIndices key = NameDescriptor.extractKey(descriptor);
+        out.writeUTF(key.getName());
+        StructureOfIndices[] structures = key.getStructure();
+        writeVarInt(out, structures.length);
+        for (StructureOfIndices structure : structures)
+            writeStructure(structure);
+
+        List<Permutation> generators = new ArrayList<>();
+        for (Permutation generator : descriptor.getSymmetries().getGenerators())
+            if (!generator.isIdentity())
+                generators.add(generator);
+        writeVarInt(out, generators.size());
+        for (Permutation generator : generators) {
+            out.writeBoolean(generator.antisymmetry());
+            int[] oneLine = generator.oneLine();
+            writeVarInt(out, oneLine.length);
+            for (int i : oneLine)
+                writeVarInt(out, i);
+        }
+    }
+
+    private void writeStructure(StructureOfIndices structure) throws IOException {
+        int[] counts = structure.getTypesCounts();
+        BitArray[] states = structure.getStates();
+        for (byte type = 0; type < IndexType.TYPES_COUNT; ++type) {
+            writeVarInt(out, counts[type]);
+            if (states[type] == null)
+                out.writeBoolean(false);
+            else {
+                out.writeBoolean(true);
+                for (int i = 0; i < counts[type]; ++i)
+                    out.writeBoolean(states[type].get(i));
+            }
+        }
+    }
+}
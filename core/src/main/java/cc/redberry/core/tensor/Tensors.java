@@ -353,9 +353,9 @@ public final class Tensors {
             } else
                 return nst.getCachedSymbol();
         }
-        return new SimpleTensor(descriptor.getId(),
+        return intern(new SimpleTensor(descriptor.getId(),
                 UnsafeIndicesFactory.createOfTensor(descriptor.getSymmetries(),
-                        indices));
+                        indices)));
     }
 
     /**
@@ -385,9 +385,22 @@ public final class Tensors {
                 return nst.getCachedSymbol();
         }
 
-        return new SimpleTensor(name,
+        return intern(new SimpleTensor(name,
                 UnsafeIndicesFactory.createOfTensor(descriptor.getSymmetries(),
-                        indices));
+                        indices)));
+    }
+
+    /**
+     * Returns canonical instance of the specified tensor if interning is enabled in the current context (see
+     * {@link TensorInternTable}), or the specified tensor itself otherwise.
+     *
+     * @param tensor tensor
+     * @param <T>    type of tensor
+     * @return canonical instance of the specified tensor or the specified tensor itself if interning is disabled
+     */
+    static <T extends Tensor> T intern(T tensor) {
+        TensorInternTable table = CC.current().getInternTable();
+        return table == null ? tensor : table.intern(tensor);
     }
 
     /**
@@ -27,6 +27,8 @@ import cc.redberry.core.tensor.TensorBuilder;
 import cc.redberry.core.tensor.TensorWrapper;
 import cc.redberry.core.utils.Indicator;
 
+import java.util.Arrays;
+
 /**
  * An iterator for tensors that allows the programmer to traverse the tensor
  * tree structure, modify the tensor during iteration, and obtain information
@@ -72,11 +74,17 @@ public final class TreeTraverseIterator<T extends Payload<T>> {
     private TraverseState lastState;
     private Tensor current = null;
     private final PayloadFactory<T> payloadFactory;
+    /**
+     * Stack of pointers indexed by depth; pointers are reused when iterator enters next node on the same depth, so
+     * traversal does not allocate per node
+     */
+    private Object[] stack = new Object[8];
 
     public TreeTraverseIterator(Tensor tensor, TraverseGuide guide, PayloadFactory<T> payloadFactory) {
-        currentPointer = new LinkedPointer(null, TensorWrapper.wrap(tensor), true);
-        iterationGuide = guide;
         this.payloadFactory = payloadFactory;
+        stack[0] = currentPointer = new LinkedPointer();
+        currentPointer.init(null, TensorWrapper.wrap(tensor), true);
+        iterationGuide = guide;
     }
 
     public TreeTraverseIterator(Tensor tensor, TraverseGuide guide) {
@@ -107,7 +115,9 @@ public final class TreeTraverseIterator<T extends Payload<T>> {
             if (cur != null)
                 current = cur;
 
-            currentPointer = currentPointer.previous;
+            LinkedPointer previous = currentPointer.previous;
+            currentPointer.release();
+            currentPointer = previous;
             currentPointer.set(current);
         }
 
@@ -131,7 +141,7 @@ public final class TreeTraverseIterator<T extends Payload<T>> {
                     continue;
 
                 current = next;
-                currentPointer = new LinkedPointer(currentPointer, next, permission == TraversePermission.Enter);
+                currentPointer = push(next, permission == TraversePermission.Enter);
                 return lastState = TraverseState.Entering;
             }
         }
@@ -232,22 +242,35 @@ public final class TreeTraverseIterator<T extends Payload<T>> {
         return currentPointer;
     }
 
+    @SuppressWarnings("unchecked")
+    private LinkedPointer push(Tensor tensor, boolean goInside) {
+        final int level = currentPointer.level + 1;
+        if (level == stack.length)
+            stack = Arrays.copyOf(stack, stack.length << 1);
+        LinkedPointer pointer = (LinkedPointer) stack[level];
+        if (pointer == null)
+            stack[level] = pointer = new LinkedPointer();
+        pointer.init(currentPointer, tensor, goInside);
+        return pointer;
+    }
+
     private final class LinkedPointer implements StackPosition<T> {
 
-        int position = 0;
+        int position;
         Tensor tensor;
-        Tensor current = null;
-        Tensor toSet = null;
-        TensorBuilder builder = null;
-        final LinkedPointer previous;
-        boolean isModified = false;
-        T payload = null;
-
-        public LinkedPointer(LinkedPointer pair, Tensor tensor, boolean goInside) {
+        Tensor current;
+        Tensor toSet;
+        TensorBuilder builder;
+        LinkedPointer previous;
+        int level;
+        boolean isModified;
+        T payload;
+
+        void init(LinkedPointer pair, Tensor tensor, boolean goInside) {
             this.tensor = tensor;
-            if (!goInside)
-                position = Integer.MAX_VALUE;
+            this.position = goInside ? 0 : Integer.MAX_VALUE;
             this.previous = pair;
+            this.level = pair == null ? 0 : pair.level + 1;
             if (previous != null && payloadFactory != null && !payloadFactory.allowLazyInitialization()) {
                 this.payload = payloadFactory.create(this);
                 if (this.payload == null)
@@ -255,6 +278,17 @@ public final class TreeTraverseIterator<T extends Payload<T>> {
             }
         }
 
+        /**
+         * Clears references to tensors and payload when iterator leaves this position.
+         */
+        void release() {
+            tensor = current = toSet = null;
+            builder = null;
+            previous = null;
+            isModified = false;
+            payload = null;
+        }
+
         Tensor next() {
             if (toSet != null) {
                 if (builder == null) {
@@ -340,13 +374,7 @@ public final class TreeTraverseIterator<T extends Payload<T>> {
 
         @Override
         public int getDepth() {
-            int depth = -2;
-            LinkedPointer pointer = this;
-            while (pointer != null) {
-                pointer = pointer.previous;
-                ++depth;
-            }
-            return depth;
+            return level - 1;
         }
 
         @Override
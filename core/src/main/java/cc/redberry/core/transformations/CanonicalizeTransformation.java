@@ -0,0 +1,275 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.groups.permutations.AlgorithmsDoubleCosets;
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.groups.permutations.PermutationGroup;
+import cc.redberry.core.groups.permutations.PermutationGroupCache;
+import cc.redberry.core.groups.permutations.Permutations;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.indices.SimpleIndices;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.tensor.Product;
+import cc.redberry.core.tensor.ProductContent;
+import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.Tensors;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.tensor.iterator.TraversePermission;
+import cc.redberry.core.tensor.iterator.TraverseState;
+import cc.redberry.core.tensor.iterator.TreeTraverseIterator;
+import cc.redberry.core.utils.ArraysUtils;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Brings each monomial (simple tensor or product of simple tensors) to the canonical form with respect to
+ * symmetries of indices, permutations of multipliers and renaming of dummy indices; monomials which are zero because
+ * of their symmetries are replaced with zero. For example, if A_mn is symmetric and B^mn is antisymmetric, then
+ * A_mn*B^mn will be replaced with zero, while R_abcd*R^cdab - R_badc*R^badc will be reduced to zero as a sum of equal
+ * canonical monomials with opposite signs.
+ *
+ * <p>Canonical form is calculated using double coset canonicalization (see {@link
+ * AlgorithmsDoubleCosets#canonicalRepresentative(int[], boolean, PermutationGroup, int[][], boolean[])}), so each
+ * monomial is processed only once and no pairwise mapping searches are performed (in contrast to {@link
+ * EliminateDueSymmetriesTransformation}). Dummy indices of canonical monomial are taken from the initial one, so like
+ * terms with different names of dummies are collected by sums as usual. In products which contain multipliers other
+ * than simple tensors (fields, sums etc.) the sub-product of simple tensors is brought to the canonical form (so e.g.
+ * A_mn*B^mn*C_a*(D^a + E^a) is replaced with zero), while other multipliers are processed as subexpressions.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class CanonicalizeTransformation implements Transformation {
+    /**
+     * Singleton instance.
+     */
+    public static final CanonicalizeTransformation CANONICALIZE = new CanonicalizeTransformation();
+
+    private CanonicalizeTransformation() {
+    }
+
+    @Override
+    public Tensor transform(Tensor t) {
+        TreeTraverseIterator iterator = new TreeTraverseIterator(t, MULTIPLIERS_GUIDE);
+        TraverseState state;
+        Tensor c, canonical;
+        while ((state = iterator.next()) != null) {
+            if (state != TraverseState.Leaving)
+                continue;
+            c = iterator.current();
+            if (c instanceof Product || c.getClass() == SimpleTensor.class) {
+                canonical = canonicalize(c);
+                if (canonical != c)
+                    iterator.set(canonical);
+            }
+        }
+        return iterator.result();
+    }
+
+    /**
+     * Simple tensors inside products are canonicalized together with the whole product
+     */
+    private static final TraverseGuide MULTIPLIERS_GUIDE = new TraverseGuide() {
+        @Override
+        public TraversePermission getPermission(Tensor tensor, Tensor parent, int indexInParent) {
+            if (parent instanceof Product && tensor.getClass() == SimpleTensor.class)
+                return TraversePermission.DontShow;
+            return TraversePermission.Enter;
+        }
+    };
+
+    /**
+     * Canonicalizes sub-product of simple tensors of specified product, which contains other indexed multipliers
+     */
+    private static Tensor canonicalizeSimpleSubProduct(Product product, int simpleCount) {
+        if (simpleCount == 0)
+            return product;
+        ProductContent content = product.getContent();
+        Tensor[] simple = new Tensor[simpleCount],
+                others = new Tensor[content.size() - simpleCount + 2];
+        others[0] = product.getIndexlessSubProduct();
+        for (int i = 0, s = 0, o = 1; i < content.size(); ++i)
+            if (content.get(i).getClass() == SimpleTensor.class)
+                simple[s++] = content.get(i);
+            else
+                others[o++] = content.get(i);
+        Tensor subProduct = Tensors.multiply(simple), canonical = canonicalize(subProduct);
+        if (canonical == subProduct)
+            return product;
+        others[others.length - 1] = canonical;
+        return Tensors.multiply(others);
+    }
+
+    private static final Comparator<SimpleTensor> NAMES_COMPARATOR = new Comparator<SimpleTensor>() {
+        @Override
+        public int compare(SimpleTensor o1, SimpleTensor o2) {
+            return Integer.compare(o1.getName(), o2.getName());
+        }
+    };
+
+    /**
+     * Returns canonical form of specified simple tensor or product of simple tensors, or zero if it is zero because
+     * of symmetries. If specified tensor is a product which contains indexed multipliers other than simple tensors
+     * (fields, sums etc.), then only the sub-product of its simple tensors is brought to the canonical form (indices
+     * contracted with other multipliers are treated as free). Other tensors are returned as is; the same instance is
+     * also returned if tensor is already in the canonical form.
+     *
+     * @param tensor simple tensor or product of simple tensors
+     * @return canonical form of specified tensor
+     */
+    public static Tensor canonicalize(Tensor tensor) {
+        final SimpleTensor[] data;
+        final Tensor factor;
+        if (tensor.getClass() == SimpleTensor.class) {
+            data = new SimpleTensor[]{(SimpleTensor) tensor};
+            factor = Complex.ONE;
+        } else if (tensor instanceof Product) {
+            ProductContent content = ((Product) tensor).getContent();
+            int simpleCount = 0;
+            for (int i = content.size() - 1; i >= 0; --i)
+                if (content.get(i).getClass() == SimpleTensor.class)
+                    ++simpleCount;
+            if (simpleCount != content.size())
+                return canonicalizeSimpleSubProduct((Product) tensor, simpleCount);
+            data = new SimpleTensor[content.size()];
+            for (int i = 0; i < data.length; ++i)
+                data[i] = (SimpleTensor) content.get(i);
+            factor = ((Product) tensor).getIndexlessSubProduct();
+        } else
+            return tensor;
+        if (data.length == 0)
+            return tensor;
+        //multipliers with equal names are adjacent
+        Arrays.sort(data, NAMES_COMPARATOR);
+
+        //slots
+        final int[] offsets = new int[data.length + 1];
+        for (int i = 0; i < data.length; ++i)
+            offsets[i + 1] = offsets[i] + data[i].getIndices().size();
+        final int degree = offsets[data.length];
+        if (degree == 0)
+            return tensor;
+        final int[] slots = new int[degree];
+        for (int i = 0; i < data.length; ++i)
+            for (int j = 0; j < data[i].getIndices().size(); ++j)
+                slots[offsets[i] + j] = data[i].getIndices().get(j);
+
+        //indices: free first, then pairs of dummies (upper index first) ordered by names
+        final int[] indices = new int[degree];
+        int pointer = 0;
+        int[] free = tensor.getIndices().getFree().getAllIndices().copy();
+        Arrays.sort(free);
+        System.arraycopy(free, 0, indices, 0, free.length);
+        pointer += free.length;
+        int[] dummyNames = new int[(degree - free.length) / 2];
+        int dummiesCount = 0;
+        for (int index : slots)
+            if (IndicesUtils.getState(index) && Arrays.binarySearch(free, index) < 0)
+                dummyNames[dummiesCount++] = IndicesUtils.getNameWithType(index);
+        assert dummiesCount == dummyNames.length;
+        Arrays.sort(dummyNames);
+        for (int name : dummyNames) {
+            indices[pointer++] = 0x80000000 | name;
+            indices[pointer++] = name;
+        }
+        TIntIntHashMap positions = new TIntIntHashMap(degree);
+        for (int i = 0; i < degree; ++i)
+            positions.put(indices[i], i);
+        final int[] g = new int[degree];
+        for (int i = 0; i < degree; ++i)
+            g[i] = positions.get(slots[i]);
+
+        //dummies grouped by types (types are encoded in higher bits of names)
+        List<int[]> dummies = new ArrayList<>();
+        List<Boolean> metric = new ArrayList<>();
+        for (int begin = 0, end; begin < dummyNames.length; begin = end) {
+            byte type = IndicesUtils.getType(dummyNames[begin]);
+            end = begin + 1;
+            while (end < dummyNames.length && IndicesUtils.getType(dummyNames[end]) == type)
+                ++end;
+            int[] positionsOfType = new int[2 * (end - begin)];
+            for (int i = 0; i < positionsOfType.length; ++i)
+                positionsOfType[i] = free.length + 2 * begin + i;
+            dummies.add(positionsOfType);
+            metric.add(CC.isMetric(type));
+        }
+        boolean[] metricArray = new boolean[metric.size()];
+        for (int i = 0; i < metricArray.length; ++i)
+            metricArray[i] = metric.get(i);
+
+        //slot symmetries
+        List<Permutation> generators = new ArrayList<>();
+        for (int i = 0; i < data.length; ++i) {
+            SimpleIndices simpleIndices = data[i].getIndices();
+            if (simpleIndices.size() > 1)
+                for (Permutation generator : simpleIndices.getSymmetries().getPermutationGroup().generators()) {
+                    if (generator.isIdentity() && !generator.antisymmetry())
+                        continue;
+                    int[] shifted = ArraysUtils.getSeriesFrom0(degree);
+                    for (int j = 0; j < simpleIndices.size(); ++j)
+                        shifted[offsets[i] + j] = offsets[i] + generator.newIndexOf(j);
+                    generators.add(Permutations.createPermutation(generator.antisymmetry(), shifted));
+                }
+            if (i > 0 && data[i - 1].getName() == data[i].getName() && simpleIndices.size() != 0) {
+                int[] swap = ArraysUtils.getSeriesFrom0(degree);
+                for (int j = 0; j < simpleIndices.size(); ++j) {
+                    swap[offsets[i - 1] + j] = offsets[i] + j;
+                    swap[offsets[i] + j] = offsets[i - 1] + j;
+                }
+                generators.add(Permutations.createPermutation(swap));
+            }
+        }
+        if (generators.isEmpty() && dummyNames.length == 0)
+            return tensor;
+        PermutationGroup slotSymmetries = PermutationGroupCache.getInstance().get(generators);
+
+        AlgorithmsDoubleCosets.Representative canonical = AlgorithmsDoubleCosets.canonicalRepresentative(g, false, slotSymmetries,
+                dummies.toArray(new int[dummies.size()][]), metricArray);
+        if (canonical == null)
+            return Complex.ZERO;
+        boolean changed = canonical.getSign();
+        for (int i = 0; i < degree && !changed; ++i)
+            changed = canonical.newIndexOf(i) != g[i];
+        if (!changed)
+            return tensor;
+
+        Tensor[] result = new Tensor[data.length + 1];
+        result[0] = canonical.getSign() ? Tensors.negate(factor) : factor;
+        for (int i = 0; i < data.length; ++i) {
+            int[] newIndices = new int[data[i].getIndices().size()];
+            for (int j = 0; j < newIndices.length; ++j)
+                newIndices[j] = indices[canonical.newIndexOf(offsets[i] + j)];
+            result[i + 1] = Tensors.simpleTensor(data[i].getName(), IndicesFactory.createSimple(null, newIndices));
+        }
+        return Tensors.multiply(result);
+    }
+}
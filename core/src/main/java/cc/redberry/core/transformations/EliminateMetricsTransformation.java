@@ -27,6 +27,8 @@ import cc.redberry.core.context.OutputFormat;
 import cc.redberry.core.indexmapping.IndexMapping;
 import cc.redberry.core.indices.SimpleIndices;
 import cc.redberry.core.tensor.*;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.transformations.substitutions.SubstitutionIterator;
 
 import java.util.*;
 
@@ -37,7 +39,7 @@ import java.util.*;
  * @author Stanislav Poslavsky
  * @since 1.0
  */
-public final class EliminateMetricsTransformation implements TransformationToStringAble {
+public final class EliminateMetricsTransformation implements TransformationToStringAble, FusableTransformation {
     /**
      * Singleton instance.
      */
@@ -62,6 +64,35 @@ public final class EliminateMetricsTransformation implements TransformationToStr
         return transform(tensor, DummyMetricsChain.INSTANCE);
     }
 
+    @Override
+    public boolean isFusable() {
+        return true;
+    }
+
+    @Override
+    public TraverseGuide getTraverseGuide() {
+        return TraverseGuide.ALL;
+    }
+
+    @Override
+    public boolean mayModify(Tensor tensor) {
+        return true;
+    }
+
+    /**
+     * Eliminates metrics in the specified node assuming that there are no metrics to be eliminated in its children;
+     * so only products with metrics or Kronecker deltas among their multipliers should be processed.
+     */
+    @Override
+    public Tensor transformNode(Tensor node, SubstitutionIterator iterator) {
+        if (!(node instanceof Product))
+            return node;
+        for (Tensor t : node)
+            if (Tensors.isKroneckerOrMetric(t))
+                return transform(node);
+        return node;
+    }
+
     private Tensor transform(Tensor tensor, MetricsChain chain) {
         //FUTURE if tensor is symbolic return tensor
         if (tensor instanceof SimpleTensor) {
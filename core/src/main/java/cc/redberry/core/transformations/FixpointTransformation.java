@@ -0,0 +1,144 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.context.OutputFormat;
+import cc.redberry.core.context.ToString;
+import cc.redberry.core.tensor.Tensor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies transformations until the tensor is unchanged (like {@link Transformation.Util#applyUntilUnchanged(Tensor,
+ * Transformation...)}), skipping on each round the subtrees which are known to be unchanged. Consecutive fusable
+ * transformations (see {@link FusableTransformation}) are applied in a single pass (see {@link FusedTransformation});
+ * for each such run the unchanged children of modified nodes (i.e. nodes such that all transformations of the run
+ * leave the node and all its descendants unchanged) are remembered by identity (or, if the parent was rebuilt, their
+ * exactly equal copies in the rebuilt parent are remembered), and are not traversed in subsequent rounds. Since
+ * fusable transformations are bottom-up transformations of single nodes, the result of the run on a subtree depends
+ * only on the subtree itself, so subsequent rounds cost in proportion to the size of the changed part of the tree
+ * (together with the immediate children of changed nodes), while the first round costs almost the same as a plain
+ * pass. Only the nodes of the last tree are remembered, so the memory overhead is bounded by the size of the tree.
+ * Non fusable transformations are applied to the whole tensor on each round.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class FixpointTransformation implements TransformationToStringAble {
+    private final Transformation[] transformations;
+    //runs of fusable transformations (null for non fusable)
+    private final FusableTransformation[][] runs;
+    //non fusable transformations (null for runs of fusable)
+    private final Transformation[] segments;
+    private final int limit;
+
+    /**
+     * Creates transformation which applies specified transformations until the tensor is unchanged.
+     *
+     * @param transformations transformations
+     */
+    public FixpointTransformation(Transformation... transformations) {
+        this(Integer.MAX_VALUE, transformations);
+    }
+
+    /**
+     * Creates transformation which applies specified transformations until the tensor is unchanged.
+     *
+     * @param limit           limit of rounds
+     * @param transformations transformations
+     */
+    public FixpointTransformation(int limit, Transformation... transformations) {
+        this.limit = limit;
+        List<Transformation> flatten = new ArrayList<>(transformations.length);
+        FusedTransformation.flatten(transformations, flatten);
+        this.transformations = flatten.toArray(new Transformation[flatten.size()]);
+
+        List<FusableTransformation[]> runs = new ArrayList<>();
+        List<Transformation> segments = new ArrayList<>();
+        List<FusableTransformation> run = new ArrayList<>();
+        for (Transformation tr : this.transformations) {
+            if (FusedTransformation.isFusable(tr) && run.size() < FusedTransformation.MAX_RUN_LENGTH) {
+                run.add((FusableTransformation) tr);
+                continue;
+            }
+            if (!run.isEmpty()) {
+                runs.add(run.toArray(new FusableTransformation[run.size()]));
+                segments.add(null);
+                run.clear();
+            }
+            if (FusedTransformation.isFusable(tr))
+                run.add((FusableTransformation) tr);
+            else {
+                runs.add(null);
+                segments.add(tr);
+            }
+        }
+        if (!run.isEmpty()) {
+            runs.add(run.toArray(new FusableTransformation[run.size()]));
+            segments.add(null);
+        }
+        this.runs = runs.toArray(new FusableTransformation[runs.size()][]);
+        this.segments = segments.toArray(new Transformation[segments.size()]);
+    }
+
+    @Override
+    public Tensor transform(Tensor t) {
+        FusedTransformation.StableNodes[] stable = new FusedTransformation.StableNodes[runs.length];
+        for (int i = 0; i < runs.length; ++i)
+            if (runs[i] != null)
+                stable[i] = new FusedTransformation.StableNodes();
+        Tensor r;
+        int l = limit;
+        do {
+            if (l == 0)
+                throw new RuntimeException("Still changed after " + limit + " tries.");
+            r = t;
+            for (int i = 0; i < runs.length; ++i)
+                t = runs[i] == null ? segments[i].transform(t) : FusedTransformation.transform(t, runs[i], stable[i]);
+            --l;
+        } while (r != t);
+        return r;
+    }
+
+    @Override
+    public String toString(OutputFormat f) {
+        StringBuilder sb = new StringBuilder("Fixpoint[");
+        for (int i = 0; i < transformations.length; ++i) {
+            if (i != 0)
+                sb.append(", ");
+            if (transformations[i] instanceof ToString)
+                sb.append(((ToString) transformations[i]).toString(f));
+            else
+                sb.append(transformations[i]);
+        }
+        return sb.append("]").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toString(CC.getDefaultOutputFormat());
+    }
+}
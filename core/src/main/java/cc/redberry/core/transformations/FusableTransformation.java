@@ -0,0 +1,75 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.transformations.substitutions.SubstitutionIterator;
+
+/**
+ * Transformation which is applied to a tensor by a single bottom-up pass over its tree and thus can be fused with
+ * other such transformations in a single pass (see {@link FusedTransformation}).
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public interface FusableTransformation extends Transformation {
+    /**
+     * Returns true if this transformation can be fused with other transformations, i.e. if its {@link
+     * #transform(cc.redberry.core.tensor.Tensor)} is equivalent to the application of {@link #transformNode(Tensor,
+     * SubstitutionIterator)} to each node shown by {@link #getTraverseGuide()} from child to parent.
+     *
+     * @return true if this transformation can be fused with other transformations
+     */
+    boolean isFusable();
+
+    /**
+     * Returns traverse guide which specifies the nodes to be transformed.
+     *
+     * @return traverse guide
+     */
+    TraverseGuide getTraverseGuide();
+
+    /**
+     * Returns false if it is known that this transformation leaves the specified tensor (and all its subtrees)
+     * unchanged, e.g. if tensor does not contain names of simple tensors required by substitution; such subtrees are
+     * not traversed in a fused pass. This check should be cheap.
+     *
+     * @param tensor tensor
+     * @return false if this transformation leaves the specified tensor unchanged
+     */
+    boolean mayModify(Tensor tensor);
+
+    /**
+     * Transforms the specified node, all children of which are already transformed, and returns the result. The
+     * specified iterator is positioned at the node (its current node may be the initial node before transformation
+     * by preceding transformations of the fused pass) and should be used only to obtain forbidden indices; the result
+     * will be set to the iterator by the caller.
+     *
+     * @param node     node
+     * @param iterator iterator positioned at the node
+     * @return result of transformation of node
+     */
+    Tensor transformNode(Tensor node, SubstitutionIterator iterator);
+}
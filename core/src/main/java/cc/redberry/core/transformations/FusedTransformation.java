@@ -0,0 +1,383 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.context.OutputFormat;
+import cc.redberry.core.context.ToString;
+import cc.redberry.core.tensor.Expression;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.tensor.iterator.TraversePermission;
+import cc.redberry.core.transformations.substitutions.SubstitutionIterator;
+import cc.redberry.core.transformations.substitutions.SubstitutionTransformation;
+import cc.redberry.core.utils.TensorUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Sequence of transformations, where each run of consecutive fusable transformations (see {@link
+ * FusableTransformation#isFusable()}) is applied in a single traversal of tensor tree: all transformations of the run
+ * are applied to each node (those transformations which traverse guides show this node) before moving to its parent,
+ * so the tree is traversed and rebuilt once per run instead of once per transformation. Non fusable transformations are
+ * applied as is. Expressions are treated as substitutions.
+ *
+ * <p>If some transformation of the run modifies a node, the subsequent transformations of the run are applied to the
+ * whole new node (by {@link Transformation#transform(cc.redberry.core.tensor.Tensor)}), since its children may be
+ * not transformed by them. So the result is mathematically the same as the result of sequential application of
+ * transformations, but may differ in form: e.g. if substitution follows expand, then sums substituted in products will
+ * be also expanded.</p>
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public final class FusedTransformation implements TransformationToStringAble {
+    /**
+     * Maximal number of transformations fused in a single pass
+     */
+    static final int MAX_RUN_LENGTH = 64;
+    private final Transformation[] transformations;
+
+    /**
+     * Creates fused sequence of specified transformations.
+     *
+     * @param transformations transformations
+     */
+    public FusedTransformation(Transformation... transformations) {
+        List<Transformation> list = new ArrayList<>(transformations.length);
+        flatten(transformations, list);
+        this.transformations = list.toArray(new Transformation[list.size()]);
+    }
+
+    private static void flatten(Iterable<Transformation> transformations, List<Transformation> list) {
+        for (Transformation tr : transformations)
+            flatten(new Transformation[]{tr}, list);
+    }
+
+    static void flatten(Transformation[] transformations, List<Transformation> list) {
+        for (Transformation tr : transformations)
+            if (tr instanceof TransformationCollection)
+                flatten((TransformationCollection) tr, list);
+            else if (tr instanceof FusedTransformation)
+                list.addAll(Arrays.asList(((FusedTransformation) tr).transformations));
+            else if (tr instanceof Expression)
+                list.add(new SubstitutionTransformation((Expression) tr));
+            else
+                list.add(tr);
+    }
+
+    static boolean isFusable(Transformation tr) {
+        return tr instanceof FusableTransformation && ((FusableTransformation) tr).isFusable();
+    }
+
+    @Override
+    public Tensor transform(Tensor t) {
+        int begin = 0;
+        for (int i = 0; i <= transformations.length; ++i) {
+            if (i != transformations.length && isFusable(transformations[i]) && i - begin < MAX_RUN_LENGTH)
+                continue;
+            if (i - begin == 1)
+                t = transformations[begin].transform(t);
+            else if (i - begin > 1)
+                t = transform(t, Arrays.copyOfRange(transformations, begin, i, FusableTransformation[].class), null);
+            if (i != transformations.length && !isFusable(transformations[i])) {
+                t = transformations[i].transform(t);
+                begin = i + 1;
+            } else
+                begin = i;
+        }
+        return t;
+    }
+
+    /**
+     * Applies specified run of transformations in a single pass.
+     *
+     * @param t      tensor
+     * @param run    fusable transformations
+     * @param stable if not null, then nodes contained in this set are not traversed (they are known to be unchanged
+     *               under the run), and unchanged children of modified nodes are added to this set
+     * @return result
+     */
+    static Tensor transform(Tensor t, FusableTransformation[] run, StableNodes stable) {
+        if (stable != null)
+            stable.startPass(run);
+        VisibilityGuide guide = new VisibilityGuide(run, stable);
+        SubstitutionIterator iterator = new SubstitutionIterator(t, guide);
+        Tensor node, current, r;
+        long visible, pruned;
+        int i, k;
+        boolean modified;
+        while ((node = iterator.next()) != null) {
+            visible = guide.pop();
+            pruned = guide.pruned[guide.pointer];
+            current = node;
+            for (i = 0; i < run.length; ++i) {
+                if ((visible & (1L << i)) == 0)
+                    continue;
+                current = run[i].transformNode(node, iterator);
+                if (current != node) {
+                    //children of the new node may be not transformed by the subsequent transformations
+                    boolean transformed = false;
+                    for (k = i + 1; k < run.length; ++k)
+                        if ((visible & (1L << k)) != 0) {
+                            current = run[k].transform(current);
+                            transformed = true;
+                        }
+                    if (transformed)
+                        iterator.safeSet(current);
+                    else
+                        iterator.set(current);
+                    break;
+                }
+            }
+            modified = current != node || iterator.isCurrentModified();
+            if (modified && pruned != 0) {
+                //modified subtree may be now modified by transformations which skipped it (they skipped its
+                //descendants too, so they are applied to the whole node)
+                r = current;
+                for (i = 0; i < run.length; ++i)
+                    if ((pruned & (1L << i)) != 0 && run[i].mayModify(r))
+                        r = run[i].transform(r);
+                if (r != current)
+                    iterator.safeSet(r);
+            }
+            if (stable != null)
+                stable.leave(iterator.current(), modified, guide.pointer, visible, guide.entered[guide.pointer]);
+        }
+        return iterator.result();
+    }
+
+    /**
+     * Union of traverse guides of fused transformations; tracks for each shown node the set of transformations which
+     * should be applied to it (and the set of transformations which skip it, see {@link
+     * FusableTransformation#mayModify(Tensor)}).
+     */
+    private static final class VisibilityGuide implements TraverseGuide {
+        final FusableTransformation[] transformations;
+        final TraverseGuide[] guides;
+        final StableNodes stable;
+        //bit masks of transformations for which node is shown, entered and skipped, indexed by depth
+        long[] shown = new long[16], entered = new long[16], pruned = new long[16];
+        int pointer = 0;
+
+        VisibilityGuide(FusableTransformation[] transformations, StableNodes stable) {
+            this.transformations = transformations;
+            this.guides = new TraverseGuide[transformations.length];
+            for (int i = 0; i < guides.length; ++i)
+                guides[i] = transformations[i].getTraverseGuide();
+            this.stable = stable;
+        }
+
+        @Override
+        public TraversePermission getPermission(Tensor tensor, Tensor parent, int indexInParent) {
+            //transformations which enter the parent (all for the root)
+            long parentEntered = pointer == 0 ? -1L : entered[pointer - 1];
+            long show = 0, enter = 0, prune = 0;
+            TraversePermission permission;
+            for (int i = 0; i < guides.length; ++i) {
+                if ((parentEntered & (1L << i)) == 0)
+                    continue;
+                permission = guides[i].getPermission(tensor, parent, indexInParent);
+                if (permission == TraversePermission.DontShow)
+                    continue;
+                if (!transformations[i].mayModify(tensor)) {
+                    prune |= 1L << i;
+                    continue;
+                }
+                show |= 1L << i;
+                if (permission == TraversePermission.Enter)
+                    enter |= 1L << i;
+            }
+            if (show == 0 || (stable != null && stable.contains(tensor, pointer, show, enter)))
+                return TraversePermission.DontShow;
+            if (pointer == shown.length) {
+                shown = Arrays.copyOf(shown, pointer << 1);
+                entered = Arrays.copyOf(entered, pointer << 1);
+                pruned = Arrays.copyOf(pruned, pointer << 1);
+            }
+            shown[pointer] = show;
+            pruned[pointer] = prune;
+            entered[pointer++] = enter;
+            return enter == 0 ? TraversePermission.ShowButNotEnter : TraversePermission.Enter;
+        }
+
+        long pop() {
+            return shown[--pointer];
+        }
+    }
+
+    /**
+     * Nodes which are unchanged under a run of transformations; the result of the run on a node depends only on the
+     * node itself and on the sets of transformations which show and enter the node. Nodes are compared by identity.
+     * Only unchanged children of modified nodes (and unchanged nodes which were not traversed) are remembered: in the
+     * next pass only modified nodes are traversed, so only their children will be tested. Since the parent of a
+     * modified node is rebuilt, its unchanged children may be replaced with equal copies (e.g. by
+     * {@link cc.redberry.core.tensor.SumBuilder}); such copies are remembered instead of the original instances. Only
+     * nodes remembered during the last pass are retained, so subtrees which left the tree are released; all nodes are
+     * dropped if the run of transformations changes.
+     */
+    static final class StableNodes {
+        private FusableTransformation[] run = null;
+        //node -> pairs of masks (shown, entered)
+        private IdentityHashMap<Tensor, long[]> previous = new IdentityHashMap<>(), current = new IdentityHashMap<>();
+        //unchanged children of nodes on the current path, indexed by depth
+        private Children[] children = new Children[16];
+
+        void startPass(FusableTransformation[] run) {
+            if (this.run == run || Arrays.equals(this.run, run))
+                previous = current;
+            else
+                previous = new IdentityHashMap<>();
+            this.run = run;
+            current = new IdentityHashMap<>();
+        }
+
+        /**
+         * Returns whether specified node at specified depth is known to be unchanged.
+         */
+        boolean contains(Tensor tensor, int depth, long shown, long entered) {
+            if (!contains(current.get(tensor), shown, entered) && !contains(previous.get(tensor), shown, entered))
+                return false;
+            //node is still in the tree
+            add(tensor, shown, entered);
+            children(depth).add(tensor, shown, entered);
+            return true;
+        }
+
+        /**
+         * Invoked when the node at specified depth is processed (specified node is the result of processing).
+         * Unchanged children of the node are remembered if it was modified (rebuilt or transformed); if the node is
+         * unchanged, it will be remembered when its parent is modified (or if it is the root).
+         */
+        void leave(Tensor node, boolean modified, int depth, long shown, long entered) {
+            Children nodeChildren = children(depth + 1);
+            if (modified) {
+                if (nodeChildren.size != 0)
+                    for (int i = 0, size = node.size(); i < size; ++i)
+                        nodeChildren.match(node.get(i), this);
+            } else if (depth == 0)
+                add(node, shown, entered);
+            else
+                children(depth).add(node, shown, entered);
+            nodeChildren.clear();
+        }
+
+        private Children children(int depth) {
+            if (depth >= children.length)
+                children = Arrays.copyOf(children, Math.max(depth + 1, children.length << 1));
+            if (children[depth] == null)
+                children[depth] = new Children();
+            return children[depth];
+        }
+
+        void add(Tensor tensor, long shown, long entered) {
+            long[] masks = current.get(tensor);
+            if (masks == null)
+                current.put(tensor, new long[]{shown, entered});
+            else if (!contains(masks, shown, entered)) {
+                masks = Arrays.copyOf(masks, masks.length + 2);
+                masks[masks.length - 2] = shown;
+                masks[masks.length - 1] = entered;
+                current.put(tensor, masks);
+            }
+        }
+
+        int size() {
+            return current.size();
+        }
+
+        private static boolean contains(long[] masks, long shown, long entered) {
+            if (masks == null)
+                return false;
+            for (int i = 0; i < masks.length; i += 2)
+                if (masks[i] == shown && masks[i + 1] == entered)
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * Unchanged children of some node (together with masks of transformations which show and enter them) in the order
+     * of traversal.
+     */
+    private static final class Children {
+        Tensor[] nodes = new Tensor[4];
+        long[] masks = new long[8];
+        int size = 0;
+        //position from which the next search starts (rebuilt nodes usually keep the order of children)
+        int cursor = 0;
+
+        void add(Tensor node, long shown, long entered) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size << 1);
+                masks = Arrays.copyOf(masks, size << 2);
+            }
+            nodes[size] = node;
+            masks[2 * size] = shown;
+            masks[2 * size + 1] = entered;
+            ++size;
+        }
+
+        /**
+         * Searches for a child which is the same as or exactly equal to specified child of the rebuilt node and
+         * remembers specified child with masks of the found one.
+         */
+        void match(Tensor child, StableNodes stable) {
+            for (int k = 0, i = cursor; k < size; ++k, i = i + 1 == size ? 0 : i + 1)
+                if (nodes[i] == child || (nodes[i].hashCode() == child.hashCode()
+                        && TensorUtils.equalsExactly(nodes[i], child))) {
+                    stable.add(child, masks[2 * i], masks[2 * i + 1]);
+                    cursor = i + 1 == size ? 0 : i + 1;
+                    return;
+                }
+        }
+
+        void clear() {
+            Arrays.fill(nodes, 0, size, null);
+            size = cursor = 0;
+        }
+    }
+
+    @Override
+    public String toString(OutputFormat f) {
+        StringBuilder sb = new StringBuilder("Fused[");
+        for (int i = 0; i < transformations.length; ++i) {
+            if (i != 0)
+                sb.append(", ");
+            if (transformations[i] instanceof ToString)
+                sb.append(((ToString) transformations[i]).toString(f));
+            else
+                sb.append(transformations[i]);
+        }
+        return sb.append("]").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toString(CC.getDefaultOutputFormat());
+    }
+}
@@ -64,6 +64,18 @@ public interface Transformation {
             return tensor;
         }
 
+        /**
+         * Applies transformations sequentially, fusing runs of consecutive fusable transformations into single
+         * traversals of tensor (see {@link FusedTransformation}).
+         *
+         * @param tensor          tensor
+         * @param transformations transformations
+         * @return result
+         */
+        public static Tensor applyFused(Tensor tensor, final Transformation... transformations) {
+            return new FusedTransformation(transformations).transform(tensor);
+        }
+
         /**
          * Applies transformation to all first descendants (but not to the tensor itself)
          *
@@ -123,6 +135,18 @@ public interface Transformation {
             return r;
         }
 
+        /**
+         * Applies transformations until the specified expression is unchanged; subtrees which were unchanged on
+         * previous rounds are not traversed again (see {@link FixpointTransformation}).
+         *
+         * @param t               tensor
+         * @param transformations transformations
+         * @return result
+         */
+        public static Tensor applyUntilStable(Tensor t, final Transformation... transformations) {
+            return new FixpointTransformation(transformations).transform(t);
+        }
+
     }
 
     /**
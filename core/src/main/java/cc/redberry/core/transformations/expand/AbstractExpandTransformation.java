@@ -30,6 +30,7 @@ import cc.redberry.core.tensor.TensorField;
 import cc.redberry.core.tensor.functions.ScalarFunction;
 import cc.redberry.core.tensor.iterator.TraverseGuide;
 import cc.redberry.core.tensor.iterator.TraversePermission;
+import cc.redberry.core.transformations.FusableTransformation;
 import cc.redberry.core.transformations.Transformation;
 import cc.redberry.core.transformations.TransformationToStringAble;
 import cc.redberry.core.transformations.substitutions.SubstitutionIterator;
@@ -42,7 +43,7 @@ import static cc.redberry.core.utils.TensorUtils.isNegativeIntegerPower;
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  */
-abstract class AbstractExpandTransformation implements TransformationToStringAble {
+abstract class AbstractExpandTransformation implements TransformationToStringAble, FusableTransformation {
     public static TraverseGuide DefaultExpandTraverseGuide = new TraverseGuide() {
         @Override
         public TraversePermission getPermission(Tensor tensor, Tensor parent, int indexInParent) {
@@ -58,6 +59,10 @@ abstract class AbstractExpandTransformation implements TransformationToStringAbl
 
     protected final Transformation[] transformations;
     protected final TraverseGuide traverseGuide;
+    /**
+     * If true, then products of large sums will be expanded in parallel
+     */
+    protected final boolean parallel;
 
     protected AbstractExpandTransformation() {
         this(new Transformation[0], DefaultExpandTraverseGuide);
@@ -77,45 +82,88 @@ abstract class AbstractExpandTransformation implements TransformationToStringAbl
      * @param traverseGuide   traverse guide
      */
     protected AbstractExpandTransformation(Transformation[] transformations, TraverseGuide traverseGuide) {
+        this(transformations, traverseGuide, false);
+    }
+
+    /**
+     * Creates expand transformation with specified additional transformations to
+     * be applied after each step of expand and leaves unexpanded parts of expression specified by
+     * {@code traverseGuide}.
+     *
+     * @param transformations transformations to be applied after each step of expand
+     * @param traverseGuide   traverse guide
+     * @param parallel        if true, then products of large sums will be expanded in parallel
+     */
+    protected AbstractExpandTransformation(Transformation[] transformations, TraverseGuide traverseGuide,
+                                           boolean parallel) {
         this.transformations = transformations;
         this.traverseGuide = traverseGuide;
+        this.parallel = parallel;
     }
 
     protected AbstractExpandTransformation(ExpandOptions options) {
         this.transformations = new Transformation[]{options.simplifications};
         this.traverseGuide = options.traverseGuide;
+        this.parallel = options.parallel;
     }
 
     @Override
     public Tensor transform(Tensor tensor) {
         SubstitutionIterator iterator = new SubstitutionIterator(tensor, traverseGuide);
         Tensor current;
-        while ((current = iterator.next()) != null) {
-            if (current instanceof Product)
-                iterator.unsafeSet(expandProduct((Product) current, transformations));
-            else if (ExpandUtils.isExpandablePower(current)) {
-                Sum sum = (Sum) current.get(0);
-                int exponent = ((Complex) current.get(1)).intValue();
-                if (exponent == -1)
-                    continue;
-                boolean symbolic = TensorUtils.isSymbolic(sum),
-                        reciprocal = exponent < 0;
-                exponent = Math.abs(exponent);
-                Tensor temp;
-                if (symbolic)
-                    temp = ExpandUtils.expandSymbolicPower(sum, exponent, transformations);
-                else
-                    temp = ExpandUtils.expandPower(sum, exponent, iterator.getForbidden(), transformations);
-                if (reciprocal)
-                    temp = reciprocal(temp);
-                if (symbolic)
-                    iterator.unsafeSet(temp);
-                else
-                    iterator.set(temp);
-            }
-        }
+        while ((current = iterator.next()) != null)
+            transformNode(current, iterator, true);
         return iterator.result();
     }
 
+    @Override
+    public boolean isFusable() {
+        return true;
+    }
+
+    @Override
+    public TraverseGuide getTraverseGuide() {
+        return traverseGuide;
+    }
+
+    @Override
+    public boolean mayModify(Tensor tensor) {
+        return true;
+    }
+
+    @Override
+    public Tensor transformNode(Tensor node, SubstitutionIterator iterator) {
+        return transformNode(node, iterator, false);
+    }
+
+    private Tensor transformNode(Tensor current, SubstitutionIterator iterator, boolean set) {
+        if (current instanceof Product) {
+            current = expandProduct((Product) current, transformations);
+            if (set)
+                iterator.unsafeSet(current);
+        } else if (ExpandUtils.isExpandablePower(current)) {
+            Sum sum = (Sum) current.get(0);
+            int exponent = ((Complex) current.get(1)).intValue();
+            if (exponent == -1)
+                return current;
+            boolean symbolic = TensorUtils.isSymbolic(sum),
+                    reciprocal = exponent < 0;
+            exponent = Math.abs(exponent);
+            Tensor temp;
+            if (symbolic)
+                temp = ExpandUtils.expandSymbolicPower(sum, exponent, transformations, parallel);
+            else
+                temp = ExpandUtils.expandPower(sum, exponent, iterator.getForbidden(), transformations, parallel);
+            if (reciprocal)
+                temp = reciprocal(temp);
+            if (set && symbolic)
+                iterator.unsafeSet(temp);
+            else if (set)
+                iterator.set(temp);
+            current = temp;
+        }
+        return current;
+    }
+
     protected abstract Tensor expandProduct(Product product, Transformation[] transformations);
 }
@@ -107,14 +107,14 @@ public final class ExpandAllTransformation extends AbstractExpandTransformation
 
 //        assert !isPositiveIntegerPower(denominator);
         if (denominator instanceof Product)
-            denominator = ExpandUtils.expandProductOfSums((Product) numDen.denominator, transformations);
+            denominator = ExpandUtils.expandProductOfSums((Product) numDen.denominator, transformations, parallel);
         boolean denExpanded = denominator != numDen.denominator;
         denominator = reciprocal(denominator);
 
         Tensor numerator = numDen.numerator;
         Tensor res = Tensors.multiply(denominator, numerator), temp = res;
         if (res instanceof Product)
-            res = ExpandUtils.expandProductOfSums((Product) temp, transformations);
+            res = ExpandUtils.expandProductOfSums((Product) temp, transformations, parallel);
         if (denExpanded || res != temp)
             return res;
         return product;
@@ -37,5 +37,8 @@ public class ExpandOptions {
     @Option(name = "TraverseGuide", index = 1)
     public TraverseGuide traverseGuide = AbstractExpandTransformation.DefaultExpandTraverseGuide;
 
+    @Option(name = "Parallel", index = 2)
+    public boolean parallel = false;
+
     public ExpandOptions() {}
 }
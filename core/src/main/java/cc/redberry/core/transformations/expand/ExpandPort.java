@@ -23,10 +23,13 @@
 package cc.redberry.core.transformations.expand;
 
 import cc.redberry.core.combinatorics.IntTuplesPort;
+import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.number.NumberUtils;
 import cc.redberry.core.tensor.*;
+import cc.redberry.core.transformations.Transformation;
 import cc.redberry.core.utils.OutputPort;
+import cc.redberry.core.utils.SplittableOutputPort;
 import cc.redberry.core.utils.TensorUtils;
 import gnu.trove.set.hash.TIntHashSet;
 
@@ -34,6 +37,7 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 import static cc.redberry.core.utils.TensorUtils.isSymbolic;
 
@@ -76,6 +80,270 @@ public final class ExpandPort {
             return new OutputPort.Singleton<>(tensor);
     }
 
+    /**
+     * Creates port, which iteratively gives terms of expanded tensor (same terms as port created by
+     * {@link #createPort(Tensor, boolean)}) and can be split for parallel consumption. Port is split by ranges of
+     * summands of a sum, of the largest sum in a product or of the base of a power.
+     *
+     * @param tensor         tensor
+     * @param expandSymbolic expand symbolic sums
+     * @return splittable port of expand terms
+     */
+    public static SplittableOutputPort<Tensor> createSplittablePort(Tensor tensor, boolean expandSymbolic) {
+        return new SplittableExpandPort(tensor, expandSymbolic);
+    }
+
+    /**
+     * Expands tensor in parallel: splittable port of expand terms is split into parts, which are consumed by
+     * fork-join tasks; each term is transformed with specified transformations and put into the resulting sum, so the
+     * expanded sum is never materialised before applying transformations. The result is same as for sequential
+     * expand, but names of dummy indices and order of summands may differ.
+     *
+     * @param tensor          tensor
+     * @param expandSymbolic  expand symbolic sums
+     * @param transformations transformations which will be applied to each term
+     * @return expanded tensor
+     */
+    public static Tensor expandUsingPortParallel(Tensor tensor, boolean expandSymbolic,
+                                                 Transformation... transformations) {
+        SplittableOutputPort<Tensor> port = createSplittablePort(tensor, expandSymbolic);
+        ConcurrentSumBuilder sum = new ConcurrentSumBuilder();
+        ContextManager.getForkJoinPool().invoke(
+                new ConsumePortTask(ContextManager.currentBinding(), port, transformations, sum));
+        return sum.build();
+    }
+
+    /**
+     * Maximal number of terms consumed by a single fork-join task
+     */
+    private static final long PARALLEL_LEAF_SIZE = 64;
+
+    /**
+     * Fork-join task, which consumes splittable port: port is split while its estimated size is large, then terms
+     * are transformed and put into the resulting sum. All calculations are performed within the context of the thread
+     * which started the expand.
+     */
+    private static final class ConsumePortTask extends RecursiveAction {
+        private final ContextManager.ContextBinding binding;
+        private final SplittableOutputPort<Tensor> port;
+        private final Transformation[] transformations;
+        private final TensorBuilder sum;
+
+        ConsumePortTask(ContextManager.ContextBinding binding, SplittableOutputPort<Tensor> port,
+                        Transformation[] transformations, TensorBuilder sum) {
+            this.binding = binding;
+            this.port = port;
+            this.transformations = transformations;
+            this.sum = sum;
+        }
+
+        @Override
+        protected void compute() {
+            ContextManager.ContextBinding previous = binding.enter();
+            try {
+                List<ConsumePortTask> forked = new ArrayList<>();
+                SplittableOutputPort<Tensor> split;
+                while (port.estimateSize() > PARALLEL_LEAF_SIZE && (split = port.trySplit()) != null) {
+                    ConsumePortTask task = new ConsumePortTask(binding, split, transformations, sum);
+                    task.fork();
+                    forked.add(task);
+                }
+                Tensor t;
+                while ((t = port.take()) != null)
+                    sum.put(ExpandUtils.apply(transformations, t));
+                for (ConsumePortTask task : forked)
+                    task.join();
+            } finally {
+                ContextManager.ContextBinding.exit(previous);
+            }
+        }
+    }
+
+    //sum which will be expanded by ProductPort
+    private static boolean isExpandedSum(Tensor t, boolean expandSymbolic) {
+        return t instanceof Sum && (expandSymbolic || !isSymbolic(t));
+    }
+
+    //power which will be expanded by ProductPort or by createPort(...)
+    private static boolean isExpandedPower(Tensor t, boolean expandSymbolic) {
+        return ExpandUtils.isExpandablePower(t)
+                && !TensorUtils.isNegativeNaturalNumber(t.get(1))
+                && (expandSymbolic || !isSymbolic(t.get(0)));
+    }
+
+    /**
+     * Returns an estimate of the number of terms given by the expand port of specified tensor.
+     */
+    private static long estimateSize(Tensor t, boolean expandSymbolic) {
+        if (t instanceof Sum)
+            return estimateSize(t, expandSymbolic, 0, t.size());
+        if (t instanceof Product) {
+            long size = 1;
+            for (Tensor m : t)
+                if (isExpandedSum(m, expandSymbolic) || isExpandedPower(m, expandSymbolic))
+                    size = multiplySaturated(size, estimateSize(m, expandSymbolic));
+            return size;
+        }
+        if (isExpandedPower(t, expandSymbolic))
+            return estimateSize(t, expandSymbolic, 0, t.get(0).size());
+        return 1;
+    }
+
+    /**
+     * Returns an estimate of the number of terms given by the expand port of a sum restricted to summands from
+     * {@code from} (inclusive) to {@code to} (exclusive) or by expand port of a power restricted to terms with first
+     * multiplier taken from the same range of summands of the base.
+     */
+    private static long estimateSize(Tensor sumOrPower, boolean expandSymbolic, int from, int to) {
+        Tensor sum = sumOrPower instanceof Sum ? sumOrPower : sumOrPower.get(0);
+        long size = 0;
+        for (int i = from; i < to; ++i)
+            size = addSaturated(size, estimateSize(sum.get(i), expandSymbolic));
+        if (sumOrPower instanceof Sum)
+            return size;
+        long full = estimateSize(sum, expandSymbolic);
+        for (int i = ((Complex) sumOrPower.get(1)).getReal().intValue() - 1; i > 0; --i)
+            size = multiplySaturated(size, full);
+        return size;
+    }
+
+    private static long addSaturated(long a, long b) {
+        long r = a + b;
+        return r < 0 ? Long.MAX_VALUE : r;
+    }
+
+    private static long multiplySaturated(long a, long b) {
+        if (a == 0 || b == 0)
+            return 0;
+        return a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+
+    /**
+     * Splittable port of expand terms. Terms are given by the range of summands of a sum, of the largest sum (or
+     * power) in a product or of the base of a power. When range narrows to a single summand of a sum, port switches to
+     * the splittable port of this summand (or of the product with this summand substituted for the sum).
+     */
+    private static final class SplittableExpandPort implements SplittableOutputPort<Tensor> {
+        private final Tensor tensor;
+        private final boolean expandSymbolic;
+        //position of split sum (or power) in product or -1 if tensor is not a product
+        private final int position;
+        private int from, to;
+        private long estimatedSize = -1;
+        private SplittableExpandPort delegate = null;
+        private OutputPort<Tensor> port = null;
+
+        SplittableExpandPort(Tensor tensor, boolean expandSymbolic) {
+            this.tensor = tensor;
+            this.expandSymbolic = expandSymbolic;
+            int position = -1, to = 0;
+            if (tensor instanceof Sum)
+                to = tensor.size();
+            else if (tensor instanceof Product) {
+                long largest = 1, size;
+                for (int i = tensor.size() - 1; i >= 0; --i) {
+                    Tensor m = tensor.get(i);
+                    if ((isExpandedSum(m, expandSymbolic) || isExpandedPower(m, expandSymbolic))
+                            && (size = ExpandPort.estimateSize(m, expandSymbolic)) > largest) {
+                        largest = size;
+                        position = i;
+                    }
+                }
+                if (position != -1)
+                    to = splitTarget(tensor.get(position)).size();
+            } else if (isExpandedPower(tensor, expandSymbolic))
+                to = tensor.get(0).size();
+            this.position = position;
+            this.from = 0;
+            this.to = to;
+        }
+
+        private SplittableExpandPort(Tensor tensor, boolean expandSymbolic, int position, int from, int to) {
+            this.tensor = tensor;
+            this.expandSymbolic = expandSymbolic;
+            this.position = position;
+            this.from = from;
+            this.to = to;
+        }
+
+        //sum, which summands are split
+        private static Tensor splitTarget(Tensor sumOrPower) {
+            return sumOrPower instanceof Sum ? sumOrPower : sumOrPower.get(0);
+        }
+
+        //sum or power, which summands are split
+        private Tensor splitFactor() {
+            return position == -1 ? tensor : tensor.get(position);
+        }
+
+        @Override
+        public SplittableOutputPort<Tensor> trySplit() {
+            if (delegate != null)
+                return delegate.trySplit();
+            if (port != null)
+                return null;
+            if (to - from >= 2) {
+                int middle = (from + to) >>> 1;
+                SplittableExpandPort prefix = new SplittableExpandPort(tensor, expandSymbolic, position, from, middle);
+                from = middle;
+                estimatedSize = -1;
+                return prefix;
+            }
+            if (to - from == 1 && splitFactor() instanceof Sum) {
+                Tensor single;
+                if (position == -1)
+                    single = tensor.get(from);
+                else {
+                    Tensor[] factors = tensor.toArray();
+                    factors[position] = tensor.get(position).get(from);
+                    single = Tensors.multiply(factors);
+                }
+                delegate = new SplittableExpandPort(single, expandSymbolic);
+                return delegate.trySplit();
+            }
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            if (delegate != null)
+                return delegate.estimateSize();
+            if (estimatedSize == -1) {
+                if (to == 0)
+                    estimatedSize = 1;
+                else if (position == -1)
+                    estimatedSize = ExpandPort.estimateSize(tensor, expandSymbolic, from, to);
+                else {
+                    estimatedSize = ExpandPort.estimateSize(tensor.get(position), expandSymbolic, from, to);
+                    Tensor m;
+                    for (int i = tensor.size() - 1; i >= 0; --i)
+                        if (i != position && (isExpandedSum(m = tensor.get(i), expandSymbolic)
+                                || isExpandedPower(m, expandSymbolic)))
+                            estimatedSize = multiplySaturated(estimatedSize, ExpandPort.estimateSize(m, expandSymbolic));
+                }
+            }
+            return estimatedSize;
+        }
+
+        @Override
+        public Tensor take() {
+            if (delegate != null)
+                return delegate.take();
+            if (port == null) {
+                if (to == 0)
+                    port = createPort(tensor, expandSymbolic);
+                else if (position != -1)
+                    port = new ProductPort(tensor, expandSymbolic, position, from, to);
+                else if (tensor instanceof Sum)
+                    port = new SumPort(tensor, expandSymbolic, from, to);
+                else
+                    port = new PowerPort(tensor, TensorUtils.getAllIndicesNamesT(tensor.get(0)).toArray(),
+                            expandSymbolic, from, to);
+            }
+            return port.take();
+        }
+    }
+
     private interface ResettablePort extends OutputPort<Tensor> {
         void reset();
     }
@@ -87,13 +355,22 @@ public final class ExpandPort {
         private final int[] initialForbidden;
         private OutputPort<Tensor> currentPort;
         private final boolean expandSymbolic;
+        private final int offset;
 
         public PowerPort(Tensor tensor, int[] initialForbidden, boolean expandSymbolic) {
+            this(tensor, initialForbidden, expandSymbolic, 0, tensor.get(0).size());
+        }
+
+        //expands only terms with first multiplier taken from summands of base with positions from from (inclusive)
+        //to to (exclusive)
+        public PowerPort(Tensor tensor, int[] initialForbidden, boolean expandSymbolic, int from, int to) {
             this.expandSymbolic = expandSymbolic;
             base = tensor.get(0);
             power = ((Complex) tensor.get(1)).getReal().intValue();
             int[] upperBounds = new int[power];
             Arrays.fill(upperBounds, base.size());
+            upperBounds[0] = to - from;
+            offset = from;
             tuplesPort = new IntTuplesPort(upperBounds);
             this.initialForbidden = initialForbidden;
             currentPort = nextPort();
@@ -109,7 +386,7 @@ public final class ExpandPort {
                 return null;
             TIntHashSet added = new TIntHashSet(initialForbidden);
             ProductBuilder builder = new ProductBuilder();
-            builder.put(base.get(tuple[0]));
+            builder.put(base.get(tuple[0] + offset));
             for (int i = 1; i < tuple.length; ++i)
                 builder.put(ApplyIndexMapping.renameDummy(base.get(tuple[i]), added.toArray(), added));
 
@@ -144,6 +421,12 @@ public final class ExpandPort {
         private final boolean expandSymbolic;
 
         public ProductPort(Tensor tensor, boolean expandSymbolic) {
+            this(tensor, expandSymbolic, -1, 0, 0);
+        }
+
+        //expands only terms with summands of restrictedFactor (sum or power) taken from positions from from
+        //(inclusive) to to (exclusive); see SumPort and PowerPort
+        public ProductPort(Tensor tensor, boolean expandSymbolic, int restrictedFactor, int from, int to) {
             this.tensor = tensor;
             this.expandSymbolic = expandSymbolic;
             this.base = new ProductBuilder();
@@ -157,7 +440,8 @@ public final class ExpandPort {
                         theLargestSumPosition = sumOrPowerPorts.size();
                         theLargestSumSize = m.size();
                     }
-                    sumOrPowerPorts.add(new SumPort(m, expandSymbolic));
+                    sumOrPowerPorts.add(i == restrictedFactor
+                            ? new SumPort(m, expandSymbolic, from, to) : new SumPort(m, expandSymbolic));
                 } else if (ExpandUtils.isExpandablePower(m)) {
                     if (TensorUtils.isNegativeNaturalNumber(m.get(1)) || !expandIfSymbolic(m.get(0))) {
 //                        base.put(Tensors.reciprocal(ExpandUtils.expandPower(
@@ -171,7 +455,10 @@ public final class ExpandPort {
                         theLargestSumPosition = sumOrPowerPorts.size();
                         theLargestSumSize = m.size();
                     }
-                    sumOrPowerPorts.add(new PowerPort(m, TensorUtils.getAllIndicesNamesT(tensor).toArray(), expandSymbolic));
+                    int[] forbidden = TensorUtils.getAllIndicesNamesT(tensor).toArray();
+                    sumOrPowerPorts.add(i == restrictedFactor
+                            ? new PowerPort(m, forbidden, expandSymbolic, from, to)
+                            : new PowerPort(m, forbidden, expandSymbolic));
                 } else
                     base.put(m);
             }
@@ -250,28 +537,36 @@ public final class ExpandPort {
     private static final class SumPort implements ResettablePort {
         private final OutputPort<Tensor>[] ports;
         private final Tensor tensor;
+        private final int from, to;
         private int pointer;
         private boolean expandSymbolic;
 
-        @SuppressWarnings("unchecked")
         public SumPort(Tensor tensor, boolean expandSymbolic) {
+            this(tensor, expandSymbolic, 0, tensor.size());
+        }
+
+        //expands only summands with positions from from (inclusive) to to (exclusive)
+        @SuppressWarnings("unchecked")
+        public SumPort(Tensor tensor, boolean expandSymbolic, int from, int to) {
             this.tensor = tensor;
             this.expandSymbolic = expandSymbolic;
+            this.from = from;
+            this.to = to;
             this.ports = new OutputPort[tensor.size()];
             reset();
         }
 
         @Override
         public void reset() {
-            pointer = 0;
-            for (int i = tensor.size() - 1; i >= 0; --i)
+            pointer = from;
+            for (int i = to - 1; i >= from; --i)
                 ports[i] = createPort(tensor.get(i), expandSymbolic);
         }
 
         @Override
         public Tensor take() {
             Tensor t = null;
-            while (pointer < tensor.size()) {
+            while (pointer < to) {
                 t = ports[pointer].take();
                 if (t == null)
                     ++pointer;
@@ -70,6 +70,20 @@ public final class ExpandTransformation extends AbstractExpandTransformation {
         super(transformations, traverseGuide);
     }
 
+    /**
+     * Creates expand transformation with specified additional transformations to
+     * be applied after each step of expand and leaves unexpanded parts of expression specified by
+     * {@code traverseGuide}.
+     *
+     * @param transformations transformations to be applied after each step of expand
+     * @param traverseGuide   traverse guide
+     * @param parallel        if true, then products of large sums will be expanded in parallel (the result
+     *                        will be exactly the same as in the sequential mode)
+     */
+    public ExpandTransformation(Transformation[] transformations, TraverseGuide traverseGuide, boolean parallel) {
+        super(transformations, traverseGuide, parallel);
+    }
+
     @Creator
     public ExpandTransformation(@Options ExpandOptions options) {
         super(options);
@@ -99,7 +113,7 @@ public final class ExpandTransformation extends AbstractExpandTransformation {
 
     @Override
     protected Tensor expandProduct(Product product, Transformation[] transformations) {
-        return ExpandUtils.expandProductOfSums(product, transformations);
+        return ExpandUtils.expandProductOfSums(product, transformations, parallel);
     }
 
     @Override
@@ -22,6 +22,7 @@
  */
 package cc.redberry.core.transformations.expand;
 
+import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.tensor.*;
 import cc.redberry.core.transformations.Transformation;
@@ -33,6 +34,7 @@ import gnu.trove.set.hash.TIntHashSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 import static cc.redberry.core.tensor.Tensors.multiply;
 import static cc.redberry.core.tensor.Tensors.pow;
@@ -90,16 +92,105 @@ public final class ExpandUtils {
         public Tensor take() {
             if (index >= sum1.size() * sum2.size())
                 return null;
-            int i1 = (int) (index / sum2.size());
-            int i2 = (int) (index % sum2.size());
-            ++index;
-            if (factors.length == 0)
-                return Tensors.multiply(sum1.get(i1), sum2.get(i2));
-            else
-                return Tensors.multiply(ArraysUtils.addAll(factors, sum1.get(i1), sum2.get(i2)));
+            return pairTerm(sum1, sum2, factors, index++);
         }
     }
 
+    /**
+     * Returns a term with specified index in the Cartesian product of two sums.
+     */
+    private static Tensor pairTerm(Tensor sum1, Tensor sum2, Tensor[] factors, long index) {
+        int i1 = (int) (index / sum2.size());
+        int i2 = (int) (index % sum2.size());
+        if (factors.length == 0)
+            return Tensors.multiply(sum1.get(i1), sum2.get(i2));
+        else
+            return Tensors.multiply(ArraysUtils.addAll(factors, sum1.get(i1), sum2.get(i2)));
+    }
+
+    /**
+     * Minimal number of terms in the Cartesian product of two sums, for which parallel expand will be used
+     */
+    private static final long PARALLEL_THRESHOLD = 512;
+    /**
+     * Maximal number of terms calculated by a single fork-join task
+     */
+    private static final int PARALLEL_LEAF_SIZE = 64;
+    /**
+     * Maximal number of terms calculated before they are put into the resulting sum
+     */
+    private static final int PARALLEL_BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Fork-join task, which calculates terms with indices from {@code offset + from} to {@code offset + to} of the
+     * Cartesian product of two sums, applies transformations to each term and puts results into the buffer
+     * (term with index {@code offset + i} is put in {@code buffer[i]}). All calculations are performed within the
+     * context of the thread which started the expand.
+     */
+    private static final class ExpandPairTask extends RecursiveAction {
+        private final ContextManager.ContextBinding binding;
+        private final Tensor sum1, sum2;
+        private final Tensor[] factors;
+        private final Transformation[] transformations;
+        private final Tensor[] buffer;
+        private final long offset;
+        private final int from, to;
+
+        ExpandPairTask(ContextManager.ContextBinding binding,
+                       Tensor sum1, Tensor sum2, Tensor[] factors, Transformation[] transformations,
+                       Tensor[] buffer, long offset, int from, int to) {
+            this.binding = binding;
+            this.sum1 = sum1;
+            this.sum2 = sum2;
+            this.factors = factors;
+            this.transformations = transformations;
+            this.buffer = buffer;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_LEAF_SIZE) {
+                ContextManager.ContextBinding previous = binding.enter();
+                try {
+                    for (int i = from; i < to; ++i)
+                        buffer[i] = apply(transformations, pairTerm(sum1, sum2, factors, offset + i));
+                } finally {
+                    ContextManager.ContextBinding.exit(previous);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ExpandPairTask(binding, sum1, sum2, factors, transformations, buffer, offset, from, mid),
+                    new ExpandPairTask(binding, sum1, sum2, factors, transformations, buffer, offset, mid, to));
+        }
+    }
+
+    /**
+     * Expands out the product of two sums splitting the Cartesian product of summands into fork-join tasks.
+     * The resulting terms are put into the resulting sum in the same order as in the sequential algorithm, so the
+     * result is exactly the same as of {@link #expandPairOfSums(cc.redberry.core.tensor.Sum,
+     * cc.redberry.core.tensor.Sum, cc.redberry.core.tensor.Tensor[], cc.redberry.core.transformations.Transformation[])}.
+     */
+    private static Tensor expandPairOfSumsParallel(Sum s1, Sum s2, Tensor[] factors, Transformation[] transformations) {
+        final long size = (long) s1.size() * s2.size();
+        TensorBuilder sum = new SumBuilder(s1.size() * s2.size());
+        Tensor[] buffer = new Tensor[(int) Math.min(size, PARALLEL_BLOCK_SIZE)];
+        ContextManager.ContextBinding binding = ContextManager.currentBinding();
+        for (long offset = 0; offset < size; offset += buffer.length) {
+            int length = (int) Math.min(buffer.length, size - offset);
+            ContextManager.getForkJoinPool().invoke(
+                    new ExpandPairTask(binding, s1, s2, factors, transformations, buffer, offset, 0, length));
+            for (int i = 0; i < length; ++i) {
+                sum.put(buffer[i]);
+                buffer[i] = null;
+            }
+        }
+        return sum.build();
+    }
+
     /**
      * Expands out the product of two sums.
      *
@@ -112,6 +203,26 @@ public final class ExpandUtils {
      * @return the resulting expanded tensor
      */
     public static Tensor expandPairOfSums(Sum s1, Sum s2, Tensor[] factors, Transformation[] transformations) {
+        return expandPairOfSums(s1, s2, factors, transformations, false);
+    }
+
+    /**
+     * Expands out the product of two sums.
+     *
+     * @param s1              first sum
+     * @param s2              second sum
+     * @param transformations additional transformations to be
+     *                        consequently applied on each term
+     *                        in the resulting expression.
+     * @param factors         if specified, then each resulting term will be multiplied on this factor
+     * @param parallel        if true, then the terms of the resulting expression will be calculated in parallel
+     *                        (the result will be exactly the same as in the sequential algorithm)
+     * @return the resulting expanded tensor
+     */
+    public static Tensor expandPairOfSums(Sum s1, Sum s2, Tensor[] factors, Transformation[] transformations,
+                                          boolean parallel) {
+        if (parallel && (long) s1.size() * s2.size() >= PARALLEL_THRESHOLD)
+            return expandPairOfSumsParallel(s1, s2, factors, transformations);
         ExpandPairPort epp = new ExpandPairPort(s1, s2, factors);
         TensorBuilder sum = new SumBuilder(s1.size() * s2.size());
         Tensor t;
@@ -131,10 +242,25 @@ public final class ExpandUtils {
      * @return the resulting expanded tensor
      */
     public static Tensor expandPairOfSums(Sum s1, Sum s2, Transformation[] transformations) {
-        return expandPairOfSums(s1, s2, new Tensor[0], transformations);
+        return expandPairOfSums(s1, s2, new Tensor[0], transformations, false);
     }
 
     public static Tensor expandProductOfSums(Product product, Transformation[] transformations) {
+        return expandProductOfSums(product, transformations, false);
+    }
+
+    /**
+     * Expands out product of sums.
+     *
+     * @param product         product
+     * @param transformations additional transformations to be
+     *                        consequently applied on each term
+     *                        in the resulting expression.
+     * @param parallel        if true, then products of large sums will be expanded in parallel
+     *                        (the result will be exactly the same as in the sequential algorithm)
+     * @return the resulting expanded tensor
+     */
+    public static Tensor expandProductOfSums(Product product, Transformation[] transformations, boolean parallel) {
         Tensor indexless = product.getIndexlessSubProduct(),
                 data = product.getDataSubProduct();
         boolean expandIndexless = false, expandData = false, containsIndexlessSumNeededExpand = false;
@@ -170,10 +296,10 @@ public final class ExpandUtils {
             return product;
 
         if (!expandData)
-            return Tensors.multiply(expandProductOfSums1(indexless, transformations, false), data);
+            return Tensors.multiply(expandProductOfSums1(indexless, transformations, false, parallel), data);
 
         if (!expandIndexless) {
-            Tensor newData = expandProductOfSums1(data, transformations, true);
+            Tensor newData = expandProductOfSums1(data, transformations, true, parallel);
             if (newData instanceof Sum)  //todo apply transformations?
                 return FastTensors.multiplySumElementsOnFactorAndExpand((Sum) newData, indexless);
             else                         //todo apply transformations?
@@ -181,8 +307,8 @@ public final class ExpandUtils {
         }
 
         if (!containsIndexlessSumNeededExpand) {
-            indexless = expandProductOfSums1(indexless, transformations, false);
-            data = expandProductOfSums1(data, transformations, true);
+            indexless = expandProductOfSums1(indexless, transformations, false, parallel);
+            data = expandProductOfSums1(data, transformations, true, parallel);
         } else {
             List<Tensor> dataList;
             if (data instanceof Product)
@@ -194,7 +320,7 @@ public final class ExpandUtils {
             if (indexless instanceof Sum) {
                 dataList.add(indexless);
                 indexless = Complex.ONE;
-                data = expandProductOfSums1(dataList, transformations, true);
+                data = expandProductOfSums1(dataList, transformations, true, parallel);
             } else {
                 assert indexless instanceof Product;
                 List<Tensor> indexlessList = new ArrayList<>(indexless.size());
@@ -208,10 +334,10 @@ public final class ExpandUtils {
                         indexlessList.add(in);
                     }
                 if (expandIndexless)
-                    indexless = expandProductOfSums1(indexlessList, transformations, false);
+                    indexless = expandProductOfSums1(indexlessList, transformations, false, parallel);
                 else
                     indexless = Tensors.multiply(indexlessList.toArray(new Tensor[indexlessList.size()]));
-                data = expandProductOfSums1(dataList, transformations, true);
+                data = expandProductOfSums1(dataList, transformations, true, parallel);
             }
         }
 
@@ -231,6 +357,11 @@ public final class ExpandUtils {
     }
 
     public static Tensor expandProductOfSums1(Iterable<Tensor> tensor, Transformation[] transformations, boolean indexed) {
+        return expandProductOfSums1(tensor, transformations, indexed, false);
+    }
+
+    public static Tensor expandProductOfSums1(Iterable<Tensor> tensor, Transformation[] transformations, boolean indexed,
+                                              boolean parallel) {
         Transformation[] transformations1 =
                 indexed
                         ? ArraysUtils.addAll(new Transformation[]{expandIndexlessSubproduct}, transformations)
@@ -270,14 +401,14 @@ public final class ExpandUtils {
                     else
                         return multiplySumElementsOnFactor(sums.get(i), Tensors.multiply(ns.toArray(new Tensor[ns.size()])), transformations);
 
-                return expandPairOfSums((Sum) base, sums.get(i), ns.toArray(new Tensor[ns.size()]), transformations1);
+                return expandPairOfSums((Sum) base, sums.get(i), ns.toArray(new Tensor[ns.size()]), transformations1, parallel);
             } else {
                 if (base == null) {
                     base = sums.get(i);
                     continue;
                 }
 
-                base = expandPairOfSums((Sum) base, sums.get(i), transformations1);
+                base = expandPairOfSums((Sum) base, sums.get(i), new Tensor[0], transformations1, parallel);
                 if (!(base instanceof Sum)) {
                     ns.add(base);
                     base = null;
@@ -329,12 +460,16 @@ public final class ExpandUtils {
     }
 
     public static Tensor expandSymbolicPower(Sum argument, int power, Transformation[] transformations) {
+        return expandSymbolicPower(argument, power, transformations, false);
+    }
+
+    public static Tensor expandSymbolicPower(Sum argument, int power, Transformation[] transformations, boolean parallel) {
         //TODO improve algorithm using Newton formula!!!
         int i;
         Tensor temp = argument;
         for (i = power - 1; i >= 1; --i) {
             temp = expandPairOfSums((Sum) temp,
-                    argument, transformations);
+                    argument, new Tensor[0], transformations, parallel);
             if (!(temp instanceof Sum)) {
                 temp = multiply(temp, apply(transformations, pow(argument, i - 1)));
                 break;
@@ -344,6 +479,11 @@ public final class ExpandUtils {
     }
 
     public static Tensor expandPower(Sum argument, int power, int[] forbiddenIndices, Transformation[] transformations) {
+        return expandPower(argument, power, forbiddenIndices, transformations, false);
+    }
+
+    public static Tensor expandPower(Sum argument, int power, int[] forbiddenIndices, Transformation[] transformations,
+                                     boolean parallel) {
         //TODO improve algorithm using Newton formula!!!
         int i;
         Tensor temp = argument;
@@ -354,7 +494,7 @@ public final class ExpandUtils {
         for (i = power - 1; i >= 1; --i) {
             temp = expandPairOfSums((Sum) temp,
                     (Sum) ApplyIndexMapping.renameDummy(argument, forbidden.toArray(), forbidden),
-                    transformations);
+                    new Tensor[0], transformations, parallel);
             if (!(temp instanceof Sum)) {
                 temp = multiply(temp, apply(transformations, pow(argument, i - 1)));
                 break;
@@ -0,0 +1,196 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations.substitutions;
+
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.tensor.Product;
+import cc.redberry.core.tensor.Sum;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.TensorField;
+import cc.redberry.core.utils.IntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Discrimination index over left-hand sides of primitive substitutions. For a given node it returns only those
+ * substitutions that can possibly match it, using the following necessary conditions:
+ * <ul>
+ * <li>simple substitutions (mapping of whole tensor) match only nodes with the same hash code;</li>
+ * <li>tensor field substitutions match only fields with the same parent name;</li>
+ * <li>product (sum) substitutions match only products (sums) whose multiset of hash codes of multipliers
+ * (summands) includes that of the left-hand side.</li>
+ * </ul>
+ * Returned substitutions preserve their original order, so application of rules via index is equivalent to the
+ * sequential application of all rules.
+ *
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+final class SubstitutionIndex {
+    private static final int[] EMPTY = new int[0];
+
+    //hash code of lhs -> positions of simple substitutions
+    private final TIntObjectHashMap<int[]> simple = new TIntObjectHashMap<>();
+    //parent name of lhs -> positions of tensor field substitutions
+    private final TIntObjectHashMap<int[]> fields = new TIntObjectHashMap<>();
+    //hash code of some multiplier (summand) of lhs -> positions of product (sum) substitutions
+    private final TIntObjectHashMap<int[]> products = new TIntObjectHashMap<>(), sums = new TIntObjectHashMap<>();
+    //sorted hash codes of multipliers (summands) of lhs of product (sum) substitutions
+    private final int[][] signatures;
+
+    SubstitutionIndex(PrimitiveSubstitution[] substitutions) {
+        this.signatures = new int[substitutions.length][];
+        PrimitiveSubstitution ps;
+        for (int i = 0; i < substitutions.length; ++i) {
+            ps = substitutions[i];
+            if (ps instanceof PrimitiveTensorFieldSubstitution)
+                put(fields, ((TensorField) ps.from).getNameDescriptor().getParent().getId(), i);
+            else if (ps instanceof PrimitiveProductSubstitution) {
+                signatures[i] = signature(ps.from);
+                put(products, signatures[i][0], i);
+            } else if (ps instanceof PrimitiveSumSubstitution) {
+                signatures[i] = signature(ps.from);
+                put(sums, signatures[i][0], i);
+            } else
+                put(simple, ps.from.hashCode(), i);
+        }
+    }
+
+    private static void put(TIntObjectHashMap<int[]> map, int key, int position) {
+        int[] positions = map.get(key);
+        if (positions == null)
+            positions = new int[]{position};
+        else {
+            positions = Arrays.copyOf(positions, positions.length + 1);
+            positions[positions.length - 1] = position;
+        }
+        map.put(key, positions);
+    }
+
+    /**
+     * Returns sorted positions of substitutions (greater than {@code after}) that can possibly match specified node.
+     *
+     * @param node  node
+     * @param after only substitutions with positions greater than this will be returned
+     * @return sorted positions of substitutions that can possibly match specified node
+     */
+    int[] candidates(Tensor node, int after) {
+        int[] result = get(simple, node.hashCode());
+        if (node instanceof TensorField) {
+            if (!fields.isEmpty())
+                result = merge(result,
+                        get(fields, ((TensorField) node).getNameDescriptor().getParent().getId()));
+        } else if (node instanceof Product) {
+            if (!products.isEmpty())
+                result = merge(result, collect(products, node));
+        } else if (node instanceof Sum) {
+            if (!sums.isEmpty())
+                result = merge(result, collect(sums, node));
+        }
+        if (after < 0 || result.length == 0)
+            return result;
+        int from = Arrays.binarySearch(result, after);
+        from = from < 0 ? -from - 1 : from + 1;
+        return from == 0 ? result : Arrays.copyOfRange(result, from, result.length);
+    }
+
+    private static int[] get(TIntObjectHashMap<int[]> map, int key) {
+        int[] positions = map.get(key);
+        return positions == null ? EMPTY : positions;
+    }
+
+    private int[] collect(TIntObjectHashMap<int[]> map, Tensor node) {
+        int[] signature = signature(node);
+        IntArrayList result = null;
+        int[] positions;
+        for (int i = 0; i < signature.length; ++i) {
+            if (i != 0 && signature[i] == signature[i - 1])
+                continue;
+            if ((positions = map.get(signature[i])) == null)
+                continue;
+            for (int position : positions)
+                if (includes(signature, signatures[position])) {
+                    if (result == null)
+                        result = new IntArrayList();
+                    result.add(position);
+                }
+        }
+        if (result == null)
+            return EMPTY;
+        result.sort();
+        return result.toArray();
+    }
+
+    /**
+     * Returns sorted hash codes of all multipliers (except numerical factor) of product or of all summands of sum.
+     */
+    private static int[] signature(Tensor tensor) {
+        int size = tensor.size(), count = 0;
+        int[] signature = new int[size];
+        Tensor t;
+        for (int i = 0; i < size; ++i) {
+            t = tensor.get(i);
+            if (tensor instanceof Product && t instanceof Complex)
+                continue;
+            signature[count++] = t.hashCode();
+        }
+        if (count != size)
+            signature = Arrays.copyOf(signature, count);
+        Arrays.sort(signature);
+        return signature;
+    }
+
+    /**
+     * Returns whether sorted multiset {@code a} includes sorted multiset {@code b}.
+     */
+    private static boolean includes(int[] a, int[] b) {
+        if (b.length > a.length)
+            return false;
+        int i = 0, j = 0;
+        while (j < b.length) {
+            if (i == a.length || a[i] > b[j])
+                return false;
+            if (a[i++] == b[j])
+                ++j;
+        }
+        return true;
+    }
+
+    private static int[] merge(int[] a, int[] b) {
+        if (a.length == 0)
+            return b;
+        if (b.length == 0)
+            return a;
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length)
+            result[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        while (i < a.length)
+            result[k++] = a[i++];
+        while (j < b.length)
+            result[k++] = b[j++];
+        return result;
+    }
+}
@@ -63,6 +63,15 @@ public final class SubstitutionIterator implements TreeIterator {
         return innerIterator.current();
     }
 
+    /**
+     * Returns current tensor (with all modifications set at the current position).
+     *
+     * @return current tensor
+     */
+    public Tensor current() {
+        return innerIterator.current();
+    }
+
     public void unsafeSet(Tensor tensor) {
         innerIterator.set(tensor);
     }
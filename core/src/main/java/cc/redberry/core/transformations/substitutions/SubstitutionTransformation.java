@@ -23,9 +23,13 @@
 package cc.redberry.core.transformations.substitutions;
 
 import cc.redberry.core.context.CC;
+import cc.redberry.core.context.ContextManager;
 import cc.redberry.core.context.OutputFormat;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.tensor.*;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.tensor.iterator.TraversePermission;
+import cc.redberry.core.transformations.FusableTransformation;
 import cc.redberry.core.transformations.Transformation;
 import cc.redberry.core.transformations.TransformationCollection;
 import cc.redberry.core.transformations.TransformationToStringAble;
@@ -36,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 import static cc.redberry.core.transformations.substitutions.PrimitiveProductSubstitution.algorithm_with_simple_combinations;
 import static cc.redberry.core.transformations.substitutions.PrimitiveProductSubstitution.algorithm_with_simple_contractions;
@@ -48,14 +53,17 @@ import static cc.redberry.core.utils.TensorUtils.shareSimpleTensors;
  * @author Stanislav Poslavsky
  * @since 1.0
  */
-public final class SubstitutionTransformation implements TransformationToStringAble {
+public final class SubstitutionTransformation implements TransformationToStringAble, FusableTransformation {
     private final PrimitiveSubstitution[] primitiveSubstitutions;
     private final PrimitiveSubstitutions container;
     final boolean applyIfModified;
+    private final boolean parallel;
 
-    private SubstitutionTransformation(PrimitiveSubstitution[] primitiveSubstitutions, boolean applyIfModified) {
+    private SubstitutionTransformation(PrimitiveSubstitution[] primitiveSubstitutions, boolean applyIfModified,
+                                       boolean parallel) {
         this.primitiveSubstitutions = primitiveSubstitutions;
         this.applyIfModified = applyIfModified;
+        this.parallel = parallel;
         this.container = create(this.primitiveSubstitutions);
     }
 
@@ -69,6 +77,7 @@ public final class SubstitutionTransformation implements TransformationToStringA
      */
     public SubstitutionTransformation(Expression[] expressions, boolean applyIfModified) {
         this.applyIfModified = applyIfModified;
+        this.parallel = false;
         primitiveSubstitutions = new PrimitiveSubstitution[expressions.length];
         for (int i = expressions.length - 1; i >= 0; --i)
             primitiveSubstitutions[i] = createPrimitiveSubstitution(expressions[i].get(0), expressions[i].get(1));
@@ -126,6 +135,7 @@ public final class SubstitutionTransformation implements TransformationToStringA
         primitiveSubstitutions = new PrimitiveSubstitution[1];
         primitiveSubstitutions[0] = createPrimitiveSubstitution(from, to);
         this.applyIfModified = applyIfModified;
+        this.parallel = false;
         this.container = create(this.primitiveSubstitutions);
     }
 
@@ -176,6 +186,7 @@ public final class SubstitutionTransformation implements TransformationToStringA
         for (int i = 0; i < from.length; ++i)
             primitiveSubstitutions[i] = createPrimitiveSubstitution(from[i], to[i]);
         this.applyIfModified = applyIfModified;
+        this.parallel = false;
         this.container = create(this.primitiveSubstitutions);
     }
 
@@ -225,7 +236,7 @@ public final class SubstitutionTransformation implements TransformationToStringA
         List<PrimitiveSubstitution> r = new ArrayList<>();
         r.addAll(Arrays.asList(primitiveSubstitutions));
         add(r, subs);
-        return new SubstitutionTransformation(r.toArray(new PrimitiveSubstitution[r.size()]), applyIfModified);
+        return new SubstitutionTransformation(r.toArray(new PrimitiveSubstitution[r.size()]), applyIfModified, parallel);
     }
 
     private static void add(List<PrimitiveSubstitution> r, Iterable<Transformation> subs) {
@@ -252,7 +263,8 @@ public final class SubstitutionTransformation implements TransformationToStringA
             from[i] = primitiveSubstitutions[i].to;
             to[i] = primitiveSubstitutions[i].from;
         }
-        return new SubstitutionTransformation(from, to, applyIfModified);
+        SubstitutionTransformation transposed = new SubstitutionTransformation(from, to, applyIfModified);
+        return parallel ? transposed.parallel(true) : transposed;
     }
 
     /**
@@ -269,7 +281,31 @@ public final class SubstitutionTransformation implements TransformationToStringA
                     new PrimitiveSimpleTensorSubstitution(
                             primitiveSubstitutions[i].from,
                             primitiveSubstitutions[i].to);
-        return new SubstitutionTransformation(primitiveSubstitutions, applyIfModified);
+        return new SubstitutionTransformation(primitiveSubstitutions, applyIfModified, parallel);
+    }
+
+    /**
+     * Returns substitution with specified mode of execution. In parallel mode, summands of the top-level sum are
+     * processed concurrently (each summand is processed exactly as in sequential mode, i.e. dummy indices forbidden
+     * for a summand are calculated for this summand only), and then merged in the order of original summands, so
+     * the result is identical to the result of sequential execution.
+     *
+     * @param parallel whether to process summands of the top-level sum concurrently
+     * @return substitution with specified mode of execution
+     */
+    public SubstitutionTransformation parallel(boolean parallel) {
+        if (parallel == this.parallel)
+            return this;
+        return new SubstitutionTransformation(primitiveSubstitutions, applyIfModified, parallel);
+    }
+
+    /**
+     * Returns whether summands of the top-level sum are processed concurrently
+     *
+     * @return true if summands of the top-level sum are processed concurrently
+     */
+    public boolean isParallel() {
+        return parallel;
     }
 
     private static void checkConsistence(Tensor[] from, Tensor[] to) {
@@ -340,46 +376,185 @@ public final class SubstitutionTransformation implements TransformationToStringA
 
     @Override
     public Tensor transform(Tensor t) {
-        SubstitutionIterator iterator = new SubstitutionIterator(t);
+        if (parallel && t instanceof Sum && t.size() > PARALLEL_LEAF_SIZE)
+            return transformParallel((Sum) t);
+        return transform(t, TraverseGuide.ALL);
+    }
+
+    private Tensor transform(Tensor t, TraverseGuide guide) {
+        SubstitutionIterator iterator = new SubstitutionIterator(t, new NamesGuide(guide));
         Tensor current;
-        boolean supposeIndicesAreAdded;
         while ((current = iterator.next()) != null) {
             if (!applyIfModified && iterator.isCurrentModified())
                 continue;
+            transformNode(current, iterator, true);
+        }
+        return iterator.result();
+    }
 
-            supposeIndicesAreAdded = false;
-            Tensor old = current;
-            if (current instanceof Product && ((Product) current).sizeOfDataPart() >= 2 && container.pContractions.length != 0) {
-                PrimitiveProductSubstitution.ResultContained r = algorithm_with_simple_contractions(
-                        (Product) current, container.pContractions, iterator);
-                current = r.result;
-                supposeIndicesAreAdded |= r.possiblyAddsDummies;
-            }
+    /**
+     * Returns true if this substitution is applied even to modified nodes (otherwise it can not be fused, since in
+     * fused pass nodes can be modified by other transformations).
+     *
+     * @return true if this substitution is applied even to modified nodes
+     */
+    @Override
+    public boolean isFusable() {
+        return applyIfModified;
+    }
 
-            if (current instanceof Product && ((Product) current).sizeOfDataPart() >= 2
-                    && (current == old || applyIfModified) && container.pCombinations.length != 0) {
-                PrimitiveProductSubstitution.ResultContained r = algorithm_with_simple_combinations(
-                        ((Product) current), container.pCombinations, iterator);
-                current = r.result;
-                supposeIndicesAreAdded |= r.possiblyAddsDummies;
-            }
+    @Override
+    public TraverseGuide getTraverseGuide() {
+        return TraverseGuide.ALL;
+    }
 
+    @Override
+    public boolean mayModify(Tensor tensor) {
+        return container.mayMatch(tensor);
+    }
 
-            if (current == old || applyIfModified) {
-                old = current;
-                for (PrimitiveSubstitution primitiveSubstitution : container.others) {
-                    current = primitiveSubstitution.newTo(old, iterator);
-                    if (current != old) {
-                        supposeIndicesAreAdded |= primitiveSubstitution.possiblyAddsDummies;
-                        if (!applyIfModified)
-                            break;
-                    }
-                    old = current;
+    @Override
+    public Tensor transformNode(Tensor node, SubstitutionIterator iterator) {
+        return transformNode(node, iterator, false);
+    }
+
+    private Tensor transformNode(Tensor current, SubstitutionIterator iterator, boolean set) {
+        if (!container.mayMatch(current))
+            return current;
+        boolean supposeIndicesAreAdded = false;
+        Tensor old = current;
+        if (current instanceof Product && ((Product) current).sizeOfDataPart() >= 2 && container.pContractions.length != 0) {
+            PrimitiveProductSubstitution.ResultContained r = algorithm_with_simple_contractions(
+                    (Product) current, container.pContractions, iterator);
+            current = r.result;
+            supposeIndicesAreAdded |= r.possiblyAddsDummies;
+        }
+
+        if (current instanceof Product && ((Product) current).sizeOfDataPart() >= 2
+                && (current == old || applyIfModified) && container.pCombinations.length != 0) {
+            PrimitiveProductSubstitution.ResultContained r = algorithm_with_simple_combinations(
+                    ((Product) current), container.pCombinations, iterator);
+            current = r.result;
+            supposeIndicesAreAdded |= r.possiblyAddsDummies;
+        }
+
+
+        if ((current == old || applyIfModified) && container.others.length != 0) {
+            old = current;
+            int[] candidates = container.index.candidates(current, -1);
+            PrimitiveSubstitution primitiveSubstitution;
+            for (int i = 0; i < candidates.length; ++i) {
+                primitiveSubstitution = container.others[candidates[i]];
+                current = primitiveSubstitution.newTo(old, iterator);
+                if (current != old) {
+                    supposeIndicesAreAdded |= primitiveSubstitution.possiblyAddsDummies;
+                    if (!applyIfModified)
+                        break;
+                    //node changed: select from the remaining substitutions those that can match new node
+                    candidates = container.index.candidates(current, candidates[i]);
+                    i = -1;
                 }
+                old = current;
             }
+        }
+        if (set)
             iterator.set(current, supposeIndicesAreAdded);
+        return current;
+    }
+
+    /**
+     * Hides subtrees which do not contain names of simple tensors required by any of substitutions (such subtrees
+     * can not be modified, since nothing inside them is modified during the bottom-up traversal).
+     */
+    private final class NamesGuide implements TraverseGuide {
+        private final TraverseGuide guide;
+
+        NamesGuide(TraverseGuide guide) {
+            this.guide = guide;
+        }
+
+        @Override
+        public TraversePermission getPermission(Tensor tensor, Tensor parent, int indexInParent) {
+            if (!container.mayMatch(tensor))
+                return TraversePermission.DontShow;
+            return guide.getPermission(tensor, parent, indexInParent);
+        }
+    }
+
+    /**
+     * Maximal number of summands processed by a single fork-join task
+     */
+    private static final int PARALLEL_LEAF_SIZE = 32;
+
+    private Tensor transformParallel(final Sum sum) {
+        Tensor[] summands = new Tensor[sum.size()];
+        ContextManager.getForkJoinPool().invoke(
+                new SummandsTask(ContextManager.currentBinding(), sum, summands, 0, summands.length));
+
+        boolean modified = false;
+        for (int i = summands.length - 1; i >= 0; --i)
+            if (summands[i] != sum.get(i)) {
+                modified = true;
+                break;
+            }
+
+        Tensor result = sum;
+        if (modified) {
+            //merging summands in the initial order (just as the sequential iterator does)
+            TensorBuilder builder = sum.getBuilder();
+            for (Tensor summand : summands)
+                builder.put(summand);
+            result = builder.build();
+            //rules are not applied to modified node
+            if (!applyIfModified)
+                return result;
+        }
+
+        //applying rules to the top-level node only
+        final Tensor top = result;
+        return transform(top, new TraverseGuide() {
+            @Override
+            public TraversePermission getPermission(Tensor tensor, Tensor parent, int indexInParent) {
+                return tensor == top ? TraversePermission.ShowButNotEnter : TraversePermission.DontShow;
+            }
+        });
+    }
+
+    /**
+     * Fork-join task, which applies substitution to summands with indices from {@code from} (inclusive) to {@code to}
+     * (exclusive) and puts results into {@code results} at the same positions. All calculations are performed within
+     * the context of the thread which started the substitution.
+     */
+    private final class SummandsTask extends RecursiveAction {
+        private final ContextManager.ContextBinding binding;
+        private final Sum sum;
+        private final Tensor[] results;
+        private final int from, to;
+
+        SummandsTask(ContextManager.ContextBinding binding, Sum sum, Tensor[] results, int from, int to) {
+            this.binding = binding;
+            this.sum = sum;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SummandsTask(binding, sum, results, from, mid),
+                        new SummandsTask(binding, sum, results, mid, to));
+                return;
+            }
+            ContextManager.ContextBinding previous = binding.enter();
+            try {
+                for (int i = from; i < to; ++i)
+                    results[i] = transform(sum.get(i), TraverseGuide.ALL);
+            } finally {
+                ContextManager.ContextBinding.exit(previous);
+            }
         }
-        return iterator.result();
     }
 
     public Expression[] getExpressions() {
@@ -452,6 +627,12 @@ public final class SubstitutionTransformation implements TransformationToStringA
         final PrimitiveSubstitution[] others;
         final PrimitiveProductSubstitution[] pCombinations;
         final PrimitiveProductSubstitution[] pContractions;
+        final SubstitutionIndex index;
+        /**
+         * Filters of names of simple tensors required for each substitution to match ({@code null} if there is a
+         * substitution which does not require any names)
+         */
+        final long[] requiredNames;
 
         PrimitiveSubstitutions(PrimitiveProductSubstitution[] pCombinations,
                                PrimitiveProductSubstitution[] pContractions,
@@ -462,6 +643,50 @@ public final class SubstitutionTransformation implements TransformationToStringA
             sortPrimitiveSubstitutions(this.pCombinations);
             sortPrimitiveSubstitutions(this.pContractions);
             sortPrimitiveSubstitutions(this.others);
+            this.index = new SubstitutionIndex(this.others);
+            this.requiredNames = requiredNames(pCombinations, pContractions, others);
+        }
+
+        /**
+         * Returns false if none of substitutions can be applied to the specified tensor or its sub-tensors.
+         */
+        boolean mayMatch(Tensor tensor) {
+            if (requiredNames == null)
+                return true;
+            long filter = NamesFilter.of(tensor);
+            for (long required : requiredNames)
+                if (NamesFilter.mayContainAll(filter, required))
+                    return true;
+            return false;
+        }
+
+        private static long[] requiredNames(PrimitiveSubstitution[]... subs) {
+            int size = 0;
+            for (PrimitiveSubstitution[] s : subs)
+                size += s.length;
+            long[] required = new long[size];
+            size = 0;
+            for (PrimitiveSubstitution[] s : subs)
+                for (PrimitiveSubstitution sub : s)
+                    if ((required[size++] = requiredNames(sub.from)) == 0)
+                        return null;
+            return required;
+        }
+
+        private static long requiredNames(Tensor from) {
+            if (from instanceof TensorField) {
+                //arguments of fields may be mapped onto arbitrary arguments, while derivatives are matched by the
+                //name of parent field
+                TensorField field = (TensorField) from;
+                return NamesFilter.ofName(field.isDerivative()
+                        ? field.getNameDescriptor().getParent().getId() : field.getName());
+            }
+            if (from instanceof SimpleTensor)
+                return NamesFilter.ofName(((SimpleTensor) from).getName());
+            long required = 0;
+            for (Tensor t : from)
+                required |= requiredNames(t);
+            return required;
         }
     }
 }
@@ -24,6 +24,7 @@ package cc.redberry.core.transformations.symmetrization;
 
 import cc.redberry.core.groups.permutations.Permutation;
 import cc.redberry.core.groups.permutations.PermutationGroup;
+import cc.redberry.core.groups.permutations.PermutationGroupCache;
 import cc.redberry.core.groups.permutations.Permutations;
 import cc.redberry.core.indexmapping.Mapping;
 import cc.redberry.core.indices.Indices;
@@ -109,7 +110,7 @@ public final class SymmetrizeTransformation implements Transformation {
                 factor = indicesGroup.order();
             } else {
                 //otherwise we might will be more lucky if compute it group of symmetries and then compute coset reps.
-                PermutationGroup t_group = PermutationGroup.createPermutationGroup(
+                PermutationGroup t_group = PermutationGroupCache.getInstance().get(
                         TensorUtils.findIndicesSymmetries(indices, t));
                 PermutationGroup union = t_group.union(indicesGroup);
                 Permutation[] reps = union.leftCosetRepresentatives(t_group);
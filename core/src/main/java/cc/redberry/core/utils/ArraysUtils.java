@@ -99,7 +99,7 @@ public final class ArraysUtils {
 
     public static int[] getSeriesFrom0(int size) {
         int[] ret = new int[size];
-        for (int i = size; i >= 0; ++i)
+        for (int i = size - 1; i >= 0; --i)
             ret[i] = i;
         return ret;
     }
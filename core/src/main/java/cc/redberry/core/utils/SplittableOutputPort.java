@@ -0,0 +1,51 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.utils;
+
+/**
+ * Output port, which can be partitioned into several ports for parallel consumption (analog of
+ * {@code java.util.Spliterator}).
+ *
+ * @param <T> type of elements
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ * @since 1.1.11
+ */
+public interface SplittableOutputPort<T> extends OutputPort<T> {
+    /**
+     * If this port can be partitioned, returns a port which will give some part of elements of this port; these
+     * elements will not be given by this port after this method returns. Otherwise returns null. Splitting is
+     * possible only before the first invocation of {@link #take()}.
+     *
+     * @return port, which gives some part of elements of this port, or null if this port cannot be split
+     */
+    SplittableOutputPort<T> trySplit();
+
+    /**
+     * Returns an estimate of the number of elements that will be given by this port or {@link Long#MAX_VALUE} if
+     * it is too large.
+     *
+     * @return estimated number of elements
+     */
+    long estimateSize();
+}
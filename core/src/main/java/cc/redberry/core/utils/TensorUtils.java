@@ -293,15 +293,19 @@ public final class TensorUtils {
      * @return true if tensor contains at least one of simple tensor with name that contains in the set
      */
     public static boolean containsSimpleTensors(Tensor tensor, TIntSet setOfNames) {
-        FromChildToParentIterator iterator = new FromChildToParentIterator(tensor);
-        Tensor current;
-        boolean contains = false;
-        while ((current = iterator.next()) != null)
-            if (current instanceof SimpleTensor && setOfNames.contains(((SimpleTensor) current).getName())) {
-                contains = true;
-                break;
-            }
-        return contains;
+        return containsSimpleTensors(tensor, setOfNames, NamesFilter.ofNames(setOfNames));
+    }
+
+    private static boolean containsSimpleTensors(Tensor tensor, TIntSet setOfNames, long namesFilter) {
+        //subtrees which definitely do not contain any of names are skipped
+        if (!NamesFilter.mayContainAny(NamesFilter.of(tensor), namesFilter))
+            return false;
+        if (tensor instanceof SimpleTensor && setOfNames.contains(((SimpleTensor) tensor).getName()))
+            return true;
+        for (int i = tensor.size() - 1; i >= 0; --i)
+            if (containsSimpleTensors(tensor.get(i), setOfNames, namesFilter))
+                return true;
+        return false;
     }
 
     /**
@@ -368,11 +372,11 @@ public final class TensorUtils {
                                 }
                             return false;
                         }
-                        return true;
                     } else if (!equalsExactly(u.get(i - 1), v.get(i - 1)))
                         return false;
                     begin = i;
                 }
+            return true;
         }
         if (u.getClass() == TensorField.class) {
             if (((SimpleTensor) u).getName() != ((SimpleTensor) v).getName()
@@ -0,0 +1,123 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.context;
+
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.transformations.Transformation;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class ContextManagerTest {
+
+    @Test
+    public void testBind1() throws Exception {
+        final Context global = CC.current();
+        final Context[] contexts = new Context[2];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                contexts[0] = CC.current();
+                ContextManager.bindCurrentThread();
+                ContextManager.initializeNew();
+                contexts[1] = CC.current();
+                ContextManager.unbindCurrentThread();
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertTrue(global == contexts[0]);
+        Assert.assertTrue(global != contexts[1]);
+        Assert.assertTrue(global == CC.current());
+        Assert.assertFalse(ContextManager.isCurrentThreadBound());
+    }
+
+    @Test
+    public void testExecutor1() throws Exception {
+        final ExecutorService executor = ContextManager.getExecutorService();
+        final Callable<Context> getContext = new Callable<Context>() {
+            @Override
+            public Context call() throws Exception {
+                return CC.current();
+            }
+        };
+        final Context[] contexts = new Context[2];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    contexts[0] = ContextManager.bindCurrentThread();
+                    contexts[1] = executor.submit(getContext).get();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertTrue(contexts[0] == contexts[1]);
+        Assert.assertTrue(CC.current() == executor.submit(getContext).get());
+    }
+
+    @Test
+    public void testParallelSessions() throws Exception {
+        ExecutorService executor = ContextManager.getExecutorService();
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            final long seed = 1000 + i;
+            futures.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    ContextManager.bindCurrentThread();
+                    try {
+                        CC.resetTensorNames(seed);
+                        //large enough to be expanded in parallel within the context of this thread
+                        Tensor t = parse("(a+b+c+d+e+f+g+h+i+j+k+l+m+n+o+p+q+r+s+t+u+v+w+x)**2*f_m*f^m");
+                        Tensor expected = ExpandTransformation.expand(t);
+                        Tensor actual = new ExpandTransformation(new Transformation[0], TraverseGuide.ALL, true).transform(t);
+                        Assert.assertTrue(TensorUtils.equalsExactly(expected, actual));
+                        return CC.getNameManager().getSeed();
+                    } finally {
+                        ContextManager.unbindCurrentThread();
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < 8; ++i)
+            Assert.assertEquals(1000L + i, (long) futures.get(i).get());
+    }
+}
@@ -678,4 +678,57 @@ public class AlgorithmsBacktrackTest extends AbstractPermutationTest {
         return PermutationGroup.createPermutationGroupFromBSGS(AlgorithmsBase.asBSGSList(subgroup));
     }
 
+
+    @Test
+    public void testParallelSubgroupSearch() {
+        Random rnd = new Random(17);
+        for (int tt = 0; tt < 30; ++tt) {
+            int degree = 6 + rnd.nextInt(8);
+            List<Permutation> generators = new ArrayList<>();
+            for (int i = 0; i < 2; ++i)
+                generators.add(createPermutation(Permutations.randomPermutation(degree)));
+            List<BSGSElement> bsgs = createPermutationGroup(generators).getBSGS();
+
+            //setwise stabilizer of random set
+            final boolean[] set = new boolean[degree];
+            for (int i = 0; i < degree; ++i)
+                set[i] = rnd.nextBoolean();
+            Indicator<Permutation> property = new Indicator<Permutation>() {
+                @Override
+                public boolean is(Permutation p) {
+                    for (int i = 0; i < set.length; ++i)
+                        if (set[i] != set[p.newIndexOf(i)])
+                            return false;
+                    return true;
+                }
+            };
+
+            ArrayList<BSGSCandidateElement> sequential = new ArrayList<>(), parallel = new ArrayList<>();
+            AlgorithmsBacktrack.subgroupSearch(bsgs, sequential, BacktrackSearchTestFunction.TRUE, property);
+            AlgorithmsBacktrack.parallelSubgroupSearch(bsgs, parallel, BacktrackSearchTestFunction.TRUE, property);
+            assertTrue(isBSGS(parallel));
+            assertEquals(PermutationGroup.createPermutationGroupFromBSGS(asBSGSList(sequential)),
+                    PermutationGroup.createPermutationGroupFromBSGS(asBSGSList(parallel)));
+        }
+    }
+
+    @Test
+    public void testParallelIntersection() {
+        PermutationGroup g1 = createPermutationGroup(
+                createPermutation(new int[][]{{2, 12, 8, 9, 10, 6, 16, 4, 3, 11, 13, 5, 7, 15, 14}}),
+                createPermutation(new int[][]{{0, 8, 1}, {2, 13, 5}, {3, 11, 10}, {6, 15, 9}, {12, 16, 14}}));
+        PermutationGroup g2 = createPermutationGroup(
+                createPermutation(new int[][]{{1, 15, 8, 4, 2}, {3, 14, 7, 12, 6}, {5, 13, 9, 11, 10}}),
+                createPermutation(new int[][]{{1, 15}, {3, 13}, {5, 11}, {7, 9}}),
+                createPermutation(new int[][]{{0, 1}, {2, 3}, {4, 5}, {6, 7}, {8, 9}, {10, 11}, {12, 13}, {14, 15}}));
+        PermutationGroup g3 = PermutationGroup.symmetricGroup(8).directProduct(PermutationGroup.alternatingGroup(9));
+
+        for (PermutationGroup[] pair : new PermutationGroup[][]{{g1, g2}, {g1, g3}, {g2, g3}}) {
+            ArrayList<BSGSCandidateElement> sequential = new ArrayList<>(), parallel = new ArrayList<>();
+            AlgorithmsBacktrack.intersection(pair[0].getBSGS(), pair[1].getBSGS(), sequential);
+            AlgorithmsBacktrack.intersection(pair[0].getBSGS(), pair[1].getBSGS(), parallel, true);
+            assertEquals(PermutationGroup.createPermutationGroupFromBSGS(asBSGSList(sequential)),
+                    PermutationGroup.createPermutationGroupFromBSGS(asBSGSList(parallel)));
+        }
+    }
 }
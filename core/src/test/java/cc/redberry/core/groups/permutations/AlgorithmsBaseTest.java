@@ -28,6 +28,7 @@ import cc.redberry.core.test.LongTest;
 import cc.redberry.core.test.PerformanceTest;
 import cc.redberry.core.utils.Timing;
 import gnu.trove.set.hash.TIntHashSet;
+import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.random.Well1024a;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.junit.Assert;
@@ -1248,4 +1249,41 @@ public class AlgorithmsBaseTest extends AbstractPermutationTest {
             AlgorithmsBase.SchreierSimsAlgorithm(candidate);
         List<BSGSElement> bsgs = AlgorithmsBase.asBSGSList(candidate);
     }
+
+    @Test
+    public void testParallelSchreierSims() {
+        RandomGenerator rnd = new Well1024a(123);
+        for (int tt = 0; tt < its(20, 100); ++tt) {
+            int degree = 8 + rnd.nextInt(12);
+            List<Permutation> generators = new ArrayList<>();
+            if (tt % 2 == 0)
+                for (int i = 0; i < 2 + rnd.nextInt(2); ++i)
+                    generators.add(Permutations.createPermutation(Permutations.randomPermutation(degree, rnd)));
+            else {
+                //direct product of random groups acting on two halves
+                for (int i = 0; i < 2; ++i) {
+                    int[] left = Permutations.randomPermutation(degree / 2, rnd), perm = new int[degree];
+                    int[] right = Permutations.randomPermutation(degree - degree / 2, rnd);
+                    for (int j = 0; j < left.length; ++j)
+                        perm[j] = left[j];
+                    for (int j = 0; j < right.length; ++j)
+                        perm[left.length + j] = left.length + right[j];
+                    generators.add(Permutations.createPermutation(perm));
+                }
+            }
+
+            ArrayList<BSGSCandidateElement> sequential = (ArrayList) createRawBSGSCandidate(generators),
+                    parallel = AlgorithmsBase.clone(sequential);
+            SchreierSimsAlgorithm(sequential);
+            ParallelSchreierSimsAlgorithm(parallel);
+
+            //exactly the same BSGS
+            assertEquals(sequential.size(), parallel.size());
+            for (int i = 0; i < sequential.size(); ++i) {
+                assertEquals(sequential.get(i).basePoint, parallel.get(i).basePoint);
+                assertEquals(sequential.get(i).stabilizerGenerators, parallel.get(i).stabilizerGenerators);
+            }
+            assertTrue(isBSGS(parallel));
+        }
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.groups.permutations;
+
+import cc.redberry.core.combinatorics.IntPermutationsGenerator;
+import cc.redberry.core.utils.ArraysUtils;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class AlgorithmsDoubleCosetsTest {
+    @Test
+    public void test1() {
+        //A_ab*B^ab with symmetric A and antisymmetric B is zero
+        PermutationGroup slots = PermutationGroup.createPermutationGroup(
+                Permutations.createPermutation(1, 0, 2, 3),
+                Permutations.createPermutation(true, 0, 1, 3, 2));
+        int[][] dummies = {{0, 1, 2, 3}};
+        Assert.assertNull(AlgorithmsDoubleCosets.canonicalRepresentative(
+                new int[]{0, 2, 1, 3}, false, slots, dummies, new boolean[]{true}));
+
+        //A_ab*C^ab with symmetric A and C is not zero
+        slots = PermutationGroup.createPermutationGroup(
+                Permutations.createPermutation(1, 0, 2, 3),
+                Permutations.createPermutation(0, 1, 3, 2));
+        AlgorithmsDoubleCosets.Representative canonical = AlgorithmsDoubleCosets.canonicalRepresentative(
+                new int[]{3, 1, 2, 0}, false, slots, dummies, new boolean[]{true});
+        Assert.assertArrayEquals(new int[]{0, 2, 1, 3}, canonical.oneLine());
+        Assert.assertFalse(canonical.getSign());
+    }
+
+    @Test
+    public void testNonMetric() {
+        //upper and lower indices can not be swapped
+        PermutationGroup slots = PermutationGroup.createPermutationGroup(Permutations.createPermutation(2, 3, 0, 1));
+        int[][] dummies = {{0, 1, 2, 3}};
+        AlgorithmsDoubleCosets.Representative canonical = AlgorithmsDoubleCosets.canonicalRepresentative(
+                new int[]{1, 2, 3, 0}, false, slots, dummies, new boolean[]{false});
+        Assert.assertArrayEquals(new int[]{1, 2, 3, 0}, canonical.oneLine());
+    }
+
+    @Test
+    public void testRandomBruteForce() {
+        Well1024a random = new Well1024a(12345);
+        //Riemann-like symmetries of slots 0..3, antisymmetry of slots 4, 5 and symmetry of slots 6, 7
+        PermutationGroup slots = PermutationGroup.createPermutationGroup(
+                Permutations.createPermutation(true, 1, 0, 2, 3),
+                Permutations.createPermutation(2, 3, 0, 1),
+                Permutations.createPermutation(true, 0, 1, 2, 3, 5, 4),
+                Permutations.createPermutation(0, 1, 2, 3, 4, 5, 7, 6));
+        //two free indices and three dummy pairs
+        final int degree = 8;
+        int[][] dummies = {{2, 3, 4, 5, 6, 7}};
+        for (boolean metric : new boolean[]{true, false}) {
+            List<int[]> dummySymmetries = dummySymmetries(degree, 2, 3, metric);
+            for (int n = 0; n < 200; ++n) {
+                int[] g = Permutations.randomPermutation(degree, random);
+                AlgorithmsDoubleCosets.Representative canonical = AlgorithmsDoubleCosets.canonicalRepresentative(
+                        g, false, slots, dummies, new boolean[]{metric});
+
+                int[] min = null;
+                boolean minSign = false, zero = false;
+                Iterator<Permutation> iterator = slots.iterator();
+                while (iterator.hasNext()) {
+                    Permutation s = iterator.next();
+                    for (int[] d : dummySymmetries) {
+                        int[] h = new int[degree];
+                        for (int i = 0; i < degree; ++i)
+                            h[i] = d[g[s.newIndexOf(i)]];
+                        int cmp = min == null ? -1 : compare(h, min);
+                        if (cmp < 0) {
+                            min = h;
+                            minSign = s.antisymmetry();
+                            zero = false;
+                        } else if (cmp == 0 && minSign != s.antisymmetry())
+                            zero = true;
+                    }
+                }
+                if (zero)
+                    Assert.assertNull(canonical);
+                else {
+                    Assert.assertArrayEquals(min, canonical.oneLine());
+                    Assert.assertEquals(minSign, canonical.getSign());
+                }
+            }
+        }
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int i = 0; i < a.length; ++i)
+            if (a[i] != b[i])
+                return Integer.compare(a[i], b[i]);
+        return 0;
+    }
+
+    private static List<int[]> dummySymmetries(int degree, int offset, int pairs, boolean metric) {
+        List<int[]> result = new ArrayList<>();
+        IntPermutationsGenerator generator = new IntPermutationsGenerator(pairs);
+        while (generator.hasNext()) {
+            int[] permutation = generator.next();
+            for (int flips = 0; flips < (metric ? 1 << pairs : 1); ++flips) {
+                int[] d = ArraysUtils.getSeriesFrom0(degree);
+                for (int k = 0; k < pairs; ++k)
+                    for (int e = 0; e < 2; ++e)
+                        d[offset + 2 * k + e] = offset + 2 * permutation[k] + (e ^ ((flips >> k) & 1));
+                result.add(d);
+            }
+        }
+        return result;
+    }
+}
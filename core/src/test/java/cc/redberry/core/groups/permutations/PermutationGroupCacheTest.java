@@ -0,0 +1,132 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.groups.permutations;
+
+import cc.redberry.core.tensor.SimpleTensor;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static cc.redberry.core.tensor.Tensors.addSymmetry;
+import static cc.redberry.core.tensor.Tensors.parseSimple;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class PermutationGroupCacheTest {
+    @Test
+    public void test1() {
+        PermutationGroupCache cache = PermutationGroupCache.getInstance();
+        Permutation a = Permutations.createPermutation(1, 0, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13),
+                b = Permutations.createPermutation(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 0),
+                identity = Permutations.createIdentityPermutation(14);
+
+        PermutationGroup group = cache.get(a, b);
+        Assert.assertSame(group, cache.get(b, a));
+        Assert.assertSame(group, cache.get(b, identity, a, b));
+        Assert.assertEquals(PermutationGroup.createPermutationGroup(a, b).order(), group.order());
+
+        long avoided = cache.getAvoidedSchreierSimsRuns();
+        Assert.assertSame(group, cache.get(a, b));
+        Assert.assertEquals(avoided + 1, cache.getAvoidedSchreierSimsRuns());
+
+        Assert.assertNotSame(group, cache.get(a));
+        Assert.assertNotSame(group, cache.get(Permutations.createPermutation(true, a.oneLine()), b));
+        Assert.assertSame(PermutationGroup.trivialGroup(), cache.get(identity));
+    }
+
+    @Test
+    public void testIndicesSymmetries() {
+        SimpleTensor r = parseSimple("R_abcd"), s = parseSimple("S_abcd");
+        for (SimpleTensor t : new SimpleTensor[]{r, s}) {
+            addSymmetry(t, 1, 0, 2, 3);
+            addSymmetry(t, 2, 3, 0, 1);
+        }
+        PermutationGroup group = r.getIndices().getSymmetries().getPermutationGroup();
+        Assert.assertSame(group, s.getIndices().getSymmetries().getPermutationGroup());
+        Assert.assertEquals(BigInteger.valueOf(8), group.order());
+    }
+
+    @Test
+    public void testConcurrentInitialization() throws Exception {
+        Well1024a random = new Well1024a(123);
+        final int threadsCount = 8;
+        for (int k = 0; k < 50; ++k) {
+            //intransitive group, so that Schreier-Sims algorithm is actually invoked
+            Permutation[] generators = new Permutation[3];
+            for (int i = 0; i < generators.length; ++i) {
+                int[] left = Permutations.randomPermutation(10, random),
+                        right = Permutations.randomPermutation(10, random), oneLine = new int[20];
+                for (int j = 0; j < 10; ++j) {
+                    oneLine[j] = left[j];
+                    oneLine[10 + j] = 10 + right[j];
+                }
+                generators[i] = Permutations.createPermutation(oneLine);
+            }
+            BigInteger expected = PermutationGroup.createPermutationGroup(generators).order();
+
+            final PermutationGroup group = PermutationGroupCache.getInstance().get(generators);
+            Assert.assertFalse(group.isBSGSInitialized());
+            final CountDownLatch start = new CountDownLatch(1);
+            final BigInteger[] orders = new BigInteger[threadsCount];
+            final List[] bsgs = new List[threadsCount];
+            Thread[] threads = new Thread[threadsCount];
+            for (int i = 0; i < threadsCount; ++i) {
+                final int id = i;
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        if (id % 2 == 0) {
+                            orders[id] = group.order();
+                            bsgs[id] = group.getBSGS();
+                        } else {
+                            bsgs[id] = group.getBSGS();
+                            orders[id] = group.order();
+                        }
+                    }
+                });
+                threads[i].start();
+            }
+            start.countDown();
+            for (Thread thread : threads)
+                thread.join();
+
+            for (int i = 0; i < threadsCount; ++i) {
+                Assert.assertEquals(expected, orders[i]);
+                Assert.assertNotNull(bsgs[i]);
+                Assert.assertEquals(expected, AlgorithmsBase.calculateOrder(bsgs[i]));
+                Assert.assertTrue(AlgorithmsBase.isBSGS(bsgs[i]));
+            }
+        }
+    }
+}
@@ -237,4 +237,55 @@ public class PermutationsTest {
         Assert.assertArrayEquals(Permutations.createBlockTransposition(3, 0), new int[]{0, 1, 2});
         Assert.assertArrayEquals(Permutations.createBlockTransposition(3, 3), new int[]{3, 4, 5, 0, 1, 2});
     }
+
+    @Test
+    public void testCompositionInPlace() {
+        Well1024a random = new Well1024a(31);
+        for (int degree : new int[]{10, 100, 1000, Short.MAX_VALUE + 10})
+            for (int n = 0; n < 10; ++n) {
+                Permutation a = Permutations.createPermutation(Permutations.randomPermutation(degree, random)),
+                        b = Permutations.createPermutation(Permutations.randomPermutation(degree / 2, random));
+                int[] buffer = a.oneLine();
+                Permutations.compositionInPlace(b, buffer);
+                assertEquals(a.composition(b), Permutations.createPermutation(buffer));
+
+                buffer = a.oneLine();
+                Permutations.compositionWithInverseInPlace(b, buffer, new int[degree]);
+                assertEquals(a.compositionWithInverse(b), Permutations.createPermutation(buffer));
+
+                buffer = new int[degree];
+                for (int i = 0; i < degree; ++i)
+                    buffer[i] = b.newIndexOf(i);
+                Permutations.compositionInPlace(a, buffer);
+                assertEquals(b.composition(a), Permutations.createPermutation(buffer));
+            }
+    }
+
+    @Test
+    public void testBatchComposition() {
+        Well1024a random = new Well1024a(17);
+        List<Permutation> permutations = new ArrayList<>();
+        Permutation expected = Permutations.getIdentityPermutation();
+        boolean expectedAntisymmetry = false;
+        for (int i = 0; i < 20; ++i) {
+            Permutation p = Permutations.createPermutation(Permutations.randomPermutation(5 + i, random));
+            expected = expected.composition(p);
+            if (!p.orderIsOdd() && random.nextBoolean()) {
+                p = p.negate();
+                expectedAntisymmetry ^= true;
+            }
+            permutations.add(p);
+        }
+        int[] buffer = new int[30];
+        boolean antisymmetry = Permutations.composition(permutations, buffer);
+        assertEquals(expectedAntisymmetry, antisymmetry);
+        assertEquals(expected, Permutations.createPermutation(Arrays.copyOf(buffer, expected.degree())));
+        for (int i = expected.degree(); i < buffer.length; ++i)
+            assertEquals(i, buffer[i]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchCompositionSmallBuffer() {
+        Permutations.composition(Arrays.asList(Permutations.createPermutation(1, 2, 0)), new int[2]);
+    }
 }
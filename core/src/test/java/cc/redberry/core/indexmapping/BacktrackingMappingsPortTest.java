@@ -0,0 +1,130 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.indexmapping;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.tensor.ApplyIndexMapping;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.test.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static cc.redberry.core.tensor.Tensors.addSymmetry;
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class BacktrackingMappingsPortTest {
+    @Test
+    public void testSimpleTensors() {
+        addSymmetry("R_abcd", IndexType.LatinLower, true, 1, 0, 2, 3);
+        addSymmetry("R_abcd", IndexType.LatinLower, false, 2, 3, 0, 1);
+        assertSameMappings("R_abcd", "R_abcd");
+        assertSameMappings("R_abcd", "R_pqrs");
+        assertSameMappings("R_abcd", "R^pq_rs");
+        assertSameMappings("R_ab^b_d", "R_pq^q_s");
+        assertSameMappings("R_a^a_cd", "R_p^p_rs");
+        assertSameMappings("F_ab", "F_ba");
+        assertSameMappings("g_ab", "g_cd");
+        assertSameMappings("d^a_b", "d^c_d");
+        assertSameMappings("x", "x");
+        assertSameMappings("x", "y");
+    }
+
+    @Test
+    public void testProducts() {
+        addSymmetry("R_abcd", IndexType.LatinLower, true, 1, 0, 2, 3);
+        addSymmetry("R_abcd", IndexType.LatinLower, false, 2, 3, 0, 1);
+        addSymmetry("F_ab", IndexType.LatinLower, true, 1, 0);
+        assertSameMappings("R_abcd*R^cdpq*F_pq", "R_abcd*R^cdpq*F_pq");
+        assertSameMappings("R_abcd*R^cdpq*F_pq", "-R_abcd*R^cdpq*F_qp");
+        assertSameMappings("2*F_ab*F^bc*F_cd*F^da", "2*F_ab*F^bc*F_cd*F^da");
+        assertSameMappings("F_ab*F^bc*F_cd*F^da", "-F_ab*F^bc*F_cd*F^da");
+        assertSameMappings("k_a*k_b*p^a*p^b", "k_c*k_d*p^c*p^d");
+        assertSameMappings("k_a*k_b*t_c", "k_b*k_c*t_a");
+        assertSameMappings("g_ab*k^a*k^b*d^c_d", "g_ab*k^a*k^b*d^c_d");
+        assertSameMappings("A_ab*B^bc", "A_ab*B^bc");
+        assertSameMappings("A_ab*B^bc", "2*A_ab*B^bc");
+        Assert.assertTrue(IndexMappings.isZeroDueToSymmetry(parse("F_ab*k^a*k^b")));
+        CC.current().setBacktrackingIndexMappings(true);
+        Assert.assertTrue(IndexMappings.isZeroDueToSymmetry(parse("F_ab*k^a*k^b")));
+        Assert.assertFalse(IndexMappings.isZeroDueToSymmetry(parse("F_ab*k^a*p^b")));
+    }
+
+    @Test
+    public void testUnsupported() {
+        Assert.assertNull(BacktrackingMappingsPort.create(new IndexMappingBufferImpl(),
+                parse("f[x]*A_a"), parse("f[x]*A_a")));
+        Assert.assertNull(BacktrackingMappingsPort.create(new IndexMappingBufferImpl(),
+                parse("(A_a + B_a)*C^a"), parse("(A_a + B_a)*C^a")));
+        Assert.assertNull(BacktrackingMappingsPort.create(new IndexMappingBufferImpl(),
+                parse("-A_a"), parse("A_a")));
+        CC.current().setBacktrackingIndexMappings(true);
+        Assert.assertTrue(IndexMappings.equals(parse("f[x]*(A_a + B_a)*C^a"), parse("f[x]*(B_a + A_a)*C^a")));
+    }
+
+    @Test
+    public void testRandom() {
+        RandomTensor rnd = new RandomTensor();
+        int supported = 0;
+        for (int i = 0; i < TestUtils.its(100, 1000); ++i) {
+            Tensor t = rnd.nextProduct(3 + rnd.nextInt(3), IndicesFactory.EMPTY_INDICES);
+            Tensor renamed = ApplyIndexMapping.renameDummy(t,
+                    IndicesUtils.getIndicesNames(t.getIndices()));
+            if (BacktrackingMappingsPort.create(new IndexMappingBufferImpl(), t, renamed) != null)
+                ++supported;
+            assertSameMappings(t, t);
+            assertSameMappings(t, renamed);
+        }
+        Assert.assertTrue(supported > 0);
+    }
+
+    private static void assertSameMappings(String from, String to) {
+        assertSameMappings(parse(from), parse(to));
+    }
+
+    private static void assertSameMappings(Tensor from, Tensor to) {
+        boolean previous = CC.current().isBacktrackingIndexMappings();
+        try {
+            CC.current().setBacktrackingIndexMappings(false);
+            Set<Mapping> expected = IndexMappings.getAllMappings(from, to);
+            boolean expectedZero = IndexMappings.isZeroDueToSymmetry(from);
+            Boolean expectedCompare = IndexMappings.compare1(from, to);
+
+            CC.current().setBacktrackingIndexMappings(true);
+            Assert.assertEquals(expected, IndexMappings.getAllMappings(from, to));
+            Assert.assertEquals(expectedZero, IndexMappings.isZeroDueToSymmetry(from));
+            Assert.assertEquals(expectedCompare, IndexMappings.compare1(from, to));
+        } finally {
+            CC.current().setBacktrackingIndexMappings(previous);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.indexmapping;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.tensor.SumBuilder;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class IndexMappingsCacheTest {
+    @Test
+    public void testGetFirst() {
+        IndexMappingsCache cache = IndexMappingsCache.lru(10);
+        CC.current().setIndexMappingsCache(cache);
+        //symmetric and antisymmetric sums have equal hash codes, but there is no mapping between them
+        Tensor from = parse("k_a*t_b + k_b*t_a"), to = parse("k_c*t_d + k_d*t_c"), other = parse("k_a*t_b - k_b*t_a");
+        Mapping mapping = IndexMappings.getFirst(from, to);
+        Assert.assertNotNull(mapping);
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+
+        Assert.assertTrue(mapping == IndexMappings.getFirst(from, to));
+        Assert.assertTrue(IndexMappings.mappingExists(from, to));
+        Assert.assertEquals(2, cache.getHits());
+
+        Assert.assertNull(IndexMappings.getFirst(from, other));
+        Assert.assertFalse(IndexMappings.mappingExists(from, other));
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+
+        //trivially different hash codes are not cached
+        Assert.assertNull(IndexMappings.getFirst(from, parse("k_a*k_b + t_b*t_a")));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(0.6, cache.getHitRate(), 1e-12);
+    }
+
+    @Test
+    public void testCompare1() {
+        IndexMappingsCache cache = IndexMappingsCache.lru(10);
+        CC.current().setIndexMappingsCache(cache);
+        Tensor u = parse("F_mn*k^n"), v = parse("F_mb*k^b");
+        Assert.assertFalse(IndexMappings.compare1(u, v));
+        Assert.assertFalse(IndexMappings.compare1(u, v));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertFalse(IndexMappings.compare1_withoutCheck(u, v));
+        Assert.assertFalse(IndexMappings.compare1_withoutCheck(u, v));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        Tensor[] t = {parse("f_ab*k^a"), parse("f_mn*k^m"), parse("f_cd*k^c")};
+        IndexMappingsCache lru = IndexMappingsCache.lru(2);
+        CC.current().setIndexMappingsCache(lru);
+        IndexMappings.getFirst(t[0], t[1]);
+        IndexMappings.getFirst(t[0], t[2]);
+        IndexMappings.getFirst(t[0], t[1]);//touch
+        IndexMappings.getFirst(t[1], t[2]);//evicts (0, 2)
+        Assert.assertEquals(1, lru.getEvictions());
+        lru.resetStatistics();
+        IndexMappings.getFirst(t[0], t[1]);
+        Assert.assertEquals(1, lru.getHits());
+
+        IndexMappingsCache fifo = IndexMappingsCache.fifo(2);
+        CC.current().setIndexMappingsCache(fifo);
+        IndexMappings.getFirst(t[0], t[1]);
+        IndexMappings.getFirst(t[0], t[2]);
+        IndexMappings.getFirst(t[0], t[1]);//touch does not matter
+        IndexMappings.getFirst(t[1], t[2]);//evicts (0, 1)
+        Assert.assertEquals(1, fifo.getEvictions());
+        fifo.resetStatistics();
+        IndexMappings.getFirst(t[0], t[1]);
+        Assert.assertEquals(0, fifo.getHits());
+    }
+
+    @Test
+    public void testClearedOnReset() {
+        IndexMappingsCache cache = IndexMappingsCache.lru(10);
+        CC.current().setIndexMappingsCache(cache);
+        IndexMappings.getFirst(parse("f_ab*k^a"), parse("f_mn*k^m"));
+        Assert.assertEquals(1, cache.size());
+        CC.resetTensorNames();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSumBuilder() {
+        Tensor t = ExpandTransformation.expand(parse("(f_ab + f_ba)*(k^a + t^a)*(k^b + t^b)"));
+        CC.current().setIndexMappingsCache(IndexMappingsCache.lru(1000));
+        SumBuilder sb = new SumBuilder();
+        for (int i = 0; i < 3; ++i)
+            for (Tensor s : t)
+                sb.put(s);
+        Tensor r = sb.build();
+        CC.current().setIndexMappingsCache(null);
+        sb = new SumBuilder();
+        for (int i = 0; i < 3; ++i)
+            for (Tensor s : t)
+                sb.put(s);
+        Assert.assertTrue(TensorUtils.equals(r, sb.build()));
+    }
+}
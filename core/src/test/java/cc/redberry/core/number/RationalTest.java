@@ -22,6 +22,9 @@
  */
 package cc.redberry.core.number;
 
+import org.apache.commons.math3.fraction.BigFraction;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well1024a;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -49,4 +52,99 @@ public class RationalTest {
         Assert.assertEquals(1, Rational.ONE.hashCode());
         Assert.assertEquals(-1, Rational.MINUS_ONE.hashCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSmallAndBig1() throws Exception {
+        Rational max = new Rational(Long.MAX_VALUE);
+        Assert.assertTrue(max.isSmall());
+        Rational r = (Rational) max.add(Rational.ONE);
+        Assert.assertFalse(r.isSmall());
+        Assert.assertEquals(new BigFraction(Long.MAX_VALUE).add(1), r.getBigFraction());
+        r = (Rational) r.subtract(Rational.ONE);
+        Assert.assertTrue(r.isSmall());
+        Assert.assertEquals(max, r);
+        Assert.assertEquals(max.hashCode(), r.hashCode());
+
+        Rational min = new Rational(Long.MIN_VALUE);
+        Assert.assertFalse(min.isSmall());
+        Assert.assertTrue(min.negate().add(-1).isSmall());
+        Assert.assertEquals(new BigInteger("-9223372036854775808"), min.getNumerator());
+    }
+
+    @Test
+    public void testSmallAndBig2() throws Exception {
+        Rational a = new Rational(new BigInteger("1231231231876239486"), new BigInteger("123242342342342342331231231876239486"));
+        Assert.assertFalse(a.isSmall());
+        Rational b = new Rational(new BigInteger("1231231231876239486"), new BigInteger("123242342342342342331231231876239486"));
+        Assert.assertTrue(a.subtract(b).isZero());
+        Assert.assertTrue(a.subtract(b) == Rational.ZERO);
+        Assert.assertTrue(((Rational) a.divide(b)).isOne());
+    }
+
+    @Test
+    public void testHashCode2() throws Exception {
+        long[] values = {0, 1, -1, 2, Integer.MAX_VALUE, Integer.MIN_VALUE, 1L << 31, -(1L << 31), 1L << 32,
+                (1L << 32) + 5, -(1L << 32) - 5, Long.MAX_VALUE, -Long.MAX_VALUE, 123456789012345L};
+        for (long num : values)
+            for (long den : values) {
+                if (den == 0)
+                    continue;
+                BigFraction fraction = new BigFraction(BigInteger.valueOf(num), BigInteger.valueOf(den));
+                Assert.assertEquals(fraction.getNumerator().hashCode() * fraction.getDenominator().hashCode(),
+                        new Rational(num, den).hashCode());
+            }
+    }
+
+    @Test
+    public void testArithmeticRandom() throws Exception {
+        RandomGenerator random = new Well1024a(12345);
+        for (int i = 0; i < 10000; ++i) {
+            long a = nextLong(random), b = nextLong(random), c = nextLong(random), d = nextLong(random);
+            if (b == 0 || d == 0)
+                continue;
+            BigFraction x = new BigFraction(BigInteger.valueOf(a), BigInteger.valueOf(b)),
+                    y = new BigFraction(BigInteger.valueOf(c), BigInteger.valueOf(d));
+            Rational rx = new Rational(a, b), ry = new Rational(c, d);
+
+            assertEquals(x, rx);
+            assertEquals(y, ry);
+            assertEquals(x.add(y), (Rational) rx.add(ry));
+            assertEquals(x.subtract(y), (Rational) rx.subtract(ry));
+            assertEquals(x.multiply(y), (Rational) rx.multiply(ry));
+            assertEquals(x.negate(), rx.negate());
+            assertEquals(x.abs(), rx.abs());
+            assertEquals(x.add(c), rx.add(c));
+            assertEquals(x.multiply(c), rx.multiply(c));
+            if (c != 0) {
+                assertEquals(x.divide(y), (Rational) rx.divide(ry));
+                assertEquals(x.divide(c), rx.divide(c));
+                assertEquals(y.reciprocal(), ry.reciprocal());
+            }
+            Assert.assertEquals(Integer.signum(x.compareTo(y)), Integer.signum(rx.compareTo(ry)));
+            Assert.assertEquals(x.doubleValue(), rx.doubleValue(), 0.0);
+            Assert.assertEquals(x.getNumerator().divide(x.getDenominator()), rx.bigIntValue());
+        }
+    }
+
+    private static long nextLong(RandomGenerator random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextInt(21) - 10;
+            case 1:
+                return random.nextInt();
+            case 2:
+                return random.nextLong() >> random.nextInt(64);
+            default:
+                return random.nextBoolean() ? Long.MAX_VALUE - random.nextInt(3) : -Long.MAX_VALUE + random.nextInt(3);
+        }
+    }
+
+    private static void assertEquals(BigFraction expected, Rational actual) {
+        Assert.assertEquals(expected, actual.getBigFraction());
+        Assert.assertEquals(new Rational(expected), actual);
+        Assert.assertEquals(new Rational(expected).hashCode(), actual.hashCode());
+        Assert.assertEquals(new Rational(expected).isSmall(), actual.isSmall());
+        Assert.assertEquals(expected.getDenominator().equals(BigInteger.ONE)
+                ? expected.getNumerator().toString() : expected.toString().replace(" ", ""), actual.toString());
+    }
+}
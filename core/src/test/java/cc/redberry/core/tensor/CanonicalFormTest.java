@@ -0,0 +1,171 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.indexmapping.IndexMappings;
+import cc.redberry.core.indices.Indices;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.indices.SimpleIndices;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.test.TestUtils;
+import cc.redberry.core.utils.TensorUtils;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static cc.redberry.core.tensor.Tensors.*;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class CanonicalFormTest {
+    @Test
+    public void test1() {
+        addAntiSymmetry("R_abcd", 1, 0, 2, 3);
+        addSymmetry("R_abcd", 2, 3, 0, 1);
+        assertSameForm(parse("R_abcd*R^cdab"), parse("R_abcd*R^abcd"), false);
+        assertSameForm(parse("R_abcd*R^bacd"), parse("R_abcd*R^abcd"), true);
+        assertSameForm(parse("R_abcd*R^bcda"), parse("R_adbc*R^dbca"), false);
+        assertSameForm(parse("R_ab^a_c*R^bd"), parse("R^e_c_eb*R^bd"), false);
+        assertSameForm(parse("-R_ab^a_c*R^bd"), parse("R^e_c_eb*R^bd"), true);
+        assertSameForm(parse("R_ab^ab"), parse("R_a^b_b^a"), true);
+        assertDifferentForms(parse("R_abcd*R^acbd"), parse("R_abcd*R^abcd"));
+    }
+
+    @Test
+    public void test2() {
+        addSymmetry("g_ab", 1, 0);
+        assertSameForm(parse("A_a^b*B_bc*C^c"), parse("C^c*B_dc*A_a^d"), false);
+        assertSameForm(parse("A_ab*B^b"), parse("A_ac*B^c"), false);
+        assertDifferentForms(parse("A_ab*B^b"), parse("A_ba*B^b"));
+        assertSameForm(parse("A_a^a"), parse("A^b_b"), false);
+    }
+
+    @Test
+    public void testUnsupported() {
+        Assert.assertNull(CanonicalForm.of(parse("2*A_a*B^a")));
+        Assert.assertNull(CanonicalForm.of(parse("x*A_a*B^a")));
+        Assert.assertNull(CanonicalForm.of(parse("f[x]*A_a")));
+        Assert.assertNull(CanonicalForm.of(parse("(A_a+B_a)*C_b")));
+        Assert.assertNull(CanonicalForm.of(parse("A_a+B_a")));
+        Assert.assertNotNull(CanonicalForm.of(parse("-A_a*B^a")));
+    }
+
+    @Test
+    public void testRandom() {
+        RandomGenerator generator = new Well1024a(TestUtils.its(1L, System.currentTimeMillis()));
+        RandomTensor rnd = new RandomTensor();
+        rnd.reset(generator.nextLong());
+        rnd.clearNamespace();
+        rnd.addToNamespace(parse("A_a"), parse("B_ab"), parse("C_abc"), parse("D_a"), parse("E_ab"), parse("F_abcd"));
+        addSymmetry("B_ab", 1, 0);
+        addAntiSymmetry("E_ab", 1, 0);
+        addSymmetry("C_abc", 1, 2, 0);
+        addAntiSymmetry("F_abcd", 1, 0, 2, 3);
+        addSymmetry("F_abcd", 2, 3, 0, 1);
+
+        Indices free = parse("G_ab").getIndices();
+        List<Tensor> products = new ArrayList<>();
+        for (int i = 0; i < TestUtils.its(100, 1000); ++i) {
+            Tensor t = rnd.nextProduct(2 + i % 4, free);
+            if (CanonicalForm.of(t) == null)
+                continue;
+            products.add(t);
+            boolean[] sign = {false};
+            Tensor equivalent = equivalent(t, generator, sign);
+            if (!TensorUtils.isZeroDueToSymmetry(t))
+                assertSameForm(t, equivalent, sign[0]);
+            else
+                Assert.assertEquals(CanonicalForm.of(t), CanonicalForm.of(equivalent));
+        }
+        for (int i = 0; i < products.size(); ++i)
+            for (int j = i + 1; j < products.size(); ++j)
+                if (products.get(i).hashCode() == products.get(j).hashCode())
+                    assertConsistent(products.get(i), products.get(j));
+    }
+
+    /**
+     * Shuffles multipliers, applies random symmetries and renames dummies; sign[0] is set to true if the result is
+     * equal to minus initial tensor
+     */
+    private static Tensor equivalent(Tensor t, RandomGenerator generator, boolean[] sign) {
+        Tensor[] data = t instanceof Product ? ((Product) t).data.clone() : new Tensor[]{t};
+        for (int i = 0; i < data.length; ++i) {
+            SimpleTensor st = (SimpleTensor) data[i];
+            SimpleIndices indices = st.getIndices();
+            if (indices.size() < 2 || indices.getSymmetries().isTrivial())
+                continue;
+            Permutation p = indices.getSymmetries().getPermutationGroup().randomElement(generator);
+            int[] permuted = new int[indices.size()];
+            for (int j = 0; j < permuted.length; ++j)
+                permuted[j] = indices.get(p.newIndexOf(j));
+            sign[0] ^= p.antisymmetry();
+            data[i] = simpleTensor(st.getName(), IndicesFactory.createSimple(null, permuted));
+        }
+        for (int i = data.length - 1; i > 0; --i) {
+            int j = generator.nextInt(i + 1);
+            Tensor tmp = data[i];
+            data[i] = data[j];
+            data[j] = tmp;
+        }
+        Tensor result = multiply(data);
+        if (t instanceof Product && ((Product) t).getFactor().isMinusOne())
+            result = negate(result);
+        return ApplyIndexMapping.renameDummy(result,
+                IndicesUtils.getIndicesNames(t.getIndices().getFree()),
+                TensorUtils.getAllDummyIndicesT(t).toArray());
+    }
+
+    private static void assertSameForm(Tensor a, Tensor b, boolean sign) {
+        CanonicalForm fa = CanonicalForm.of(a), fb = CanonicalForm.of(b);
+        Assert.assertNotNull(fa);
+        Assert.assertEquals(fa, fb);
+        Assert.assertEquals(fa.hashCode(), fb.hashCode());
+        Assert.assertEquals(sign, fa.getSign() ^ fb.getSign());
+        Assert.assertEquals(sign, IndexMappings.compare1(a, b));
+    }
+
+    private static void assertDifferentForms(Tensor a, Tensor b) {
+        Assert.assertFalse(CanonicalForm.of(a).equals(CanonicalForm.of(b)));
+        Assert.assertNull(IndexMappings.compare1(a, b));
+    }
+
+    private static void assertConsistent(Tensor a, Tensor b) {
+        CanonicalForm fa = CanonicalForm.of(a), fb = CanonicalForm.of(b);
+        Boolean compare = IndexMappings.compare1(a, b);
+        if (compare == null)
+            Assert.assertFalse(fa.equals(fb));
+        else {
+            Assert.assertEquals(fa, fb);
+            if (!TensorUtils.isZeroDueToSymmetry(a))
+                Assert.assertEquals(compare, fa.getSign() ^ fb.getSign());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.context.CC;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class ConcurrentSumBuilderTest {
+
+    @Test
+    public void test1() {
+        ConcurrentSumBuilder sb = new ConcurrentSumBuilder();
+        sb.put(parse("a"));
+        sb.put(parse("2*a"));
+        sb.put(parse("-3*a"));
+        sb.put(parse("a*b"));
+        sb.put(parse("7*a*b"));
+        sb.put(parse("Sin[c]"));
+        sb.put(parse("d"));
+        sb.put(parse("Sin[-c]"));
+        sb.put(parse("2"));
+        TAssert.assertEquals(sb.build(), "8*a*b+d+2");
+    }
+
+    @Test
+    public void test2() {
+        ConcurrentSumBuilder sb = new ConcurrentSumBuilder(1);
+        Assert.assertTrue(TensorUtils.isZero(sb.build()));
+        sb.put(parse("k_a*p^a*f_mn"));
+        sb.put(parse("k_b*p^b*f_mn"));
+        sb.put(parse("x*f_nm"));
+        Assert.assertEquals(2, sb.size());
+        TAssert.assertEquals(sb.clone().build(), "2*k_a*p^a*f_mn+x*f_nm");
+    }
+
+    @Test(expected = TensorException.class)
+    public void test3() {
+        ConcurrentSumBuilder sb = new ConcurrentSumBuilder();
+        sb.put(parse("f_mn"));
+        sb.put(parse("f_ab"));
+    }
+
+    @Test
+    public void test4() {
+        ConcurrentSumBuilder sb = new ConcurrentSumBuilder();
+        sb.put(parse("a"));
+        sb.put(parse("2.0"));
+        sb.put(parse("b"));
+        TAssert.assertEquals(sb.build(), "a+b+2.0");
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        for (int k = 0; k < 10; ++k) {
+            CC.resetTensorNames(k);
+            List<Tensor> terms = randomTerms(k, 30, 10);
+            SumBuilder expected = new SumBuilder();
+            for (Tensor term : terms)
+                expected.put(term);
+
+            ConcurrentSumBuilder actual = new ConcurrentSumBuilder(4);
+            putConcurrently(actual, terms, 4);
+            TAssert.assertEquals(actual.build(), expected.build());
+        }
+    }
+
+    private static List<Tensor> randomTerms(long seed, int differentTerms, int repetitions) {
+        RandomTensor random = new RandomTensor(4, 10, new int[]{4, 0, 0, 0},
+                new int[]{10, 0, 0, 0}, false, true, new Well1024a(seed));
+        List<Tensor> terms = new ArrayList<>();
+        for (int i = 0; i < differentTerms; ++i) {
+            Tensor product = random.nextProduct(3, ParserIndices.parseSimple("_mn"));
+            for (int j = 0; j < repetitions; ++j)
+                terms.add(Tensors.multiply(new Complex(random.nextInt(10) - 5), product));
+        }
+        Collections.shuffle(terms, new Random(seed));
+        return terms;
+    }
+
+    private static void putConcurrently(final ConcurrentSumBuilder builder, final List<Tensor> terms, int threadsCount)
+            throws InterruptedException {
+        final AtomicInteger pointer = new AtomicInteger();
+        Thread[] threads = new Thread[threadsCount];
+        for (int i = 0; i < threadsCount; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int i;
+                    while ((i = pointer.getAndIncrement()) < terms.size())
+                        builder.put(terms.get(i));
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.transformations.EliminateMetricsTransformation;
+import cc.redberry.core.transformations.expand.ExpandPort;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import cc.redberry.core.utils.OutputPort;
+import cc.redberry.core.utils.TensorUtils;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class DiskBackedSumTest {
+    @Test
+    public void testExpand() throws IOException {
+        Tensor t = parse("(a+b+c)**4*(k_m+p_m)*(k^m+t^m)");
+        try (DiskBackedSum sum = new DiskBackedSum(null, 5, 3)) {
+            sum.putAll(ExpandPort.createPort(t, true));
+            TAssert.assertEquals(sum.build(), ExpandTransformation.expand(t));
+        }
+    }
+
+    @Test
+    public void testMergeAcrossSpills() throws IOException {
+        try (DiskBackedSum sum = new DiskBackedSum(null, 2, 2)) {
+            sum.put(parse("x*f_mn"));
+            sum.put(parse("a*k_m*k_n + b*k_m*t_n"));
+            sum.put(parse("c*t_m*t_n"));
+            sum.put(parse("-2*x*f_mn + y*f_mn"));
+            sum.put(parse("-a*k_m*k_n"));
+            Assert.assertTrue(sum.size() > 3);
+
+            OutputPort<Tensor> port = sum.port();
+            SumBuilder builder = new SumBuilder();
+            int count = 0;
+            Tensor summand;
+            while ((summand = port.take()) != null) {
+                builder.put(summand);
+                ++count;
+            }
+            Assert.assertEquals(3, count);
+            TAssert.assertEquals(builder.build(), "(y-x)*f_mn + b*k_m*t_n + c*t_m*t_n");
+            Assert.assertEquals(3, sum.size());
+        }
+    }
+
+    @Test
+    public void testNumericPart() throws IOException {
+        try (DiskBackedSum sum = new DiskBackedSum(null, 1, 2)) {
+            sum.put(parse("2 + x"));
+            sum.put(parse("y - x"));
+            sum.put(parse("-1"));
+            TAssert.assertEquals(sum.build(), "y + 1");
+        }
+    }
+
+    @Test
+    public void testTransform() throws IOException {
+        Tensor t = parse("(g_mn*k^n + p_m)*(g^ma*t_a + q^m)");
+        try (DiskBackedSum sum = new DiskBackedSum(null, 1, 2)) {
+            sum.putAll(ExpandPort.createPort(t, true));
+            try (DiskBackedSum result = sum.transform(EliminateMetricsTransformation.ELIMINATE_METRICS)) {
+                TAssert.assertEquals(result.build(), "k_m*t^m + k_m*q^m + p_m*t^m + p_m*q^m");
+            }
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "redberry-sum-test" + System.nanoTime());
+        Assert.assertTrue(dir.mkdir());
+        try {
+            DiskBackedSum sum = new DiskBackedSum(dir, 1, 2);
+            sum.put(parse("a*x + b*y + c*z"));
+            sum.port();
+            Assert.assertEquals(1, dir.listFiles().length);
+            sum.close();
+            Assert.assertEquals(0, dir.listFiles().length);
+        } finally {
+            dir.delete();
+        }
+    }
+
+    @Test(expected = TensorException.class)
+    public void testInconsistentIndices() throws IOException {
+        try (DiskBackedSum sum = new DiskBackedSum()) {
+            sum.put(parse("k_m"));
+            sum.put(parse("t_n"));
+        }
+    }
+
+    @Test
+    public void testNumericCoefficients1() throws IOException {
+        try (DiskBackedSum sum = new DiskBackedSum(null, 1, 2)) {
+            sum.put(parse("2*x*f_mn"));
+            sum.put(parse("y*f_mn"));
+            sum.put(parse("2.0*x*f_mn"));
+            TAssert.assertEquals(sum.build(), "4.0*x*f_mn + y*f_mn");
+        }
+        try (DiskBackedSum sum = new DiskBackedSum(null, 1, 2)) {
+            sum.put(parse("2*x + 1/2*y"));
+            sum.put(parse("1.5"));
+            sum.put(parse("1/3*z"));
+            Tensor result = sum.build();
+            TAssert.assertEquals(result, "2*x + 0.5*y + 0.3333333333333333*z + 1.5");
+            for (Tensor summand : result)
+                Assert.assertTrue(summand instanceof Complex || TensorUtils.isNumeric(((Product) summand).getFactor()));
+        }
+    }
+
+    @Test
+    public void testNumericCoefficients2() throws IOException {
+        try (DiskBackedSum sum = new DiskBackedSum(null, 1, 2)) {
+            sum.put(parse("x + y"));
+            sum.put(parse("z"));
+            sum.put(Complex.ComplexNaN);
+            sum.put(parse("t"));
+            Assert.assertTrue(TensorUtils.isIndeterminate(sum.build()));
+            Assert.assertTrue(((Complex) sum.build()).isNaN());
+        }
+        try (DiskBackedSum sum = new DiskBackedSum(null, 1, 2)) {
+            sum.put(parse("x + y"));
+            sum.put(Complex.REAL_POSITIVE_INFINITY);
+            sum.put(parse("t + 1"));
+            Assert.assertTrue(((Complex) sum.build()).isInfinite());
+        }
+    }
+
+    @Test
+    public void testNumericCoefficientsRandom() throws IOException {
+        Well1024a random = new Well1024a(5);
+        Tensor[] terms = {parse("x*f_mn"), parse("y*f_mn"), parse("k_m*k_n"), parse("k_m*t_n"), parse("t_m*t_n")};
+        for (int n = 0; n < 20; ++n) {
+            SumBuilder expected = new SumBuilder();
+            try (DiskBackedSum sum = new DiskBackedSum(null, 2, 2)) {
+                for (int i = 0; i < 30; ++i) {
+                    Complex coefficient = random.nextInt(4) == 0
+                            ? new Complex(random.nextInt(7) - 3 + 0.5)
+                            : new Complex(random.nextInt(7) - 3);
+                    Tensor summand = Tensors.multiply(coefficient, terms[random.nextInt(terms.length)]);
+                    sum.put(summand);
+                    expected.put(summand);
+                }
+                TAssert.assertEquals(sum.build(), expected.build());
+            }
+        }
+    }
+
+    @Test
+    public void testSkewedPartition() throws IOException {
+        //single partition which is much larger than buffer
+        Tensor t = parse("(k_m + p_m + q_m + r_m)*(k_n + p_n + q_n + r_n)*(a + b)");
+        try (DiskBackedSum sum = new DiskBackedSum(null, 3, 1)) {
+            for (int k = 0; k < 4; ++k)
+                sum.putAll(ExpandPort.createPort(t, true));
+            Assert.assertTrue(sum.size() > 16);
+            Tensor result = sum.build();
+            TAssert.assertEquals(result, ExpandTransformation.expand(Tensors.multiply(Complex.FOUR, t)));
+            Assert.assertEquals(result.size(), sum.size());
+        }
+    }
+
+    @Test
+    public void testAbandonedPort() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "redberry-sum-test" + System.nanoTime());
+        Assert.assertTrue(dir.mkdir());
+        try {
+            DiskBackedSum sum = new DiskBackedSum(dir, 1, 2);
+            sum.put(parse("a*x + b*y + c*z + a*z"));
+            OutputPort<Tensor> port = sum.port();
+            Assert.assertNotNull(port.take());
+            sum.close();
+            Assert.assertEquals(0, dir.listFiles().length);
+        } finally {
+            dir.delete();
+        }
+    }
+}
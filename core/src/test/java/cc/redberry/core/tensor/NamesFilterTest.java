@@ -0,0 +1,88 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.parser.ParserIndices;
+import cc.redberry.core.tensor.iterator.FromChildToParentIterator;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.utils.TensorUtils;
+import gnu.trove.set.hash.TIntHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.*;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class NamesFilterTest {
+    @Test
+    public void test1() {
+        Tensor t = parse("A_a*(B^a + C^a*Sin[x]) + f[y]*D_a*X^a");
+        long filter = NamesFilter.of(t);
+        for (String name : new String[]{"A_a", "B_a", "C_a", "x", "y", "D_a"})
+            Assert.assertTrue(NamesFilter.mayContainAll(filter, NamesFilter.of(parse(name))));
+        //cached value
+        Assert.assertEquals(filter, NamesFilter.of(t));
+        Assert.assertEquals(0, NamesFilter.of(parse("2*I")));
+    }
+
+    @Test
+    public void testDerivative() {
+        TensorField derivative = (TensorField) parse("f~(1)[x]");
+        Assert.assertTrue(NamesFilter.mayContainAll(NamesFilter.of(derivative),
+                NamesFilter.ofName(((TensorField) parse("f[x]")).getName())));
+    }
+
+    @Test
+    public void testContainsSimpleTensors() {
+        TIntHashSet names = new TIntHashSet();
+        names.add(parseSimple("x").getName());
+        names.add(parseSimple("F_a").getName());
+        Assert.assertTrue(TensorUtils.containsSimpleTensors(parse("A_a*(B^a + F^a*y)"), names));
+        Assert.assertFalse(TensorUtils.containsSimpleTensors(parse("A_a*(B^a + C^a*y)"), names));
+    }
+
+    @Test
+    public void testRandom() {
+        RandomTensor rnd = new RandomTensor();
+        rnd.clearNamespace();
+        rnd.addToNamespace(parse("A_a"), parse("B_ab"), parse("C_abc"), parse("D_abcd"), parse("x"), parse("y"));
+        for (int i = 0; i < 100; ++i) {
+            Tensor t = rnd.nextTensorTree(3, 3, 3, ParserIndices.parseSimple("_ab"));
+            long filter = NamesFilter.of(t);
+            TIntHashSet names = new TIntHashSet();
+            FromChildToParentIterator iterator = new FromChildToParentIterator(t);
+            Tensor current;
+            while ((current = iterator.next()) != null) {
+                if (!(current instanceof SimpleTensor))
+                    continue;
+                int name = ((SimpleTensor) current).getName();
+                names.add(name);
+                Assert.assertTrue(NamesFilter.mayContainAll(filter, NamesFilter.ofName(name)));
+            }
+            Assert.assertTrue(NamesFilter.mayContainAll(filter, NamesFilter.ofNames(names)));
+        }
+    }
+}
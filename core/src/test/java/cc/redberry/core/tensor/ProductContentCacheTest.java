@@ -0,0 +1,132 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.context.CC;
+import cc.redberry.core.transformations.EliminateMetricsTransformation;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class ProductContentCacheTest {
+    @Test
+    public void testStrong() {
+        ProductContentCache cache = ProductContentCache.strong();
+        CC.current().setProductContentCache(cache);
+        Product p = (Product) parse("f_mn*k^m*t^n*x");
+        cache.resetStatistics();
+        ProductContent content = p.getContent();
+        Assert.assertTrue(content == p.getContent());
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testLru1() {
+        ProductContentCache.LruCache cache = ProductContentCache.lru(1);
+        CC.current().setProductContentCache(cache);
+        //single connected component, so no subproducts are created while calculating content
+        Product a = (Product) parse("f_mn*k^m*t^na"),
+                b = (Product) parse("f_mn*k^m*k^nb");
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.getEvictions() > 0);
+
+        cache.resetStatistics();
+        ProductContent content = a.getContent();
+        Assert.assertEquals(1, cache.getMisses());
+        long hits = cache.getHits();
+        Assert.assertTrue(content == a.getContent());
+        Assert.assertEquals(hits + 1, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+
+        b.getContent();
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(1, cache.size());
+
+        Assert.assertEquals(a.hashCode(), parse("f_mn*k^m*t^na").hashCode());
+        TAssert.assertEquals(a, "f_bc*k^b*t^ca");
+        TAssert.assertEquals(Tensors.multiply(a, parse("p_a")), "f_mn*k^m*t^na*p_a");
+    }
+
+    @Test
+    public void testLru2() {
+        Tensor t = parse("(f_mn*k^m + g_mn*p^m)*(f^n_a*k^a*x + p^n*y)*(k_b*k^b + p_b*p^b)");
+        Tensor expected = EliminateMetricsTransformation.eliminate(ExpandTransformation.expand(t));
+        for (int size : new int[]{1, 3, 16}) {
+            ProductContentCache.LruCache cache = ProductContentCache.lru(size);
+            CC.current().setProductContentCache(cache);
+            t = parse(t.toString());
+            TAssert.assertEquals(EliminateMetricsTransformation.eliminate(ExpandTransformation.expand(t)), expected);
+            Assert.assertTrue(cache.size() <= size);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLru3() {
+        ProductContentCache.lru(0);
+    }
+
+    @Test
+    public void testLru4() throws Exception {
+        final ProductContentCache.LruCache cache = ProductContentCache.lru(20);
+        CC.current().setProductContentCache(cache);
+        final Product[] products = new Product[100];
+        for (int i = 0; i < products.length; ++i)
+            products[i] = (Product) parse("f_mn*k^m*t^na*x" + i);
+        final int[] expected = new int[products.length];
+        for (int i = 0; i < products.length; ++i)
+            expected[i] = products[i].getContent().size();
+
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int k = 0; k < 1000; ++k) {
+                        int i = ThreadLocalRandom.current().nextInt(products.length);
+                        if (products[i].getContent().size() != expected[i])
+                            failed.set(true);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        Assert.assertFalse(failed.get());
+        Assert.assertTrue(cache.size() <= 20);
+        Assert.assertTrue(cache.getEvictions() > 0);
+    }
+}
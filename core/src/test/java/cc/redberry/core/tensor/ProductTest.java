@@ -27,8 +27,10 @@ import cc.redberry.core.combinatorics.IntCombinationsGenerator;
 import cc.redberry.core.context.CC;
 import cc.redberry.core.indices.InconsistentIndicesException;
 import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.IndicesFactory;
 import cc.redberry.core.number.Complex;
 import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.test.TestUtils;
 import cc.redberry.core.transformations.EliminateMetricsTransformation;
 import cc.redberry.core.utils.TensorUtils;
 import gnu.trove.set.hash.TIntHashSet;
@@ -550,4 +552,129 @@ public class ProductTest {
         Tensor b = parse("F^{kj}*R_{kji}");
         Assert.assertFalse(a.hashCode() == b.hashCode());
     }
+
+    @Test
+    public void testIncrementalSet1() throws Exception {
+        String[] products = {
+                "A_mn*(B^n_a + C^n_a)*D^a_b*E^b*F^m*G_cd*(H^cd + K^cd)",
+                "(B_ab + C_ab)*(B^bc + C^bc)*(B_cd + C_cd)*A^da",
+                "x*A_mn*(B^n_a + C^n_a)*(B^a_b + C^a_b)*E^bm*(H_cd + K_cd)*G^cd*(B_pq + C_pq)*A^pq",
+                "2*A_m*B^m*A_n*C^n*(G_ab + K_ab)*H^ab*F_c",
+                "F_a*(B^a_b + C^a_b)*(G^b_c + K^b_c)*(H^c_d + D^c_d)*E^d_e",
+                "(B_ab + C_ab)*(B^ab + C^ab)",
+                "A_a*B^a*C_b*D^b"
+        };
+        int incremental = 0;
+        for (String str : products)
+            incremental += checkIncrementalSet((Product) parse(str));
+        Assert.assertTrue(incremental > 0);
+    }
+
+    @Test
+    public void testIncrementalSetRandom() throws Exception {
+        RandomTensor rnd = new RandomTensor();
+        rnd.clearNamespace();
+        rnd.addToNamespace(parse("A_a"), parse("B_ab"), parse("C_abc"), parse("D_a"), parse("E_ab"));
+        int incremental = 0;
+        for (int i = 0; i < TestUtils.its(50, 500); ++i) {
+            Tensor t = rnd.nextProductTree(2, 4, 3,
+                    i % 2 == 0 ? IndicesFactory.EMPTY_INDICES : parse("F_ab").getIndices().getFree());
+            if (t instanceof Product)
+                incremental += checkIncrementalSet((Product) t);
+        }
+        Assert.assertTrue(incremental > 0);
+    }
+
+    private static int checkIncrementalSet(Product product) {
+        int incremental = 0, offset = product.sizeOfIndexlessPart();
+        for (int k = 0; k < product.sizeOfDataPart(); ++k) {
+            Tensor old = product.data[k];
+            Tensor replacement = simpleTensor("Q", IndicesFactory.createSimple(null, old.getIndices()));
+            if (old instanceof Sum)
+                replacement = sum(old, replacement);
+
+            Tensor actual = product.set(offset + k, replacement);
+            Tensor[] data = product.data.clone();
+            data[k] = replacement;
+            Tensor expected = new Product(product.indices, product.factor, product.indexlessData, data);
+            if (!(actual instanceof Product) || product.sizeOfDataPart() < 2) {
+                TAssert.assertEquals(expected, actual);
+                continue;
+            }
+            assertSameContent((Product) expected, (Product) actual);
+            if (!Arrays.deepEquals(((Product) actual).getContent().getStructureOfContractions().contractions,
+                    product.getContent().getStructureOfContractions().contractions)
+                    || ((Product) actual).getContent().getStructureOfContractions()
+                    == product.getContent().getStructureOfContractions())
+                ++incremental;
+        }
+        return incremental;
+    }
+
+    @Test
+    public void testIncrementalSet2() throws Exception {
+        Product product = (Product) parse("A_mn*(B^n_a + C^n_a)*D^a_b*E^b_p*F^m*G_cd*(H^cd + K^cd)");
+        int position = 0;
+        while (!TensorUtils.equals(product.data[position], parse("H^cd + K^cd")))
+            ++position;
+        Tensor actual = product.set(product.sizeOfIndexlessPart() + position, parse("H^cd + K^cd + M^cd"));
+        TAssert.assertEquals(actual, "A_mn*(B^n_a + C^n_a)*D^a_b*E^b_p*F^m*G_cd*(H^cd + K^cd + M^cd)");
+        ProductContent content = ((Product) actual).getContent();
+        //non scalar part is reused
+        Assert.assertTrue(content.getNonScalar() == product.getContent().getNonScalar());
+        TAssert.assertEquals(content.getScalars()[0], "G_cd*(H^cd + K^cd + M^cd)");
+    }
+
+    @Test
+    public void testIncrementalSetNumericFactor() throws Exception {
+        Product product = (Product) parse("2.0*A_mn*(B^n_a + C^n_a)*D^am");
+        int position = 0;
+        while (!TensorUtils.equals(product.data[position], parse("B^n_a + C^n_a")))
+            ++position;
+        Tensor actual = product.set(product.sizeOfIndexlessPart() + position, parse("B^n_a + 1/4*C^n_a"));
+        Tensor expected = multiply(parse("2.0"), parse("A_mn"), parse("B^n_a + 1/4*C^n_a"), parse("D^am"));
+        Assert.assertTrue(TensorUtils.equalsExactly(expected, actual));
+        //multipliers are converted to numerical form as by product builder
+        Assert.assertTrue(actual.toString().contains("0.25"));
+        assertSameContent((Product) expected, (Product) actual);
+        //structure of contractions is reused (if the order of multipliers is not changed by the new hash)
+        Assert.assertTrue(!Arrays.deepEquals(((Product) actual).getContent().getStructureOfContractions().contractions,
+                product.getContent().getStructureOfContractions().contractions)
+                || ((Product) actual).getContent().getStructureOfContractions()
+                == product.getContent().getStructureOfContractions());
+    }
+
+    @Test
+    public void testIncrementalRemoveSelect() throws Exception {
+        Product product = (Product) parse("2*x*A_mn*(B^n_a + C^n_a)*D^am");
+        Tensor actual = product.remove(new int[]{0, 1});
+        TAssert.assertEquals(actual, "A_mn*(B^n_a + C^n_a)*D^am");
+        Assert.assertTrue(((Product) actual).getContent() == product.getContent());
+
+        actual = product.remove(1);
+        TAssert.assertEquals(actual, "2*A_mn*(B^n_a + C^n_a)*D^am");
+        Assert.assertTrue(((Product) actual).getContent() == product.getContent());
+
+        actual = product.select(new int[]{0, 2, 3, 4});
+        TAssert.assertEquals(actual, "2*A_mn*(B^n_a + C^n_a)*D^am");
+        Assert.assertTrue(((Product) actual).getContent() == product.getContent());
+    }
+
+    private static void assertSameContent(Product expected, Product actual) {
+        Assert.assertEquals(expected.hashCode(), actual.hashCode());
+        Assert.assertEquals(HashingStrategy.iHash(expected), HashingStrategy.iHash(actual));
+        Assert.assertTrue(TensorUtils.equalsExactly(expected.data, actual.data));
+        ProductContent e = expected.getContent(), a = actual.getContent();
+        Assert.assertArrayEquals(e.hashCodes, a.hashCodes);
+        Assert.assertArrayEquals(e.iHashCodes, a.iHashCodes);
+        Assert.assertTrue(Arrays.deepEquals(e.getStructureOfContractions().contractions,
+                a.getStructureOfContractions().contractions));
+        Assert.assertArrayEquals(e.getStructureOfContractions().components,
+                a.getStructureOfContractions().components);
+        if (e.getNonScalar() == null)
+            Assert.assertNull(a.getNonScalar());
+        else
+            Assert.assertTrue(TensorUtils.equalsExactly(e.getNonScalar(), a.getNonScalar()));
+        Assert.assertTrue(TensorUtils.equalsExactly(e.getScalars(), a.getScalars()));
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.context.CC;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.parse;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class TensorInternTableTest {
+
+    @Test
+    public void test1() {
+        TensorInternTable table = new TensorInternTable();
+        CC.current().setInternTable(table);
+        try {
+            Tensor a = parse("f_mn*k^m*(a+b)"), b = parse("f_mn*k^m*(a+b)");
+            Assert.assertTrue(a == b);
+            Assert.assertTrue(a.get(0) == b.get(0));
+            Assert.assertTrue(parse("f_mn") == parse("f_mn"));
+            Assert.assertTrue(parse("f_mn") != parse("f_nm"));
+            Assert.assertTrue(table.getHits() > 0);
+            Assert.assertTrue(table.getMisses() > 0);
+            Assert.assertTrue(table.size() > 0);
+        } finally {
+            CC.current().setInternTable(null);
+        }
+    }
+
+    @Test
+    public void test2() {
+        TensorInternTable table = new TensorInternTable();
+        CC.current().setInternTable(table);
+        try {
+            Tensor a = parse("2*x*f_mn"), b = parse("2.0*x*f_mn");
+            Assert.assertTrue(a != b);
+            Assert.assertTrue(TensorUtils.isNumeric(b.get(0)));
+            Assert.assertFalse(TensorUtils.isNumeric(a.get(0)));
+
+            a = parse("2*x + f_m^m");
+            b = parse("2.0*x + f_m^m");
+            Assert.assertTrue(a != b);
+        } finally {
+            CC.current().setInternTable(null);
+        }
+    }
+
+    @Test
+    public void test3() {
+        TensorInternTable table = new TensorInternTable();
+        Tensor a = parse("f_mn*k^m*(a+b)"), b = parse("f_mn*k^m*(a+b)");
+        Assert.assertTrue(a != b);
+        Assert.assertTrue(table.intern(a) == a);
+        Assert.assertTrue(table.intern(b) == a);
+        Assert.assertEquals(1, table.getHits());
+        Assert.assertEquals(1, table.getMisses());
+        CC.current().setInternTable(table);
+        CC.resetTensorNames();
+        Assert.assertEquals(0, table.size());
+        CC.current().setInternTable(null);
+    }
+
+    @Test
+    public void test4() {
+        TensorInternTable table = new TensorInternTable();
+        CC.current().setInternTable(table);
+        try {
+            Tensor a = parse("2.0*x + 2*y"), b = parse("2*x + 2.0*y");
+            Assert.assertTrue(a != b);
+            Assert.assertTrue(b.toString().contains("(2.0)*y"));
+            Assert.assertTrue(parse("2.0*x + 2*y") == a);
+
+            a = parse("f_m*(2.0*x + 2*y)");
+            b = parse("f_m*(2*x + 2.0*y)");
+            Assert.assertTrue(a != b);
+            Assert.assertTrue(parse("Sin[2.0*x + 2*y]") != parse("Sin[2*x + 2.0*y]"));
+        } finally {
+            CC.current().setInternTable(null);
+        }
+    }
+
+    @Test
+    public void test5() {
+        TensorInternTable table = new TensorInternTable();
+        Tensor[] variants = {parse("R_abcd"), parse("R_abdc"), parse("R_bacd"), parse("R_cdab")};
+        for (Tensor t : variants)
+            Assert.assertTrue(table.intern(t) == t);
+        for (Tensor t : variants)
+            Assert.assertTrue(table.intern(parse(t.toString())) == t);
+        Assert.assertEquals(4, table.getHits());
+        Assert.assertEquals(4, table.getMisses());
+        Assert.assertEquals(4, table.size());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.tensor;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.context.CC;
+import cc.redberry.core.tensor.functions.Exp;
+import cc.redberry.core.transformations.expand.ExpandPort;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static cc.redberry.core.tensor.Tensors.*;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class TensorStreamTest {
+    private static byte[] write(Tensor... tensors) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TensorOutputStream out = new TensorOutputStream(bytes)) {
+            for (Tensor t : tensors)
+                out.writeTensor(t);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void assertRoundTrip(String... expressions) throws IOException {
+        Tensor[] tensors = new Tensor[expressions.length];
+        String[] strings = new String[expressions.length];
+        for (int i = 0; i < expressions.length; ++i) {
+            tensors[i] = parse(expressions[i]);
+            strings[i] = tensors[i].toString();
+        }
+        byte[] bytes = write(tensors);
+
+        //read in a fresh namespace
+        CC.resetTensorNames();
+        try (TensorInputStream in = new TensorInputStream(new ByteArrayInputStream(bytes))) {
+            for (String string : strings)
+                TAssert.assertEquals(in.readTensor(), parse(string));
+            Assert.assertNull(in.readTensor());
+            Assert.assertNull(in.readTensor());
+        }
+    }
+
+    @Test
+    public void testRoundTrip1() throws IOException {
+        assertRoundTrip("2*x + 3*y**2/4 - I*z",
+                "f_mn*(k^m*t^n + 2*g^mn*x) + F",
+                "(a+b)**(1/2)*Sin[x]*Cos[y]*Tan[z]*Cot[x]*ArcSin[x]*ArcCos[y]*ArcTan[z]*ArcCot[x]*Log[y]",
+                "d^a_b*g_ac*g^bc",
+                "123456789012345678901234567890/7*x - 0.25*y + (1/3 + 2*I)*z");
+
+        byte[] bytes = write(exp(parse("x")));
+        CC.resetTensorNames();
+        try (TensorInputStream in = new TensorInputStream(new ByteArrayInputStream(bytes))) {
+            Tensor t = in.readTensor();
+            Assert.assertTrue(t instanceof Exp);
+            TAssert.assertEquals(t.get(0), "x");
+        }
+    }
+
+    @Test
+    public void testRoundTrip2() throws IOException {
+        assertRoundTrip("f[x, y_a]*t^a", "f~(2,0)[x, y_a]*t^a", "F_mn[k_a, x] + F_nm[k_a, x]",
+                "DiracDelta[x, y]*f[y, z_a]", "T_mn = f_m*f_n + g_mn");
+    }
+
+    @Test
+    public void testSymmetries() throws IOException {
+        addAntiSymmetry("F_mn", 1, 0);
+        addSymmetry("R_abcd", 2, 3, 0, 1);
+        addAntiSymmetry("R_abcd", 1, 0, 2, 3);
+        byte[] bytes = write(parse("F_mn*R^mnab"));
+
+        CC.resetTensorNames();
+        Tensor t;
+        try (TensorInputStream in = new TensorInputStream(new ByteArrayInputStream(bytes))) {
+            t = in.readTensor();
+        }
+        TAssert.assertEquals(t, "F_mn*R^mnab");
+        TAssert.assertEquals(parse("F_mn + F_nm"), "0");
+        TAssert.assertEquals(parse("R_abcd + R_bacd"), "0");
+        TAssert.assertEquals(parse("R_abcd - R_cdab"), "0");
+    }
+
+    @Test
+    public void testSymmetriesPrecedence() throws IOException {
+        addAntiSymmetry("F_mn", 1, 0);
+        byte[] bytes = write(parse("F_mn"));
+
+        CC.resetTensorNames();
+        addSymmetry("F_mn", 1, 0);
+        try (TensorInputStream in = new TensorInputStream(new ByteArrayInputStream(bytes))) {
+            in.readTensor();
+        }
+        TAssert.assertEquals(parse("F_mn - F_nm"), "0");
+    }
+
+    @Test
+    public void testStreamingTerms() throws IOException {
+        Tensor t = parse("(a+b)**5*(c_m+d_m)*(e^m+f^m)");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long written;
+        try (TensorOutputStream out = new TensorOutputStream(bytes)) {
+            written = out.writeAll(ExpandPort.createPort(t, true));
+        }
+        long read = 0;
+        SumBuilder sb = new SumBuilder();
+        try (TensorInputStream in = new TensorInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Tensor term;
+            while ((term = in.readTensor()) != null) {
+                sb.put(term);
+                ++read;
+            }
+        }
+        Assert.assertEquals(written, read);
+        TAssert.assertEquals(sb.build(), ExpandPort.expandUsingPort(t, true));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadHeader() throws IOException {
+        new TensorInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6}));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.context.CC;
+import cc.redberry.core.groups.permutations.Permutation;
+import cc.redberry.core.groups.permutations.Permutations;
+import cc.redberry.core.indexmapping.IndexMappings;
+import cc.redberry.core.indices.IndexType;
+import cc.redberry.core.indices.IndicesFactory;
+import cc.redberry.core.indices.IndicesUtils;
+import cc.redberry.core.number.Complex;
+import cc.redberry.core.tensor.Product;
+import cc.redberry.core.tensor.SimpleTensor;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.utils.TensorUtils;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Before;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.*;
+import static cc.redberry.core.transformations.CanonicalizeTransformation.CANONICALIZE;
+import static cc.redberry.core.transformations.CanonicalizeTransformation.canonicalize;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class CanonicalizeTransformationTest {
+    @Before
+    public void setUp() throws Exception {
+        CC.resetTensorNames();
+        addSymmetry("R_abcd", IndexType.LatinLower, true, 1, 0, 2, 3);
+        addSymmetry("R_abcd", IndexType.LatinLower, false, 2, 3, 0, 1);
+    }
+
+    @Test
+    public void test1() {
+        addSymmetry("A_mn", IndexType.LatinLower, false, 1, 0);
+        addSymmetry("B_mn", IndexType.LatinLower, true, 1, 0);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("A_mn*B^mn")), Complex.ZERO);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("A_mn*B^mn*x + A_mn*A^mn")), parse("A_mn*A^mn"));
+        TAssert.assertEquals(CANONICALIZE.transform(parse("B_nm + B_mn")), Complex.ZERO);
+    }
+
+    @Test
+    public void testOtherMultipliers() {
+        addSymmetry("A_mn", IndexType.LatinLower, false, 1, 0);
+        addSymmetry("B_mn", IndexType.LatinLower, true, 1, 0);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("A_mn*B^mn*(x+y)")), Complex.ZERO);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("A_mn*B^mn*f[x]")), Complex.ZERO);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("A_mn*B^nm*f_a[x]*g^a")), Complex.ZERO);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("A_mn*B^mn*C_a*(D^a + E^a)")), Complex.ZERO);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("B_mk*(C^k_n + D^k_n)*B^nm + B_km*(C^k_n + D^k_n)*B^nm")),
+                Complex.ZERO);
+        Tensor t = parse("A_mn*B^mk*(C_k^n + D_k^n)");
+        TAssert.assertEquals(CANONICALIZE.transform(t), t);
+    }
+
+    @Test
+    public void test2() {
+        TAssert.assertEquals(CANONICALIZE.transform(parse("R_abcd*R^cdab - R_badc*R^badc")), Complex.ZERO);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("R_abcd*R^abcd + R_bacd*R^abdc")),
+                parse("2*R_abcd*R^abcd"));
+        TAssert.assertEquals(CANONICALIZE.transform(parse("R_abcd*R^acbd - R_abcd*R^adbc")),
+                parse("R_abcd*R^acbd - R_abcd*R^adbc"));
+        TAssert.assertEquals(CANONICALIZE.transform(parse("R^a_a^b_c")), Complex.ZERO);
+    }
+
+    @Test
+    public void testFreeIndices() {
+        Tensor t = parse("R_acbd*R^cd_ef*R^e_m^f_n - R_abdc*R^cd_ef*R^e_m^f_n");
+        Tensor expected = parse("R_acbd*R^cd_ef*R^e_m^f_n - R_abdc*R^cd_ef*R^e_m^f_n");
+        TAssert.assertEquals(CANONICALIZE.transform(t), expected);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("R_ambn - R_bnam")), Complex.ZERO);
+        TAssert.assertEquals(CANONICALIZE.transform(parse("R_ambn + R_manb")), parse("2*R_ambn"));
+    }
+
+    @Test
+    public void testMatrices() {
+        Tensor t = parse("G^a'_b'*G^b'_c'*H^c'_d'*H^d'_a' - H^a'_b'*G^b'_c'*G^c'_d'*H^d'_a'");
+        TAssert.assertEquals(CANONICALIZE.transform(t), Complex.ZERO);
+        t = parse("G^a'_b'*G^b'_c'*H^c'_d'*H^d'_a' - G^a'_b'*H^b'_c'*G^c'_d'*H^d'_a'");
+        TAssert.assertEquals(CANONICALIZE.transform(t), t);
+    }
+
+    @Test
+    public void testIdempotent() {
+        Tensor t = canonicalize(parse("R_abcd*R^dcba*R_pqrs*R^qsrp"));
+        TAssert.assertTrue(canonicalize(t) == t);
+        TAssert.assertTrue(canonicalize(parse("x*y")) instanceof Product);
+    }
+
+    @Test
+    public void testRandomRiemannMonomials() {
+        Well1024a random = new Well1024a(42);
+        for (int degree = 2; degree <= 5; ++degree)
+            for (int free = 0; free <= 2; free += 2)
+                for (int n = 0; n < 50; ++n) {
+                    Tensor monomial = randomMonomial(degree, free, random);
+                    Tensor equal = randomEquivalent(monomial, random);
+                    Tensor canonical = canonicalize(monomial);
+                    TAssert.assertEquals(TensorUtils.isZeroDueToSymmetry(monomial), canonical == Complex.ZERO);
+                    if (canonical != Complex.ZERO)
+                        TAssert.assertEquals(monomial, canonical);
+                    TAssert.assertTrue(TensorUtils.equalsExactly(canonical, canonicalize(equal)));
+                }
+    }
+
+    @Test
+    public void testRandomPairs() {
+        Well1024a random = new Well1024a(7);
+        for (int n = 0; n < 300; ++n) {
+            Tensor a = randomMonomial(3, 0, random), b = randomMonomial(3, 0, random);
+            Tensor ca = canonicalize(a), cb = canonicalize(b);
+            if (ca == Complex.ZERO || cb == Complex.ZERO)
+                continue;
+            boolean equal = TensorUtils.equalsExactly(((Product) ca).getDataSubProduct(),
+                    ((Product) cb).getDataSubProduct());
+            TAssert.assertEquals(IndexMappings.compare1(a, b) != null, equal);
+        }
+    }
+
+    @Test
+    public void testSum() {
+        Well1024a random = new Well1024a(1);
+        Tensor monomial;
+        do {
+            monomial = randomMonomial(4, 0, random);
+        } while (TensorUtils.isZeroDueToSymmetry(monomial));
+        Tensor[] terms = new Tensor[20];
+        for (int i = 0; i < terms.length; ++i)
+            terms[i] = randomEquivalent(monomial, random);
+        TAssert.assertEquals(CANONICALIZE.transform(sum(sum(terms), negate(multiply(new Complex(20), monomial)))),
+                Complex.ZERO);
+    }
+
+    /**
+     * Product of Riemann tensors with random contractions
+     */
+    private static Tensor randomMonomial(int degree, int free, Well1024a random) {
+        int size = 4 * degree;
+        int[] slots = Permutations.randomPermutation(size, random);
+        int[] indices = new int[size];
+        int pointer = 0;
+        for (int i = 0; i < free; ++i)
+            indices[slots[pointer++]] = IndicesUtils.createIndex(20 + i, IndexType.LatinLower, false);
+        for (int name = 0; pointer < size; ++name) {
+            indices[slots[pointer++]] = IndicesUtils.createIndex(name, IndexType.LatinLower, true);
+            indices[slots[pointer++]] = IndicesUtils.createIndex(name, IndexType.LatinLower, false);
+        }
+        SimpleTensor riemann = parseSimple("R_abcd");
+        Tensor[] data = new Tensor[degree];
+        for (int i = 0; i < degree; ++i)
+            data[i] = simpleTensor(riemann.getName(), IndicesFactory.createSimple(null, indices[4 * i],
+                    indices[4 * i + 1], indices[4 * i + 2], indices[4 * i + 3]));
+        return multiply(data);
+    }
+
+    /**
+     * Applies random symmetries to multipliers and random renaming of dummies
+     */
+    private static Tensor randomEquivalent(Tensor monomial, Well1024a random) {
+        int dummies = (monomial.getIndices().size() - monomial.getIndices().getFree().size()) / 2;
+        int[] renaming = Permutations.randomPermutation(dummies, random);
+        Tensor[] data = new Tensor[monomial.size()];
+        boolean sign = false;
+        for (int i = 0; i < data.length; ++i) {
+            SimpleTensor st = (SimpleTensor) monomial.get(i);
+            Permutation symmetry
+                    = st.getIndices().getSymmetries().getPermutationGroup().randomElement(random);
+            sign ^= symmetry.antisymmetry();
+            int[] indices = new int[4];
+            for (int j = 0; j < 4; ++j) {
+                int index = st.getIndices().get(symmetry.newIndexOf(j));
+                if (IndicesUtils.getNameWithoutType(index) < dummies)
+                    index = IndicesUtils.setState(IndicesUtils.getState(index),
+                            IndicesUtils.createIndex(renaming[IndicesUtils.getNameWithoutType(index)],
+                                    IndexType.LatinLower, false));
+                indices[j] = index;
+            }
+            data[i] = simpleTensor(st.getName(), IndicesFactory.createSimple(null, indices));
+        }
+        Tensor result = multiply(data);
+        return sign ? negate(result) : result;
+    }
+}
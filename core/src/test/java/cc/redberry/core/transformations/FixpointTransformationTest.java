@@ -0,0 +1,180 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.iterator.FromChildToParentIterator;
+import cc.redberry.core.tensor.iterator.TraverseGuide;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.test.TestUtils;
+import cc.redberry.core.transformations.substitutions.SubstitutionIterator;
+import cc.redberry.core.transformations.substitutions.SubstitutionTransformation;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.*;
+import static cc.redberry.core.transformations.EliminateMetricsTransformation.ELIMINATE_METRICS;
+import static cc.redberry.core.transformations.ExpandAndEliminateTransformation.expandAndEliminate;
+import static cc.redberry.core.transformations.expand.ExpandTransformation.EXPAND;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class FixpointTransformationTest {
+    @Test
+    public void test1() {
+        Tensor t = parse("A_a*F^a + Sin[A_a*A^a]");
+        Transformation[] transformations = {parseExpression("B_a = C_a"), parseExpression("A_a = B_a")};
+        TAssert.assertEquals(Transformation.Util.applyUntilStable(t, transformations),
+                parse("C_a*F^a + Sin[C_a*C^a]"));
+        TAssert.assertEquals(Transformation.Util.applyUntilStable(t, transformations),
+                Transformation.Util.applyUntilUnchanged(t, transformations));
+    }
+
+    @Test
+    public void test2() {
+        Tensor t = parse("g_ab*(A^a+B^a)*(C^b+D^b)");
+        Transformation[] transformations = {ELIMINATE_METRICS, parseExpression("A_a*C^a = g_ab*A^a*B^b"), EXPAND};
+        TAssert.assertEquals(Transformation.Util.applyUntilStable(t, transformations),
+                parse("A_a*B^a+A_a*D^a+B_a*C^a+B_a*D^a"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testLimit() {
+        new FixpointTransformation(3, parseExpression("x = 2*x")).transform(parse("x*y"));
+    }
+
+    @Test
+    public void testSkipsStableSubtrees() {
+        Tensor t = parse("a");
+        for (int i = 0; i < 30; ++i)
+            t = sum(t, multiply(parse("x" + i), sum(parse("y" + i), parse("z" + i))));
+        CountingTransformation counter = new CountingTransformation();
+        Tensor result = new FixpointTransformation(
+                parseExpression("b = c"), parseExpression("a = b"), counter).transform(t);
+        TAssert.assertEquals(result, subtract(sum(t, parse("c")), parse("a")));
+        int size = 0;
+        FromChildToParentIterator iterator = new FromChildToParentIterator(t);
+        while (iterator.next() != null)
+            ++size;
+        //first round traverses the whole tree, subsequent rounds only the changed leaf and the root
+        TAssert.assertTrue(counter.count < size + 10);
+        TAssert.assertTrue(counter.count >= size);
+    }
+
+    @Test
+    public void testSkipsRebuiltSummands() {
+        //summands are put into SumBuilder when the sum is rebuilt, so they are matched with their copies
+        Tensor t = parse("a_m*F^m");
+        for (int i = 0; i < 30; ++i)
+            t = sum(t, multiply(parse("x" + i + "_m"), sum(parse("y" + i + "^m_n"), parse("z" + i + "^m_n")),
+                    parse("F^n")));
+        CountingTransformation counter = new CountingTransformation();
+        Tensor result = new FixpointTransformation(
+                parseExpression("b_m = c_m"), parseExpression("a_m = b_m"), counter).transform(t);
+        TAssert.assertEquals(result, sum(subtract(t, parse("a_m*F^m")), parse("c_m*F^m")));
+        int size = 0;
+        FromChildToParentIterator iterator = new FromChildToParentIterator(t);
+        while (iterator.next() != null)
+            ++size;
+        TAssert.assertTrue(counter.count < size + 20);
+    }
+
+    @Test
+    public void testStableNodes() {
+        //substitutions alone skip subtrees without their names, so counter is added to traverse all nodes
+        CountingTransformation all = new CountingTransformation();
+        FusableTransformation[] run = {new SubstitutionTransformation(parseExpression("b = c")),
+                new SubstitutionTransformation(parseExpression("a = b")), all};
+        Tensor t = parse("a*x + y*(z + t) + Sin[u*v]");
+        FusedTransformation.StableNodes stable = new FusedTransformation.StableNodes();
+        t = FusedTransformation.transform(t, run, stable);
+        int size = stable.size();
+        Assert.assertTrue(size > 0);
+        all.count = 0;
+        Tensor r = FusedTransformation.transform(t, run, stable);
+        TAssert.assertEquals(r, "c*x + y*(z + t) + Sin[u*v]");
+        //at most the root and the changed product c*x with its multiplier c are traversed
+        Assert.assertTrue(all.count <= 3);
+        //nodes of another tree
+        FusedTransformation.transform(parse("p*q"), run, stable);
+        Assert.assertTrue(stable.size() <= 3);
+        //nodes which are stable under another run should be traversed
+        Tensor u = parse("y*(z + t)");
+        FusedTransformation.transform(u, new FusableTransformation[]{run[0]}, stable);
+        CountingTransformation counter = new CountingTransformation();
+        FusedTransformation.transform(u, new FusableTransformation[]{counter}, stable);
+        Assert.assertEquals(5, counter.count);
+    }
+
+    @Test
+    public void testRandom() {
+        RandomTensor rnd = new RandomTensor();
+        rnd.clearNamespace();
+        rnd.addToNamespace(parse("A_a"), parse("B_ab"), parse("C_abc"), parse("g_ab"));
+        Transformation[] transformations = {
+                ELIMINATE_METRICS,
+                parseExpression("C_abc = B_ab*A_c"),
+                parseExpression("B_ab = A_a*A_b + g_ab"),
+                EXPAND};
+        for (int i = 0; i < TestUtils.its(30, 300); ++i) {
+            Tensor t = rnd.nextTensorTree(2, 3, 3, parse("F_ab").getIndices().getFree());
+            Tensor expected = Transformation.Util.applyUntilUnchanged(t, transformations),
+                    actual = Transformation.Util.applyUntilStable(t, transformations);
+            TAssert.assertTrue(TensorUtils.isZero(expandAndEliminate(subtract(expected, actual))));
+        }
+    }
+
+    private static final class CountingTransformation implements FusableTransformation {
+        int count = 0;
+
+        @Override
+        public boolean isFusable() {
+            return true;
+        }
+
+        @Override
+        public TraverseGuide getTraverseGuide() {
+            return TraverseGuide.ALL;
+        }
+
+        @Override
+        public boolean mayModify(Tensor tensor) {
+            return true;
+        }
+
+        @Override
+        public Tensor transformNode(Tensor node, SubstitutionIterator iterator) {
+            ++count;
+            return node;
+        }
+
+        @Override
+        public Tensor transform(Tensor t) {
+            return t;
+        }
+    }
+}
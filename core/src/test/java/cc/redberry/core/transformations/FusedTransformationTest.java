@@ -0,0 +1,117 @@
+/*
+ * Redberry: symbolic tensor computations.
+ *
+ * Copyright (c) 2010-2015:
+ *   Stanislav Poslavsky   <stvlpos@mail.ru>
+ *   Bolotin Dmitriy       <bolotin.dmitriy@gmail.com>
+ *
+ * This file is part of Redberry.
+ *
+ * Redberry is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Redberry is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Redberry. If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.redberry.core.transformations;
+
+import cc.redberry.core.TAssert;
+import cc.redberry.core.tensor.Tensor;
+import cc.redberry.core.tensor.random.RandomTensor;
+import cc.redberry.core.test.TestUtils;
+import cc.redberry.core.transformations.expand.ExpandTransformation;
+import cc.redberry.core.transformations.substitutions.SubstitutionTransformation;
+import cc.redberry.core.utils.TensorUtils;
+import org.junit.Test;
+
+import static cc.redberry.core.tensor.Tensors.*;
+import static cc.redberry.core.transformations.EliminateMetricsTransformation.ELIMINATE_METRICS;
+import static cc.redberry.core.transformations.ExpandAndEliminateTransformation.expandAndEliminate;
+import static cc.redberry.core.transformations.expand.ExpandTransformation.EXPAND;
+
+/**
+ * @author Dmitry Bolotin
+ * @author Stanislav Poslavsky
+ */
+public class FusedTransformationTest {
+    @Test
+    public void test1() {
+        Tensor t = parse("(A_a+g_ab*B^b)*(C^a+D^a)");
+        Transformation[] transformations = {EXPAND, ELIMINATE_METRICS};
+        TAssert.assertEquals(Transformation.Util.applyFused(t, transformations),
+                Transformation.Util.applySequentially(t, transformations));
+    }
+
+    @Test
+    public void test2() {
+        Tensor t = parse("g_ab*(A^a+B^a)*(C^b+D^b)");
+        Transformation[] transformations = {EXPAND, ELIMINATE_METRICS, parseExpression("A_a*C^a = x")};
+        TAssert.assertEquals(Transformation.Util.applyFused(t, transformations), parse("x+A_a*D^a+B_a*C^a+B_a*D^a"));
+    }
+
+    @Test
+    public void test3() {
+        //substituted sums are expanded too since expand is applied to the parent node
+        Tensor t = parse("x*(y+z)");
+        Transformation[] transformations = {EXPAND, parseExpression("x = a+b")};
+        TAssert.assertEquals(Transformation.Util.applySequentially(t, transformations), parse("(a+b)*y+(a+b)*z"));
+        TAssert.assertEquals(Transformation.Util.applyFused(t, transformations), parse("a*y+b*y+a*z+b*z"));
+    }
+
+    @Test
+    public void testTraverseGuides() {
+        //expand does not enter scalar functions, while substitution does
+        Tensor t = parse("Sin[(a+b)*c]*(x+y)");
+        Transformation[] transformations = {EXPAND, parseExpression("c = d")};
+        Tensor fused = Transformation.Util.applyFused(t, transformations);
+        TAssert.assertEquals(fused, parse("Sin[(a+b)*d]*x+Sin[(a+b)*d]*y"));
+        TAssert.assertEquals(fused, Transformation.Util.applySequentially(t, transformations));
+    }
+
+    @Test
+    public void testSkippedSubtrees() {
+        //y*k = z skips the subtrees without y, but the preceding substitution introduces y there
+        Tensor t = parse("Sin[x*k]*p + x*k*q");
+        Transformation[] transformations = {parseExpression("x = y"), parseExpression("y*k = z")};
+        Tensor fused = Transformation.Util.applyFused(t, transformations);
+        TAssert.assertEquals(fused, parse("Sin[z]*p + z*q"));
+        TAssert.assertEquals(fused, Transformation.Util.applySequentially(t, transformations));
+    }
+
+    @Test
+    public void testNotFusable() {
+        Tensor t = parse("x*(y+z)");
+        SubstitutionTransformation notFusable = new SubstitutionTransformation(parse("y"), parse("x"), false);
+        TAssert.assertFalse(notFusable.isFusable());
+        Transformation[] transformations = {notFusable, EXPAND, new TransformationCollection(ELIMINATE_METRICS)};
+        TAssert.assertEquals(Transformation.Util.applyFused(t, transformations),
+                Transformation.Util.applySequentially(t, transformations));
+        TAssert.assertTrue(new FusedTransformation(transformations).toString().endsWith(", Expand, EliminateMetrics]"));
+    }
+
+    @Test
+    public void testRandom() {
+        RandomTensor rnd = new RandomTensor();
+        rnd.clearNamespace();
+        rnd.addToNamespace(parse("A_a"), parse("B_ab"), parse("C_abc"), parse("g_ab"));
+        Transformation[] transformations = {
+                EXPAND,
+                ELIMINATE_METRICS,
+                parseExpression("A_a = B_ab*A^b + C_abc*g^bc"),
+                new ExpandTransformation(ELIMINATE_METRICS),
+                ELIMINATE_METRICS};
+        for (int i = 0; i < TestUtils.its(30, 300); ++i) {
+            Tensor t = rnd.nextTensorTree(2, 3, 3, parse("F_ab").getIndices().getFree());
+            Tensor sequential = Transformation.Util.applySequentially(t, transformations),
+                    fused = Transformation.Util.applyFused(t, transformations);
+            TAssert.assertTrue(TensorUtils.isZero(expandAndEliminate(subtract(sequential, fused))));
+        }
+    }
+}
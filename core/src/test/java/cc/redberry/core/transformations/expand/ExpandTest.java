@@ -34,11 +34,16 @@ import cc.redberry.core.transformations.EliminateMetricsTransformation;
 import cc.redberry.core.transformations.Transformation;
 import cc.redberry.core.transformations.TransformationCollection;
 import cc.redberry.core.transformations.fractions.TogetherTransformation;
+import cc.redberry.core.utils.OutputPort;
+import cc.redberry.core.utils.SplittableOutputPort;
 import cc.redberry.core.utils.TensorUtils;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static cc.redberry.core.tensor.Tensors.parse;
 import static cc.redberry.core.tensor.Tensors.parseExpression;
 import static cc.redberry.core.transformations.expand.ExpandPort.expandUsingPort;
@@ -584,4 +589,92 @@ public class ExpandTest {
             TAssert.assertEquals("((c+d)**2*(c+r)*(a+b)+(a+c)*(c+r)*(a+b)+(c+d)*(c+r)*(i+k)*(a+b)**2)*t_{a}*f^{a}+(c+d)*(c+r)*(a+b)**2*f_{a}*f^{a}+((c+d)**2*(c+r)*(i+k)*(a+b)+(a+c)*(c+d)*(c+r))*t_{a}*t^{a}", expandUsingPort(t, false));
         }
     }
+
+    @Test
+    public void testParallel1() throws Exception {
+        Tensor t = parse("(a+b+c+d+e+f+g+h)**7");
+        Tensor sequential = expand(t);
+        Tensor parallel = new ExpandTransformation(new Transformation[0],
+                AbstractExpandTransformation.DefaultExpandTraverseGuide, true).transform(t);
+        Assert.assertTrue(TensorUtils.equalsExactly(sequential, parallel));
+    }
+
+    @Test
+    public void testParallel2() throws Exception {
+        Tensor t = parse("(f_a + g_ab*k^b + (a+b)*t_a + x*p_a)*(f^a + r^a + p^a)*(t_c+f_c)*(a*f^c + b*t^c + k^c*(c+d))" +
+                "*(p_m*f^m+k_m*f^m+k_m*k^m + t_m*f^m)**2");
+        Transformation[] transformations = {EliminateMetricsTransformation.ELIMINATE_METRICS,
+                parseExpression("f_a*f^a = m**2")};
+        Tensor sequential = expand(t, transformations);
+        Tensor parallel = new ExpandTransformation(transformations,
+                AbstractExpandTransformation.DefaultExpandTraverseGuide, true).transform(t);
+        Assert.assertTrue(TensorUtils.equalsExactly(sequential, parallel));
+    }
+
+    @Test
+    public void testParallel3() throws Exception {
+        for (int i = 0; i < 10; ++i) {
+            CC.resetTensorNames(i);
+            RandomTensor r = new RandomTensor(4, 10, new int[]{4, 0, 0, 0}, new int[]{10, 0, 0, 0}, false, true);
+            r.reset(i);
+            Tensor t = Tensors.multiplyAndRenameConflictingDummies(r.nextSum(30, 3, ParserIndices.parseSimple("_ab")),
+                    r.nextSum(30, 3, ParserIndices.parseSimple("^ab")), r.nextSum(10, 2, ParserIndices.parseSimple("")));
+            Tensor sequential = expand(t, EliminateMetricsTransformation.ELIMINATE_METRICS);
+            Tensor parallel = new ExpandTransformation(new Transformation[]{EliminateMetricsTransformation.ELIMINATE_METRICS},
+                    AbstractExpandTransformation.DefaultExpandTraverseGuide, true).transform(t);
+            Assert.assertTrue(TensorUtils.equalsExactly(sequential, parallel));
+        }
+    }
+
+    @Test
+    public void testSplittablePort1() throws Exception {
+        String[] expressions = {"(a+b+c)*(d+e)*(f+g+h+i)", "(a+b+c)**3", "(a+b)**2*(c+d*(e+f))+x*(y+z)",
+                "(f_a + g_ab*k^b)*(f^a+k^a)*(a+b)", "(f_a*f^a + k_a*k^a + x)**3*(a+b)", "a*b", "(a+b)*f_mn", "x",
+                "(a+b)*(c+d)*f_m + (a+b)*k_m"};
+        for (String expression : expressions) {
+            Tensor t = parse(expression);
+            List<SplittableOutputPort<Tensor>> leaves = new ArrayList<>();
+            splitAll(ExpandPort.createSplittablePort(t, true), leaves);
+
+            SumBuilder sum = new SumBuilder();
+            long count = 0, estimated = 0;
+            for (SplittableOutputPort<Tensor> leaf : leaves) {
+                estimated += leaf.estimateSize();
+                Tensor term;
+                while ((term = leaf.take()) != null) {
+                    sum.put(term);
+                    ++count;
+                }
+            }
+            long expectedCount = 0;
+            OutputPort<Tensor> port = ExpandPort.createPort(t, true);
+            while (port.take() != null)
+                ++expectedCount;
+
+            Assert.assertEquals(expectedCount, count);
+            Assert.assertEquals(expectedCount, estimated);
+            Assert.assertEquals(expectedCount > 1, leaves.size() > 1);
+            Assert.assertEquals(expectedCount, ExpandPort.createSplittablePort(t, true).estimateSize());
+            TAssert.assertEquals(sum.build(), expandUsingPort(t));
+        }
+    }
+
+    private static void splitAll(SplittableOutputPort<Tensor> port, List<SplittableOutputPort<Tensor>> leaves) {
+        SplittableOutputPort<Tensor> split;
+        while ((split = port.trySplit()) != null)
+            splitAll(split, leaves);
+        leaves.add(port);
+    }
+
+    @Test
+    public void testSplittablePort2() throws Exception {
+        Tensor t = parse("(f_a + g_ab*k^b + (a+b)*t_a + x*p_a)*(f^a + r^a + p^a)*(t_c+f_c)*(a*f^c + b*t^c + k^c*(c+d))" +
+                "*(p_m*f^m+k_m*f^m+k_m*k^m + t_m*f^m)**2");
+        Transformation[] transformations = {EliminateMetricsTransformation.ELIMINATE_METRICS,
+                parseExpression("f_a*f^a = m**2")};
+        TAssert.assertEquals(ExpandPort.expandUsingPortParallel(t, true, transformations), expand(t, transformations));
+
+        t = parse("(a+b+c+d+e+f+g+h)**5");
+        TAssert.assertEquals(ExpandPort.expandUsingPortParallel(t, true), expand(t));
+    }
 }
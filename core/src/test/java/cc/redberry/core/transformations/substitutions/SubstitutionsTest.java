@@ -1480,6 +1480,128 @@ public class SubstitutionsTest extends RedberryTest {
     }
 
 
+    @Test
+    public void testIndexManyRules() {
+        List<Expression> rules = new ArrayList<>();
+        Tensor expected = parse("0");
+        SumBuilder tensor = new SumBuilder();
+        for (int i = 0; i < 100; ++i) {
+            rules.add((Expression) parse("x" + i + " = " + i));
+            rules.add((Expression) parse("f" + i + "_m*k^m = y" + i));
+            rules.add((Expression) parse("g" + i + "_m + h" + i + "_m = q_m"));
+            if (i % 7 == 0) {
+                tensor.put(parse("x" + i + "*f" + i + "_m*k^m*(g" + i + "_a + h" + i + "_a + t_a)*p^a"));
+                expected = sum(expected, parse(i + "*y" + i + "*(q_a + t_a)*p^a"));
+            }
+        }
+        Expression[] expressions = rules.toArray(new Expression[rules.size()]);
+        Tensor t = tensor.build();
+        TAssert.assertEquals(new SubstitutionTransformation(expressions).transform(t), expected);
+        TAssert.assertEquals(Transformation.Util.applySequentially(t, expressions), expected);
+    }
+
+    @Test
+    public void testIndexChangedNode() {
+        //after first rule is applied node becomes a sum, which should be tested against remaining rules
+        Expression[] rules = {(Expression) parse("x = y + z"), (Expression) parse("y + z = w"),
+                (Expression) parse("w = v")};
+        TAssert.assertEquals(new SubstitutionTransformation(rules, true).transform(parse("x")), "v");
+        TAssert.assertEquals(new SubstitutionTransformation(rules, false).transform(parse("x")), "y + z");
+        //rules preceding applied one are not tested
+        rules = new Expression[]{(Expression) parse("z = w"), (Expression) parse("x = z")};
+        TAssert.assertEquals(new SubstitutionTransformation(rules, true).transform(parse("x")), "z");
+    }
+
+    @Test
+    public void testIndexCandidates() {
+        PrimitiveSubstitution[] subs = {
+                new PrimitiveSimpleTensorSubstitution(parse("x"), parse("1")),
+                new PrimitiveSimpleTensorSubstitution(parse("f_m"), parse("k_m")),
+                new PrimitiveProductSubstitution(parse("f_m*k^m*x"), parse("y")),
+                new PrimitiveSumSubstitution(parse("f_m + k_m"), parse("t_m")),
+                new PrimitiveTensorFieldSubstitution(parse("F[x]"), parse("y")),
+                new PrimitiveProductSubstitution(parse("x**2*y"), parse("z"))};
+        SubstitutionIndex index = new SubstitutionIndex(subs);
+        Assert.assertArrayEquals(new int[]{0}, index.candidates(parse("x"), -1));
+        Assert.assertArrayEquals(new int[]{}, index.candidates(parse("x"), 0));
+        Assert.assertArrayEquals(new int[]{1}, index.candidates(parse("f_a"), -1));
+        Assert.assertArrayEquals(new int[]{2}, index.candidates(parse("2*f_m*k^m*x*y"), -1));
+        Assert.assertArrayEquals(new int[]{}, index.candidates(parse("f_m*t^m*x"), -1));
+        Assert.assertArrayEquals(new int[]{5}, index.candidates(parse("x**2*y*z"), -1));
+        Assert.assertArrayEquals(new int[]{3}, index.candidates(parse("f_m + k_m + t_m"), -1));
+        Assert.assertArrayEquals(new int[]{}, index.candidates(parse("f_m + t_m"), -1));
+        Assert.assertArrayEquals(new int[]{4}, index.candidates(parse("F~(2)[y]"), -1));
+        Assert.assertArrayEquals(new int[]{}, index.candidates(parse("G[x]"), -1));
+    }
+
+    @Test
+    public void testParallel1() {
+        SumBuilder sb = new SumBuilder();
+        for (int i = 0; i < 200; ++i)
+            sb.put(parse("f" + i + "_a*k^a*(x_b*y^b + " + i + ")"));
+        Tensor sum = sb.build();
+        SubstitutionTransformation subs = new SubstitutionTransformation(
+                parseExpression("x_a = z_ab*t^b"), parseExpression("k_a = k_b*h^b_a"));
+        SubstitutionTransformation pSubs = subs.parallel(true);
+        Assert.assertTrue(pSubs.isParallel());
+        Assert.assertFalse(subs.isParallel());
+
+        Tensor a = subs.transform(sum), b = pSubs.transform(sum);
+        Assert.assertTrue(TensorUtils.equalsExactly(a, b));
+        TAssert.assertIndicesConsistency(b);
+    }
+
+    @Test
+    public void testParallel2() {
+        SumBuilder sb = new SumBuilder();
+        for (int i = 0; i < 100; ++i)
+            sb.put(parse("x" + i));
+        sb.put(parse("a"));
+        Tensor sum = sb.build();
+        //rule for whole sum is applied after rules for summands
+        Expression[] rules = new Expression[100];
+        for (int i = 0; i < 100; ++i)
+            rules[i] = parseExpression("x" + i + " = y" + i);
+        SubstitutionTransformation subs = new SubstitutionTransformation(rules).add(parseExpression("y0 + a = b"));
+        Tensor a = subs.transform(sum), b = subs.parallel(true).transform(sum);
+        Assert.assertTrue(TensorUtils.equalsExactly(a, b));
+        SumBuilder expected = new SumBuilder();
+        for (int i = 1; i < 100; ++i)
+            expected.put(parse("y" + i));
+        expected.put(parse("b"));
+        TAssert.assertEquals(b, expected.build());
+
+        //not modified
+        SubstitutionTransformation none = new SubstitutionTransformation(parseExpression("z = 1")).parallel(true);
+        Assert.assertTrue(none.transform(sum) == sum);
+
+        //rules are not applied to modified sum
+        subs = new SubstitutionTransformation(new Expression[]{parseExpression("x0 = y0"),
+                parseExpression("y0 + a + x1 = b")}, false);
+        a = subs.transform(sum);
+        b = subs.parallel(true).transform(sum);
+        Assert.assertTrue(TensorUtils.equalsExactly(a, b));
+        TAssert.assertEquals(b, subtract(sum, parse("x0 - y0")));
+    }
+
+    @Test
+    public void testParallelRandom() {
+        Expression[] exprs = {
+                parseExpression("p1_a*p2^a = x"),
+                parseExpression("p2_a = p3_a + p4_b*p5^b*p1_a"),
+                parseExpression("p3_a*p4^a = p5_a*p5^a")};
+        SubstitutionTransformation subs = new SubstitutionTransformation(exprs);
+        SubstitutionTransformation pSubs = subs.parallel(true);
+        for (int i = 0; i < TestUtils.its(10, 50); i++) {
+            RandomTensor rnd = new RandomTensor();
+            rnd.clearNamespace();
+            rnd.addToNamespace(parse("p1_a"), parse("p2_a"), parse("p3_a"), parse("p4_a"), parse("p5_a"));
+            Tensor expr = expand(rnd.nextTensorTree(3, 4, 4, IndicesFactory.EMPTY_INDICES));
+            Tensor a = subs.transform(expr), b = pSubs.transform(expr);
+            Assert.assertTrue(TensorUtils.equalsExactly(a, b));
+        }
+    }
+
     static final class BruteForceProductSubs implements Transformation {
         final PrimitiveProductSubstitution ps;
 
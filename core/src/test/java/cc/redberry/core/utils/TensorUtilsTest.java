@@ -399,4 +399,11 @@ public class TensorUtilsTest {
     public void testExponent2() throws Exception {
         System.out.println( Count(parse("1/(a+v)"), 100, parse("a")));
     }
+
+    @Test
+    public void testEqualsExactlyEqualHashes() throws Exception {
+        assertTrue(TensorUtils.equalsExactly(parse("f_i*f^i*a^m"), parse("f_i*f^i*a^m")));
+        assertFalse(TensorUtils.equalsExactly(parse("f_i*f^i*a^m"), parse("f_i*f^i*a^l")));
+        assertFalse(TensorUtils.equalsExactly(parse("f_a*f^b*t^a_b"), parse("f_a*f^b*t_b^a")));
+    }
 }